@@ -18,14 +18,19 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 
 import static java.lang.System.nanoTime;
+import static java.util.concurrent.Executors.newCachedThreadPool;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class Utils {
+    private static final ExecutorService backgroundExecutor =
+            newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Background-%d").setDaemon(true).build());
+
 
     private Utils() {
     }
@@ -35,6 +40,45 @@ public class Utils {
         return newFixedThreadPool(numberOfThreads, namedThreadFactory);
     }
 
+    /**
+     * Creates an executor that starts threads only when there are no idle ones, so it can be shared by tasks
+     * that mostly wait
+     */
+    public static ExecutorService namedCachedExecutor(String nameFormat) {
+        return namedCachedExecutor(nameFormat, false);
+    }
+
+    /**
+     * Same as {@link #namedCachedExecutor(String)}, daemon threads don't prevent the JVM from exiting
+     * so the executor doesn't have to be shut down
+     */
+    public static ExecutorService namedCachedExecutor(String nameFormat, boolean daemon) {
+        ThreadFactory namedThreadFactory = new ThreadFactoryBuilder()
+                .setNameFormat(nameFormat)
+                .setDaemon(daemon)
+                .build();
+        return newCachedThreadPool(namedThreadFactory);
+    }
+
+    /**
+     * Runs a short-lived helper task (e.g. log or screen capturing) on a shared pool of daemon threads
+     * instead of starting a new thread for it
+     *
+     * @return future that is completed when the task is finished
+     */
+    public static Future<?> runInBackground(String name, Runnable task) {
+        return backgroundExecutor.submit(() -> {
+            Thread currentThread = Thread.currentThread();
+            String originalName = currentThread.getName();
+            currentThread.setName(name);
+            try {
+                task.run();
+            } finally {
+                currentThread.setName(originalName);
+            }
+        });
+    }
+
     public static long millisSinceNanoTime(long startNanos) {
         return millisBetweenNanoTimes(startNanos, nanoTime());
     }
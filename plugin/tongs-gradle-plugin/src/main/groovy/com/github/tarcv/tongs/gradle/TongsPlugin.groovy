@@ -97,6 +97,31 @@ class TongsPlugin implements Plugin<Project> {
                 poolingStrategy = config.poolingStrategy
                 ignoreFailures = config.ignoreFailures
                 excludedAnnotation = config.excludedAnnotation
+                durationHistoryFile = config.durationHistoryFile ? project.file(config.durationHistoryFile) : null
+                workStealing = config.workStealing
+                testBatchSize = config.testBatchSize
+                coordinatorPort = config.coordinatorPort
+                expectedWorkers = config.expectedWorkers
+                coordinatorBindAddress = config.coordinatorBindAddress
+                coordinatorToken = config.coordinatorToken
+                coordinatorRequestTimeout = config.coordinatorRequestTimeout
+                speculativeExecution = config.speculativeExecution
+                speculationDelay = config.speculationDelay
+                failureBudget = config.failureBudget
+                failureBudgetPercent = config.failureBudgetPercent
+                deviceQuarantine = config.deviceQuarantine
+                quarantineProbeInterval = config.quarantineProbeInterval
+                deviceHotPlug = config.deviceHotPlug
+                apkInstallCache = config.apkInstallCache
+                deviceStateCache = config.deviceStateCache
+                appResetPolicy = config.appResetPolicy
+                appResetInterval = config.appResetInterval
+                devicePerformanceProfile = config.devicePerformanceProfile
+                testDiscoveryCacheDirectory = config.testDiscoveryCacheDirectory ?
+                        project.file(config.testDiscoveryCacheDirectory) : null
+                testDiscoveryCacheValidation = config.testDiscoveryCacheValidation
+                hostTestDiscovery = config.hostTestDiscovery
+                testCollectionLogcatTimeout = config.testCollectionLogcatTimeout
                 tongsIntegrationTestRunType =
                         TongsConfiguration.TongsIntegrationTestRunType.valueOf(config.tongsIntegrationTestRunType)
 
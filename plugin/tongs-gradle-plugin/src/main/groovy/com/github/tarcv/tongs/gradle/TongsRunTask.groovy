@@ -79,6 +79,54 @@ class TongsRunTask extends DefaultTask implements VerificationTask {
 
     TongsConfiguration.TongsIntegrationTestRunType tongsIntegrationTestRunType
 
+    File durationHistoryFile
+
+    boolean workStealing
+
+    int testBatchSize
+
+    int coordinatorPort
+
+    int expectedWorkers
+
+    String coordinatorBindAddress
+
+    String coordinatorToken
+
+    long coordinatorRequestTimeout
+
+    boolean speculativeExecution
+
+    long speculationDelay
+
+    int failureBudget
+
+    int failureBudgetPercent
+
+    boolean deviceQuarantine
+
+    long quarantineProbeInterval
+
+    boolean deviceHotPlug
+
+    boolean apkInstallCache
+
+    boolean deviceStateCache
+
+    TongsConfiguration.AppResetPolicy appResetPolicy
+
+    int appResetInterval
+
+    boolean devicePerformanceProfile
+
+    File testDiscoveryCacheDirectory
+
+    boolean testDiscoveryCacheValidation
+
+    boolean hostTestDiscovery
+
+    long testCollectionLogcatTimeout
+
     @TaskAction
     void runTongs() {
         LOG.debug("Output: $output")
@@ -107,6 +155,30 @@ class TongsRunTask extends DefaultTask implements VerificationTask {
                 .withPoolingStrategy(poolingStrategy)
                 .withExcludedAnnotation(excludedAnnotation)
                 .withTongsIntegrationTestRunType(tongsIntegrationTestRunType)
+                .withDurationHistoryFile(durationHistoryFile)
+                .withWorkStealing(workStealing)
+                .withTestBatchSize(testBatchSize)
+                .withCoordinatorPort(coordinatorPort)
+                .withExpectedWorkers(expectedWorkers)
+                .withCoordinatorBindAddress(coordinatorBindAddress)
+                .withCoordinatorToken(coordinatorToken)
+                .withCoordinatorRequestTimeout(coordinatorRequestTimeout)
+                .withSpeculativeExecution(speculativeExecution)
+                .withSpeculationDelay(speculationDelay)
+                .withFailureBudget(failureBudget)
+                .withFailureBudgetPercent(failureBudgetPercent)
+                .withDeviceQuarantine(deviceQuarantine)
+                .withQuarantineProbeInterval(quarantineProbeInterval)
+                .withDeviceHotPlug(deviceHotPlug)
+                .withApkInstallCache(apkInstallCache)
+                .withDeviceStateCache(deviceStateCache)
+                .withAppResetPolicy(appResetPolicy)
+                .withAppResetInterval(appResetInterval)
+                .withDevicePerformanceProfile(devicePerformanceProfile)
+                .withTestDiscoveryCacheDirectory(testDiscoveryCacheDirectory)
+                .withTestDiscoveryCacheValidation(testDiscoveryCacheValidation)
+                .withHostTestDiscovery(hostTestDiscovery)
+                .withTestCollectionLogcatTimeout(testCollectionLogcatTimeout)
                 .withDdmTermination(false) // AGP doesn't terminate DdmLib, neither should Tongs
                 .build(true);
 
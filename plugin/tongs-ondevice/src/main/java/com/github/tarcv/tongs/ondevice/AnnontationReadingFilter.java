@@ -10,6 +10,7 @@
 
 package com.github.tarcv.tongs.ondevice;
 
+import android.os.Bundle;
 import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -17,6 +18,12 @@ import org.json.JSONObject;
 import org.junit.runner.Description;
 import org.junit.runner.manipulation.Filter;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Inherited;
 import java.lang.reflect.InvocationTargetException;
@@ -26,10 +33,42 @@ import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class AnnontationReadingFilter extends Filter {
+    private static final String TAG = "Tongs.TestInfo";
     private static final int MSG_LENGTH_LIMIT_WITHOUT_PREFIX = 4000 - 16;
     private final AtomicInteger index = new AtomicInteger();
     private final String objectId = String.format("%08x", System.identityHashCode(this));
 
+    /**
+     * Writer of the file with one JSON record per line, null when records are written to logcat
+     */
+    private final Writer infoFileWriter;
+
+    public AnnontationReadingFilter() {
+        infoFileWriter = null;
+    }
+
+    public AnnontationReadingFilter(Bundle bundle) {
+        infoFileWriter = openInfoFile(bundle.getString("tongs_testInfoFile"));
+    }
+
+    private static Writer openInfoFile(String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            File file = new File(path);
+            File parent = file.getParentFile();
+            if (parent != null) {
+                //noinspection ResultOfMethodCallIgnored
+                parent.mkdirs();
+            }
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open " + path + ", writing test info to logcat", e);
+            return null;
+        }
+    }
+
     @Override
     public boolean shouldRun(Description description) {
         final JSONObject info = new JSONObject();
@@ -63,20 +102,38 @@ public class AnnontationReadingFilter extends Filter {
                 info.put("annotations", annotationsInfo);
             }
 
-            String message = info.toString() + ",";
-            int messageLength = message.length();
-            for (int i = 0; i < messageLength; i += MSG_LENGTH_LIMIT_WITHOUT_PREFIX) {
-                String linePrefix = objectId + "-" + String.format("%08x", index.getAndIncrement()) + ":";
-                int endIndex = Math.min(i + MSG_LENGTH_LIMIT_WITHOUT_PREFIX, messageLength);
-                Log.i("Tongs.TestInfo", linePrefix + message.substring(i, endIndex));
+            if (infoFileWriter != null) {
+                writeToFile(info);
+            } else {
+                writeToLogcat(info);
             }
-        } catch (JSONException e) {
+        } catch (JSONException | IOException e) {
             throw new RuntimeException(e);
         }
 
         return true;
     }
 
+    private void writeToFile(JSONObject info) throws IOException {
+        synchronized (infoFileWriter) {
+            infoFileWriter.write(info.toString());
+            infoFileWriter.write('\n');
+
+            // There is no callback for the end of filtering, so each record should be written completely
+            infoFileWriter.flush();
+        }
+    }
+
+    private void writeToLogcat(JSONObject info) {
+        String message = info.toString() + ",";
+        int messageLength = message.length();
+        for (int i = 0; i < messageLength; i += MSG_LENGTH_LIMIT_WITHOUT_PREFIX) {
+            String linePrefix = objectId + "-" + String.format("%08x", index.getAndIncrement()) + ":";
+            int endIndex = Math.min(i + MSG_LENGTH_LIMIT_WITHOUT_PREFIX, messageLength);
+            Log.i(TAG, linePrefix + message.substring(i, endIndex));
+        }
+    }
+
     private void appendSuperclassAnnotationsRoot(Class<?> testClass, JSONArray annotationsInfo) throws JSONException {
         for (Class<?> iface : testClass.getInterfaces()) {
             appendSuperclassAnnotationsFull(iface, annotationsInfo);
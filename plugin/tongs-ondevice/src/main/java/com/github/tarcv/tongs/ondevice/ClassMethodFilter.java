@@ -52,7 +52,7 @@ public class ClassMethodFilter extends Filter {
                     && expectedMethodName.equals(methodName);
     }
 
-    private static  String decode(String encodedName) {
+    static String decode(String encodedName) {
         byte[] bytes = Base64.decode(encodedName.replaceAll("_", "="), Base64.NO_WRAP);
         try {
             return new String(bytes, "utf-8");
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.github.tarcv.tongs.ondevice;
+
+import android.os.Bundle;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.github.tarcv.tongs.ondevice.ClassMethodFilter.decode;
+
+/**
+ * Allows several tests to be run in one instrumentation. Tests are passed in 'tongs_filterTests' argument
+ * as comma separated list of 'encodedClass:encodedMethod' pairs.
+ */
+public class ClassMethodListFilter extends Filter {
+    private final Set<String> expectedTests = new HashSet<>();
+
+    public ClassMethodListFilter(Bundle bundle) {
+        for (String encodedTest : bundle.getString("tongs_filterTests").split(",")) {
+            String[] parts = encodedTest.split(":", 2);
+            expectedTests.add(testKey(decode(parts[0]), decode(parts[1])));
+        }
+    }
+
+    @Override
+    public boolean shouldRun(Description description) {
+        if (description.isTest()) {
+            return expectedTests.contains(testKey(description.getClassName(), description.getMethodName()));
+        } else {
+            // Allow suite to be run when it contains at least one allowed test
+            for (Description child : description.getChildren()) {
+                if (shouldRun(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static String testKey(String className, String methodName) {
+        return className + "#" + methodName;
+    }
+
+    @Override
+    public String describe() {
+        return null;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.device
+
+import com.android.ddmlib.IDevice
+import com.github.tarcv.tongs.system.adb.ShellCommandBatch
+import com.github.tarcv.tongs.system.adb.ShellCommandResult
+import org.slf4j.LoggerFactory
+
+/**
+ * Tunes a device for fast and stable test timings: disables animations and package verification, keeps the screen on,
+ * stops background processes and compiles packages ahead of time (so test cases don't wait for JIT).
+ *
+ * Global settings changed by [apply] are restored by [restore]. Commands that are not supported by a device
+ * (e.g. 'cmd package compile' before Android 7) are logged and skipped.
+ */
+class DevicePerformanceProfile(private val device: IDevice) {
+    /**
+     * Setting -> its value before [apply] ('null' when it was not set)
+     */
+    private val originalSettings = LinkedHashMap<String, String>()
+
+    fun apply() {
+        if (originalSettings.isEmpty()) {
+            val readBatch = ShellCommandBatch()
+            TUNED_SETTINGS.keys.forEach { readBatch.add("settings get global $it") }
+            TUNED_SETTINGS.keys.zip(readBatch.execute(device)).forEach { (setting, result) ->
+                if (result.isSuccessful) {
+                    originalSettings[setting] = result.output.trim()
+                }
+            }
+        }
+
+        val batch = ShellCommandBatch()
+        originalSettings.keys.forEach { batch.add("settings put global $it ${TUNED_SETTINGS.getValue(it)}") }
+        batch.add("am kill-all")
+        logFailures(batch.execute(device))
+        logger.info("Applied performance profile to {}", device.serialNumber)
+    }
+
+    /**
+     * Compiles installed [packages] ahead of time
+     */
+    fun compile(vararg packages: String) {
+        val start = System.currentTimeMillis()
+        val batch = ShellCommandBatch()
+        packages.distinct().forEach { batch.add("cmd package compile -m speed -f $it") }
+        logFailures(batch.execute(device))
+        logger.info("Compiled {} on {} (took {}ms)",
+                packages.distinct(), device.serialNumber, System.currentTimeMillis() - start)
+    }
+
+    fun restore() {
+        if (originalSettings.isEmpty()) {
+            return
+        }
+        val batch = ShellCommandBatch()
+        originalSettings.forEach { (setting, value) ->
+            if (value == "null" || value.isEmpty()) {
+                batch.add("settings delete global $setting")
+            } else {
+                batch.add("settings put global $setting $value")
+            }
+        }
+        logFailures(batch.execute(device))
+        originalSettings.clear()
+        logger.info("Restored settings changed by performance profile on {}", device.serialNumber)
+    }
+
+    private fun logFailures(results: List<ShellCommandResult>) {
+        results
+                .filterNot { it.isSuccessful }
+                .forEach {
+                    logger.warn("Command '{}' failed on {} (exit code {}): {}",
+                            it.command, device.serialNumber, it.exitCode, it.output)
+                }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(DevicePerformanceProfile::class.java)
+
+        /**
+         * Global setting -> value applied by the profile
+         */
+        private val TUNED_SETTINGS = linkedMapOf(
+                "window_animation_scale" to "0",
+                "transition_animation_scale" to "0",
+                "animator_duration_scale" to "0",
+                "package_verifier_enable" to "0",
+                "verifier_verify_adb_installs" to "0",
+                // keep the screen on while plugged to AC, USB or wireless charging
+                "stay_on_while_plugged_in" to "7"
+        )
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.device
+
+import com.android.ddmlib.IDevice
+import com.github.tarcv.tongs.api.TongsConfiguration.AppResetPolicy
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * State of a device known from commands Tongs executed on it, used to skip commands whose effect is already in place.
+ *
+ * Anything that is not known is treated as not in place, so the corresponding commands are executed.
+ * Commands that might change the state in other ways (e.g. 'pm clear') must call [forgetPackage] or [forgetAll].
+ */
+class DeviceState {
+    /**
+     * Runtime permission -> whether it is granted, for each package
+     */
+    private val permissions = HashMap<String, MutableMap<String, Boolean>>()
+
+    /**
+     * Whether application data is known to be left only by test cases executed since the last reset
+     */
+    private var isAppStateKnown = false
+    private var lastTestClass: String? = null
+    private var lastTestFailed = false
+    private var testsSinceAppReset = 0
+
+    /**
+     * Returns whether application and test packages should be cleared before a test case of [testClass]
+     *
+     * @param isResetRequested whether the test case is annotated as requiring a clean state
+     */
+    @Synchronized
+    fun shouldResetApp(policy: AppResetPolicy, interval: Int, testClass: String, isResetRequested: Boolean): Boolean {
+        if (!isAppStateKnown) {
+            return true
+        }
+        return when (policy) {
+            AppResetPolicy.PER_TEST -> true
+            AppResetPolicy.PER_CLASS -> testClass != lastTestClass
+            AppResetPolicy.EVERY_N_TESTS -> testsSinceAppReset >= interval
+            AppResetPolicy.AFTER_FAILURE -> lastTestFailed
+            AppResetPolicy.ANNOTATED -> isResetRequested
+        }
+    }
+
+    @Synchronized
+    fun testCaseStarted(testClass: String, appWasReset: Boolean) {
+        if (appWasReset) {
+            isAppStateKnown = true
+            testsSinceAppReset = 0
+            lastTestFailed = false
+        }
+        lastTestClass = testClass
+        testsSinceAppReset++
+    }
+
+    @Synchronized
+    fun testCaseFinished(failed: Boolean) {
+        lastTestFailed = lastTestFailed || failed
+    }
+
+    @Synchronized
+    fun permissionsToGrant(applicationPackage: String, permissionsToGrant: List<String>): List<String> {
+        val known = permissions[applicationPackage] ?: return permissionsToGrant
+        return permissionsToGrant.filter { known[it] != true }
+    }
+
+    @Synchronized
+    fun permissionsToRevoke(applicationPackage: String, permissionsToRevoke: List<String>): List<String> {
+        val known = permissions[applicationPackage] ?: return permissionsToRevoke
+        return permissionsToRevoke.filter { known[it] != false }
+    }
+
+    @Synchronized
+    fun permissionsChanged(applicationPackage: String, changedPermissions: List<String>, granted: Boolean) {
+        val known = permissions.getOrPut(applicationPackage) { HashMap() }
+        changedPermissions.forEach { known[it] = granted }
+    }
+
+    @Synchronized
+    fun forgetPackage(applicationPackage: String) {
+        permissions.remove(applicationPackage)
+    }
+
+    @Synchronized
+    fun forgetAll() {
+        permissions.clear()
+        isAppStateKnown = false
+        lastTestClass = null
+        lastTestFailed = false
+        testsSinceAppReset = 0
+    }
+
+    companion object {
+        private val states = ConcurrentHashMap<String, DeviceState>()
+
+        @JvmStatic
+        fun of(device: IDevice): DeviceState = states.computeIfAbsent(device.serialNumber) { DeviceState() }
+    }
+}
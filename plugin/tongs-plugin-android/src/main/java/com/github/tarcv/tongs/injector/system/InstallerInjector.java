@@ -24,7 +24,8 @@ public class InstallerInjector {
         return new PackageInstaller(configuration.getApplicationApk(),
                 configuration.getApplicationPackage(),
                 configuration.getInstrumentationApk(),
-                configuration.getInstrumentationPackage()
+                configuration.getInstrumentationPackage(),
+                configuration.isApkInstallCacheEnabled()
         );
     }
 }
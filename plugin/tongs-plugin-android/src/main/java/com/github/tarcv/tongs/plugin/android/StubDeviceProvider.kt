@@ -12,12 +12,20 @@ package com.github.tarcv.tongs.plugin.android
 
 import com.github.tarcv.tongs.model.AndroidDevice
 import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.DeviceChangeListener
+import com.github.tarcv.tongs.api.devices.DeviceDemand
 import com.github.tarcv.tongs.api.devices.DisplayGeometry
 import com.github.tarcv.tongs.api.devices.DeviceProvider
 import com.github.tarcv.tongs.api.devices.DeviceProviderContext
 import com.github.tarcv.tongs.api.devices.DeviceProviderFactory
+import com.github.tarcv.tongs.api.devices.ElasticDeviceProvider
 import com.github.tarcv.tongs.pooling.StubDevice
 import com.github.tarcv.tongs.runner.TestAndroidTestRunnerFactory.Companion.functionalTestTestIdentifierDuration
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 class StubDeviceProviderFactory: DeviceProviderFactory<StubDeviceProvider> {
     override fun deviceProviders(context: DeviceProviderContext): Array<out StubDeviceProvider> {
@@ -33,6 +41,86 @@ class StubDeviceProvider() : DeviceProvider {
     }
 }
 
+/**
+ * Provider of stub devices that boots more devices while many test cases are queued and shuts them down
+ * as pools drain. Booting a device takes [bootLatencyMillis], like booting an emulator would.
+ *
+ * @param testCasesPerDevice number of queued test cases that justifies one more device
+ */
+class StubElasticDeviceProvider @JvmOverloads constructor(
+        private val bootLatencyMillis: Long = 1000,
+        private val maxDevices: Int = 4,
+        private val testCasesPerDevice: Int = 10
+) : ElasticDeviceProvider {
+    private val lock = Any()
+    private val listeners = CopyOnWriteArrayList<DeviceChangeListener>()
+    private val bootExecutor = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder().setNameFormat("StubBoot-%d").setDaemon(true).build())
+
+    /**
+     * Devices booted during the run, the initial device is never shut down
+     */
+    private val bootedDevices = ArrayList<Device>()
+    private var bootingCount = 0
+    private var nextPort = FIRST_BOOTED_PORT
+
+    override fun provideDevices(): Set<Device> = setOf(createStubDevice("tongs-5554", 25))
+
+    override fun addDeviceChangeListener(listener: DeviceChangeListener) {
+        listeners.addIfAbsent(listener)
+    }
+
+    override fun removeDeviceChangeListener(listener: DeviceChangeListener) {
+        listeners.remove(listener)
+    }
+
+    override fun onDemandChanged(demand: DeviceDemand) {
+        synchronized(lock) {
+            val drainedDevices = demand.pools
+                    .filter { it.isDrained }
+                    .flatMap { it.devices }
+                    .toSet()
+            bootedDevices
+                    .filter { demand.isDrained || it in drainedDevices }
+                    .forEach { shutDown(it) }
+
+            val activeDevices = demand.pools.flatMap { it.devices }.toSet().size
+            val wantedDevices = ((demand.queuedTestCases + testCasesPerDevice - 1) / testCasesPerDevice)
+                    .coerceAtMost(maxDevices)
+            repeat(wantedDevices - activeDevices - bootingCount) {
+                boot()
+            }
+        }
+    }
+
+    private fun boot() {
+        val serial = "tongs-$nextPort"
+        nextPort += 2
+        bootingCount++
+        logger.info("Booting stub device {}", serial)
+        bootExecutor.schedule({
+            val device = createStubDevice(serial, 25)
+            synchronized(lock) {
+                bootingCount--
+                bootedDevices += device
+            }
+            listeners.forEach { it.deviceConnected(device) }
+        }, bootLatencyMillis, TimeUnit.MILLISECONDS)
+    }
+
+    private fun shutDown(device: Device) {
+        bootedDevices -= device
+        logger.info("Shutting down stub device {}", device.serial)
+        listeners.forEach { it.deviceDisconnected(device) }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(StubElasticDeviceProvider::class.java)
+
+        private const val FIRST_BOOTED_PORT = 5556
+    }
+}
+
 private fun createStubDevice(serial: String, api: Int): Device {
     val manufacturer = "tongs"
     val model = "Emu-$api"
@@ -38,6 +38,7 @@ class StubDevice(
 ) : IDevice {
     companion object {
         private val logger = LoggerFactory.getLogger(StubDevice::class.java)
+        private val testInfoFileArgPattern = Regex("""-e\s+tongs_testInfoFile\s+(\S+)""")
     }
 
     private val deviceLogFile = File("${serial}_adb.log")
@@ -45,6 +46,9 @@ class StubDevice(
     @GuardedBy("this")
     private var logcatReceiver: IShellOutputReceiver? = null
 
+    @GuardedBy("this")
+    private var testInfoFile: String? = null
+
     override fun startScreenRecorder(remoteFilePath: String, options: ScreenRecorderOptions, receiver: IShellOutputReceiver) {
         synchronized(this) {
             val optionsStr = "{dimen=${options.width}x${options.height}" +
@@ -83,12 +87,22 @@ class StubDevice(
 
         if (command.contains("am instrument")) {
             if (command.contains("-e log true")) {
-                executeCollectingRun()
+                val testInfoFileArg = testInfoFileArgPattern.find(command)?.groupValues?.get(1)
+                if (testInfoFileArg != null) {
+                    synchronized(this) {
+                        testInfoFile = testInfoFileArg
+                    }
+                } else {
+                    executeCollectingRun()
+                }
             } else {
                 sleep(testCommandDelay)
             }
         } else if (command.contains("logcat") && !command.contains("-c")) {
             executeLogcatCollectionLoop(command, receiver, maxTimeToOutputResponseMillis)
+        } else if (command.startsWith("log -t ")) {
+            val (tag, message) = command.removePrefix("log -t ").split(" ", limit = 2)
+            writeToLogcat(tag, message)
         } else {
             val outputBytes = "<stub> <stub> <stub> <stub> <stub>".toByteArray()
             receiver.addOutput(outputBytes, 0, outputBytes.size)
@@ -115,11 +129,25 @@ class StubDevice(
         }
     }
 
+    private fun writeToLogcat(tag: String, message: String) {
+        synchronized(this) {
+            logcatReceiver?.run {
+                val bytes = ("[ ${currentLogcatTimePrefix()}000 1234: 5678 I/$tag ]\r\n$message\r\n\r\n")
+                        .toByteArray()
+                addOutput(bytes, 0, bytes.size)
+            }
+        }
+    }
+
+    private fun currentLogcatTimePrefix(): String {
+        return DateTimeFormatter.ofPattern("MM-dd hh:mm:ss")
+                .format(OffsetDateTime.now(ZoneOffset.UTC)) + "."
+    }
+
     private fun executeCollectingRun() {
         synchronized(this) {
             logcatReceiver?.run {
-                val timePrefix = DateTimeFormatter.ofPattern("MM-dd hh:mm:ss")
-                        .format(OffsetDateTime.now(ZoneOffset.UTC)) + "."
+                val timePrefix = currentLogcatTimePrefix()
                 TestAndroidTestRunnerFactory.logcatLines
                         .asSequence()
                         .chunked(3)
@@ -160,7 +188,18 @@ class StubDevice(
             }
         }
 
+        val isTestInfoFile = synchronized(this) {
+            (remote == testInfoFile).also { if (it) testInfoFile = null }
+        }
         val writer = FileWriter(File(local))
+        if (isTestInfoFile) {
+            TestAndroidTestRunnerFactory.logcatLines
+                    .chunked(3)
+                    .forEach { (_, infoLine, _) ->
+                        writer.write(infoLine.substringAfter(':').removeSuffix(","))
+                        writer.write("\n")
+                    }
+        }
         writer.flush()
         writer.close()
     }
@@ -13,26 +13,30 @@
 package com.github.tarcv.tongs.runner
 
 import com.android.ddmlib.IDevice
-import com.android.ddmlib.NullOutputReceiver
 import com.github.tarcv.tongs.api.run.TestCaseRunRule
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleAfterArguments
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleContext
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleFactory
 import com.github.tarcv.tongs.model.AndroidDevice
+import com.github.tarcv.tongs.system.adb.ShellCommandBatch
 
 class AndroidBasicUnlockTestCaseRunRuleFactory : TestCaseRunRuleFactory<AndroidBasicUnlockTestCaseRunRule> {
     override fun testCaseRunRules(context: TestCaseRunRuleContext): Array<out AndroidBasicUnlockTestCaseRunRule> {
         val device = context.device
         return if (device is AndroidDevice) {
-            arrayOf(AndroidBasicUnlockTestCaseRunRule(device))
+            arrayOf(AndroidBasicUnlockTestCaseRunRule(device, context.configuration.isDeviceStateCacheEnabled))
         } else {
             emptyArray()
         }
     }
 }
 
-class AndroidBasicUnlockTestCaseRunRule(
-        device: AndroidDevice
+/**
+ * @param skipWhenUnlocked whether the device is checked first and unlocked only when its screen is locked or off
+ */
+class AndroidBasicUnlockTestCaseRunRule @JvmOverloads constructor(
+        device: AndroidDevice,
+        private val skipWhenUnlocked: Boolean = false
 ) : TestCaseRunRule {
     private val device: IDevice = device.deviceInterface
 
@@ -45,10 +49,25 @@ class AndroidBasicUnlockTestCaseRunRule(
     }
 
     private fun unlockDeviceUsingMenuButton() {
-        val noOpReceiver = NullOutputReceiver()
-        repeat (2) { // some devices require pressing MENU key twice
-            device.executeShellCommand("input keyevent 82", noOpReceiver)
+        val unlockCommand = "input keyevent 82; input keyevent 82" // some devices require pressing MENU key twice
+        val command = if (skipWhenUnlocked) {
+            // 'input' starts a Java process, so it is much slower than checking the state with 'dumpsys'.
+            // Any failure of the check (e.g. an unknown output format) leads to unlocking
+            "if $SCREEN_UNLOCKED_CHECK; then :; else $unlockCommand; fi"
+        } else {
+            unlockCommand
         }
+        ShellCommandBatch()
+                .add(command)
+                .execute(device)
+    }
+
+    companion object {
+        private const val SCREEN_UNLOCKED_CHECK = "dumpsys power | grep -q 'mWakefulness=Awake'" +
+                " && dumpsys window policy | grep -q -e 'mShowingLockscreen=false' -e 'isStatusBarKeyguard=false'" +
+                " -e 'showing=false'" +
+                " && ! dumpsys window policy | grep -q -e 'mShowingLockscreen=true' -e 'isStatusBarKeyguard=true'" +
+                " -e 'showing=true'"
     }
 
 }
\ No newline at end of file
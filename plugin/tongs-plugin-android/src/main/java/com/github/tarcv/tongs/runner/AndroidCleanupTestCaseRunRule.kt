@@ -13,23 +13,38 @@
 package com.github.tarcv.tongs.runner
 
 import com.android.ddmlib.*
+import com.github.tarcv.tongs.api.TongsConfiguration.AppResetPolicy
+import com.github.tarcv.tongs.api.run.ResultStatus
 import com.github.tarcv.tongs.api.run.TestCaseRunRule
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleAfterArguments
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleContext
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleFactory
+import com.github.tarcv.tongs.device.DeviceState
 import com.github.tarcv.tongs.model.AndroidDevice
+import com.github.tarcv.tongs.system.adb.ShellCommandBatch
 import org.slf4j.LoggerFactory
 import java.io.IOException
 import java.lang.String.format
 
 class AndroidCleanupTestCaseRunRuleFactory : TestCaseRunRuleFactory<AndroidCleanupTestCaseRunRule> {
     override fun testCaseRunRules(context: TestCaseRunRuleContext): Array<out AndroidCleanupTestCaseRunRule> {
+        val packagePrefix = context.configuration.pluginConfiguration["package"] as? String
+            ?: "com.github.tarcv.tongs"
+
         val device = context.device
         return if (device is AndroidDevice) {
+            val testCase = context.testCaseEvent.testCase
+            val isResetRequested = testCase.annotations
+                    .any { it.fullyQualifiedName == "$packagePrefix.ResetAppState" }
             arrayOf(AndroidCleanupTestCaseRunRule(
                     device,
                     context.configuration.applicationPackage,
-                    context.configuration.instrumentationPackage
+                    context.configuration.instrumentationPackage,
+                    context.configuration.isDeviceStateCacheEnabled,
+                    context.configuration.appResetPolicy,
+                    context.configuration.appResetInterval,
+                    testCase.testClass,
+                    isResetRequested
             ))
         } else {
             emptyArray()
@@ -37,50 +52,106 @@ class AndroidCleanupTestCaseRunRuleFactory : TestCaseRunRuleFactory<AndroidClean
     }
 }
 
-class AndroidCleanupTestCaseRunRule(
+/**
+ * @param skipWhenAtHomeScreen whether the device is checked first and reset to Home Screen only when it is not there
+ *                             or when the soft keyboard is open
+ * @param resetPolicy when packages are cleared, the device is reset to Home Screen before every test case anyway
+ * @param isResetRequested whether the test case is annotated as requiring cleared packages
+ */
+class AndroidCleanupTestCaseRunRule @JvmOverloads constructor(
         device: AndroidDevice,
         private val applicationPackage: String,
-        private val testPackage: String
+        private val testPackage: String,
+        private val skipWhenAtHomeScreen: Boolean = false,
+        private val resetPolicy: AppResetPolicy = AppResetPolicy.PER_TEST,
+        private val resetInterval: Int = 1,
+        private val testClass: String = "",
+        private val isResetRequested: Boolean = false
 ) : TestCaseRunRule {
     private val logger = LoggerFactory.getLogger(AndroidInstrumentedTestRun::class.java)
     private val device: IDevice = device.deviceInterface
+    private val deviceState = DeviceState.of(this.device)
 
     override fun before() {
-        clearPackageData(device, applicationPackage)
-        clearPackageData(device, testPackage)
-        resetToHomeScreen()
+        val start = System.currentTimeMillis()
+        val batch = ShellCommandBatch()
+        val resetApp = deviceState.shouldResetApp(resetPolicy, resetInterval, testClass, isResetRequested)
+        if (resetApp) {
+            clearPackageData(batch, applicationPackage)
+            clearPackageData(batch, testPackage)
+            deviceState.forgetPackage(applicationPackage)
+            deviceState.forgetPackage(testPackage)
+        } else {
+            logger.debug("Keeping application data of {} ({} reset policy)", packages(), resetPolicy)
+        }
+        resetToHomeScreen(batch)
+
+        val results = try {
+            batch.execute(device)
+        } catch (e: TimeoutException) {
+            throw UnsupportedOperationException(format("Unable to clear package data (%s)", packages()), e)
+        } catch (e: AdbCommandRejectedException) {
+            throw UnsupportedOperationException(format("Unable to clear package data (%s)", packages()), e)
+        } catch (e: ShellCommandUnresponsiveException) {
+            throw UnsupportedOperationException(format("Unable to clear package data (%s)", packages()), e)
+        } catch (e: IOException) {
+            throw UnsupportedOperationException(format("Unable to clear package data (%s)", packages()), e)
+        }
+        results
+                .filterNot { it.isSuccessful }
+                .forEach { logger.warn("Command '{}' failed (exit code {}): {}", it.command, it.exitCode, it.output) }
+        // Packages are cleared by the first commands of the batch
+        val appWasReset = resetApp && results.take(2).all { it.isSuccessful }
+        deviceState.testCaseStarted(testClass, appWasReset)
+
+        if (resetApp) {
+            logger.debug("Clearing application data: {} (took {}ms)", packages(), System.currentTimeMillis() - start)
+        }
     }
 
     override fun after(arguments: TestCaseRunRuleAfterArguments) {
+        deviceState.testCaseFinished(ResultStatus.isFailure(arguments.result.status))
     }
 
     /**
-     * Reset device to Home Screen and close soft keyboard if it is still open
+     * Test cases that need cleared packages right before them are never batched, as clearing packages for all test
+     * cases of a batch before the batch is started would isolate none of them
      */
-    private fun resetToHomeScreen() {
-        val noOpReceiver = NullOutputReceiver()
-        device.executeShellCommand("input keyevent 3", noOpReceiver) // HOME
-        device.executeShellCommand("input keyevent 4", noOpReceiver) // BACK
-    }
+    override val batchKey: Any?
+        get() = when {
+            resetPolicy == AppResetPolicy.PER_TEST -> null
+            resetPolicy == AppResetPolicy.ANNOTATED && isResetRequested -> null
+            resetPolicy == AppResetPolicy.PER_CLASS -> testClass
+            else -> Unit
+        }
 
-    private fun clearPackageData(device: IDevice, applicationPackage: String) {
-        val start = System.currentTimeMillis()
+    private fun packages() = "$applicationPackage, $testPackage"
 
-        try {
-            val command = format("pm clear %s", applicationPackage)
-            logger.info("Cmd: $command")
-            device.executeShellCommand(command, NullOutputReceiver())
-        } catch (e: TimeoutException) {
-            throw UnsupportedOperationException(format("Unable to clear package data (%s)", applicationPackage), e)
-        } catch (e: AdbCommandRejectedException) {
-            throw UnsupportedOperationException(format("Unable to clear package data (%s)", applicationPackage), e)
-        } catch (e: ShellCommandUnresponsiveException) {
-            throw UnsupportedOperationException(format("Unable to clear package data (%s)", applicationPackage), e)
-        } catch (e: IOException) {
-            throw UnsupportedOperationException(format("Unable to clear package data (%s)", applicationPackage), e)
+    /**
+     * Reset device to Home Screen and close soft keyboard if it is still open
+     */
+    private fun resetToHomeScreen(batch: ShellCommandBatch) {
+        val resetCommand = "input keyevent 3; input keyevent 4" // HOME, BACK
+        if (skipWhenAtHomeScreen) {
+            // 'input' starts a Java process, so it is much slower than checking the state with 'dumpsys'.
+            // Any failure of the check (e.g. 'cmd' is not available before Android 7) leads to resetting
+            batch.add("$HOME_SCREEN_PACKAGE; if $AT_HOME_SCREEN_CHECK; then :; else $resetCommand; fi")
+        } else {
+            batch.add(resetCommand)
         }
+    }
 
-        logger.debug("Clearing application data: {} (took {}ms)", applicationPackage, System.currentTimeMillis() - start)
+    private fun clearPackageData(batch: ShellCommandBatch, applicationPackage: String) {
+        val command = format("pm clear %s", applicationPackage)
+        logger.info("Cmd: $command")
+        batch.add(command)
     }
 
-}
\ No newline at end of file
+    companion object {
+        private const val HOME_SCREEN_PACKAGE = "tongs_home=\$(cmd package resolve-activity --brief" +
+                " -a android.intent.action.MAIN -c android.intent.category.HOME | tail -n 1)"
+        private const val AT_HOME_SCREEN_CHECK = "[ -n \"\${tongs_home%%/*}\" ]" +
+                " && dumpsys window windows | grep mCurrentFocus | grep -q \"\${tongs_home%%/*}/\"" +
+                " && dumpsys input_method | grep -q 'mInputShown=false'"
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.runner.listeners.IResultProducer
+import com.github.tarcv.tongs.runner.listeners.RunListenerAdapter
+import java.time.Instant
+
+/**
+ * One instrumentation run that executes several test cases
+ */
+class AndroidInstrumentedBatchTestRun(
+        private val testRun: AndroidInstrumentedTestRun,
+        private val entries: List<Entry>
+) {
+    /**
+     * @return results in the same order as entries, null for test cases that were not started
+     */
+    fun execute(): List<TestCaseRunResult?> {
+        testRun.run()
+        return entries.map { entry ->
+            val adapter = entry.listenerAdapter
+            if (adapter.wasTestExecuted) {
+                val result = entry.resultProducer.getResult()
+                result.copy(
+                        netStartTimestampUtc = adapter.testStartMillis?.let { Instant.ofEpochMilli(it) }
+                                ?: result.netStartTimestampUtc,
+                        netEndTimestampUtc = adapter.testEndMillis?.let { Instant.ofEpochMilli(it) }
+                                ?: result.netEndTimestampUtc
+                )
+            } else {
+                null
+            }
+        }
+    }
+
+    class Entry(
+            val listenerAdapter: RunListenerAdapter,
+            val resultProducer: IResultProducer
+    )
+}
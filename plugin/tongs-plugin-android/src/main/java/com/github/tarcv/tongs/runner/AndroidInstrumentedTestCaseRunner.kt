@@ -17,6 +17,7 @@ import com.github.tarcv.tongs.api.devices.Device
 import com.github.tarcv.tongs.api.devices.Pool
 import com.github.tarcv.tongs.api.result.RunTesult
 import com.github.tarcv.tongs.api.result.TestCaseFileManager
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
 import com.github.tarcv.tongs.api.run.*
 import com.github.tarcv.tongs.api.testcases.TestCase
 import com.github.tarcv.tongs.injector.runner.TestRunFactoryInjector
@@ -29,7 +30,15 @@ class AndroidInstrumentedTestCaseRunnerFactory: TestCaseRunnerFactory<AndroidIns
     }
 }
 
-class AndroidInstrumentedTestCaseRunner(val context: TestCaseRunnerContext): TestCaseRunner {
+class AndroidInstrumentedTestCaseRunner(val context: TestCaseRunnerContext): BatchTestCaseRunner {
+    override val maxBatchSize: Int
+        get() = if (context.configuration.isCoverageEnabled) {
+            // Coverage is collected into a separate file for each instrumentation run
+            1
+        } else {
+            context.configuration.testBatchSize
+        }
+
     override fun supports(device: Device, testCase: TestCase): Boolean {
         return device is AndroidDevice && testCase.typeTag == ApkTestCase::class.java
     }
@@ -43,6 +52,15 @@ class AndroidInstrumentedTestCaseRunner(val context: TestCaseRunnerContext): Tes
         return testRun.execute()
     }
 
+    override fun runBatch(arguments: List<TestCaseRunnerArguments>): List<TestCaseRunResult?> {
+        val androidTestRunFactory = TestRunFactoryInjector.testRunFactory(context.configuration)
+        val runContexts = arguments.map { AndroidRunContext(context, it) }
+        val batchRun = androidTestRunFactory.createBatchTestRun(runContexts,
+                context.device as AndroidDevice,
+                context.pool)
+        return batchRun.execute()
+    }
+
 }
 
 class AndroidRunContext(
@@ -63,4 +81,10 @@ class AndroidRunContext(
 
     val device: AndroidDevice
         get() = context.device as AndroidDevice
+
+    val postProcessing: PostProcessing
+        get() = arguments.postProcessing
+
+    val cancellationSignal: CancellationSignal
+        get() = arguments.cancellationSignal
 }
\ No newline at end of file
@@ -38,12 +38,14 @@ import static java.lang.String.format;
 public class AndroidInstrumentedTestRun {
 	private static final Logger logger = LoggerFactory.getLogger(AndroidInstrumentedTestRun.class);
 	private static final String TESTCASE_FILTER = "com.github.tarcv.tongs.ondevice.ClassMethodFilter";
+	private static final String BATCH_FILTER = "com.github.tarcv.tongs.ondevice.ClassMethodListFilter";
 	public static final String COLLECTING_RUN_FILTER = "com.github.tarcv.tongs.ondevice.AnnontationReadingFilter";
 	private static final String FILTER_ARGUMENT = "filter";
 	private final String poolName;
 	private final TestRunParameters testRunParameters;
 	private final List<? extends ITestRunListener> testRunListeners;
 	private final IRemoteAndroidTestRunnerFactory remoteAndroidTestRunnerFactory;
+	@Nullable
 	private final IResultProducer resultProducer;
 
 	public AndroidInstrumentedTestRun(String poolName,
@@ -58,7 +60,29 @@ public class AndroidInstrumentedTestRun {
 		this.remoteAndroidTestRunnerFactory = remoteAndroidTestRunnerFactory;
 	}
 
+	/**
+	 * Creates a run which results are collected by the listeners themselves, e.g. a run of a batch of tests
+	 */
+	public AndroidInstrumentedTestRun(String poolName,
+									  TestRunParameters testRunParameters,
+									  List<? extends ITestRunListener> testRunListeners,
+									  IRemoteAndroidTestRunnerFactory remoteAndroidTestRunnerFactory) {
+		this.poolName = poolName;
+		this.testRunParameters = testRunParameters;
+		this.testRunListeners = testRunListeners;
+		this.resultProducer = null;
+		this.remoteAndroidTestRunnerFactory = remoteAndroidTestRunnerFactory;
+	}
+
 	public TestCaseRunResult execute() {
+		if (resultProducer == null) {
+			throw new IllegalStateException("This run has no result producer, use run() instead");
+		}
+		run();
+		return resultProducer.getResult();
+	}
+
+	public void run() {
 		final String testPackage = testRunParameters.getTestPackage();
 		final IDevice device = testRunParameters.getDeviceInterface();
 
@@ -70,10 +94,28 @@ public class AndroidInstrumentedTestRun {
 
 		// Custom filter is required to support Parameterized tests with default names
 		final TestCaseEvent test = testRunParameters.getTest();
+		final List<TestCaseEvent> batchTests = testRunParameters.getBatchTests();
 		final String testClassName;
 		final String testMethodName;
 		final String specialFilter;
-		if (test != null) {
+		if (!batchTests.isEmpty()) {
+			testClassName = format("Batch of %d tests", batchTests.size());
+			testMethodName = "";
+			specialFilter = BATCH_FILTER;
+
+			if (testRunParameters.isWithOnDeviceLibrary()) {
+				String encodedTests = batchTests.stream()
+						.map(batchTest -> remoteAndroidTestRunnerFactory.encodeTestName(batchTest.getTestClass())
+								+ ":" + remoteAndroidTestRunnerFactory.encodeTestName(batchTest.getTestMethod()))
+						.collect(Collectors.joining(","));
+				remoteAndroidTestRunnerFactory.properlyAddInstrumentationArg(runner, "tongs_filterTests", encodedTests);
+			} else {
+				String tests = batchTests.stream()
+						.map(batchTest -> batchTest.getTestClass() + "#" + batchTest.getTestMethod())
+						.collect(Collectors.joining(","));
+				remoteAndroidTestRunnerFactory.properlyAddInstrumentationArg(runner, "class", tests);
+			}
+		} else if (test != null) {
 			final TestCase testCase = test.getTestCase();
 			testClassName = test.getTestClass();
 			testMethodName = test.getTestMethod();
@@ -100,6 +142,17 @@ public class AndroidInstrumentedTestRun {
 			specialFilter = COLLECTING_RUN_FILTER;
 
 			runner.addBooleanArg("log", true);
+
+			List<String> collectedClasses = testRunParameters.getCollectedClasses();
+			if (!collectedClasses.isEmpty()) {
+				remoteAndroidTestRunnerFactory.properlyAddInstrumentationArg(runner, "class",
+						String.join(",", collectedClasses));
+			}
+
+			String testInfoFile = testRunParameters.getTestInfoFile();
+			if (testInfoFile != null && testRunParameters.isWithOnDeviceLibrary()) {
+				runner.addInstrumentationArg("tongs_testInfoFile", testInfoFile);
+			}
 		}
 
 		addFilterAndCustomArgs(
@@ -122,21 +175,24 @@ public class AndroidInstrumentedTestRun {
 			}
 
 			logger.info("Cmd: " + runner.getAmInstrumentCommand());
+			testRunParameters.getCancellationSignal().setOnCancelListener(() -> {
+				logger.info("Cancelling the instrumentation run on {}", device.getSerialNumber());
+				runner.cancel();
+			});
 			runner.run(testRunListeners.toArray(new ITestRunListener[0]));
 		} catch (ShellCommandUnresponsiveException | TimeoutException e) {
 			logger.warn("Test: " + testClassName + " got stuck. You can increase the timeout in settings if it's too strict");
 		} catch (AdbCommandRejectedException | IOException e) {
 			throw new RuntimeException(format("Error while running test %s %s", testClassName, testMethodName), e);
 		} finally {
+			testRunParameters.getCancellationSignal().setOnCancelListener(null);
 			for (ITestRunListener testRunListener : testRunListeners) { // TODO: refactor this
 				if (testRunListener instanceof RunListenerAdapter) {
 					((RunListenerAdapter) testRunListener).onAfterTestRunEnded();
 				}
 			}
 		}
-
-        return resultProducer.getResult();
-    }
+	}
 
 	private void addFilterAndCustomArgs(RemoteAndroidTestRunner runner, @Nullable String collectingRunFilter) {
 		testRunParameters.getTestRunnerArguments().entrySet().stream()
@@ -56,7 +56,7 @@ class AndroidPermissionGrantingTestCaseRunRule(
         private val deviceInterface: IDevice,
         private val permissionsToGrant: List<String>
 ) : TestCaseRunRule {
-    private val permissionGrantingManager = PermissionGrantingManager()
+    private val permissionGrantingManager = PermissionGrantingManager(configuration.isDeviceStateCacheEnabled)
 
     override fun before() {
         permissionGrantingManager.grantPermissions(configuration.applicationPackage,
@@ -69,4 +69,10 @@ class AndroidPermissionGrantingTestCaseRunRule(
         permissionGrantingManager.revokePermissions(configuration.applicationPackage,
                 deviceInterface, permissionsToGrant)
     }
+
+    /**
+     * Only test cases that need the same permissions can share one batch
+     */
+    override val batchKey: Any?
+        get() = permissionsToGrant.toSet()
 }
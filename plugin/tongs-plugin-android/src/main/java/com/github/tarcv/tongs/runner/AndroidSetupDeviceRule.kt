@@ -17,18 +17,32 @@ import com.android.ddmlib.DdmPreferences
 import com.github.tarcv.tongs.api.run.DeviceRunRule
 import com.github.tarcv.tongs.api.run.DeviceRunRuleContext
 import com.github.tarcv.tongs.api.run.DeviceRunRuleFactory
+import com.github.tarcv.tongs.device.DevicePerformanceProfile
+import com.github.tarcv.tongs.device.DeviceState
 import com.github.tarcv.tongs.device.clearLogcat
 import com.github.tarcv.tongs.injector.system.InstallerInjector.installer
 import com.github.tarcv.tongs.model.AndroidDevice
 import com.github.tarcv.tongs.system.adb.PackageInstaller
 import com.github.tarcv.tongs.system.io.RemoteFileManager
+import org.slf4j.LoggerFactory
 
 class AndroidSetupDeviceRuleFactory : DeviceRunRuleFactory<AndroidSetupDeviceRule> {
     override fun deviceRules(context: DeviceRunRuleContext): Array<out AndroidSetupDeviceRule> {
         val device = context.device
         if (device is AndroidDevice) {
             return arrayOf(
-                    AndroidSetupDeviceRule(device, installer(context.configuration))
+                    AndroidSetupDeviceRule(
+                            device,
+                            installer(context.configuration),
+                            if (context.configuration.isDevicePerformanceProfileEnabled) {
+                                listOf(
+                                        context.configuration.applicationPackage,
+                                        context.configuration.instrumentationPackage
+                                )
+                            } else {
+                                null
+                            }
+                    )
             )
         } else {
             return emptyArray()
@@ -36,20 +50,51 @@ class AndroidSetupDeviceRuleFactory : DeviceRunRuleFactory<AndroidSetupDeviceRul
     }
 }
 
-class AndroidSetupDeviceRule(private val device: AndroidDevice, private val installer: PackageInstaller) : DeviceRunRule {
+/**
+ * @param profiledPackages packages to compile ahead of time when [DevicePerformanceProfile] should be applied,
+ *                         null when the device shouldn't be tuned
+ */
+class AndroidSetupDeviceRule @JvmOverloads constructor(
+        private val device: AndroidDevice,
+        private val installer: PackageInstaller,
+        private val profiledPackages: List<String>? = null
+) : DeviceRunRule {
+    private val performanceProfile = profiledPackages?.let { DevicePerformanceProfile(device.deviceInterface) }
+
     override fun before() {
         DdmPreferences.setTimeOut(30000)
+        // The device might have been used by a different run or reconnected since its state was recorded
+        DeviceState.of(device.deviceInterface).forgetAll()
+
+        // Disabled package verification speeds up installation too
+        tryTuning("apply performance profile") { it.apply() }
         installer.resetInstallation(device)
+        tryTuning("compile packages") { it.compile(*profiledPackages.orEmpty().toTypedArray()) }
 
         // For when previous run crashed/disconnected and left files behind
         val deviceInterface = device.deviceInterface
-        RemoteFileManager.removeRemoteDirectory(deviceInterface)
-        RemoteFileManager.createRemoteDirectory(deviceInterface)
+        RemoteFileManager.recreateRemoteDirectory(deviceInterface)
 
         clearLogcat(deviceInterface)
     }
 
     override fun after() {
-        // no-op
+        tryTuning("restore settings changed by performance profile") { it.restore() }
+    }
+
+    /**
+     * Tuning only makes test cases faster, so its failures shouldn't stop a device from executing them
+     */
+    private fun tryTuning(description: String, action: (DevicePerformanceProfile) -> Unit) {
+        val profile = performanceProfile ?: return
+        try {
+            action(profile)
+        } catch (e: Exception) {
+            logger.warn("Failed to {} on {}", description, device.serial, e)
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(AndroidSetupDeviceRule::class.java)
     }
 }
\ No newline at end of file
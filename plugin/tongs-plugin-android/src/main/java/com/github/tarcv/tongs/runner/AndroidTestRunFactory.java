@@ -21,10 +21,12 @@ import com.github.tarcv.tongs.model.AndroidDevice;
 import com.github.tarcv.tongs.runner.listeners.*;
 import com.github.tarcv.tongs.suite.TestCollectingListener;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class AndroidTestRunFactory {
 
@@ -40,7 +42,9 @@ public class AndroidTestRunFactory {
         TestRunParameters testRunParameters = createTestParameters(testCase,
                 device,
                 configuration,
-                device.hasOnDeviceLibrary());
+                device.hasOnDeviceLibrary())
+                .withCancellationSignal(testRunContext.getCancellationSignal())
+                .build();
 
         IResultProducer resultProducer = createResultProducer(testRunContext);
         List<RunListener> testRunListeners = new ArrayList<>(resultProducer.requestListeners());
@@ -58,6 +62,48 @@ public class AndroidTestRunFactory {
         );
     }
 
+    public AndroidInstrumentedBatchTestRun createBatchTestRun(List<AndroidRunContext> testRunContexts,
+                                                              AndroidDevice device,
+                                                              Pool pool) {
+        List<TestCaseEvent> testCases = testRunContexts.stream()
+                .map(AndroidRunContext::getTestCaseEvent)
+                .collect(Collectors.toList());
+        TestRunParameters testRunParameters = createTestParameters(null,
+                device,
+                configuration,
+                device.hasOnDeviceLibrary())
+                .withBatchTests(testCases)
+                // All test cases of a batch share the same cancellation signal
+                .withCancellationSignal(testRunContexts.get(0).getCancellationSignal())
+                .build();
+
+        List<AndroidInstrumentedBatchTestRun.Entry> entries = new ArrayList<>();
+        List<RunListenerAdapter> adapters = new ArrayList<>();
+        for (AndroidRunContext testRunContext : testRunContexts) {
+            TestCaseEvent testCase = testRunContext.getTestCaseEvent();
+            IResultProducer resultProducer = createBatchedResultProducer(testRunContext);
+            RunListenerAdapter adapter = new RunListenerAdapter(testCase.toString(),
+                    new TestIdentifier(testCase.getTestClass(), testCase.getTestMethod()),
+                    resultProducer.requestListeners(),
+                    true);
+            adapters.add(adapter);
+            entries.add(new AndroidInstrumentedBatchTestRun.Entry(adapter, resultProducer));
+        }
+
+        AndroidInstrumentedTestRun testRun = new AndroidInstrumentedTestRun(
+                pool.getName(),
+                testRunParameters,
+                adapters,
+                RemoteAndroidTestRunnerFactoryInjector.remoteAndroidTestRunnerFactory(configuration)
+        );
+        return new AndroidInstrumentedBatchTestRun(testRun, entries);
+    }
+
+    @NotNull
+    protected IResultProducer createBatchedResultProducer(AndroidRunContext testRunContext) {
+        return new BatchedResultProducer(testRunContext);
+    }
+
     @NotNull
     protected IResultProducer createResultProducer(AndroidRunContext testRunContext) {
         return new ResultProducer(testRunContext);
@@ -67,10 +113,27 @@ public class AndroidTestRunFactory {
                                                           Pool pool,
                                                           TestCollectingListener testCollectingListener,
                                                           boolean withOnDeviceLib) {
+        return createCollectingRun(device, pool, testCollectingListener, withOnDeviceLib, Collections.emptyList(),
+                null);
+    }
+
+    /**
+     * @param collectedClasses test classes to collect test cases from, all test cases are collected when it is empty
+     * @param testInfoFile path on the device to write information about tests to, null to write it to logcat
+     */
+    public AndroidInstrumentedTestRun createCollectingRun(AndroidDevice device,
+                                                          Pool pool,
+                                                          TestCollectingListener testCollectingListener,
+                                                          boolean withOnDeviceLib,
+                                                          List<String> collectedClasses,
+                                                          @Nullable String testInfoFile) {
         TestRunParameters testRunParameters = createTestParameters(null,
                 device,
                 configuration,
-                withOnDeviceLib);
+                withOnDeviceLib)
+                .withCollectedClasses(collectedClasses)
+                .withTestInfoFile(testInfoFile)
+                .build();
 
         List<ITestRunListener> testRunListeners = new ArrayList<>();
         testRunListeners.add(testCollectingListener);
@@ -84,7 +147,7 @@ public class AndroidTestRunFactory {
         );
     }
 
-    private static TestRunParameters createTestParameters(TestCaseEvent testCase, AndroidDevice device, TongsConfiguration configuration, boolean withOnDeviceLib) {
+    private static TestRunParameters.Builder createTestParameters(TestCaseEvent testCase, AndroidDevice device, TongsConfiguration configuration, boolean withOnDeviceLib) {
         return TestRunParameters.Builder.testRunParameters()
                 .withDeviceInterface(device.getDeviceInterface())
                 .withTest(testCase)
@@ -95,8 +158,7 @@ public class AndroidTestRunFactory {
                 .withTestOutputTimeout((int) configuration.getTestOutputTimeout())
                 .withOnDeviceLibrary(withOnDeviceLib)
                 .withCoverageEnabled(configuration.isCoverageEnabled())
-                .withExcludedAnnotation(configuration.getExcludedAnnotation())
-                .build();
+                .withExcludedAnnotation(configuration.getExcludedAnnotation());
     }
 
 }
@@ -18,6 +18,7 @@ import com.google.gson.JsonArray
 import com.google.gson.JsonElement
 import com.google.gson.JsonObject
 import org.slf4j.LoggerFactory
+import java.util.ArrayDeque
 
 internal class JsonInfoDecorder {
     internal fun decodeStructure(rawMessages: List<JsonObject>): List<TestInfo> {
@@ -26,9 +27,11 @@ internal class JsonInfoDecorder {
                 val semiUniqueId: Int?,
                 val readableName: String?,
                 var json: JsonObject? = null,
-                val parent: RawItem? = null
+                val parent: RawItem? = null,
+                val order: Int = -1
         ) {
             val children: ArrayList<RawItem> = ArrayList()
+            var isBound = false
         }
 
         fun buildPathFor(item: RawItem): List<String> {
@@ -41,7 +44,35 @@ internal class JsonInfoDecorder {
             return names.reversed()
         }
 
-        val unboundItems = ArrayList<RawItem>()
+        /**
+         * Unbound items by one of their IDs, the last added item is on top of a stack.
+         * Bound items are removed from a stack only when they reach its top
+         */
+        class UnboundIndex<K> {
+            private val stacks = HashMap<K, ArrayDeque<RawItem>>()
+
+            fun add(key: K, item: RawItem) {
+                stacks.getOrPut(key) { ArrayDeque() }.addLast(item)
+            }
+
+            fun lastUnbound(key: K?): RawItem? {
+                val stack = stacks[key ?: return null] ?: return null
+                while (stack.isNotEmpty()) {
+                    val item = stack.peekLast()
+                    if (!item.isBound) {
+                        return item
+                    }
+                    stack.removeLast()
+                }
+                stacks.remove(key)
+                return null
+            }
+        }
+
+        val byUniqueId = UnboundIndex<Int>()
+        val bySemiUniqueId = UnboundIndex<Int>()
+        val byReadableName = UnboundIndex<String>()
+        var addedItems = 0
         return rawMessages
                 .mapNotNull {
                     val partialItem = RawItem(
@@ -50,25 +81,30 @@ internal class JsonInfoDecorder {
                             it.get("sName")?.asStringOrNull
                     )
 
-                    val unboundIndex = unboundItems.indexOfLast {unbound ->
-                        (partialItem.uniqueId?.equals(unbound.uniqueId) == true) ||
-                        (partialItem.semiUniqueId?.equals(unbound.semiUniqueId) == true) ||
-                        (partialItem.readableName?.equals(unbound.readableName) == true)
-                    }
-                    val actualItem = if (unboundIndex >= 0) {
-                        val item = unboundItems.removeAt(unboundIndex)
-                        item
+                    // The last added item matching any of the IDs
+                    val unboundItem = listOfNotNull(
+                            byUniqueId.lastUnbound(partialItem.uniqueId),
+                            bySemiUniqueId.lastUnbound(partialItem.semiUniqueId),
+                            byReadableName.lastUnbound(partialItem.readableName)
+                    ).maxBy { item -> item.order }
+                    val actualItem = if (unboundItem != null) {
+                        unboundItem.isBound = true
+                        unboundItem
                     } else {
                         partialItem
                     }
 
                     val children = it.get("sChildren").asJsonArray
                             .map { child ->
-                                val (uniqueId, semiUniqueId, readableName) =
-                                        child.asString.split(Regex("(?<=\\d)-"), limit = 3) // an ID might be negative
-                                RawItem(uniqueId.toInt(), semiUniqueId.toInt(), readableName, null, actualItem)
+                                val (uniqueId, semiUniqueId, readableName) = splitChildId(child.asString)
+                                RawItem(uniqueId.toInt(), semiUniqueId.toInt(), readableName, null, actualItem,
+                                        addedItems++)
                             }
-                    unboundItems.addAll(children)
+                    children.forEach { child ->
+                        byUniqueId.add(child.uniqueId!!, child)
+                        bySemiUniqueId.add(child.semiUniqueId!!, child)
+                        byReadableName.add(child.readableName!!, child)
+                    }
 
                     actualItem.children.addAll(children)
 
@@ -85,6 +121,26 @@ internal class JsonInfoDecorder {
                 }
     }
 
+    /**
+     * Splits '<uniqueId>-<semiUniqueId>-<readableName>' on dashes that follow a digit (an ID might be negative)
+     */
+    internal fun splitChildId(childId: String): List<String> {
+        fun indexOfSeparator(startIndex: Int): Int {
+            var index = childId.indexOf('-', startIndex)
+            while (index == 0 || index > 0 && childId[index - 1] !in '0'..'9') {
+                index = childId.indexOf('-', index + 1)
+            }
+            return index
+        }
+
+        val first = indexOfSeparator(0)
+        val second = if (first >= 0) indexOfSeparator(first + 1) else -1
+        if (second < 0) {
+            throw IllegalArgumentException("Unexpected child ID: $childId")
+        }
+        return listOf(childId.substring(0, first), childId.substring(first + 1, second), childId.substring(second + 1))
+    }
+
     internal fun deserializeAnnotations(annotations: JsonArray?): List<AnnotationInfo> {
         return if (annotations != null) {
             val classNameKey = "annotationType"
@@ -223,6 +223,7 @@ class TestAndroidTestRunnerFactory : IRemoteAndroidTestRunnerFactory {
                         " -e filter ((?:\\S+,)?com.github.tarcv.tongs.ondevice.AnnontationReadingFilter(,?:\\S+)?)" +
                         " -e log true" +
                         " -e test_argument \\S+" +
+                        "(?: -e tongs_testInfoFile \\S+)?" +
                         """\s+$expectedTestPackage\/$expectedTestRunner""")
                         .replace(".", "\\.")
                         .replace(" -", "\\s+-")
@@ -14,12 +14,19 @@
 package com.github.tarcv.tongs.runner;
 
 import com.android.ddmlib.IDevice;
+import com.github.tarcv.tongs.api.run.CancellationSignal;
 import com.github.tarcv.tongs.api.run.TestCaseEvent;
 
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class TestRunParameters {
 	private final TestCaseEvent test;
+	private final List<TestCaseEvent> batchTests;
+	private final List<String> collectedClasses;
+	private final String testInfoFile;
 	private final String testPackage;
 	private final String testRunner;
 	private final Map<String, String> testRunnerArguments;
@@ -29,11 +36,35 @@ public class TestRunParameters {
 	private final String excludedAnnotation;
 	private final String applicationPackage;
 	private final boolean withOnDeviceLibrary;
+	private final CancellationSignal cancellationSignal;
 
 	public TestCaseEvent getTest() {
 		return test;
 	}
 
+	/**
+	 * @return test cases to execute in one instrumentation run, empty when a single test case is executed
+	 */
+	public List<TestCaseEvent> getBatchTests() {
+		return batchTests;
+	}
+
+	/**
+	 * @return test classes to collect test cases from in a collecting run, empty when all test classes are collected
+	 */
+	public List<String> getCollectedClasses() {
+		return collectedClasses;
+	}
+
+	/**
+	 * @return path on the device where 'ondevice' library writes information about collected tests,
+	 * 		null when it should be written to logcat
+	 */
+	@Nullable
+	public String getTestInfoFile() {
+		return testInfoFile;
+	}
+
 	public String getTestPackage() {
 		return testPackage;
 	}
@@ -70,8 +101,15 @@ public class TestRunParameters {
 		return applicationPackage;
 	}
 
+	public CancellationSignal getCancellationSignal() {
+		return cancellationSignal;
+	}
+
 	public static class Builder {
 		private TestCaseEvent test;
+		private List<TestCaseEvent> batchTests = Collections.emptyList();
+		private List<String> collectedClasses = Collections.emptyList();
+		private String testInfoFile;
 		private String testPackage;
 		private String testRunner;
 		private Map<String, String> testRunnerArguments;
@@ -81,6 +119,7 @@ public class TestRunParameters {
 		private String excludedAnnotation;
 		private String applicationPackage;
 		private boolean withOnDeviceLibrary;
+		private CancellationSignal cancellationSignal = new CancellationSignal();
 
 		public static Builder testRunParameters() {
 			return new Builder();
@@ -91,6 +130,21 @@ public class TestRunParameters {
 			return this;
 		}
 
+		public Builder withBatchTests(List<TestCaseEvent> batchTests) {
+			this.batchTests = batchTests;
+			return this;
+		}
+
+		public Builder withCollectedClasses(List<String> collectedClasses) {
+			this.collectedClasses = collectedClasses;
+			return this;
+		}
+
+		public Builder withTestInfoFile(@Nullable String testInfoFile) {
+			this.testInfoFile = testInfoFile;
+			return this;
+		}
+
 		public Builder withTestPackage(String testPackage) {
 			this.testPackage = testPackage;
 			return this;
@@ -139,10 +193,18 @@ public class TestRunParameters {
 			this.withOnDeviceLibrary = withOnDeviceLib;
 			return this;
 		}
+
+		public Builder withCancellationSignal(CancellationSignal cancellationSignal) {
+			this.cancellationSignal = cancellationSignal;
+			return this;
+		}
     }
 
 	private TestRunParameters(Builder builder) {
 		test = builder.test;
+		batchTests = builder.batchTests;
+		collectedClasses = builder.collectedClasses;
+		testInfoFile = builder.testInfoFile;
 		testPackage = builder.testPackage;
 		testRunner = builder.testRunner;
 		testRunnerArguments = builder.testRunnerArguments;
@@ -152,5 +214,6 @@ public class TestRunParameters {
 		isCoverageEnabled = builder.isCoverageEnabled;
 		this.excludedAnnotation = builder.excludedAnnotation;
 		this.applicationPackage = builder.applicationPackage;
+		this.cancellationSignal = builder.cancellationSignal;
 	}
 }
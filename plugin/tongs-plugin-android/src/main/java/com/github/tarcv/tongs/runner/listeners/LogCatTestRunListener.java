@@ -18,6 +18,7 @@ import com.android.ddmlib.testrunner.TestIdentifier;
 import com.github.tarcv.tongs.api.devices.Pool;
 import com.github.tarcv.tongs.api.result.TestCaseFile;
 import com.github.tarcv.tongs.api.result.TestCaseFileManager;
+import com.github.tarcv.tongs.api.run.PostProcessing;
 import com.github.tarcv.tongs.api.run.ResultStatus;
 import com.github.tarcv.tongs.api.testcases.TestCase;
 import com.github.tarcv.tongs.model.AndroidDevice;
@@ -43,12 +44,14 @@ class LogCatTestRunListener implements RunListener {
 	private final TestCaseFile tableFile;
 	private final TestCaseFile rawFile;
 	private final TestCase testCase;
+	private final PostProcessing postProcessing;
 
 	public LogCatTestRunListener(Gson gson,
 								 TestCaseFileManager fileManager,
 								 Pool pool,
 								 AndroidDevice device,
-								 TestCase testCase
+								 TestCase testCase,
+								 PostProcessing postProcessing
 	) {
 		this.logcatReceiver = new LogcatReceiver(device);
 		this.gson = gson;
@@ -56,6 +59,7 @@ class LogCatTestRunListener implements RunListener {
 		this.pool = pool;
 		this.device = device;
 		this.testCase = testCase;
+		this.postProcessing = postProcessing;
 		this.tableFile = new TestCaseFile(fileManager, JSON_LOG, "");
 		this.rawFile = new TestCaseFile(fileManager, RAW_LOG, "");
 	}
@@ -72,14 +76,17 @@ class LogCatTestRunListener implements RunListener {
 			messages.clear();
 			messages.addAll(copyOfLogCatMessages);
 		}
-		LogCatWriter logCatWriter = new CompositeLogCatWriter(
-				new TableLogCatWriter(gson, tableFile),
-				new RawLogCatWriter(fileManager, pool, device, rawFile));
-		TestIdentifier test = new TestIdentifier(testCase.getTestClass(), testCase.getTestMethod());
-		LogCatSerializer logCatSerializer = new LogCatSerializer(test, logCatWriter);
-		logCatSerializer.serializeLogs(copyOfLogCatMessages);
-
 		logcatReceiver.stop();
+
+		// Writing logs doesn't need the device, so the next test case can be started meanwhile
+		postProcessing.submit(() -> {
+			LogCatWriter logCatWriter = new CompositeLogCatWriter(
+					new TableLogCatWriter(gson, tableFile),
+					new RawLogCatWriter(fileManager, pool, device, rawFile));
+			TestIdentifier test = new TestIdentifier(testCase.getTestClass(), testCase.getTestMethod());
+			LogCatSerializer logCatSerializer = new LogCatSerializer(test, logCatWriter);
+			logCatSerializer.serializeLogs(copyOfLogCatMessages);
+		});
 	}
 
 	public TestCaseFile getTableFile() {
@@ -14,8 +14,11 @@ package com.github.tarcv.tongs.runner.listeners
 import com.android.ddmlib.logcat.LogCatListener
 import com.android.ddmlib.logcat.LogCatMessage
 import com.android.ddmlib.logcat.LogCatReceiverTask
+import com.github.tarcv.tongs.Utils
 import com.github.tarcv.tongs.model.AndroidDevice
 import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 import kotlin.collections.ArrayList
 
 class LogcatReceiver(
@@ -38,7 +41,31 @@ class LogcatReceiver(
 
     fun start(runName: String) {
         logCatReceiverTask.addLogCatListener(logCatListener)
-        Thread(logCatReceiverTask, "CatLogger-" + runName + "-" + device.serial).start()
+        Utils.runInBackground("CatLogger-" + runName + "-" + device.serial, logCatReceiverTask)
+    }
+
+    /**
+     * Blocks until a message matching [predicate] is received (or was already received)
+     *
+     * @return false when no matching message was received during [timeoutMillis]
+     */
+    fun awaitMessage(timeoutMillis: Long, predicate: (LogCatMessage) -> Boolean): Boolean {
+        val latch = CountDownLatch(1)
+        val awaitingListener = LogCatListener { msgList ->
+            if (msgList.any(predicate)) {
+                latch.countDown()
+            }
+        }
+        logCatReceiverTask.addLogCatListener(awaitingListener)
+        try {
+            // the listener is added first, so a message received at this moment is not missed
+            if (messages.any(predicate)) {
+                return true
+            }
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS)
+        } finally {
+            logCatReceiverTask.removeLogCatListener(awaitingListener)
+        }
     }
 
     fun stop() {
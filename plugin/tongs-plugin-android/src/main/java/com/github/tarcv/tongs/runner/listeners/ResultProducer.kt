@@ -22,6 +22,7 @@ import com.github.tarcv.tongs.api.result.SimpleMonoTextReportData
 import com.github.tarcv.tongs.api.result.SimpleMonoTextReportData.Type
 import com.github.tarcv.tongs.api.result.StackTrace
 import com.github.tarcv.tongs.api.result.Table
+import com.github.tarcv.tongs.api.result.TestCaseFile
 import com.github.tarcv.tongs.api.result.TestCaseFileManager
 import com.github.tarcv.tongs.api.result.TestCaseRunResult
 import com.github.tarcv.tongs.api.result.TestReportData
@@ -62,7 +63,7 @@ class ResultProducer(
     private val androidDevice = context.device
     private val resultListener = ResultListener(context.testCaseEvent.testCase.toString())
     private val logCatListener = LogCatTestRunListener(gson(), context.fileManager, context.pool, androidDevice,
-            context.testCaseEvent.testCase)
+            context.testCaseEvent.testCase, context.postProcessing)
     private val screenTraceListener = getScreenTraceTestRunListener(context.fileManager, androidDevice)
     private val coverageListener = getCoverageTestRunListener(context.configuration, androidDevice, context.fileManager, context.pool, context.testCaseEvent)
 
@@ -79,7 +80,7 @@ class ResultProducer(
 
         val gson = gson()
         val reportBlocks = listOfNotNull(
-                addOutput(shellResult.output),
+                createOutputReport(shellResult.output),
                 addTraceReport(screenTraceListener),
                 FileTableReportData("Logcat", logCatListener.tableFile, { tableFile ->
                     tableFile
@@ -98,35 +99,7 @@ class ResultProducer(
             null
         }
 
-        val stackTrace = if (shellResult.status == null) {
-            StackTrace(
-                    "RunError", "Failed to get the test result",
-                    "Failed to get the test result" + (System.lineSeparator().repeat(2)) + shellResult.trace
-            )
-        } else {
-            parseJavaTrace(shellResult.trace)
-        }
-        return TestCaseRunResult(
-                context.pool, androidDevice,
-                context.testCaseEvent.testCase,
-                shellResult.status ?: ResultStatus.ERROR,
-                listOf(stackTrace),
-                Instant.EPOCH,
-                Instant.EPOCH,
-                Instant.ofEpochMilli(shellResult.startTime ?: 0),
-                Instant.ofEpochMilli(shellResult.endTime ?: 0),
-                0, // TODO
-                shellResult.metrics,
-                coverageReport,
-                reportBlocks)
-    }
-
-    private fun addOutput(output: String): SimpleMonoTextReportData? {
-        return if (output.isEmpty()) {
-            null
-        } else {
-            SimpleMonoTextReportData("Shell output", Type.STDOUT, output)
-        }
+        return createRunResult(context, shellResult, coverageReport, reportBlocks)
     }
 
     private fun addTraceReport(screenTraceListener: RunListener): TestReportData? {
@@ -142,9 +115,9 @@ class ResultProducer(
 
     private fun getScreenTraceTestRunListener(fileManager: TestCaseFileManager, device: AndroidDevice): RunListener {
         return if (Diagnostics.VIDEO == device.supportedVisualDiagnostics) {
-            ScreenRecorderTestRunListener(fileManager, device)
+            ScreenRecorderTestRunListener(fileManager, device, context.postProcessing)
         } else if (Diagnostics.SCREENSHOTS == device.supportedVisualDiagnostics && context.configuration.canFallbackToScreenshots()) {
-            ScreenCaptureTestRunListener(fileManager, device)
+            ScreenCaptureTestRunListener(fileManager, device, context.postProcessing)
         } else {
             NoOpRunListener()
         }
@@ -162,3 +135,58 @@ class ResultProducer(
         }
     }
 }
+
+/**
+ * Produces a result of a test executed together with other tests in one instrumentation run.
+ * Logcat, screen recordings and coverage are collected per instrumentation run, so they are not available
+ * for such tests.
+ */
+class BatchedResultProducer(
+        private val context: AndroidRunContext
+) : IResultProducer {
+    private val resultListener = ResultListener(context.testCaseEvent.testCase.toString())
+
+    override fun requestListeners(): List<RunListener> = listOf(resultListener)
+
+    override fun getResult(): TestCaseRunResult {
+        val shellResult = resultListener.result
+        return createRunResult(context, shellResult, null, listOfNotNull(createOutputReport(shellResult.output)))
+    }
+}
+
+private fun createRunResult(
+        context: AndroidRunContext,
+        shellResult: ResultListener.ShellResult,
+        coverageReport: TestCaseFile?,
+        reportBlocks: List<TestReportData>
+): TestCaseRunResult {
+    val stackTrace = if (shellResult.status == null) {
+        StackTrace(
+                "RunError", "Failed to get the test result",
+                "Failed to get the test result" + (System.lineSeparator().repeat(2)) + shellResult.trace
+        )
+    } else {
+        parseJavaTrace(shellResult.trace)
+    }
+    return TestCaseRunResult(
+            context.pool, context.device,
+            context.testCaseEvent.testCase,
+            shellResult.status ?: ResultStatus.ERROR,
+            listOf(stackTrace),
+            Instant.EPOCH,
+            Instant.EPOCH,
+            Instant.ofEpochMilli(shellResult.startTime ?: 0),
+            Instant.ofEpochMilli(shellResult.endTime ?: 0),
+            0, // TODO
+            shellResult.metrics,
+            coverageReport,
+            reportBlocks)
+}
+
+private fun createOutputReport(output: String): SimpleMonoTextReportData? {
+    return if (output.isEmpty()) {
+        null
+    } else {
+        SimpleMonoTextReportData("Shell output", Type.STDOUT, output)
+    }
+}
@@ -18,10 +18,19 @@ import javax.annotation.concurrent.GuardedBy
 import javax.annotation.concurrent.ThreadSafe
 import kotlin.concurrent.withLock
 
+/**
+ * Adapts instrumentation run events to [RunListener]s of one expected test.
+ *
+ * When [isBatched] is true other tests are expected to be executed in the same run, so run failures that happen
+ * after the expected test got its result are not attributed to it.
+ */
 @ThreadSafe
-class RunListenerAdapter(private val runName: String,
-                         private val expectedTest: TestIdentifier,
-                         private val listeners: List<RunListener>) : ITestRunListener, FullTestRunListener {
+class RunListenerAdapter @JvmOverloads constructor(
+        private val runName: String,
+        private val expectedTest: TestIdentifier,
+        private val listeners: List<RunListener>,
+        private val isBatched: Boolean = false
+) : ITestRunListener, FullTestRunListener {
 
     private val lock = ReentrantLock()
 
@@ -41,6 +50,26 @@ class RunListenerAdapter(private val runName: String,
     private var gotExpectedTestResult = false
         get() = assertSynchronized(field)
 
+    @GuardedBy("lock")
+    private var expectedTestStartMillis: Long? = null
+        get() = assertSynchronized(field)
+
+    @GuardedBy("lock")
+    private var expectedTestEndMillis: Long? = null
+        get() = assertSynchronized(field)
+
+    /**
+     * Whether the expected test was started or got a result during the run
+     */
+    val wasTestExecuted: Boolean
+        get() = lock.withLock { expectedTestStartMillis != null || gotExpectedTestResult }
+
+    val testStartMillis: Long?
+        get() = lock.withLock { expectedTestStartMillis }
+
+    val testEndMillis: Long?
+        get() = lock.withLock { expectedTestEndMillis }
+
     private inline fun <T>assertSynchronized(field: T): T {
         assert(lock.isHeldByCurrentThread)
         return field
@@ -61,6 +90,7 @@ class RunListenerAdapter(private val runName: String,
     override fun testRunFailed(errorMessage: String) {
         lock.withLock {
             if (!checkRunActive()) return
+            if (isBatched && gotExpectedTestResult) return
 
             fireEvent { it.onRunFailure(errorMessage) }
         }
@@ -173,6 +203,7 @@ class RunListenerAdapter(private val runName: String,
                         if (state != TestState.BEFORE_START) {
                             handleUnexpectedTest(event)
                         }
+                        expectedTestStartMillis = System.currentTimeMillis()
                         TestState.TEST_STARTED
                     }
                     is TestEvent.TestFailed -> {
@@ -182,6 +213,7 @@ class RunListenerAdapter(private val runName: String,
                             }
 
                             gotExpectedTestResult = true
+                            expectedTestEndMillis = System.currentTimeMillis()
                             fireEvent {
                                 it.onTestFinished(event.testIdentifier, event.resultStatus, event.trace, gotStart)
                             }
@@ -207,6 +239,7 @@ class RunListenerAdapter(private val runName: String,
                         fireEvent {
                             it.addTestMetrics(event.testIdentifier, event.testMetrics, gotStart)
                         }
+                        expectedTestEndMillis = System.currentTimeMillis()
 
                         TestState.BEFORE_START
                     }
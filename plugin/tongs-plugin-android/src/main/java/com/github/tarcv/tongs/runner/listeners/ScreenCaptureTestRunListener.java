@@ -12,33 +12,62 @@ package com.github.tarcv.tongs.runner.listeners;
 
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.testrunner.TestIdentifier;
+import com.github.tarcv.tongs.Utils;
 import com.github.tarcv.tongs.api.result.TestCaseFile;
 import com.github.tarcv.tongs.api.result.TestCaseFileManager;
+import com.github.tarcv.tongs.api.run.PostProcessing;
 import com.github.tarcv.tongs.model.AndroidDevice;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 class ScreenCaptureTestRunListener extends BaseCaptureTestRunListener {
     private final TestCaseFileManager fileManager;
     private final IDevice deviceInterface;
+    private final PostProcessing postProcessing;
 
     private ScreenCapturer screenCapturer;
 
-    public ScreenCaptureTestRunListener(TestCaseFileManager fileManager, AndroidDevice device) {
+    @Nullable
+    private Future<?> capturing;
+
+    public ScreenCaptureTestRunListener(TestCaseFileManager fileManager,
+                                        AndroidDevice device,
+                                        PostProcessing postProcessing) {
         this.fileManager = fileManager;
         this.deviceInterface = device.getDeviceInterface();
+        this.postProcessing = postProcessing;
     }
 
     @Override
     public void onRunStarted() {
         screenCapturer = new ScreenCapturer(deviceInterface, fileManager);
-        new Thread(screenCapturer, "ScreenCapturer").start();
+        capturing = Utils.runInBackground("ScreenCapturer", screenCapturer);
     }
 
     @Override
     public void onRunFinished() {
         screenCapturer.stopCapturing(isHasFailed());
+
+        // Encoding the animation doesn't need the device, and the result is published only after it is ready
+        ScreenCapturer stoppedCapturer = screenCapturer;
+        Future<?> stoppedCapturing = capturing;
+        if (stoppedCapturing != null) {
+            postProcessing.submit(() -> {
+                try {
+                    stoppedCapturing.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to capture screenshots", e.getCause());
+                }
+                stoppedCapturer.createAnimation();
+            });
+        }
     }
 
     @NotNull
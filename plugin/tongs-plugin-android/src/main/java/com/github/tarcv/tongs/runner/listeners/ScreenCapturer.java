@@ -36,15 +36,21 @@ import static com.github.tarcv.tongs.api.result.StandardFileTypes.SCREENSHOT;
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 import static java.lang.System.nanoTime;
 
+/**
+ * Captures screenshots until {@link #stopCapturing(boolean)} is called. The animation is created from them
+ * only after capturing is finished (see {@link #createAnimation()}), so it doesn't keep the device busy.
+ */
 class ScreenCapturer implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ScreenCapturer.class);
     private final IDevice deviceInterface;
     private final TestCaseFileManager fileManager;
 
-    private final Object lock = new Object();
+    /**
+     * Only accessed by the capturing thread and then by {@link #createAnimation()} called after that thread finished
+     */
     private final List<File> files = new ArrayList<>();
-    private boolean capturing;
-    private boolean hasFailed;
+    private volatile boolean capturing = true;
+    private volatile boolean hasFailed;
     private final TestCaseFile animationFile;
 
     ScreenCapturer(IDevice deviceInterface, TestCaseFileManager fileManager) {
@@ -55,27 +61,31 @@ class ScreenCapturer implements Runnable {
 
     @Override
     public void run() {
-        Thread currentThread = Thread.currentThread();
-        synchronized (lock) {
-            try {
-                int count = 0;
-                capturing = true;
-                while (capturing) {
-                    getScreenshot(count++);
-                    pauseTillNextScreenCapture();
-                }
+        try {
+            int count = 0;
+            while (capturing) {
+                getScreenshot(count++);
+                pauseTillNextScreenCapture();
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Screenshot capturer thread was interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                if (hasFailed) {
-                    File file = animationFile.create();
-                    createGif(files, file);
-                }
-            } catch (InterruptedException e) {
-                logger.warn("Screenshot capturer thread was interrupted", e);
-                currentThread.interrupt();
-            } finally {
-                deleteFiles(files);
-                files.clear();
+    /**
+     * Creates the animation from captured screenshots when the test case failed and deletes the screenshots.
+     * Must be called only after {@link #run()} returned.
+     */
+    public void createAnimation() {
+        try {
+            if (hasFailed) {
+                File file = animationFile.create();
+                createGif(files, file);
             }
+        } finally {
+            deleteFiles(files);
+            files.clear();
         }
     }
 
@@ -98,10 +108,8 @@ class ScreenCapturer implements Runnable {
     }
 
     public void stopCapturing(boolean hasFailed) {
-        synchronized (lock) {
-            this.hasFailed = hasFailed;
-            capturing = false;
-        }
+        this.hasFailed = hasFailed;
+        capturing = false;
     }
 
     private static BufferedImage bufferedImageFrom(RawImage rawImage) {
@@ -12,13 +12,18 @@ package com.github.tarcv.tongs.runner.listeners;
 
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.testrunner.TestIdentifier;
+import com.github.tarcv.tongs.Utils;
 import com.github.tarcv.tongs.api.result.TestCaseFile;
 import com.github.tarcv.tongs.api.result.TestCaseFileManager;
+import com.github.tarcv.tongs.api.run.PostProcessing;
 import com.github.tarcv.tongs.model.AndroidDevice;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static com.github.tarcv.tongs.api.result.StandardFileTypes.SCREENRECORD;
 
@@ -26,13 +31,20 @@ class ScreenRecorderTestRunListener extends BaseCaptureTestRunListener {
     private final IDevice deviceInterface;
 
     private final ScreenRecorderStopper screenRecorderStopper;
+    private final PostProcessing postProcessing;
+
+    @Nullable
+    private Future<?> recording;
 
     @NotNull
     public final TestCaseFile file;
 
-    public ScreenRecorderTestRunListener(TestCaseFileManager fileManager, AndroidDevice device) {
+    public ScreenRecorderTestRunListener(TestCaseFileManager fileManager,
+                                         AndroidDevice device,
+                                         PostProcessing postProcessing) {
         deviceInterface = device.getDeviceInterface();
         screenRecorderStopper = new ScreenRecorderStopper(deviceInterface);
+        this.postProcessing = postProcessing;
         file = new TestCaseFile(fileManager, SCREENRECORD, "");
     }
 
@@ -45,12 +57,26 @@ class ScreenRecorderTestRunListener extends BaseCaptureTestRunListener {
     public void onRunStarted() {
         File localVideoFile = file.toFile();
         ScreenRecorder screenRecorder = new ScreenRecorder(screenRecorderStopper, localVideoFile, deviceInterface);
-        new Thread(screenRecorder, "ScreenRecorder").start();
+        recording = Utils.runInBackground("ScreenRecorder", screenRecorder);
     }
 
     @Override
     public void onRunFinished() {
         screenRecorderStopper.stopScreenRecord(isHasFailed());
+
+        // The recording is pulled in background, the result is published only after the video is ready
+        Future<?> stoppedRecording = recording;
+        if (stoppedRecording != null) {
+            postProcessing.submit(() -> {
+                try {
+                    stoppedRecording.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Failed to record the screen", e.getCause());
+                }
+            });
+        }
     }
 
     @Override
@@ -58,23 +58,7 @@ class ApkTestInfoReader {
                             }
                 }
 
-        val dexClasses = generateSequence(1) { it + 1}
-            .map {
-                val indexStr = if (it == 1) {
-                    ""
-                } else {
-                    it.toString()
-                }
-
-                try {
-                    DexFileFactory.loadDexEntry(apk, "classes${indexStr}.dex", true, null)
-                } catch (e: DexFileFactory.DexFileNotFoundException) {
-                    null
-                }
-            }
-            .takeWhile { it != null }
-            .toList()
-            .flatMap { it!!.dexFile.classes }
+        val dexClasses = loadDexClasses(apk)
 
         val knownClasses = dexClasses
                 .filter(Companion::isClass)
@@ -140,6 +124,137 @@ class ApkTestInfoReader {
                 }
     }
 
+    /**
+     * Discovers JUnit4 test cases in [apk] without running them: public instance methods annotated with @Test
+     * (including inherited ones) of public concrete classes that use the default or AndroidJUnit4 runner.
+     *
+     * Ignored test cases and test cases annotated with [excludedAnnotation] are skipped as they are never executed.
+     * Test cases of classes using other runners (e.g. Parameterized) and JUnit3 test classes are only known at runtime,
+     * and test cases filtered by the runner on each device (e.g. by @SdkSuppress) are executed only on some devices,
+     * so such classes are returned as [DiscoveredTests.unresolvedClasses].
+     */
+    fun discoverTests(apk: File, excludedAnnotation: String?): DiscoveredTests {
+        val dexClasses = loadDexClasses(apk)
+        val knownClasses = dexClasses
+                .filter(Companion::isClass)
+                .associateBy { decodeClassName(it.type) }
+
+        val tests = ArrayList<TestInfo>()
+        val unresolvedClasses = ArrayList<String>()
+        dexClasses
+                .filter(Companion::isClass)
+                .filter {
+                    AccessFlags.PUBLIC in it.accessFlags
+                            && AccessFlags.ABSTRACT !in it.accessFlags
+                            && AccessFlags.INTERFACE !in it.accessFlags
+                }
+                .forEach { testClass ->
+                    val hierarchy = classHierarchy(testClass, knownClasses)
+                    val className = binaryClassName(testClass.type)
+                    val runner = hierarchy.classes
+                            .asSequence()
+                            .mapNotNull { clazz ->
+                                clazz.annotations.firstOrNull { decodeClassName(it.type) == runWithAnnotation }
+                            }
+                            .firstOrNull()
+                            ?.let { annotation ->
+                                annotation.elements
+                                        .firstOrNull { it.name == "value" }
+                                        ?.let { decodeValue(it.value) as? String }
+                            }
+                    if ((runner != null && runner !in junit4Runners) || junit3TestCase in hierarchy.superclassNames) {
+                        unresolvedClasses.add(className)
+                        return@forEach
+                    }
+                    if (testClass.annotations.any { decodeClassName(it.type) == ignoreAnnotation }) {
+                        return@forEach
+                    }
+
+                    val classAnnotations = ArrayList<AnnotationInfo>()
+                    appendSuperclassAnnotationsRoot(testClass, knownClasses, classAnnotations)
+                    appendAnnotationInfos(testClass.annotations, classAnnotations)
+
+                    val testMethods = hierarchy.classes
+                            .flatMap { clazz -> clazz.virtualMethods }
+                            .filter { method ->
+                                AccessFlags.PUBLIC in method.accessFlags
+                                        && method.annotations.any { decodeClassName(it.type) == testAnnotation }
+                                        && method.annotations.none { decodeClassName(it.type) == ignoreAnnotation }
+                            }
+                            .distinctBy { it.name } // overridden methods are listed before the ones they override
+                    val isFilteredOnDevice = classAnnotations.any { it.fullyQualifiedName in deviceFilterAnnotations }
+                            || testMethods.any { method ->
+                                method.annotations.any { decodeClassName(it.type) in deviceFilterAnnotations }
+                            }
+                    if (isFilteredOnDevice) {
+                        // Which devices execute these test cases is only known to the runner on each device
+                        unresolvedClasses.add(className)
+                        return@forEach
+                    }
+
+                    testMethods
+                            .forEach { method ->
+                                val annotations = ArrayList(classAnnotations)
+                                appendAnnotationInfos(method.annotations, annotations)
+                                val isExcluded = annotations.any { it.fullyQualifiedName == excludedAnnotation }
+                                if (!isExcluded) {
+                                    tests.add(TestInfo(
+                                            TestIdentifier(className, method.name),
+                                            extractPackage(testClass),
+                                            emptyList(),
+                                            annotations
+                                    ))
+                                }
+                            }
+                }
+
+        val hasOnDeviceLibrary = knownClasses.containsKey(onDeviceFilterClass)
+        return DiscoveredTests(hasOnDeviceLibrary, tests, unresolvedClasses)
+    }
+
+    /**
+     * @return [testClass] followed by its superclasses that are defined in the APK
+     */
+    private fun classHierarchy(
+            testClass: DexBackedClassDef,
+            knownClasses: Map<String, DexBackedClassDef>
+    ): ClassHierarchy {
+        val classes = ArrayList<DexBackedClassDef>()
+        val superclassNames = ArrayList<String>()
+        var currentClass = testClass
+        while (true) {
+            classes.add(currentClass)
+            val superclassType = currentClass.superclass
+            if (superclassType == null || superclassType == currentClass.type) {
+                break
+            }
+            val superclass = decodeClassName(superclassType)
+            superclassNames.add(superclass)
+            currentClass = knownClasses[superclass] ?: break
+        }
+        return ClassHierarchy(classes, superclassNames)
+    }
+
+    private fun loadDexClasses(apk: File): List<DexBackedClassDef> {
+        return generateSequence(1) { it + 1}
+            .map {
+                val indexStr = if (it == 1) {
+                    ""
+                } else {
+                    it.toString()
+                }
+
+                try {
+                    DexFileFactory.loadDexEntry(apk, "classes${indexStr}.dex", true, null)
+                } catch (e: DexFileFactory.DexFileNotFoundException) {
+                    null
+                }
+            }
+            .takeWhile { it != null }
+            .toList()
+            .flatMap { it!!.dexFile.classes }
+    }
+
     private fun extractPackage(testClass: DexBackedClassDef): String {
         return testClass.type
                 .substringBeforeLast('/', "")
@@ -228,6 +343,15 @@ class ApkTestInfoReader {
                 "Annotation value encoded in unexpected way - ${encodedValue.javaClass.name}")
     }
 
+    /**
+     * @return class name in the same form as test class names reported by instrumentation (with '$' for nested classes)
+     */
+    private fun binaryClassName(type: String): String {
+        return type
+                .removeSurrounding("L", ";")
+                .replace('/', '.')
+    }
+
     private fun decodeClassName(type: String): String {
         return type
                 .removeSurrounding("L", ";")
@@ -237,6 +361,34 @@ class ApkTestInfoReader {
 
     companion object {
         private const val inheritedAnnotation = "java.lang.annotation.Inherited"
+        private const val testAnnotation = "org.junit.Test"
+        private const val ignoreAnnotation = "org.junit.Ignore"
+        private const val runWithAnnotation = "org.junit.runner.RunWith"
+        private const val junit3TestCase = "junit.framework.TestCase"
+        private const val onDeviceFilterClass = "com.github.tarcv.tongs.ondevice.AnnontationReadingFilter"
+
+        /**
+         * Annotations the instrumentation runner uses to skip test cases depending on a device
+         */
+        private val deviceFilterAnnotations = setOf(
+                "androidx.test.filters.SdkSuppress",
+                "androidx.test.filters.RequiresDevice",
+                "android.support.test.filters.SdkSuppress",
+                "android.support.test.filters.RequiresDevice"
+        )
+
+        /**
+         * Runners that execute public @Test methods as is, so their test cases can be discovered from bytecode
+         */
+        private val junit4Runners = setOf(
+                "org.junit.runners.JUnit4",
+                "org.junit.runners.BlockJUnit4ClassRunner",
+                "androidx.test.ext.junit.runners.AndroidJUnit4",
+                "androidx.test.runner.AndroidJUnit4",
+                "androidx.test.internal.runner.junit4.AndroidJUnit4ClassRunner",
+                "android.support.test.runner.AndroidJUnit4",
+                "android.support.test.internal.runner.junit4.AndroidJUnit4ClassRunner"
+        )
 
         private val logger = LoggerFactory.getLogger(ApkTestInfoReader::class.java)
 
@@ -341,4 +493,19 @@ class ApkTestInfoReader {
     }
 
     class ApkReadingException(message: String) : RuntimeException(message)
+
+    /**
+     * @param hasOnDeviceLibrary whether the APK contains 'ondevice' library
+     * @param unresolvedClasses test classes whose test cases can only be collected by running the instrumentation
+     */
+    class DiscoveredTests(
+            val hasOnDeviceLibrary: Boolean,
+            val tests: List<TestInfo>,
+            val unresolvedClasses: List<String>
+    )
+
+    private class ClassHierarchy(
+            val classes: List<DexBackedClassDef>,
+            val superclassNames: List<String>
+    )
 }
\ No newline at end of file
@@ -11,6 +11,7 @@
 package com.github.tarcv.tongs.suite
 
 import com.android.ddmlib.CollectingOutputReceiver
+import com.android.ddmlib.NullOutputReceiver
 import com.android.ddmlib.logcat.LogCatMessage
 import com.android.ddmlib.testrunner.TestIdentifier
 import com.github.tarcv.tongs.api.testcases.NoTestCasesFoundException
@@ -23,17 +24,21 @@ import com.github.tarcv.tongs.runner.AndroidTestRunFactory
 import com.github.tarcv.tongs.runner.JsonInfoDecorder
 import com.github.tarcv.tongs.runner.TestInfo
 import com.github.tarcv.tongs.runner.listeners.LogcatReceiver
+import com.github.tarcv.tongs.system.io.RemoteFileManager
 import com.google.gson.JsonObject
 import com.google.gson.JsonParser
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.async
 import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.runBlocking
 import kotlinx.coroutines.withContext
 import org.slf4j.LoggerFactory
 import java.io.File
+import java.nio.charset.StandardCharsets
 import java.nio.file.Files
+import java.util.UUID
 
 class JUnitTestCaseProvider(
     private val context: TestCaseProviderContext,
@@ -43,9 +48,22 @@ class JUnitTestCaseProvider(
     private val logger = LoggerFactory.getLogger(JUnitTestCaseProvider::class.java)
 
     companion object {
+        /**
+         * How long to wait for test information from logcat when the end of it can't be marked
+         */
         const val logcatWaiterSleep: Long = 2500
+        private const val testInfoTag = "Tongs.TestInfo"
+        private const val endOfTestInfoMarker = "__TONGS_END_OF_TEST_INFO_"
         private val jsonInfoDecoder = JsonInfoDecorder()
 
+        /**
+         * Instrumentation arguments that select test cases in ways bytecode discovery doesn't support
+         */
+        private val filteringRunnerArguments = setOf(
+                "class", "notClass", "package", "notPackage", "annotation", "notAnnotation", "size",
+                "testFile", "notTestFile", "tests_regex", "numShards", "shardIndex", "filter"
+        )
+
         fun calculateDeviceIncludes(input: Sequence<Pair<AndroidDevice, Set<TestIdentifier>>>)
                 : Map<TestIdentifier, List<AndroidDevice>> {
             return input
@@ -59,6 +77,19 @@ class JUnitTestCaseProvider(
                     }
         }
 
+        /**
+         * Decodes a file with one JSON object per line, as written by 'ondevice' library
+         */
+        fun decodeTestInfoFile(file: File): List<JsonObject> {
+            val parser = JsonParser()
+            return file.bufferedReader(StandardCharsets.UTF_8).useLines { lines ->
+                lines
+                        .filter { it.isNotBlank() }
+                        .map { parser.parse(it).asJsonObject }
+                        .toList()
+            }
+        }
+
         fun decodeMessages(testInfoMessages: Collection<LogCatMessage>): List<JsonObject> {
             class MessageKey(val id: String, val lineIndex: String) : Comparable<MessageKey> {
 
@@ -126,23 +157,9 @@ class JUnitTestCaseProvider(
 
     @Throws(NoTestCasesFoundException::class)
     override fun loadTestSuite(): Collection<TestCase> = runBlocking {
-        context.pool.devices
+        val devices = context.pool.devices
                 .filterIsInstance(AndroidDevice::class.java) // TODO: handle other types of devices
-                .map { device ->
-                    async {
-                        kotlin.runCatching {
-                            try {
-                                collectTestsFromLogOnlyRun(device)
-                            } catch (e: InterruptedException) {
-                                throw e
-                            } catch (e: Exception) {
-                                logger.warn("Didn't collect test cases from ${device.name}", e)
-                                throw e
-                            }
-                        }
-                    }
-                }
-                .awaitAll()
+        collectAllInfos(devices)
                 .let { collectedInfoResults ->
                     val collectedInfos = collectedInfoResults.mapNotNull { it.getOrNull() }
                     if (collectedInfos.isEmpty()) {
@@ -204,6 +221,174 @@ class JUnitTestCaseProvider(
                 }
     }
 
+    private suspend fun collectAllInfos(devices: List<AndroidDevice>): List<Result<CollectedInfo>> {
+        val discoveredTests = tryDiscoveringTestsOnHost()
+        return when {
+            discoveredTests == null -> collectDeviceInfos(devices, emptyList())
+            discoveredTests.unresolvedClasses.isEmpty() -> {
+                devices.map { device -> Result.success(discoveredTests.toCollectedInfo(device)) }
+            }
+            else -> {
+                collectDeviceInfos(devices, discoveredTests.unresolvedClasses)
+                        .map { result ->
+                            result.map { it.withDiscoveredTests(discoveredTests) }
+                        }
+            }
+        }
+    }
+
+    /**
+     * Discovers test cases from bytecode of the instrumentation APK when it is enabled and possible
+     */
+    private fun tryDiscoveringTestsOnHost(): ApkTestInfoReader.DiscoveredTests? {
+        val configuration = context.configuration
+        if (!configuration.isHostTestDiscoveryEnabled) {
+            return null
+        }
+
+        val instrumentationApk = configuration.instrumentationApk
+        if (instrumentationApk == null) {
+            logger.warn("Path to the instrumentation APK is not specified, collecting test cases from devices")
+            return null
+        }
+        val filteringArguments = configuration.testRunnerArguments.keys.intersect(filteringRunnerArguments)
+        if (filteringArguments.isNotEmpty()) {
+            logger.warn("Test cases are filtered by instrumentation arguments $filteringArguments," +
+                    " collecting them from devices")
+            return null
+        }
+
+        return try {
+            val start = System.currentTimeMillis()
+            apkTestInfoReader.discoverTests(instrumentationApk, configuration.excludedAnnotation)
+                    .also {
+                        logger.info("Discovered {} test cases in the instrumentation APK (took {}ms)," +
+                                " test cases of {} classes will be collected from devices",
+                                it.tests.size, System.currentTimeMillis() - start, it.unresolvedClasses.size)
+                    }
+        } catch (e: Exception) {
+            logger.warn("Failed to discover test cases in the instrumentation APK, collecting them from devices", e)
+            null
+        }
+    }
+
+    /**
+     * Collects test cases from [devices] using the cache when it is configured
+     *
+     * @param collectedClasses test classes to collect test cases from, all test cases are collected when it is empty
+     */
+    private suspend fun collectDeviceInfos(
+            devices: List<AndroidDevice>,
+            collectedClasses: List<String>
+    ): List<Result<CollectedInfo>> {
+        val discoveryCache = context.configuration.testDiscoveryCacheDirectory?.let { TestDiscoveryCache(it) }
+        val collectedInfoResults = collectInfos(devices, collectedClasses, discoveryCache, true)
+        return if (discoveryCache != null && isCacheStale(discoveryCache, collectedInfoResults, collectedClasses)) {
+            logger.warn("Cached test cases of pool ${context.pool.name} are outdated," +
+                    " collecting them from all devices")
+            collectInfos(devices, collectedClasses, discoveryCache, false)
+        } else {
+            collectedInfoResults
+        }
+    }
+
+    /**
+     * Collects test cases from [devices] in parallel
+     *
+     * @param useCache whether test cases cached in [discoveryCache] should be used instead of collecting them
+     */
+    private suspend fun collectInfos(
+            devices: List<AndroidDevice>,
+            collectedClasses: List<String>,
+            discoveryCache: TestDiscoveryCache?,
+            useCache: Boolean
+    ): List<Result<CollectedInfo>> = coroutineScope {
+        devices
+                .map { device ->
+                    async {
+                        kotlin.runCatching {
+                            try {
+                                collectOrLoadInfo(device, collectedClasses, discoveryCache, useCache)
+                            } catch (e: InterruptedException) {
+                                throw e
+                            } catch (e: Exception) {
+                                logger.warn("Didn't collect test cases from ${device.name}", e)
+                                throw e
+                            }
+                        }
+                    }
+                }
+                .awaitAll()
+    }
+
+    private suspend fun collectOrLoadInfo(
+            device: AndroidDevice,
+            collectedClasses: List<String>,
+            discoveryCache: TestDiscoveryCache?,
+            useCache: Boolean
+    ): CollectedInfo {
+        val cacheKey = discoveryCache?.key(context.configuration, device.osApiLevel, collectedClasses)
+        if (cacheKey != null && useCache) {
+            val cachedEntry = discoveryCache.load(cacheKey)
+            if (cachedEntry != null) {
+                logger.info("Using cached test cases for ${device.name}")
+                return CollectedInfo(
+                        device,
+                        cachedEntry.hasOnDeviceLibrary,
+                        cachedEntry.tests,
+                        tryDecodingInfos(cachedEntry.testInfos),
+                        cachedEntry.testInfos,
+                        cacheKey
+                )
+            }
+        }
+
+        val collectedInfo = collectTestsFromLogOnlyRun(device, collectedClasses)
+        if (cacheKey != null) {
+            discoveryCache.store(cacheKey, collectedInfo.toCacheEntry())
+        }
+        return collectedInfo
+    }
+
+    /**
+     * When validation is enabled and all devices got test cases from the cache, collects test cases from one device
+     * and compares them with the cached ones. Stale entries are removed from the cache.
+     */
+    private suspend fun isCacheStale(
+            discoveryCache: TestDiscoveryCache,
+            collectedInfoResults: List<Result<CollectedInfo>>,
+            collectedClasses: List<String>
+    ): Boolean {
+        if (!context.configuration.isTestDiscoveryCacheValidationEnabled) {
+            return false
+        }
+        val collectedInfos = collectedInfoResults.map { it.getOrNull() }
+        if (collectedInfos.isEmpty() || collectedInfos.any { it?.cacheKey == null }) {
+            // Some test cases were just collected, so they are up to date
+            return false
+        }
+
+        val checkedInfo = collectedInfos.first()!!
+        val freshInfo = try {
+            collectTestsFromLogOnlyRun(checkedInfo.device, collectedClasses)
+        } catch (e: InterruptedException) {
+            throw e
+        } catch (e: Exception) {
+            logger.warn("Failed to validate cached test cases using ${checkedInfo.device.name}", e)
+            return false
+        }
+        if (freshInfo.toCacheEntry().isSameAs(checkedInfo.toCacheEntry())) {
+            logger.info("Cached test cases are the same as ones collected from ${checkedInfo.device.name}")
+            return false
+        }
+
+        collectedInfos
+                .mapNotNull { it?.cacheKey }
+                .distinct()
+                .forEach { discoveryCache.invalidate(it) }
+        return true
+    }
+
     private fun pullTestApkFromDevice(device: AndroidDevice): File {
         val adb = (device).deviceInterface
         val pathReceiver = CollectingOutputReceiver()
@@ -257,9 +442,12 @@ class JUnitTestCaseProvider(
                 }
     }
 
-    private suspend fun collectTestsFromLogOnlyRun(device: AndroidDevice): CollectedInfo {
+    private suspend fun collectTestsFromLogOnlyRun(
+            device: AndroidDevice,
+            collectedClasses: List<String>
+    ): CollectedInfo {
         var hasOnDeviceLibrary = true
-        var collectionResult = collectTestData(device, hasOnDeviceLibrary)
+        var collectionResult = collectTestData(device, collectedClasses, hasOnDeviceLibrary)
 
         collectionResult.second.let {
             if (it is TestCollectingListener.Result.Failed) {
@@ -268,7 +456,7 @@ class JUnitTestCaseProvider(
                         " Error is ${it.lastFailure}")
 
                 hasOnDeviceLibrary = false
-                collectionResult = collectTestData(device, hasOnDeviceLibrary)
+                collectionResult = collectTestData(device, collectedClasses, hasOnDeviceLibrary)
             }
         }
 
@@ -283,49 +471,109 @@ class JUnitTestCaseProvider(
                 }
             }
         }
-        val testInfoMessages = collectionResult.first
+        val rawTestInfos = collectionResult.first
 
-        hasOnDeviceLibrary = hasOnDeviceLibrary && testInfoMessages.isNotEmpty()
+        hasOnDeviceLibrary = hasOnDeviceLibrary && rawTestInfos.isNotEmpty()
 
-        val testInfos = tryCollectingAndDecodingInfos(testInfoMessages)
+        val testInfos = tryDecodingInfos(rawTestInfos)
 
-        return CollectedInfo(device, hasOnDeviceLibrary, deviceTests, testInfos)
+        return CollectedInfo(device, hasOnDeviceLibrary, deviceTests, testInfos, rawTestInfos)
     }
 
     private suspend fun collectTestData(
             device: AndroidDevice,
-            withOnDeviceLib: Boolean): Pair<List<LogCatMessage>, TestCollectingListener.Result> = withContext(Dispatchers.IO) {
+            collectedClasses: List<String>,
+            withOnDeviceLib: Boolean): Pair<List<JsonObject>, TestCollectingListener.Result> = withContext(Dispatchers.IO) {
         val testCollectingListener = TestCollectingListener()
         val logCatCollector = LogcatReceiver(device)
+        val remoteTestInfoFile = RemoteFileManager.remoteTestInfoFile()
         val testRun = testRunFactory.createCollectingRun(
-                device, context.pool, testCollectingListener, withOnDeviceLib)
+                device, context.pool, testCollectingListener, withOnDeviceLib, collectedClasses, remoteTestInfoFile)
         try {
             clearLogcat(device.deviceInterface)
             logCatCollector.start(this@JUnitTestCaseProvider.javaClass.simpleName)
 
             testRun.execute()
 
-            delay(logcatWaiterSleep) // make sure all logcat messages are read
-            logCatCollector.stop()
+            val collectingResult = testCollectingListener.result
+            val rawTestInfos = if (withOnDeviceLib && collectingResult is TestCollectingListener.Result.Successful) {
+                // Older versions of 'ondevice' library write test information only to logcat
+                tryPullingTestInfoFile(device, remoteTestInfoFile)
+                        ?: run {
+                            awaitTestInfoMessages(device, logCatCollector)
+                            logCatCollector.stop()
+                            tryDecodingMessages(logCatCollector.messages
+                                    .filter { logCatMessage -> testInfoTag == logCatMessage.tag }
+                                    .filterNot { logCatMessage -> logCatMessage.message.contains(endOfTestInfoMarker) }
+                            )
+                        }
+            } else {
+                emptyList()
+            }
 
-            Pair(
-                    logCatCollector.messages
-                            .filter { logCatMessage -> "Tongs.TestInfo" == logCatMessage.tag },
-                    testCollectingListener.result
-            )
+            Pair(rawTestInfos, collectingResult)
         } finally {
             logCatCollector.stop()
         }
     }
 
-    internal fun tryCollectingAndDecodingInfos(
-            testInfoMessages: List<LogCatMessage>
-    ): Map<TestIdentifier, TestInfo> {
+    /**
+     * Pulls information about tests written by 'ondevice' library to [remotePath] in one transfer
+     *
+     * @return null when the file can't be pulled or decoded
+     */
+    private fun tryPullingTestInfoFile(device: AndroidDevice, remotePath: String): List<JsonObject>? {
+        val localFile = Files.createTempFile("tongs-testinfo", ".ndjson").toFile()
+        return try {
+            device.deviceInterface.pullFile(remotePath, localFile.absolutePath)
+            decodeTestInfoFile(localFile)
+        } catch (e: Exception) {
+            logger.debug("Failed to get test information file from ${device.name}, reading it from logcat", e)
+            null
+        } finally {
+            localFile.delete()
+            RemoteFileManager.removeRemotePath(device.deviceInterface, remotePath)
+        }
+    }
+
+    /**
+     * Waits until all test information logged during a collecting run is read from logcat.
+     *
+     * Logcat is read in the order messages are logged, so a marker logged after the run ends is read after all of them.
+     */
+    private suspend fun awaitTestInfoMessages(device: AndroidDevice, logCatCollector: LogcatReceiver) {
+        val marker = "$endOfTestInfoMarker${UUID.randomUUID()}"
+        try {
+            device.deviceInterface.executeShellCommand("log -t $testInfoTag $marker", NullOutputReceiver())
+        } catch (e: Exception) {
+            logger.warn("Failed to log the end of test information on ${device.name}," +
+                    " waiting for it for a fixed time", e)
+            delay(logcatWaiterSleep)
+            return
+        }
+
+        val timeout = context.configuration.testCollectionLogcatTimeout
+        val isReceived = logCatCollector.awaitMessage(timeout) { logCatMessage ->
+            testInfoTag == logCatMessage.tag && logCatMessage.message.contains(marker)
+        }
+        if (!isReceived) {
+            logger.warn("Didn't receive the end of test information from ${device.name} in ${timeout}ms," +
+                    " some of the information might be missing")
+        }
+    }
+
+    private fun tryDecodingMessages(testInfoMessages: List<LogCatMessage>): List<JsonObject> {
         return try {
             decodeMessages(testInfoMessages)
-                    .let {
-                        jsonInfoDecoder.decodeStructure(it.toList())
-                    }
+        } catch (e: Exception) {
+            logger.warn("Failed to collect annotation and structure information about tests", e)
+            emptyList()
+        }
+    }
+
+    private fun tryDecodingInfos(rawTestInfos: List<JsonObject>): Map<TestIdentifier, TestInfo> {
+        return try {
+            jsonInfoDecoder.decodeStructure(rawTestInfos)
                     .asReversed() // make sure the first entry for duplicate keys is used
                     .associateBy { it.identifier }
         } catch (e: Exception) {
@@ -334,10 +582,38 @@ class JUnitTestCaseProvider(
         }
     }
 
+    /**
+     * @param rawInfos raw information about tests [infoMessages] are decoded from
+     * @param cacheKey key of the cache entry this info was loaded from, null when it was just collected
+     */
     private class CollectedInfo(
             val device: AndroidDevice,
             val hasOnDeviceLibrary: Boolean,
             val tests: Set<TestIdentifier>,
-            val infoMessages: Map<TestIdentifier, TestInfo>
+            val infoMessages: Map<TestIdentifier, TestInfo>,
+            val rawInfos: List<JsonObject>,
+            val cacheKey: String? = null
+    ) {
+        fun toCacheEntry() = TestDiscoveryCache.Entry(hasOnDeviceLibrary, tests, rawInfos)
+
+        /**
+         * Adds test cases discovered in the instrumentation APK to ones collected from [device]
+         */
+        fun withDiscoveredTests(discoveredTests: ApkTestInfoReader.DiscoveredTests) = CollectedInfo(
+                device,
+                hasOnDeviceLibrary,
+                tests + discoveredTests.tests.map { it.identifier },
+                infoMessages + discoveredTests.tests.associateBy { it.identifier },
+                rawInfos,
+                cacheKey
+        )
+    }
+
+    private fun ApkTestInfoReader.DiscoveredTests.toCollectedInfo(device: AndroidDevice) = CollectedInfo(
+            device,
+            hasOnDeviceLibrary,
+            tests.map { it.identifier }.toSet(),
+            tests.associateBy { it.identifier },
+            emptyList()
     )
 }
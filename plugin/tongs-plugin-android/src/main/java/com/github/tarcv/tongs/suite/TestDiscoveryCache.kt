@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.suite
+
+import com.android.ddmlib.testrunner.TestIdentifier
+import com.github.tarcv.tongs.api.TongsConfiguration
+import com.github.tarcv.tongs.runner.JsonInfoDecorder
+import com.github.tarcv.tongs.runner.TestInfo
+import com.github.tarcv.tongs.system.adb.ApkDigests
+import com.google.common.hash.Hashing
+import com.google.gson.GsonBuilder
+import com.google.gson.JsonObject
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * Keeps test cases collected from devices between runs, one file per [key].
+ *
+ * Collected test cases depend only on the test and application APKs, the device API level and parameters of
+ * the instrumentation, so a key is a digest of all of them.
+ */
+class TestDiscoveryCache(private val directory: File) {
+    private val gson = GsonBuilder().create()
+
+    /**
+     * @param collectedClasses test classes test cases are collected from, empty when all test cases are collected
+     * @return null when the key can't be computed, e.g. when the test APK is pulled from a device
+     */
+    fun key(configuration: TongsConfiguration, apiLevel: Int, collectedClasses: List<String>): String? {
+        val testApk = configuration.instrumentationApk ?: return null
+        val parts = listOf(
+                FORMAT_VERSION.toString(),
+                ApkDigests.sha256(testApk),
+                configuration.applicationApk?.let { ApkDigests.sha256(it) } ?: "",
+                apiLevel.toString(),
+                configuration.instrumentationPackage,
+                configuration.testRunnerClass,
+                configuration.testRunnerArguments.toSortedMap().toString(),
+                configuration.excludedAnnotation ?: "",
+                collectedClasses.sorted().joinToString(",")
+        )
+        @Suppress("UnstableApiUsage")
+        return Hashing.sha256()
+                .hashString(parts.joinToString("\n"), StandardCharsets.UTF_8)
+                .toString()
+    }
+
+    fun load(key: String): Entry? {
+        val file = fileFor(key)
+        if (!file.isFile) {
+            return null
+        }
+        return try {
+            file.bufferedReader(StandardCharsets.UTF_8).use { reader ->
+                gson.fromJson(reader, StoredEntry::class.java).toEntry()
+            }
+        } catch (e: Exception) {
+            logger.warn("Failed to read cached test cases from {}", file, e)
+            null
+        }
+    }
+
+    fun store(key: String, entry: Entry) {
+        val file = fileFor(key)
+        try {
+            directory.mkdirs()
+            // Pools are loaded in parallel, so write to a temporary file first to never expose partial files
+            val tempFile = File.createTempFile(key, ".tmp", directory)
+            tempFile.bufferedWriter(StandardCharsets.UTF_8).use { writer ->
+                gson.toJson(StoredEntry.fromEntry(entry), writer)
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        } catch (e: Exception) {
+            logger.warn("Failed to cache test cases to {}", file, e)
+        }
+    }
+
+    fun invalidate(key: String) {
+        fileFor(key).delete()
+    }
+
+    private fun fileFor(key: String) = File(directory, "$key.json")
+
+    /**
+     * @param testInfos raw information about tests reported by the 'ondevice' library
+     */
+    class Entry(
+            val hasOnDeviceLibrary: Boolean,
+            val tests: Set<TestIdentifier>,
+            val testInfos: List<JsonObject>
+    ) {
+        /**
+         * Compares decoded information about tests, as raw information also contains IDs of suite items
+         * that are different on each instrumentation run
+         */
+        fun isSameAs(other: Entry): Boolean {
+            if (hasOnDeviceLibrary != other.hasOnDeviceLibrary || tests != other.tests) {
+                return false
+            }
+            val decodedInfos = decodeInfos() ?: return false
+            return decodedInfos == other.decodeInfos()
+        }
+
+        private fun decodeInfos(): Set<TestInfo>? {
+            return try {
+                JsonInfoDecorder().decodeStructure(testInfos).toSet()
+            } catch (e: Exception) {
+                logger.warn("Failed to decode information about tests", e)
+                null
+            }
+        }
+    }
+
+    private class StoredEntry(
+            val hasOnDeviceLibrary: Boolean,
+            val tests: List<StoredTest>,
+            val testInfos: List<JsonObject>
+    ) {
+        fun toEntry() = Entry(
+                hasOnDeviceLibrary,
+                tests.map { TestIdentifier(it.className, it.testName) }.toSet(),
+                testInfos
+        )
+
+        companion object {
+            fun fromEntry(entry: Entry) = StoredEntry(
+                    entry.hasOnDeviceLibrary,
+                    entry.tests.map { StoredTest(it.className, it.testName) },
+                    entry.testInfos
+            )
+        }
+    }
+
+    private class StoredTest(val className: String, val testName: String)
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(TestDiscoveryCache::class.java)
+
+        /**
+         * Should be incremented when the format of cached files or the way test cases are collected changes
+         */
+        private const val FORMAT_VERSION = 1
+    }
+}
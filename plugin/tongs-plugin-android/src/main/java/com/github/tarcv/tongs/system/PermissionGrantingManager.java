@@ -12,33 +12,56 @@
 package com.github.tarcv.tongs.system;
 
 import com.android.ddmlib.*;
+import com.github.tarcv.tongs.device.DeviceState;
+import com.github.tarcv.tongs.system.adb.ShellCommandBatch;
+import com.github.tarcv.tongs.system.adb.ShellCommandResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.lang.String.format;
 
 public class PermissionGrantingManager {
 
-    private static final NullOutputReceiver NO_OP_RECEIVER = new NullOutputReceiver();
-
     private static final Logger logger = LoggerFactory.getLogger(PermissionGrantingManager.class);
 
+    private final boolean skipKnownPermissions;
+
+    public PermissionGrantingManager() {
+        this(false);
+    }
+
+    /**
+     * @param skipKnownPermissions whether permissions that are known to be already granted (or revoked)
+     *                             are not granted (or revoked) again
+     */
+    public PermissionGrantingManager(boolean skipKnownPermissions) {
+        this.skipKnownPermissions = skipKnownPermissions;
+    }
+
     public void revokePermissions(@Nonnull String applicationPackage,
                                   @Nonnull IDevice device,
-                                  @Nonnull List<String> permissionsToRevoke) {
+                                  @Nonnull List<String> permissions) {
+        List<String> permissionsToRevoke = skipKnownPermissions
+                ? DeviceState.of(device).permissionsToRevoke(applicationPackage, permissions)
+                : permissions;
         if (!permissionsToRevoke.isEmpty()) {
             final long start = System.currentTimeMillis();
+            ShellCommandBatch batch = new ShellCommandBatch();
             for (String permissionToRevoke : permissionsToRevoke) {
-                try {
-                    device.executeShellCommand(format("pm revoke %s %s",
-                            applicationPackage, permissionToRevoke), NO_OP_RECEIVER);
-                } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException | IOException e) {
-                    throw new UnsupportedOperationException(format("Unable to revoke permission %s", permissionToRevoke), e);
-                }
+                batch.add(format("pm revoke %s %s", applicationPackage, permissionToRevoke));
+            }
+            try {
+                List<ShellCommandResult> results = batch.execute(device);
+                logFailedCommands(results);
+                DeviceState.of(device).permissionsChanged(applicationPackage,
+                        changedPermissions(permissionsToRevoke, results), false);
+            } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException | IOException e) {
+                throw new UnsupportedOperationException(format("Unable to revoke permissions %s", permissionsToRevoke), e);
             }
 
             logger.debug("Revoking permissions: {} (took {}ms)", permissionsToRevoke, (System.currentTimeMillis() - start));
@@ -47,21 +70,48 @@ public class PermissionGrantingManager {
 
     public void grantPermissions(@Nonnull String applicationPackage,
                                   @Nonnull IDevice device,
-                                  @Nonnull List<String> permissionsToGrant) {
+                                  @Nonnull List<String> permissions) {
+        List<String> permissionsToGrant = skipKnownPermissions
+                ? DeviceState.of(device).permissionsToGrant(applicationPackage, permissions)
+                : permissions;
         if (!permissionsToGrant.isEmpty()) {
             final long start = System.currentTimeMillis();
+            ShellCommandBatch batch = new ShellCommandBatch();
             for (String permissionToGrant : permissionsToGrant) {
-                try {
-                    String command = format("pm grant %s %s", applicationPackage, permissionToGrant);
-                    logger.info("Cmd: " + command);
-                    device.executeShellCommand(command, NO_OP_RECEIVER);
-                } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException | IOException e) {
-                    throw new UnsupportedOperationException(format("Unable to grant permission %s", permissionToGrant), e);
-                }
+                String command = format("pm grant %s %s", applicationPackage, permissionToGrant);
+                logger.info("Cmd: " + command);
+                batch.add(command);
+            }
+            try {
+                List<ShellCommandResult> results = batch.execute(device);
+                logFailedCommands(results);
+                DeviceState.of(device).permissionsChanged(applicationPackage,
+                        changedPermissions(permissionsToGrant, results), true);
+            } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException | IOException e) {
+                throw new UnsupportedOperationException(format("Unable to grant permissions %s", permissionsToGrant), e);
             }
 
             logger.debug("Granting permissions: {} (took {}ms)", permissionsToGrant, (System.currentTimeMillis() - start));
         }
     }
 
+    private static List<String> changedPermissions(List<String> permissions, List<ShellCommandResult> results) {
+        List<String> changedPermissions = new ArrayList<>();
+        for (int i = 0; i < permissions.size(); i++) {
+            if (results.get(i).isSuccessful()) {
+                changedPermissions.add(permissions.get(i));
+            }
+        }
+        return changedPermissions;
+    }
+
+    private static void logFailedCommands(List<ShellCommandResult> results) {
+        for (ShellCommandResult result : results) {
+            if (!result.isSuccessful()) {
+                logger.warn("Command '{}' failed (exit code {}): {}", result.getCommand(), result.getExitCode(),
+                        result.getOutput());
+            }
+        }
+    }
+
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.system.adb
+
+import com.google.common.hash.Hashing
+import com.google.common.io.Files
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * SHA-256 digests of local APKs. The same APKs are used for every device, so each of them is hashed once per run
+ * (unless it is modified).
+ */
+object ApkDigests {
+    private val digests = ConcurrentHashMap<File, Digest>()
+
+    @JvmStatic
+    fun sha256(apk: File): String {
+        val key = apk.absoluteFile
+        val lastModified = key.lastModified()
+        val length = key.length()
+        digests[key]
+            ?.takeIf { it.lastModified == lastModified && it.length == length }
+            ?.let { return it.value }
+
+        @Suppress("UnstableApiUsage")
+        val digest = Files.asByteSource(key).hash(Hashing.sha256()).toString()
+        digests[key] = Digest(lastModified, length, digest)
+        return digest
+    }
+
+    private class Digest(val lastModified: Long, val length: Long, val value: String)
+}
@@ -27,6 +27,7 @@ import com.android.ddmlib.DdmPreferences;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.Log;
 import com.github.tarcv.tongs.api.devices.Device;
+import com.github.tarcv.tongs.api.devices.DeviceChangeListener;
 import com.github.tarcv.tongs.device.DeviceGeometryRetriever;
 import com.github.tarcv.tongs.device.DeviceLoader;
 import com.google.common.base.Joiner;
@@ -34,6 +35,7 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
@@ -43,11 +45,16 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * DeviceProvider for locally connected devices. Basically returns the list of devices that
- * are currently connected at the time {@link #init()} is called.
+ * are currently connected at the time {@link #init()} is called. Devices connected or disconnected later
+ * are reported to listeners added with {@link #addDeviceChangeListener(DeviceChangeListener)}.
  */
 public class ConnectedDeviceProvider {
 
@@ -59,6 +66,15 @@ public class ConnectedDeviceProvider {
 
     private final List<Device> localDevices = Lists.newArrayList();
 
+    private final Map<DeviceChangeListener, BridgeListener> bridgeListeners = new ConcurrentHashMap<>();
+
+    /**
+     * Loading characteristics of a device takes several ADB commands, so it is done off the ADB monitor thread.
+     * One thread keeps notifications in the order of ADB events.
+     */
+    private final ExecutorService notificationExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("DeviceChanges-%d").setDaemon(true).build());
+
     public ConnectedDeviceProvider(DeviceGeometryRetriever deviceGeometryRetriever, File adbLocation) {
         this.adbLocation = adbLocation;
         this.deviceGeometryRetriever = deviceGeometryRetriever;
@@ -135,6 +151,24 @@ public class ConnectedDeviceProvider {
         }
     }
 
+    /**
+     * Starts reporting devices that become online or offline after {@link #init()} was called.
+     * Devices filtered out by the ANDROID_SERIAL environment variable are not reported.
+     */
+    public void addDeviceChangeListener(DeviceChangeListener listener) {
+        BridgeListener bridgeListener = new BridgeListener(listener, asSerialsFilter(System.getenv("ANDROID_SERIAL")));
+        if (bridgeListeners.putIfAbsent(listener, bridgeListener) == null) {
+            AndroidDebugBridge.addDeviceChangeListener(bridgeListener);
+        }
+    }
+
+    public void removeDeviceChangeListener(DeviceChangeListener listener) {
+        BridgeListener bridgeListener = bridgeListeners.remove(listener);
+        if (bridgeListener != null) {
+            AndroidDebugBridge.removeDeviceChangeListener(bridgeListener);
+        }
+    }
+
     @Nullable
     private static Set<String> asSerialsFilter(String androidSerialsEnv) {
         final Set<String> serialsFilter;
@@ -219,6 +253,79 @@ public class ConnectedDeviceProvider {
 
     }
 
+    private final class BridgeListener implements AndroidDebugBridge.IDeviceChangeListener {
+        private final DeviceChangeListener listener;
+
+        @Nullable
+        private final Set<String> serialsFilter;
+
+        /**
+         * Online devices by serial, only updated from the notification thread
+         */
+        private final Map<String, Device> onlineDevices = new ConcurrentHashMap<>();
+
+        private BridgeListener(DeviceChangeListener listener, @Nullable Set<String> serialsFilter) {
+            this.listener = listener;
+            this.serialsFilter = serialsFilter;
+            for (Device device : localDevices) {
+                onlineDevices.put(device.getSerial(), device);
+            }
+        }
+
+        @Override
+        public void deviceConnected(IDevice device) {
+            if (device.getState() == IDevice.DeviceState.ONLINE) {
+                notificationExecutor.execute(() -> onOnline(device));
+            }
+        }
+
+        @Override
+        public void deviceDisconnected(IDevice device) {
+            notificationExecutor.execute(() -> onOffline(device));
+        }
+
+        @Override
+        public void deviceChanged(IDevice device, int changeMask) {
+            if ((changeMask & IDevice.CHANGE_STATE) == 0) {
+                return;
+            }
+            if (device.getState() == IDevice.DeviceState.ONLINE) {
+                notificationExecutor.execute(() -> onOnline(device));
+            } else {
+                notificationExecutor.execute(() -> onOffline(device));
+            }
+        }
+
+        private void onOnline(IDevice device) {
+            String serial = device.getSerialNumber();
+            if ((serialsFilter != null && !serialsFilter.contains(serial)) || onlineDevices.containsKey(serial)) {
+                return;
+            }
+            try {
+                Device deviceInfo = DeviceLoader.loadDeviceCharacteristics(device, deviceGeometryRetriever);
+                boolean hasSameName = onlineDevices.values().stream()
+                        .anyMatch(it -> it.getName().equals(deviceInfo.getName()));
+                if (hasSameName) {
+                    deviceInfo.setNameSuffix(serial);
+                }
+                onlineDevices.put(serial, deviceInfo);
+                logger.info("Device {} ({}) became online", deviceInfo.getName(), serial);
+                listener.deviceConnected(deviceInfo);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to load characteristics of device {} that became online", serial, e);
+            }
+        }
+
+        private void onOffline(IDevice device) {
+            Device deviceInfo = onlineDevices.remove(device.getSerialNumber());
+            if (deviceInfo != null) {
+                logger.info("Device {} ({}) became {}", deviceInfo.getName(), deviceInfo.getSerial(),
+                        device.getState() == null ? "disconnected" : device.getState());
+                listener.deviceDisconnected(deviceInfo);
+            }
+        }
+    }
+
     private static final class LogAdapter implements Log.ILogOutput {
 
         private final Logger logger;
@@ -12,20 +12,45 @@
  */
 package com.github.tarcv.tongs.system.adb
 
+import com.android.ddmlib.CollectingOutputReceiver
+import com.android.ddmlib.IDevice
 import com.android.ddmlib.InstallException
+import com.github.tarcv.tongs.device.DeviceState
 import com.github.tarcv.tongs.model.AndroidDevice
 import com.github.tarcv.tongs.util.repeatUntilSuccessful
 import org.slf4j.LoggerFactory
 import java.io.File
+import java.util.concurrent.Semaphore
 
-class PackageInstaller(
+/**
+ * Installs application and test APKs from scratch.
+ *
+ * When [reuseMatchingInstallation] is true, a package is not reinstalled when the APK installed on a device
+ * has the same SHA-256 digest as the local one, its data is cleared with `pm clear` instead.
+ * The package is reinstalled when the digest of the installed APK can't be read.
+ *
+ * APKs are pushed to a staging path on devices and installed from there. Only pushes go through the ADB server, so
+ * at most [MAX_PARALLEL_PUSHES] of them run at once, while installations on devices run in parallel.
+ */
+class PackageInstaller @JvmOverloads constructor(
     private val appApk: File?,
     private val appPackage: String,
     private val testApk: File?,
-    private val testPackage: String
+    private val testPackage: String,
+    private val reuseMatchingInstallation: Boolean = false
 ) {
     companion object {
         val logger = LoggerFactory.getLogger(PackageInstaller::class.java)
+
+        /**
+         * All devices are served by the only ADB server of this process, which slows down
+         * when it transfers too many files at once
+         */
+        const val MAX_PARALLEL_PUSHES = 8
+
+        private const val STAGING_DIRECTORY = "/data/local/tmp"
+
+        private val pushPermits = Semaphore(MAX_PARALLEL_PUSHES, true)
     }
 
     fun resetInstallation(device: AndroidDevice) {
@@ -39,6 +64,11 @@ class PackageInstaller(
 
     private fun doResetInstallation(device: AndroidDevice, apk: File, packageId: String) {
         val deviceInterface = device.deviceInterface
+        DeviceState.of(deviceInterface).forgetPackage(packageId)
+        if (reuseMatchingInstallation && tryClearMatchingInstallation(deviceInterface, apk, packageId)) {
+            return
+        }
+
         try {
             deviceInterface.uninstallPackage(packageId)
         } catch (e: InstallException) {
@@ -52,7 +82,78 @@ class PackageInstaller(
                 //      an older app is requested
                 // -t -- allow installing test-only packages. It is required as often builds for UI-testing are often
                 //      marked as test-only ones.
-                deviceInterface.installPackage(apk.absolutePath, true, "-t", "-d")
+                installStagedPackage(deviceInterface, apk, packageId, "-t", "-d")
+            }
+    }
+
+    private fun installStagedPackage(deviceInterface: IDevice, apk: File, packageId: String, vararg extraArgs: String) {
+        val remotePath = "$STAGING_DIRECTORY/tongs-$packageId.apk"
+        pushPermits.acquire()
+        try {
+            deviceInterface.pushFile(apk.absolutePath, remotePath)
+        } catch (e: InstallException) {
+            throw e
+        } catch (e: Exception) {
+            throw InstallException(e)
+        } finally {
+            pushPermits.release()
+        }
+
+        try {
+            deviceInterface.installRemotePackage(remotePath, true, *extraArgs)
+        } finally {
+            try {
+                deviceInterface.removeRemotePackage(remotePath)
+            } catch (e: InstallException) {
+                logger.warn("Failed to remove $remotePath from ${deviceInterface.name}", e)
             }
+        }
+    }
+
+    /**
+     * Clears data of [packageId] when the APK installed on the device is the same as [apk]
+     *
+     * @return false when the package should be reinstalled
+     */
+    private fun tryClearMatchingInstallation(deviceInterface: IDevice, apk: File, packageId: String): Boolean {
+        return try {
+            val installedPaths = executeShellCommand(deviceInterface, "pm path $packageId")
+                .lines()
+                .map { it.trim() }
+                .filter { it.startsWith("package:") }
+                .map {
+                    it.removePrefix("package:")
+                        // some devices output '=com.package.test' at the end of this line:
+                        .replaceFirst(Regex("""=[\w.]+$"""), "")
+                }
+            // Not installed yet, or installed from split APKs that can't be compared with one local file
+            val installedPath = installedPaths.singleOrNull() ?: return false
+
+            val installedDigest = executeShellCommand(deviceInterface, "sha256sum $installedPath")
+                .trim()
+                .substringBefore(' ')
+            if (!installedDigest.equals(ApkDigests.sha256(apk), ignoreCase = true)) {
+                logger.info("Installed $packageId on ${deviceInterface.name} differs from $apk, reinstalling it")
+                return false
+            }
+
+            val clearOutput = executeShellCommand(deviceInterface, "pm clear $packageId")
+            if (!clearOutput.contains("Success")) {
+                logger.warn("Failed to clear data of $packageId on ${deviceInterface.name}: ${clearOutput.trim()}")
+                return false
+            }
+            logger.info("Installed $packageId on ${deviceInterface.name} matches $apk, " +
+                    "cleared its data instead of reinstalling")
+            true
+        } catch (e: Exception) {
+            logger.warn("Failed to check installed $packageId on ${deviceInterface.name}, reinstalling it", e)
+            false
+        }
+    }
+
+    private fun executeShellCommand(deviceInterface: IDevice, command: String): String {
+        val receiver = CollectingOutputReceiver()
+        deviceInterface.executeShellCommand(command, receiver)
+        return receiver.output
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.system.adb
+
+import com.android.ddmlib.AdbCommandRejectedException
+import com.android.ddmlib.CollectingOutputReceiver
+import com.android.ddmlib.IDevice
+import com.android.ddmlib.ShellCommandUnresponsiveException
+import com.android.ddmlib.TimeoutException
+import java.io.IOException
+
+/**
+ * Executes several shell commands in one ADB shell connection, so they take one round trip instead of one per command.
+ *
+ * Each command is followed by a marker with its exit code, so its output and exit code are reported separately
+ * from other commands. Commands are executed sequentially, a failing command doesn't stop the following ones.
+ */
+class ShellCommandBatch {
+    private val commands = ArrayList<String>()
+
+    fun add(command: String): ShellCommandBatch {
+        commands.add(command)
+        return this
+    }
+
+    val isEmpty: Boolean
+        get() = commands.isEmpty()
+
+    /**
+     * @return a result for each added command, in the same order
+     */
+    @Throws(
+            TimeoutException::class,
+            AdbCommandRejectedException::class,
+            ShellCommandUnresponsiveException::class,
+            IOException::class
+    )
+    fun execute(device: IDevice): List<ShellCommandResult> {
+        if (commands.isEmpty()) {
+            return emptyList()
+        }
+        val receiver = CollectingOutputReceiver()
+        device.executeShellCommand(buildCommandLine(commands), receiver)
+        return parseOutput(commands, receiver.output)
+    }
+
+    companion object {
+        private const val EXIT_CODE_MARKER = "__TONGS_EXIT_CODE_"
+
+        internal fun buildCommandLine(commands: List<String>): String {
+            // The empty line keeps the marker on its own line when a command output doesn't end with a newline
+            return commands
+                    .mapIndexed { index, command ->
+                        "$command; tongs_exit_code=\$?; echo; echo \"$EXIT_CODE_MARKER$index:\$tongs_exit_code\""
+                    }
+                    .joinToString("; ")
+        }
+
+        internal fun parseOutput(commands: List<String>, output: String): List<ShellCommandResult> {
+            val exitCodeLine = Regex("""^$EXIT_CODE_MARKER(\d+):(\d+)$""")
+            val results = ArrayList<ShellCommandResult>(commands.size)
+            val commandOutput = StringBuilder()
+            output.lineSequence()
+                    .map { it.removeSuffix("\r") }
+                    .forEach { line ->
+                        val match = exitCodeLine.matchEntire(line)
+                        if (match != null && match.groupValues[1].toInt() == results.size) {
+                            val exitCode = match.groupValues[2].toInt()
+                            val command = commands[results.size]
+                            results.add(ShellCommandResult(command, commandOutput.trim().toString(), exitCode))
+                            commandOutput.setLength(0)
+                        } else if (results.size < commands.size) {
+                            commandOutput.append(line).append('\n')
+                        }
+                    }
+
+            // The shell connection was closed before all commands finished
+            while (results.size < commands.size) {
+                results.add(ShellCommandResult(commands[results.size], commandOutput.trim().toString(), null))
+                commandOutput.setLength(0)
+            }
+            return results
+        }
+    }
+}
+
+/**
+ * @param exitCode null when the command didn't finish
+ */
+data class ShellCommandResult(val command: String, val output: String, val exitCode: Int?) {
+    val isSuccessful: Boolean
+        get() = exitCode == 0
+}
@@ -16,10 +16,13 @@ package com.github.tarcv.tongs.system.io;
 import com.android.ddmlib.*;
 import com.github.tarcv.tongs.api.testcases.TestCase;
 import com.github.tarcv.tongs.system.DdmsUtils;
+import com.github.tarcv.tongs.system.adb.ShellCommandBatch;
+import com.github.tarcv.tongs.system.adb.ShellCommandResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -48,6 +51,25 @@ public class RemoteFileManager {
         executeCommand(device, "rm -r " + TONGS_DIRECTORY, "Could not delete remote directory: " + TONGS_DIRECTORY);
     }
 
+    /**
+     * Removes files left by previous runs, same as {@link #removeRemoteDirectory} followed by
+     * {@link #createRemoteDirectory}, but in one shell connection
+     */
+    public static void recreateRemoteDirectory(IDevice device) {
+        try {
+            List<ShellCommandResult> results = new ShellCommandBatch()
+                    .add("rm -r " + TONGS_DIRECTORY)
+                    .add("mkdir " + TONGS_DIRECTORY)
+                    .execute(device);
+            ShellCommandResult mkdirResult = results.get(1);
+            if (!mkdirResult.isSuccessful()) {
+                logger.error("Could not create remote directory: {} ({})", TONGS_DIRECTORY, mkdirResult.getOutput());
+            }
+        } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException | IOException e) {
+            logger.error("Could not recreate remote directory: " + TONGS_DIRECTORY, e);
+        }
+    }
+
     private static void executeCommand(IDevice device, String command, String errorMessage) {
         try {
             device.executeShellCommand(command, NO_OP_RECEIVER);
@@ -56,6 +78,11 @@ public class RemoteFileManager {
         }
     }
 
+    private static final AtomicInteger testInfoIndex = new AtomicInteger();
+    public static String remoteTestInfoFile() {
+        return remoteFileForTest(String.format("testinfo%x.ndjson", testInfoIndex.getAndIncrement()));
+    }
+
     private static final AtomicInteger videoIndex = new AtomicInteger();
     public static String remoteVideoForTest() {
         // Incrementing is ok as this method is called only once for each test attempt
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.device
+
+import com.github.tarcv.tongs.api.TongsConfiguration.AppResetPolicy
+import org.junit.Assert
+import org.junit.Test
+
+class DeviceStateTest {
+    @Test
+    fun testAppIsResetWhenItsStateIsUnknown() {
+        AppResetPolicy.values().forEach { policy ->
+            val state = DeviceState()
+            Assert.assertTrue(policy.name, state.shouldResetApp(policy, 10, "Class1", false))
+
+            state.testCaseStarted("Class1", true)
+            state.forgetAll()
+            Assert.assertTrue(policy.name, state.shouldResetApp(policy, 10, "Class1", false))
+        }
+    }
+
+    @Test
+    fun testAppIsResetPerClass() {
+        val policy = AppResetPolicy.PER_CLASS
+
+        val resets = runTestCases(listOf("Class1", "Class1", "Class2", "Class2", "Class1")) { state, testClass ->
+            state.shouldResetApp(policy, 0, testClass, false)
+        }
+
+        Assert.assertEquals(listOf(true, false, true, false, true), resets)
+    }
+
+    @Test
+    fun testAppIsResetEveryNTests() {
+        val policy = AppResetPolicy.EVERY_N_TESTS
+
+        val resets = runTestCases(List(7) { "Class1" }) { state, testClass ->
+            state.shouldResetApp(policy, 3, testClass, false)
+        }
+
+        Assert.assertEquals(listOf(true, false, false, true, false, false, true), resets)
+    }
+
+    @Test
+    fun testAppIsResetAfterFailure() {
+        val policy = AppResetPolicy.AFTER_FAILURE
+        val state = DeviceState()
+        state.testCaseStarted("Class1", true)
+        state.testCaseFinished(false)
+        Assert.assertFalse(state.shouldResetApp(policy, 0, "Class1", false))
+
+        state.testCaseStarted("Class1", false)
+        state.testCaseFinished(true)
+        Assert.assertTrue(state.shouldResetApp(policy, 0, "Class1", false))
+
+        state.testCaseStarted("Class1", true)
+        Assert.assertFalse(state.shouldResetApp(policy, 0, "Class1", false))
+    }
+
+    @Test
+    fun testAppIsResetOnlyWhenRequested() {
+        val policy = AppResetPolicy.ANNOTATED
+        val state = DeviceState()
+        state.testCaseStarted("Class1", true)
+
+        Assert.assertFalse(state.shouldResetApp(policy, 0, "Class2", false))
+        Assert.assertTrue(state.shouldResetApp(policy, 0, "Class2", true))
+    }
+
+    @Test
+    fun testOnlyPermissionsWithUnknownStateAreChanged() {
+        val state = DeviceState()
+        state.permissionsChanged("app", listOf("CAMERA"), true)
+        state.permissionsChanged("app", listOf("LOCATION"), false)
+
+        Assert.assertEquals(listOf("LOCATION", "CONTACTS"),
+                state.permissionsToGrant("app", listOf("CAMERA", "LOCATION", "CONTACTS")))
+        Assert.assertEquals(listOf("CAMERA", "CONTACTS"),
+                state.permissionsToRevoke("app", listOf("CAMERA", "LOCATION", "CONTACTS")))
+
+        state.forgetPackage("app")
+        Assert.assertEquals(listOf("CAMERA"), state.permissionsToGrant("app", listOf("CAMERA")))
+    }
+
+    private fun runTestCases(
+            testClasses: List<String>,
+            shouldReset: (DeviceState, String) -> Boolean
+    ): List<Boolean> {
+        val state = DeviceState()
+        return testClasses.map { testClass ->
+            val reset = shouldReset(state, testClass)
+            state.testCaseStarted(testClass, reset)
+            state.testCaseFinished(false)
+            reset
+        }
+    }
+}
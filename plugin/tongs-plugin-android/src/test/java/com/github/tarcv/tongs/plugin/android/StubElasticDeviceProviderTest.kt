@@ -0,0 +1,70 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.plugin.android
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.DeviceChangeListener
+import com.github.tarcv.tongs.api.devices.DeviceDemand
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.devices.PoolDemand
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.CopyOnWriteArrayList
+
+class StubElasticDeviceProviderTest {
+    private val pool = Pool.Builder.aDevicePool()
+            .withName("pool")
+            .build()
+
+    @Test(timeout = 10_000)
+    fun testDevicesAreBootedForQueuedWorkAndShutDownWhenPoolDrains() {
+        val provider = StubElasticDeviceProvider(200, 3, 10)
+        val initialDevices = provider.provideDevices()
+        val listener = RecordingListener()
+        provider.addDeviceChangeListener(listener)
+
+        provider.onDemandChanged(demand(25, initialDevices))
+        // Devices that are still booting are not booted again
+        provider.onDemandChanged(demand(25, initialDevices))
+        Assert.assertTrue("Booting should take time", listener.connected.isEmpty())
+
+        while (listener.connected.size < 2) {
+            Thread.sleep(50)
+        }
+        provider.onDemandChanged(demand(25, initialDevices + listener.connected))
+        Thread.sleep(400)
+        Assert.assertEquals(2, listener.connected.size)
+        Assert.assertTrue(listener.disconnected.isEmpty())
+
+        provider.onDemandChanged(demand(0, initialDevices + listener.connected))
+        Assert.assertEquals(listener.connected.toSet(), listener.disconnected.toSet())
+        Assert.assertTrue(listener.disconnected.none { it in initialDevices })
+    }
+
+    private fun demand(queuedTestCases: Int, devices: Set<Device>): DeviceDemand {
+        return DeviceDemand(listOf(PoolDemand(pool, queuedTestCases, 0, 0, devices)))
+    }
+
+    private class RecordingListener : DeviceChangeListener {
+        val connected = CopyOnWriteArrayList<Device>()
+        val disconnected = CopyOnWriteArrayList<Device>()
+
+        override fun deviceConnected(device: Device) {
+            connected += device
+        }
+
+        override fun deviceDisconnected(device: Device) {
+            disconnected += device
+        }
+    }
+}
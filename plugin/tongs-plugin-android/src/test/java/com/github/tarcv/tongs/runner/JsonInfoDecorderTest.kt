@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import org.junit.Assert
+import org.junit.Test
+
+class JsonInfoDecorderTest {
+    private var lastId = 0
+
+    @Test
+    fun testPathsInDeepSuiteTree() {
+        val messages = ArrayList<JsonObject>()
+        suite("root", depth = 8, branches = 2, testsPerClass = 3, messages = messages)
+
+        val infos = JsonInfoDecorder().decodeStructure(messages)
+
+        Assert.assertEquals(256 * 3, infos.size)
+        infos.forEach {
+            Assert.assertEquals(expectedPath(it.identifier.className, it.identifier.testName), it.readablePath)
+        }
+    }
+
+    @Test
+    fun testItemsAreMatchedByAnyId() {
+        val messages = listOf(
+                message(1, 1, "root", listOf("10-20-Class1", "-11--21-Class2")),
+                // Same unique ID, another name
+                message(10, 0, "Renamed", listOf("30-40-test1(Class1)")),
+                testMessage(30, 40, "test1(Class1)", "Class1", "test1"),
+                // Same name, other IDs
+                message(0, 0, "Class2", listOf("-31--41-test2(Class2)")),
+                // Same semi-unique ID
+                testMessage(0, -41, "Other", "Class2", "test2")
+        )
+
+        val infos = JsonInfoDecorder().decodeStructure(messages)
+
+        Assert.assertEquals(listOf("root", "Class1", "test1(Class1)"), infos[0].readablePath)
+        Assert.assertEquals(listOf("root", "Class2", "test2(Class2)"), infos[1].readablePath)
+    }
+
+    @Test
+    fun testLastAddedItemIsMatched() {
+        val messages = listOf(
+                message(1, 1, "root", listOf("10-20-Class1", "11-21-Class2")),
+                // Matches Class1 by the unique ID and Class2 (added later) by the name
+                message(10, 0, "Class2", listOf("30-40-test1(Class2)")),
+                testMessage(30, 40, "test1(Class2)", "Class2", "test1")
+        )
+
+        val infos = JsonInfoDecorder().decodeStructure(messages)
+
+        Assert.assertEquals(listOf("root", "Class2", "test1(Class2)"), infos[0].readablePath)
+    }
+
+    @Test
+    fun testChildIdIsSplitOnDashesAfterDigits() {
+        val decoder = JsonInfoDecorder()
+
+        Assert.assertEquals(listOf("1", "2", "name"), decoder.splitChildId("1-2-name"))
+        Assert.assertEquals(listOf("-1", "-2", "-name-1-2"), decoder.splitChildId("-1--2--name-1-2"))
+        Assert.assertEquals(listOf("10", "-20", "a-b"), decoder.splitChildId("10--20-a-b"))
+    }
+
+    @Test(timeout = 10_000)
+    fun testLargeSuiteTreesAreDecoded() {
+        // A wide class is the worst case for matching items by scanning all unbound items
+        val wideMessages = ArrayList<JsonObject>()
+        suite("root", depth = 1, branches = 1, testsPerClass = 50_000, messages = wideMessages)
+        val deepMessages = ArrayList<JsonObject>()
+        suite("root", depth = 12, branches = 2, testsPerClass = 2, messages = deepMessages)
+
+        val wideInfos = JsonInfoDecorder().decodeStructure(wideMessages)
+        val deepInfos = JsonInfoDecorder().decodeStructure(deepMessages)
+
+        Assert.assertEquals(50_000, wideInfos.size)
+        Assert.assertEquals(8192, deepInfos.size)
+        (wideInfos.asSequence() + deepInfos.asSequence()).forEach {
+            Assert.assertEquals(expectedPath(it.identifier.className, it.identifier.testName), it.readablePath)
+        }
+    }
+
+    /**
+     * Adds messages for a suite in the order the filter reports them (parents before their children)
+     */
+    private fun suite(
+            name: String,
+            depth: Int,
+            branches: Int,
+            testsPerClass: Int,
+            messages: MutableList<JsonObject>,
+            id: Int = ++lastId
+    ) {
+        if (depth == 0) {
+            val tests = (0 until testsPerClass).map { Triple(++lastId, "test$it", "test$it($name)") }
+            messages += message(id, -id, name, tests.map { (testId, _, testName) -> "$testId-${-testId}-$testName" })
+            tests.forEach { (testId, method, testName) ->
+                messages += testMessage(testId, -testId, testName, name, method)
+            }
+        } else {
+            val children = (0 until branches).map { Pair(++lastId, "${name}_$it") }
+            val childIds = children.map { (childId, childName) -> "$childId-${-childId}-$childName" }
+            messages += message(id, -id, name, childIds)
+            children.forEach { (childId, childName) ->
+                suite(childName, depth - 1, branches, testsPerClass, messages, childId)
+            }
+        }
+    }
+
+    private fun expectedPath(testClass: String, testMethod: String): List<String> {
+        val suites = testClass.split("_")
+                .let { parts -> (1..parts.size).map { parts.take(it).joinToString("_") } }
+        return suites + "$testMethod($testClass)"
+    }
+
+    private fun message(uniqueId: Int, semiUniqueId: Int, name: String, children: List<String>) = JsonObject().apply {
+        addProperty("sId1", uniqueId)
+        addProperty("sId2", semiUniqueId)
+        addProperty("sName", name)
+        add("sChildren", JsonArray().apply { children.forEach { add(it) } })
+    }
+
+    private fun testMessage(
+            uniqueId: Int,
+            semiUniqueId: Int,
+            name: String,
+            testClass: String,
+            testMethod: String
+    ) = message(uniqueId, semiUniqueId, name, emptyList()).apply {
+        addProperty("testPackage", "com.example")
+        addProperty("testClass", testClass)
+        addProperty("testMethod", testMethod)
+    }
+}
@@ -93,4 +93,40 @@ class ApkReaderTest {
         val result = ApkTestInfoReader().readTestInfo(apk, testsToCheck)
         Assert.assertEquals(expectedResult, result)
     }
+
+    @Test
+    fun testDiscovery() {
+        val apk = File("../../tests/app/app/build/outputs/apk/androidTest/f1/debug/app-f1-debug-androidTest.apk")
+
+        val result = ApkTestInfoReader().discoverTests(apk, null)
+
+        Assert.assertTrue(result.tests.contains(
+                TestInfo(
+                        TestIdentifier(
+                                "com.github.tarcv.test.happy.GrantPermissionsForInheritedClassTest",
+                                "testPermissionGranted1"
+                        ),
+                        "com.github.tarcv.test.happy",
+                        emptyList(),
+                        listOf(
+                                AnnotationInfo("com.github.tarcv.tongs.GrantPermission", mapOf(
+                                        "value" to listOf("android.permission.WRITE_CALENDAR")
+                                )),
+                                AnnotationInfo("org.junit.Test", emptyMap())
+                        )
+                )
+        ))
+        Assert.assertTrue(result.unresolvedClasses.contains("com.github.tarcv.test.happy.ParameterizedNamedTest"))
+        Assert.assertTrue(result.tests.none {
+            it.identifier.className == "com.github.tarcv.test.happy.ParameterizedNamedTest"
+        })
+
+        // Some methods are annotated with @SdkSuppress, so only devices know which of them they execute
+        Assert.assertTrue(
+                result.unresolvedClasses.contains("com.github.tarcv.test.happy.NoPermissionsForOverridesTest")
+        )
+        Assert.assertTrue(result.tests.none {
+            it.identifier.className == "com.github.tarcv.test.happy.NoPermissionsForOverridesTest"
+        })
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.suite
+
+import com.android.ddmlib.testrunner.TestIdentifier
+import com.google.gson.JsonArray
+import com.google.gson.JsonObject
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class TestDiscoveryCacheTest {
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private val tests = setOf(TestIdentifier("com.example.Test", "test1"), TestIdentifier("com.example.Test", "test2"))
+    private val entry = TestDiscoveryCache.Entry(true, tests, testInfos(idBase = 100))
+
+    @Test
+    fun testStoredEntryIsLoaded() {
+        val cache = TestDiscoveryCache(temporaryFolder.root)
+
+        cache.store("key1", entry)
+
+        val loadedEntry = cache.load("key1")
+        Assert.assertNotNull(loadedEntry)
+        Assert.assertTrue(loadedEntry!!.isSameAs(entry))
+        Assert.assertNull(cache.load("key2"))
+    }
+
+    @Test
+    fun testInvalidatedEntryIsNotLoaded() {
+        val cache = TestDiscoveryCache(temporaryFolder.root)
+        cache.store("key1", entry)
+
+        cache.invalidate("key1")
+
+        Assert.assertNull(cache.load("key1"))
+    }
+
+    @Test
+    fun testCorruptedEntryIsNotLoaded() {
+        val cache = TestDiscoveryCache(temporaryFolder.root)
+        File(temporaryFolder.root, "key1.json").writeText("{\"tests\": [")
+
+        Assert.assertNull(cache.load("key1"))
+    }
+
+    @Test
+    fun testEntriesWithDifferentTestsAreNotSame() {
+        val otherEntry = TestDiscoveryCache.Entry(
+                true,
+                setOf(TestIdentifier("com.example.Test", "test1")),
+                testInfos(idBase = 100)
+        )
+
+        Assert.assertFalse(entry.isSameAs(otherEntry))
+    }
+
+    @Test
+    fun testEntriesFromDifferentRunsAreSame() {
+        // IDs of suite items are based on identity hash codes, so they are different on each run
+        val otherEntry = TestDiscoveryCache.Entry(true, tests, testInfos(idBase = 200))
+
+        Assert.assertTrue(entry.isSameAs(otherEntry))
+    }
+
+    @Test
+    fun testEntriesWithDifferentAnnotationsAreNotSame() {
+        val otherEntry = TestDiscoveryCache.Entry(true, tests, testInfos(idBase = 200, annotation = "org.junit.Ignore"))
+
+        Assert.assertFalse(entry.isSameAs(otherEntry))
+    }
+
+    /**
+     * Builds raw information the 'ondevice' library reports for 'com.example.Test' with 'test1' and 'test2'
+     */
+    private fun testInfos(idBase: Int, annotation: String = "org.junit.Test"): List<JsonObject> {
+        val classId = idBase + 1
+        val testIds = listOf(idBase + 2, idBase + 3)
+        val testNames = listOf("test1", "test2")
+        val classMessage = message(classId, "com.example.Test",
+                testIds.zip(testNames) { id, name -> "$id-${-id}-$name(com.example.Test)" })
+        val testMessages = testIds.zip(testNames) { id, name ->
+            message(id, "$name(com.example.Test)", emptyList()).apply {
+                addProperty("testPackage", "com.example")
+                addProperty("testClass", "com.example.Test")
+                addProperty("testMethod", name)
+                add("annotations", JsonArray().apply {
+                    add(JsonObject().apply { addProperty("annotationType", annotation) })
+                })
+            }
+        }
+        return listOf(
+                message(idBase, "root", listOf("$classId-${-classId}-com.example.Test")),
+                classMessage
+        ) + testMessages
+    }
+
+    private fun message(id: Int, name: String, children: List<String>) = JsonObject().apply {
+        addProperty("sId1", id)
+        addProperty("sId2", -id)
+        addProperty("sName", name)
+        add("sChildren", JsonArray().apply { children.forEach { add(it) } })
+    }
+}
@@ -13,9 +13,14 @@ package com.github.tarcv.tongs.suite
 import com.android.ddmlib.Log
 import com.android.ddmlib.logcat.LogCatMessage
 import org.junit.Assert
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 
 class TestInfoCatCollectorTest {
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
     @Test
     fun testSingleThread() {
         val finalResult = JUnitTestCaseProvider.decodeMessages(
@@ -51,4 +56,17 @@ class TestInfoCatCollectorTest {
         Assert.assertEquals(0, resultObject.get("a").asInt.toLong())
         Assert.assertEquals(1, resultObject.get("b").asInt.toLong())
     }
+
+    @Test
+    fun testInfoFile() {
+        val file = temporaryFolder.newFile("testinfo.ndjson")
+        file.writeText("{\"a\": 0}\n\n{\"a\": 1, \"b\": \"x\"}\n")
+
+        val finalResult = JUnitTestCaseProvider.decodeTestInfoFile(file)
+
+        Assert.assertEquals(2, finalResult.size.toLong())
+        Assert.assertEquals(0, finalResult[0].get("a").asInt.toLong())
+        Assert.assertEquals(1, finalResult[1].get("a").asInt.toLong())
+        Assert.assertEquals("x", finalResult[1].get("b").asString)
+    }
 }
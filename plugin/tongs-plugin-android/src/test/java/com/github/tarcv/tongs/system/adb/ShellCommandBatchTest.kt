@@ -0,0 +1,64 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.system.adb
+
+import org.junit.Assert
+import org.junit.Test
+
+class ShellCommandBatchTest {
+    private val commands = listOf("pm clear app", "pm clear test", "input keyevent 3")
+
+    @Test
+    fun testEachCommandGetsItsOutputAndExitCode() {
+        val output = "Success\r\n\r\n__TONGS_EXIT_CODE_0:0\r\n" +
+                "Failed\r\nsecond line\r\n\r\n__TONGS_EXIT_CODE_1:1\r\n" +
+                "\r\n__TONGS_EXIT_CODE_2:0\r\n"
+
+        val results = ShellCommandBatch.parseOutput(commands, output)
+
+        Assert.assertEquals(
+                listOf(
+                        ShellCommandResult("pm clear app", "Success", 0),
+                        ShellCommandResult("pm clear test", "Failed\nsecond line", 1),
+                        ShellCommandResult("input keyevent 3", "", 0)
+                ),
+                results
+        )
+    }
+
+    @Test
+    fun testCommandsAfterClosedConnectionAreNotFinished() {
+        val output = "Success\n\n__TONGS_EXIT_CODE_0:0\npartial"
+
+        val results = ShellCommandBatch.parseOutput(commands, output)
+
+        Assert.assertEquals(
+                listOf(
+                        ShellCommandResult("pm clear app", "Success", 0),
+                        ShellCommandResult("pm clear test", "partial", null),
+                        ShellCommandResult("input keyevent 3", "", null)
+                ),
+                results
+        )
+        Assert.assertFalse(results[1].isSuccessful)
+    }
+
+    @Test
+    fun testCommandLineReportsExitCodeOfEachCommand() {
+        Assert.assertEquals(
+                "pm clear app; tongs_exit_code=\$?; echo; echo \"__TONGS_EXIT_CODE_0:\$tongs_exit_code\"; " +
+                        "input keyevent 3; tongs_exit_code=\$?; echo; echo \"__TONGS_EXIT_CODE_1:\$tongs_exit_code\"",
+                ShellCommandBatch.buildCommandLine(listOf("pm clear app", "input keyevent 3"))
+        )
+    }
+}
@@ -73,6 +73,138 @@ public interface TongsConfiguration {
 
     boolean shouldTerminateDdm();
 
+    /**
+     * File keeping durations of test cases from previous runs. When set, test cases are scheduled longest first.
+     */
+    @Nullable
+    File getDurationHistoryFile();
+
+    /**
+     * Whether devices that finished their pool can run remaining test cases of other pools they are compatible with.
+     */
+    boolean isWorkStealingEnabled();
+
+    /**
+     * Maximum number of test cases executed in one instrumentation run. Only test cases whose run rules prepare
+     * the same device state are batched together (see {@link com.github.tarcv.tongs.api.run.TestCaseRunRule}),
+     * so batching has no effect with {@link AppResetPolicy#PER_TEST}.
+     */
+    int getTestBatchSize();
+
+    /**
+     * Port the coordinator listens on for workers, 0 when test cases are executed only on local devices
+     */
+    int getCoordinatorPort();
+
+    /**
+     * Number of workers the coordinator waits for before loading pools
+     */
+    int getExpectedWorkers();
+
+    /**
+     * Address the coordinator listens on for workers (the loopback address by default)
+     */
+    String getCoordinatorBindAddress();
+
+    /**
+     * Maximum time in milliseconds the coordinator waits for a worker to answer a request
+     * (e.g. to execute a test case and transfer its artifacts)
+     */
+    long getCoordinatorRequestTimeout();
+
+    /**
+     * Whether idle devices can execute duplicates of test cases that run too long on other devices of the same pool.
+     * The first attempt to finish wins and other attempts are cancelled.
+     */
+    boolean isSpeculativeExecutionEnabled();
+
+    /**
+     * Time in milliseconds a test case should be running before it can be executed speculatively
+     */
+    long getSpeculationDelay();
+
+    /**
+     * Maximum number of failed test case attempts (retried ones included) in a pool after which remaining test cases
+     * of the pool are not executed and in-flight ones are cancelled, 0 means no limit
+     */
+    int getFailureBudget();
+
+    /**
+     * Maximum percentage of failed test case attempts (retried ones included) in a pool, relative to the number
+     * of all test cases in the pool, after which remaining test cases of the pool are not executed and in-flight ones
+     * are cancelled, 0 means no limit
+     */
+    int getFailureBudgetPercent();
+
+    /**
+     * Whether devices that become unhealthy (e.g. that throw ADB timeouts or get much slower than other devices
+     * of their pool) stop getting test cases
+     */
+    boolean isDeviceQuarantineEnabled();
+
+    /**
+     * Time in milliseconds after which a quarantined device is probed and re-admitted when the probe succeeds,
+     * 0 means quarantined devices are never re-admitted
+     */
+    long getQuarantineProbeInterval();
+
+    /**
+     * Whether devices connected during a run join pools they are compatible with, and devices disconnected
+     * during a run are removed from their pools with their test cases put back to the queue
+     */
+    boolean isDeviceHotPlugEnabled();
+
+    /**
+     * Whether application and test APKs already installed on a device are kept (with their data cleared)
+     * when they are the same as the ones to be installed
+     */
+    boolean isApkInstallCacheEnabled();
+
+    /**
+     * Whether device commands that are known to have no effect (e.g. unlocking an unlocked screen
+     * or granting a granted permission) are skipped
+     */
+    boolean isDeviceStateCacheEnabled();
+
+    /**
+     * When application and test packages are cleared with 'pm clear' before test cases
+     */
+    AppResetPolicy getAppResetPolicy();
+
+    /**
+     * Number of test cases executed on a device between clearing packages,
+     * used with {@link AppResetPolicy#EVERY_N_TESTS}
+     */
+    int getAppResetInterval();
+
+    /**
+     * Whether devices are tuned for stable test timings before test cases are executed (and restored afterwards)
+     */
+    boolean isDevicePerformanceProfileEnabled();
+
+    /**
+     * Directory keeping test cases collected from devices between runs, null when collected test cases are not cached
+     */
+    @Nullable
+    File getTestDiscoveryCacheDirectory();
+
+    /**
+     * Whether test cases are still collected from one device when all devices have cached test cases,
+     * to check that the cache is up to date
+     */
+    boolean isTestDiscoveryCacheValidationEnabled();
+
+    /**
+     * Whether test cases are discovered from bytecode of the instrumentation APK instead of running the instrumentation
+     * on devices. Test classes that can't be discovered that way are still collected from devices.
+     */
+    boolean isHostTestDiscoveryEnabled();
+
+    /**
+     * How long in milliseconds to wait for test information from logcat after a collecting run ends
+     */
+    long getTestCollectionLogcatTimeout();
+
     List<Object> getPluginsInstances();
 
     List<String> getExcludedPlugins();
@@ -84,4 +216,33 @@ public interface TongsConfiguration {
         STUB_PARALLEL_TESTRUN,
         RECORD_LISTENER_EVENTS
     }
+
+    enum AppResetPolicy {
+        /**
+         * Before each test case
+         */
+        PER_TEST,
+
+        /**
+         * Before the first test case of each test class executed on a device
+         * (a device gets remaining test cases of its current class before test cases of other classes)
+         */
+        PER_CLASS,
+
+        /**
+         * Before every {@link #getAppResetInterval()}-th test case executed on a device
+         */
+        EVERY_N_TESTS,
+
+        /**
+         * Before a test case that follows a failed or unfinished one on a device
+         */
+        AFTER_FAILURE,
+
+        /**
+         * Only before test cases annotated with <code>ResetAppState</code>
+         * (from the same package as the <code>GrantPermission</code> annotation)
+         */
+        ANNOTATED
+    }
 }
@@ -22,4 +22,26 @@ interface DeviceProviderFactory<out T: DeviceProvider> {
 
 interface DeviceProvider {
     fun provideDevices(): Set<Device>
-}
\ No newline at end of file
+}
+
+/**
+ * Device provider that keeps watching for devices after [provideDevices] was called,
+ * so devices can join and leave pools while test cases are executed
+ */
+interface ObservableDeviceProvider : DeviceProvider {
+    fun addDeviceChangeListener(listener: DeviceChangeListener)
+    fun removeDeviceChangeListener(listener: DeviceChangeListener)
+}
+
+interface DeviceChangeListener {
+    /**
+     * Called when [device] became online after [DeviceProvider.provideDevices] was called,
+     * including devices that were reconnected
+     */
+    fun deviceConnected(device: Device)
+
+    /**
+     * Called when [device] went offline or was disconnected
+     */
+    fun deviceDisconnected(device: Device)
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.api.devices
+
+/**
+ * Device provider that adds devices while there is a lot of work left and releases them as pools drain,
+ * e.g. by booting and shutting down emulators.
+ *
+ * Devices are added and released by notifying listeners of [ObservableDeviceProvider], so they join and leave
+ * pools the same way as devices connected or disconnected during a run (that requires the deviceHotPlug option).
+ * Devices returned from [provideDevices] are the initial ones, a provider may return few of them and add more
+ * when it learns how much work there is.
+ */
+interface ElasticDeviceProvider : ObservableDeviceProvider {
+    /**
+     * Called periodically while test cases are executed, and once more after all pools are finished
+     * (then all pools in [demand] are drained, so all added devices can be released)
+     */
+    fun onDemandChanged(demand: DeviceDemand)
+}
+
+/**
+ * Work left in a run
+ */
+class DeviceDemand(val pools: List<PoolDemand>) {
+    val queuedTestCases: Int
+        get() = pools.sumBy { it.queuedTestCases }
+
+    val isDrained: Boolean
+        get() = pools.all { it.isDrained }
+
+    override fun toString(): String = pools.joinToString(prefix = "DeviceDemand(", postfix = ")")
+}
+
+/**
+ * Work left in a pool
+ *
+ * @param queuedTestCases test cases waiting for a device (including retries)
+ * @param runningTestCases test cases executed right now
+ * @param estimatedRemainingMillis estimated time to execute all queued test cases on one device,
+ * 0 when durations of the test cases are not known
+ * @param devices devices executing test cases of the pool right now
+ */
+class PoolDemand(
+        val pool: Pool,
+        val queuedTestCases: Int,
+        val runningTestCases: Int,
+        val estimatedRemainingMillis: Long,
+        val devices: Set<Device>
+) {
+    val isDrained: Boolean
+        get() = queuedTestCases == 0 && runningTestCases == 0
+
+    override fun toString(): String {
+        return "${pool.name}: $queuedTestCases queued, $runningTestCases running, " +
+                "~${estimatedRemainingMillis}ms left, ${devices.size} devices"
+    }
+}
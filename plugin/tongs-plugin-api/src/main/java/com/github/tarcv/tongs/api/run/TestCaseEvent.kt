@@ -16,18 +16,22 @@ import com.github.tarcv.tongs.api.testcases.TestCase
 import com.google.common.base.Objects
 import java.util.Collections
 import java.util.Collections.emptyList
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 
 class TestCaseEvent private constructor( // TODO: avoid creating objects of this class in plugins
         val testCase: TestCase,
         excludedDevices: Collection<Device>,
         val totalFailureCount: Int = 0,
-        private val deviceRunners: MutableMap<Device, MutableList<TestCaseRunner>> = HashMap()
+        // Devices connected during a run add their runners while other devices execute test cases
+        private val deviceRunners: MutableMap<Device, MutableList<TestCaseRunner>> = ConcurrentHashMap(),
+        private val admittedDevices: MutableSet<Device> = ConcurrentHashMap.newKeySet()
 ) {
     constructor(
         testCase: TestCase,
         excludedDevices: Collection<Device>,
         totalFailureCount: Int = 0
-    ) : this(testCase, excludedDevices, totalFailureCount, HashMap())
+    ) : this(testCase, excludedDevices, totalFailureCount, ConcurrentHashMap(), ConcurrentHashMap.newKeySet())
 
     val testMethod: String
         get() = testCase.testMethod
@@ -40,7 +44,7 @@ class TestCaseEvent private constructor( // TODO: avoid creating objects of this
     private val _excludedDevices = HashSet(excludedDevices)
 
     fun isEnabledOn(device: Device): Boolean {
-        val included = testCase.includedDevices?.contains(device) ?: true
+        val included = (testCase.includedDevices?.contains(device) ?: true) || admittedDevices.contains(device)
         val excluded = _excludedDevices.contains(device)
         return included && !excluded
     }
@@ -65,11 +69,19 @@ class TestCaseEvent private constructor( // TODO: avoid creating objects of this
     }
 
     fun withFailureCount(totalFailureCount: Int): TestCaseEvent {
-        return TestCaseEvent(testCase, excludedDevices, totalFailureCount, deviceRunners)
+        return TestCaseEvent(testCase, excludedDevices, totalFailureCount, deviceRunners, admittedDevices)
+    }
+
+    /**
+     * Enables this test case on a device that is not in [TestCase.includedDevices], e.g. on a device that
+     * borrows test cases from another pool or on a device connected during a run. Excluded devices stay excluded.
+     */
+    fun admitDevice(device: Device) {
+        admittedDevices.add(device)
     }
 
     fun addDeviceRunner(device: Device, runner: TestCaseRunner) {
-        deviceRunners.computeIfAbsent(device) { ArrayList() }
+        deviceRunners.computeIfAbsent(device) { CopyOnWriteArrayList() }
                 .add(runner)
     }
 
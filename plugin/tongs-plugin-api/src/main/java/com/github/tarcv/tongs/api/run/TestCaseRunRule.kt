@@ -40,4 +40,13 @@ interface TestCaseRunRule {
     fun before()
     fun after(arguments: TestCaseRunRuleAfterArguments)
     // TODO: consider adding a separate method for transforming results and making after() nonmutating
+
+    /**
+     * What this rule prepares for its test case. When several test cases are executed in one batch
+     * (see [BatchTestCaseRunner]), before actions of all of them are applied before the batch is started,
+     * so only test cases whose rules have equal keys are batched together. Null means that the test case needs
+     * a state no other test case can share (e.g. freshly cleared data), so it is always executed alone.
+     */
+    val batchKey: Any?
+        get() = Unit
 }
@@ -16,6 +16,7 @@ import com.github.tarcv.tongs.api.devices.Device
 import com.github.tarcv.tongs.api.devices.Pool
 import com.github.tarcv.tongs.api.result.RunTesult
 import com.github.tarcv.tongs.api.result.TestCaseFileManager
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
 import com.github.tarcv.tongs.api.testcases.TestCase
 import java.time.Instant
 
@@ -28,6 +29,22 @@ interface TestCaseRunner {
     fun run(arguments: TestCaseRunnerArguments): RunTesult
 }
 
+/**
+ * Runner that can execute several test cases on a device at once
+ */
+interface BatchTestCaseRunner : TestCaseRunner {
+    /**
+     * Maximum number of test cases executed at once, batching is disabled when it is less than 2
+     */
+    val maxBatchSize: Int
+
+    /**
+     * @return results in the same order as [arguments], null for test cases that were not executed
+     * (they are put back to the queue)
+     */
+    fun runBatch(arguments: List<TestCaseRunnerArguments>): List<TestCaseRunResult?>
+}
+
 // TODO: review arguments
 data class TestCaseRunnerContext(
         val configuration: RunConfiguration,
@@ -35,8 +52,70 @@ data class TestCaseRunnerContext(
         val device: Device
 )
 // TODO: review arguments
-data class TestCaseRunnerArguments(
+data class TestCaseRunnerArguments @JvmOverloads constructor(
         val fileManager: TestCaseFileManager,
         val testCaseEvent: TestCaseEvent,
-        val startTimestampUtc: Instant
-)
\ No newline at end of file
+        val startTimestampUtc: Instant,
+        val postProcessing: PostProcessing = PostProcessing.INLINE,
+        val cancellationSignal: CancellationSignal = CancellationSignal()
+)
+
+/**
+ * Host-side work that completes artifacts of a test case (e.g. writing logs) and doesn't need the device anymore.
+ * The device can start the next test case while such work is running, and the result of the test case is reported
+ * only after all its post-processing work is finished.
+ *
+ * Note that test case run rules are applied before post-processing is finished.
+ */
+interface PostProcessing {
+    fun submit(task: Runnable)
+
+    companion object {
+        /**
+         * Executes submitted work immediately on the calling thread
+         */
+        @JvmField
+        val INLINE: PostProcessing = object : PostProcessing {
+            override fun submit(task: Runnable) {
+                task.run()
+            }
+        }
+    }
+}
+
+/**
+ * Signals that the result of a running test case is not needed anymore (e.g. another attempt of it already finished),
+ * so a runner can stop executing it early. Runners that ignore the signal just finish the test case as usual.
+ */
+class CancellationSignal {
+    private var listener: Runnable? = null
+
+    @get:Synchronized
+    var isCancelled: Boolean = false
+        private set
+
+    fun cancel() {
+        val listenerToCall = synchronized(this) {
+            if (isCancelled) {
+                return
+            }
+            isCancelled = true
+            listener
+        }
+        listenerToCall?.run()
+    }
+
+    /**
+     * Sets an action to call when the signal is cancelled, the action is called immediately when it is already
+     * cancelled. Pass null to remove the action.
+     */
+    fun setOnCancelListener(listener: Runnable?) {
+        val cancelled = synchronized(this) {
+            this.listener = listener
+            isCancelled
+        }
+        if (cancelled) {
+            listener?.run()
+        }
+    }
+}
\ No newline at end of file
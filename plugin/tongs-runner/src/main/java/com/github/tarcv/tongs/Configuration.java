@@ -67,6 +67,30 @@ public class Configuration implements TongsConfiguration {
     private final String excludedAnnotation;
     private final TongsIntegrationTestRunType tongsIntegrationTestRunType;
     private final boolean terminateDdm;
+    private final File durationHistoryFile;
+    private final boolean workStealing;
+    private final int testBatchSize;
+    private final int coordinatorPort;
+    private final int expectedWorkers;
+    private final String coordinatorBindAddress;
+    private final String coordinatorToken;
+    private final long coordinatorRequestTimeout;
+    private final boolean speculativeExecution;
+    private final long speculationDelay;
+    private final int failureBudget;
+    private final int failureBudgetPercent;
+    private final boolean deviceQuarantine;
+    private final long quarantineProbeInterval;
+    private final boolean deviceHotPlug;
+    private final boolean apkInstallCache;
+    private final boolean deviceStateCache;
+    private final AppResetPolicy appResetPolicy;
+    private final int appResetInterval;
+    private final boolean devicePerformanceProfile;
+    private final File testDiscoveryCacheDirectory;
+    private final boolean testDiscoveryCacheValidation;
+    private final boolean hostTestDiscovery;
+    private final long testCollectionLogcatTimeout;
     private final Map<String, Object> pluginConfiguration;
 
     private final String PLUGIN_EXCLUDE_PREFIX = "-";
@@ -95,6 +119,30 @@ public class Configuration implements TongsConfiguration {
         this.excludedAnnotation = builder.excludedAnnotation;
         this.tongsIntegrationTestRunType = builder.tongsIntegrationTestRunType;
         this.terminateDdm = builder.terminateDdm;
+        this.durationHistoryFile = builder.durationHistoryFile;
+        this.workStealing = builder.workStealing;
+        this.testBatchSize = builder.testBatchSize;
+        this.coordinatorPort = builder.coordinatorPort;
+        this.expectedWorkers = builder.expectedWorkers;
+        this.coordinatorBindAddress = builder.coordinatorBindAddress;
+        this.coordinatorToken = builder.coordinatorToken;
+        this.coordinatorRequestTimeout = builder.coordinatorRequestTimeout;
+        this.speculativeExecution = builder.speculativeExecution;
+        this.speculationDelay = builder.speculationDelay;
+        this.failureBudget = builder.failureBudget;
+        this.failureBudgetPercent = builder.failureBudgetPercent;
+        this.deviceQuarantine = builder.deviceQuarantine;
+        this.quarantineProbeInterval = builder.quarantineProbeInterval;
+        this.deviceHotPlug = builder.deviceHotPlug;
+        this.apkInstallCache = builder.apkInstallCache;
+        this.deviceStateCache = builder.deviceStateCache;
+        this.appResetPolicy = builder.appResetPolicy;
+        this.appResetInterval = builder.appResetInterval;
+        this.devicePerformanceProfile = builder.devicePerformanceProfile;
+        this.testDiscoveryCacheDirectory = builder.testDiscoveryCacheDirectory;
+        this.testDiscoveryCacheValidation = builder.testDiscoveryCacheValidation;
+        this.hostTestDiscovery = builder.hostTestDiscovery;
+        this.testCollectionLogcatTimeout = builder.testCollectionLogcatTimeout;
     }
 
     private Builder newBuilder() {
@@ -122,6 +170,30 @@ public class Configuration implements TongsConfiguration {
         builder.excludedAnnotation = this.excludedAnnotation;
         builder.tongsIntegrationTestRunType = this.tongsIntegrationTestRunType;
         builder.terminateDdm = this.terminateDdm;
+        builder.durationHistoryFile = this.durationHistoryFile;
+        builder.workStealing = this.workStealing;
+        builder.testBatchSize = this.testBatchSize;
+        builder.coordinatorPort = this.coordinatorPort;
+        builder.expectedWorkers = this.expectedWorkers;
+        builder.coordinatorBindAddress = this.coordinatorBindAddress;
+        builder.coordinatorToken = this.coordinatorToken;
+        builder.coordinatorRequestTimeout = this.coordinatorRequestTimeout;
+        builder.speculativeExecution = this.speculativeExecution;
+        builder.speculationDelay = this.speculationDelay;
+        builder.failureBudget = this.failureBudget;
+        builder.failureBudgetPercent = this.failureBudgetPercent;
+        builder.deviceQuarantine = this.deviceQuarantine;
+        builder.quarantineProbeInterval = this.quarantineProbeInterval;
+        builder.deviceHotPlug = this.deviceHotPlug;
+        builder.apkInstallCache = this.apkInstallCache;
+        builder.deviceStateCache = this.deviceStateCache;
+        builder.appResetPolicy = this.appResetPolicy;
+        builder.appResetInterval = this.appResetInterval;
+        builder.devicePerformanceProfile = this.devicePerformanceProfile;
+        builder.testDiscoveryCacheDirectory = this.testDiscoveryCacheDirectory;
+        builder.testDiscoveryCacheValidation = this.testDiscoveryCacheValidation;
+        builder.hostTestDiscovery = this.hostTestDiscovery;
+        builder.testCollectionLogcatTimeout = this.testCollectionLogcatTimeout;
         return builder;
     }
 
@@ -237,6 +309,132 @@ public class Configuration implements TongsConfiguration {
         return terminateDdm;
     }
 
+    @Override
+    @Nullable
+    public File getDurationHistoryFile() {
+        return durationHistoryFile;
+    }
+
+    @Override
+    public boolean isWorkStealingEnabled() {
+        return workStealing;
+    }
+
+    @Override
+    public int getTestBatchSize() {
+        return testBatchSize;
+    }
+
+    @Override
+    public int getCoordinatorPort() {
+        return coordinatorPort;
+    }
+
+    @Override
+    public int getExpectedWorkers() {
+        return expectedWorkers;
+    }
+
+    @Override
+    @Nonnull
+    public String getCoordinatorBindAddress() {
+        return coordinatorBindAddress;
+    }
+
+    /**
+     * Secret shared by the coordinator and its workers. It is not a part of {@link TongsConfiguration},
+     * so plugins can't see it.
+     */
+    @Nullable
+    public String getCoordinatorToken() {
+        return coordinatorToken;
+    }
+
+    @Override
+    public long getCoordinatorRequestTimeout() {
+        return coordinatorRequestTimeout;
+    }
+
+    @Override
+    public boolean isSpeculativeExecutionEnabled() {
+        return speculativeExecution;
+    }
+
+    @Override
+    public long getSpeculationDelay() {
+        return speculationDelay;
+    }
+
+    @Override
+    public int getFailureBudget() {
+        return failureBudget;
+    }
+
+    @Override
+    public int getFailureBudgetPercent() {
+        return failureBudgetPercent;
+    }
+
+    @Override
+    public boolean isDeviceQuarantineEnabled() {
+        return deviceQuarantine;
+    }
+
+    @Override
+    public long getQuarantineProbeInterval() {
+        return quarantineProbeInterval;
+    }
+
+    @Override
+    public boolean isDeviceHotPlugEnabled() {
+        return deviceHotPlug;
+    }
+
+    @Override
+    public boolean isApkInstallCacheEnabled() {
+        return apkInstallCache;
+    }
+
+    @Override
+    public boolean isDeviceStateCacheEnabled() {
+        return deviceStateCache;
+    }
+
+    @Override
+    public AppResetPolicy getAppResetPolicy() {
+        return appResetPolicy;
+    }
+
+    @Override
+    public int getAppResetInterval() {
+        return appResetInterval;
+    }
+
+    @Override
+    public boolean isDevicePerformanceProfileEnabled() {
+        return devicePerformanceProfile;
+    }
+
+    @Override
+    public File getTestDiscoveryCacheDirectory() {
+        return testDiscoveryCacheDirectory;
+    }
+
+    @Override
+    public boolean isTestDiscoveryCacheValidationEnabled() {
+        return testDiscoveryCacheValidation;
+    }
+
+    @Override
+    public boolean isHostTestDiscoveryEnabled() {
+        return hostTestDiscovery;
+    }
+
+    @Override
+    public long getTestCollectionLogcatTimeout() {
+        return testCollectionLogcatTimeout;
+    }
+
     @Override
     public TongsIntegrationTestRunType getTongsIntegrationTestRunType() {
         return tongsIntegrationTestRunType;
@@ -305,6 +503,30 @@ public class Configuration implements TongsConfiguration {
         private String excludedAnnotation;
         private TongsIntegrationTestRunType tongsIntegrationTestRunType = NONE;
         private boolean terminateDdm = true;
+        private File durationHistoryFile;
+        private boolean workStealing;
+        private int testBatchSize;
+        private int coordinatorPort;
+        private int expectedWorkers;
+        private String coordinatorBindAddress;
+        private String coordinatorToken;
+        private long coordinatorRequestTimeout;
+        private boolean speculativeExecution;
+        private long speculationDelay;
+        private int failureBudget;
+        private int failureBudgetPercent;
+        private boolean deviceQuarantine;
+        private long quarantineProbeInterval;
+        private boolean deviceHotPlug;
+        private boolean apkInstallCache;
+        private boolean deviceStateCache;
+        private AppResetPolicy appResetPolicy;
+        private int appResetInterval;
+        private boolean devicePerformanceProfile;
+        private File testDiscoveryCacheDirectory;
+        private boolean testDiscoveryCacheValidation;
+        private boolean hostTestDiscovery;
+        private long testCollectionLogcatTimeout;
         private Map<String, Object> pluginConfiguration;
 
         public static Builder configuration() {
@@ -421,6 +643,126 @@ public class Configuration implements TongsConfiguration {
             return this;
         }
 
+        public Builder withDurationHistoryFile(@Nullable File durationHistoryFile) {
+            this.durationHistoryFile = durationHistoryFile;
+            return this;
+        }
+
+        public Builder withWorkStealing(boolean workStealing) {
+            this.workStealing = workStealing;
+            return this;
+        }
+
+        public Builder withTestBatchSize(int testBatchSize) {
+            this.testBatchSize = testBatchSize;
+            return this;
+        }
+
+        public Builder withCoordinatorPort(int coordinatorPort) {
+            this.coordinatorPort = coordinatorPort;
+            return this;
+        }
+
+        public Builder withExpectedWorkers(int expectedWorkers) {
+            this.expectedWorkers = expectedWorkers;
+            return this;
+        }
+
+        public Builder withCoordinatorBindAddress(@Nullable String coordinatorBindAddress) {
+            this.coordinatorBindAddress = coordinatorBindAddress;
+            return this;
+        }
+
+        public Builder withCoordinatorToken(@Nullable String coordinatorToken) {
+            this.coordinatorToken = coordinatorToken;
+            return this;
+        }
+
+        public Builder withCoordinatorRequestTimeout(long coordinatorRequestTimeout) {
+            this.coordinatorRequestTimeout = coordinatorRequestTimeout;
+            return this;
+        }
+
+        public Builder withSpeculativeExecution(boolean speculativeExecution) {
+            this.speculativeExecution = speculativeExecution;
+            return this;
+        }
+
+        public Builder withSpeculationDelay(long speculationDelay) {
+            this.speculationDelay = speculationDelay;
+            return this;
+        }
+
+        public Builder withFailureBudget(int failureBudget) {
+            this.failureBudget = failureBudget;
+            return this;
+        }
+
+        public Builder withFailureBudgetPercent(int failureBudgetPercent) {
+            this.failureBudgetPercent = failureBudgetPercent;
+            return this;
+        }
+
+        public Builder withDeviceQuarantine(boolean deviceQuarantine) {
+            this.deviceQuarantine = deviceQuarantine;
+            return this;
+        }
+
+        public Builder withQuarantineProbeInterval(long quarantineProbeInterval) {
+            this.quarantineProbeInterval = quarantineProbeInterval;
+            return this;
+        }
+
+        public Builder withDeviceHotPlug(boolean deviceHotPlug) {
+            this.deviceHotPlug = deviceHotPlug;
+            return this;
+        }
+
+        public Builder withApkInstallCache(boolean apkInstallCache) {
+            this.apkInstallCache = apkInstallCache;
+            return this;
+        }
+
+        public Builder withDeviceStateCache(boolean deviceStateCache) {
+            this.deviceStateCache = deviceStateCache;
+            return this;
+        }
+
+        public Builder withAppResetPolicy(AppResetPolicy appResetPolicy) {
+            this.appResetPolicy = appResetPolicy;
+            return this;
+        }
+
+        public Builder withAppResetInterval(int appResetInterval) {
+            this.appResetInterval = appResetInterval;
+            return this;
+        }
+
+        public Builder withDevicePerformanceProfile(boolean devicePerformanceProfile) {
+            this.devicePerformanceProfile = devicePerformanceProfile;
+            return this;
+        }
+
+        public Builder withTestDiscoveryCacheDirectory(File testDiscoveryCacheDirectory) {
+            this.testDiscoveryCacheDirectory = testDiscoveryCacheDirectory;
+            return this;
+        }
+
+        public Builder withTestDiscoveryCacheValidation(boolean testDiscoveryCacheValidation) {
+            this.testDiscoveryCacheValidation = testDiscoveryCacheValidation;
+            return this;
+        }
+
+        public Builder withHostTestDiscovery(boolean hostTestDiscovery) {
+            this.hostTestDiscovery = hostTestDiscovery;
+            return this;
+        }
+
+        public Builder withTestCollectionLogcatTimeout(long testCollectionLogcatTimeout) {
+            this.testCollectionLogcatTimeout = testCollectionLogcatTimeout;
+            return this;
+        }
+
         public Builder withPluginConfiguration(Map<String, Object> configuration) {
             this.pluginConfiguration = configuration;
             return this;
@@ -465,6 +807,30 @@ public class Configuration implements TongsConfiguration {
             checkArgument(totalAllowedRetryQuota >= 0, "Total allowed retry quota should not be negative.");
             checkArgument(retryPerTestCaseQuota >= 0, "Retry per test case quota should not be negative.");
             retryPerTestCaseQuota = assignValueOrDefaultIfZero(retryPerTestCaseQuota, Defaults.RETRY_QUOTA_PER_TEST_CASE);
+            checkArgument(testBatchSize >= 0, "Test batch size should not be negative.");
+            testBatchSize = assignValueOrDefaultIfZero(testBatchSize, Defaults.TEST_BATCH_SIZE);
+            checkArgument(coordinatorPort >= 0 && coordinatorPort <= 65535, "Coordinator port should be a valid port number.");
+            checkArgument(expectedWorkers >= 0, "Number of expected workers should not be negative.");
+            expectedWorkers = assignValueOrDefaultIfZero(expectedWorkers, Defaults.EXPECTED_WORKERS);
+            coordinatorBindAddress = assignValueOrDefaultIfNull(coordinatorBindAddress,
+                    Defaults.COORDINATOR_BIND_ADDRESS);
+            checkArgument(coordinatorPort == 0 || (coordinatorToken != null && !coordinatorToken.isEmpty()),
+                    "Coordinator token is required when the coordinator port is set.");
+            checkArgument(coordinatorRequestTimeout >= 0, "Coordinator request timeout should not be negative.");
+            coordinatorRequestTimeout = assignValueOrDefaultIfZero(coordinatorRequestTimeout,
+                    Defaults.COORDINATOR_REQUEST_TIMEOUT_MILLIS);
+            checkArgument(speculationDelay >= 0, "Speculation delay should not be negative.");
+            speculationDelay = assignValueOrDefaultIfZero(speculationDelay, Defaults.SPECULATION_DELAY_MILLIS);
+            checkArgument(failureBudget >= 0, "Failure budget should not be negative.");
+            checkArgument(failureBudgetPercent >= 0 && failureBudgetPercent <= 100,
+                    "Failure budget percent should be between 0 and 100.");
+            checkArgument(quarantineProbeInterval >= 0, "Quarantine probe interval should not be negative.");
+            appResetPolicy = assignValueOrDefaultIfNull(appResetPolicy, Defaults.APP_RESET_POLICY);
+            checkArgument(appResetInterval >= 0, "App reset interval should not be negative.");
+            appResetInterval = assignValueOrDefaultIfZero(appResetInterval, Defaults.APP_RESET_INTERVAL);
+            checkArgument(testCollectionLogcatTimeout >= 0, "Test collection logcat timeout should not be negative.");
+            testCollectionLogcatTimeout = assignValueOrDefaultIfZero(testCollectionLogcatTimeout,
+                    Defaults.TEST_COLLECTION_LOGCAT_TIMEOUT_MILLIS);
             if (withWarnings) {
                 logArgumentsBadInteractions();
             }
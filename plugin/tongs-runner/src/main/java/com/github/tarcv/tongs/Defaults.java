@@ -11,6 +11,8 @@
 
 package com.github.tarcv.tongs;
 
+import com.github.tarcv.tongs.api.TongsConfiguration.AppResetPolicy;
+
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -27,4 +29,12 @@ class Defaults {
     static final String TITLE = "Tongs Report";
     static final String SUBTITLE = "";
     static final int RETRY_QUOTA_PER_TEST_CASE = 1;
+    static final int TEST_BATCH_SIZE = 1;
+    static final int EXPECTED_WORKERS = 1;
+    static final String COORDINATOR_BIND_ADDRESS = "127.0.0.1";
+    static final long COORDINATOR_REQUEST_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    static final long SPECULATION_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final AppResetPolicy APP_RESET_POLICY = AppResetPolicy.PER_TEST;
+    static final int APP_RESET_INTERVAL = 10;
+    static final long TEST_COLLECTION_LOGCAT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
 }
@@ -17,11 +17,13 @@ import com.github.tarcv.tongs.api.run.RunConfiguration
 import com.github.tarcv.tongs.api.run.RunRule
 import com.github.tarcv.tongs.api.run.RunRuleContext
 import com.github.tarcv.tongs.api.run.RunRuleFactory
+import com.github.tarcv.tongs.distributed.CoordinatorRunRuleFactory
 import com.github.tarcv.tongs.injector.GsonInjector
 import com.github.tarcv.tongs.injector.RuleManagerFactory
 import com.github.tarcv.tongs.injector.accumulatorModule
 import com.github.tarcv.tongs.injector.deviceGeometryModule
 import com.github.tarcv.tongs.injector.deviceModule
+import com.github.tarcv.tongs.injector.distributedModule
 import com.github.tarcv.tongs.injector.listenersModule
 import com.github.tarcv.tongs.injector.modulesCreatedAtStart
 import com.github.tarcv.tongs.injector.poolingModule
@@ -54,7 +56,8 @@ class Tongs(private val configuration: Configuration) {
             val startOfTestsMs = System.nanoTime()
             val predefinedRulesFactories = listOf(
                     PrepareOutputDirectoryRuleFactory(),
-                    AndroidDdmRunRuleFactory()
+                    AndroidDdmRunRuleFactory(),
+                    CoordinatorRunRuleFactory()
             )
             val ruleManagerFactory by KoinContextHandler.get().inject<RuleManagerFactory>()
             val runRules = ruleManagerFactory
@@ -146,6 +149,7 @@ class Tongs(private val configuration: Configuration) {
                     testLoadingModule, // needs RuleManagerFactory
                     deviceGeometryModule, // needs CommandOutputLogger from poolingModule
                     systemModule, // needs Configuration
+                    distributedModule, // needs Configuration, Gson
                     runnerModule,
                     listenersModule,
                     summaryPrinterModule,
@@ -17,6 +17,7 @@ import com.beust.jcommander.IStringConverter
 import com.beust.jcommander.JCommander
 import com.beust.jcommander.Parameter
 import com.beust.jcommander.ParameterException
+import com.github.tarcv.tongs.distributed.TongsWorker
 import com.github.tarcv.tongs.injector.GsonInjector
 import org.slf4j.LoggerFactory
 import java.io.File
@@ -51,6 +52,7 @@ object TongsCli {
                         GsonInjector.gson().fromJson(configFileReader, TongsConfigurationJsonExtension::class.java)
                     }
 
+            val workerAddress = parsedArgs.worker
             val configuration = Configuration.Builder.configuration()
                     .withAndroidSdk(parsedArgs.sdk ?: Utils.cleanFileSafe(CommonDefaults.ANDROID_SDK))
                     .withApplicationApk(parsedArgs.apk)
@@ -70,9 +72,50 @@ object TongsCli {
                     .withPoolingStrategy(tongsConfiguration.poolingStrategy)
                     .withExcludedAnnotation(tongsConfiguration.excludedAnnotation)
                     .withTongsIntegrationTestRunType(tongsConfiguration.tongsIntegrationTestRunType)
+                    .withDurationHistoryFile(Utils.cleanFile(tongsConfiguration.durationHistoryFile))
+                    .withWorkStealing(tongsConfiguration.workStealing)
+                    .withTestBatchSize(tongsConfiguration.testBatchSize)
+                    .withCoordinatorPort(if (workerAddress != null) 0 else tongsConfiguration.coordinatorPort)
+                    .withExpectedWorkers(tongsConfiguration.expectedWorkers)
+                    .withCoordinatorBindAddress(tongsConfiguration.coordinatorBindAddress)
+                    .withCoordinatorToken(tongsConfiguration.coordinatorToken)
+                    .withCoordinatorRequestTimeout(tongsConfiguration.coordinatorRequestTimeout)
+                    .withSpeculativeExecution(tongsConfiguration.speculativeExecution)
+                    .withSpeculationDelay(tongsConfiguration.speculationDelay)
+                    .withFailureBudget(tongsConfiguration.failureBudget)
+                    .withFailureBudgetPercent(tongsConfiguration.failureBudgetPercent)
+                    .withDeviceQuarantine(tongsConfiguration.deviceQuarantine)
+                    .withQuarantineProbeInterval(tongsConfiguration.quarantineProbeInterval)
+                    .withDeviceHotPlug(tongsConfiguration.deviceHotPlug)
+                    .withApkInstallCache(tongsConfiguration.apkInstallCache)
+                    .withDeviceStateCache(tongsConfiguration.deviceStateCache)
+                    .withAppResetPolicy(tongsConfiguration.appResetPolicy)
+                    .withAppResetInterval(tongsConfiguration.appResetInterval)
+                    .withDevicePerformanceProfile(tongsConfiguration.devicePerformanceProfile)
+                    .withTestDiscoveryCacheDirectory(Utils.cleanFile(tongsConfiguration.testDiscoveryCacheDirectory))
+                    .withTestDiscoveryCacheValidation(tongsConfiguration.testDiscoveryCacheValidation)
+                    .withHostTestDiscovery(tongsConfiguration.hostTestDiscovery)
+                    .withTestCollectionLogcatTimeout(tongsConfiguration.testCollectionLogcatTimeout)
                     .withPluginConfiguration(tongsConfiguration.configuration)
                     .build(true)
 
+            if (workerAddress != null) {
+                val host = workerAddress.substringBeforeLast(':')
+                val port = workerAddress.substringAfterLast(':').toIntOrNull()
+                if (host.isEmpty() || port == null) {
+                    logger.error("Coordinator address should be in 'host:port' format, got '$workerAddress'")
+                    exitProcess(1)
+                }
+                if (tongsConfiguration.coordinatorToken.isNullOrEmpty()) {
+                    logger.error("Coordinator token should be set to connect to the coordinator")
+                    exitProcess(1)
+                }
+                if (!TongsWorker(configuration, host, port).run()) {
+                    exitProcess(1)
+                }
+                return
+            }
+
             val tongs = Tongs(configuration)
             if (!tongs.run() && !tongsConfiguration.ignoreFailures) {
                 exitProcess(1)
@@ -97,6 +140,10 @@ object TongsCli {
         @field:Parameter(names = ["--config"], description = "Path of JSON config file", converter = FileConverter::class, required = true)
         lateinit var configurationFile: File
 
+        @JvmField
+        @field:Parameter(names = ["--worker"], description = "Serve a coordinator at host:port instead of running tests")
+        var worker: String? = null
+
         @JvmField
         @field:Parameter(names = ["-h", "--help"], description = "Command help", help = true, hidden = true)
         var help = false
@@ -18,6 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static com.github.tarcv.tongs.api.TongsConfiguration.AppResetPolicy.PER_TEST;
 import static com.github.tarcv.tongs.api.TongsConfiguration.TongsIntegrationTestRunType.NONE;
 
 /**
@@ -85,6 +86,151 @@ public abstract class TongsConfigurationExtension {
      */
     public String excludedAnnotation;
 
+    /**
+     * Path to a file keeping durations of test cases between runs. When set, longest test cases are executed first.
+     */
+    public String durationHistoryFile;
+
+    /**
+     * Allow devices that finished their own pool to run test cases of other compatible pools.
+     */
+    public boolean workStealing;
+
+    /**
+     * Maximum number of test cases executed in one instrumentation run (1 by default, that is no batching).
+     * Only test cases whose run rules prepare the same device state are batched together, so batching has no effect
+     * with the PER_TEST app reset policy.
+     */
+    public int testBatchSize;
+
+    /**
+     * When set, Tongs acts as a coordinator: it listens on this port for workers started with '--worker' option
+     * and executes test cases on their devices too.
+     */
+    public int coordinatorPort;
+
+    /**
+     * Number of workers the coordinator waits for before loading pools (1 by default).
+     */
+    public int expectedWorkers;
+
+    /**
+     * Address the coordinator listens on for workers ('127.0.0.1' by default). Set it to an address of a network
+     * interface reachable from worker hosts, workers on other hosts can't connect otherwise.
+     */
+    public String coordinatorBindAddress;
+
+    /**
+     * Secret workers send to the coordinator when registering, required when the coordinator port is set.
+     * Workers must use the same value.
+     */
+    public String coordinatorToken;
+
+    /**
+     * Maximum time in milliseconds the coordinator waits for a worker to execute a test case (30 minutes by default).
+     */
+    public long coordinatorRequestTimeout;
+
+    /**
+     * Let idle devices run duplicates of test cases that are running too long on other devices of the same pool,
+     * the first attempt to finish is reported.
+     */
+    public boolean speculativeExecution;
+
+    /**
+     * How long in milliseconds a test case should be running before an idle device can start its duplicate
+     * (30 seconds by default).
+     */
+    public long speculationDelay;
+
+    /**
+     * Maximum number of failed test case attempts (retried ones included) in a pool after which remaining test cases
+     * of the pool are not executed, 0 (default) means no limit
+     */
+    public int failureBudget;
+
+    /**
+     * Maximum percentage of failed test case attempts (retried ones included) in a pool after which remaining test
+     * cases of the pool are not executed, 0 (default) means no limit
+     */
+    public int failureBudgetPercent;
+
+    /**
+     * Whether devices that become unhealthy (e.g. that throw ADB timeouts or get much slower than other devices
+     * of their pool) stop getting test cases, false by default
+     */
+    public boolean deviceQuarantine;
+
+    /**
+     * Time in milliseconds after which a quarantined device is probed (its device rules are executed again)
+     * and re-admitted when the probe succeeds, 0 (default) means quarantined devices are never re-admitted
+     */
+    public long quarantineProbeInterval;
+
+    /**
+     * Whether devices connected during a run join pools they are compatible with, and disconnected devices
+     * are removed from their pools, false by default. Reconnected devices always return to their pools, new devices
+     * join only pools computed from characteristics of devices (computed pooling and tablet splitting).
+     */
+    public boolean deviceHotPlug;
+
+    /**
+     * Whether application and test APKs already installed on a device are kept when they are the same as the ones
+     * to be installed (compared by SHA-256 digests), false by default. Data of kept packages is cleared with 'pm clear'.
+     */
+    public boolean apkInstallCache;
+
+    /**
+     * Whether device commands that are known to have no effect (e.g. unlocking an unlocked screen or granting
+     * an already granted permission) are skipped, false by default. When disabled, such commands are always executed.
+     */
+    public boolean deviceStateCache;
+
+    /**
+     * When application and test packages are cleared with 'pm clear' before test cases, PER_TEST by default.
+     * Other policies keep the application process warm between test cases, see {@link TongsConfiguration.AppResetPolicy}.
+     */
+    public TongsConfiguration.AppResetPolicy appResetPolicy = PER_TEST;
+
+    /**
+     * Number of test cases executed on a device between clearing packages when appResetPolicy is EVERY_N_TESTS,
+     * 10 by default
+     */
+    public int appResetInterval;
+
+    /**
+     * Whether devices are tuned for fast and stable test timings, false by default. Application and test packages
+     * are compiled ahead of time, animations and package verification are disabled, the screen is kept on and
+     * background processes are stopped. Changed settings are restored after all test cases are executed.
+     */
+    public boolean devicePerformanceProfile;
+
+    /**
+     * Path to a directory keeping test cases collected from devices between runs. When set, test cases are not
+     * collected again from devices with the same API level when test and application APKs are not changed.
+     */
+    public String testDiscoveryCacheDirectory;
+
+    /**
+     * Whether test cases are still collected from one device when all devices have cached test cases,
+     * false by default. When they differ from the cached ones, the cache is discarded and test cases are collected
+     * from all devices.
+     */
+    public boolean testDiscoveryCacheValidation;
+
+    /**
+     * Whether test cases are discovered from bytecode of the instrumentation APK without running the instrumentation
+     * on devices, false by default. Requires 'instrumentationApkPath'. Test classes using runners other than JUnit4
+     * ones (e.g. Parameterized) are still collected from devices.
+     */
+    public boolean hostTestDiscovery;
+
+    /**
+     * How long in milliseconds to wait for test information from logcat after test cases are collected from a device
+     * (10 seconds by default). Usually all information is received much sooner, this is only a safety net.
+     */
+    public long testCollectionLogcatTimeout;
+
     /**
      * Plugins to load
      */
@@ -24,18 +24,27 @@ import com.github.tarcv.tongs.injector.RuleManagerFactory
 import com.github.tarcv.tongs.injector.TestCaseRuleManager
 import com.github.tarcv.tongs.injector.TestCaseRunnerManager
 import com.github.tarcv.tongs.injector.TestSuiteLoaderSupplier
+import com.github.tarcv.tongs.model.TestDurationHistory
+import com.github.tarcv.tongs.model.WorkStealingQueues
+import com.github.tarcv.tongs.model.admitDevice
 import com.github.tarcv.tongs.pooling.NoDevicesForPoolException
 import com.github.tarcv.tongs.pooling.NoPoolLoaderConfiguredException
 import com.github.tarcv.tongs.pooling.PoolLoader
+import com.github.tarcv.tongs.runner.DeviceDemandReporter
+import com.github.tarcv.tongs.runner.DeviceMembership
 import com.github.tarcv.tongs.runner.DeviceTestRunner
 import com.github.tarcv.tongs.runner.DeviceTestRunnerFactory
 import com.github.tarcv.tongs.runner.PoolTestRunnerFactory
 import com.github.tarcv.tongs.runner.ProgressReporter
+import com.github.tarcv.tongs.runner.TaskScope
 import com.github.tarcv.tongs.summary.SummaryGeneratorHook
 import com.github.tarcv.tongs.tests.JoiningTestProvider
 import org.koin.core.context.KoinContextHandler
 import org.slf4j.LoggerFactory
-import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.function.Supplier
 
 class TongsRunner(private val poolLoader: PoolLoader,
                   private val poolTestRunnerFactory: PoolTestRunnerFactory,
@@ -43,7 +52,11 @@ class TongsRunner(private val poolLoader: PoolLoader,
                   private val summaryGeneratorHook: SummaryGeneratorHook,
                   private val testCaseRuleManager: TestCaseRuleManager,
                   private val testCaseRunnerManager: TestCaseRunnerManager,
-                  private val ruleManagerFactory: RuleManagerFactory
+                  private val ruleManagerFactory: RuleManagerFactory,
+                  private val testDurationHistory: TestDurationHistory,
+                  private val workStealingQueues: WorkStealingQueues,
+                  private val workStealingEnabled: Boolean,
+                  private val deviceHotPlugEnabled: Boolean
 ) {
     class PoolTask(
             val pool: Pool,
@@ -71,73 +84,31 @@ class TongsRunner(private val poolLoader: PoolLoader,
 
     fun throwingRun(): Boolean {
         val pools = poolLoader.loadPools()
-        val numberOfPools = pools.size
-        val poolCountDownLatch = CountDownLatch(numberOfPools)
-        val poolExecutor = Utils.namedExecutor(numberOfPools, "PoolExecutor-%d")
+        // Pools and devices mostly wait for test cases to finish, so they share one executor that grows only as needed
+        val runExecutor = Utils.namedCachedExecutor("TestRun-%d")
         return try {
             val deviceTestRunnerFactory by KoinContextHandler.get().inject<DeviceTestRunnerFactory>()
 
+            // Pools are prepared concurrently, and so are devices of each pool
+            val preparationStartNanos = System.nanoTime()
             val poolTestCasesMap: Map<Pool, PoolTask> = pools
                 .map { pool ->
-                    val deviceRunners = pool.devices.map { device ->
-                        device to deviceTestRunnerFactory.createDeviceTestRunner(pool, device, ruleManagerFactory)
-                    }
-
-                    deviceRunners.forEach { it.second.runBeforeRules() }
-
-                    val testCaseRules = testCaseRuleManager
-                        .createRulesFrom { configuration ->
-                            TestCaseRuleContext(configuration, pool)
-                        }
-                    val testCases = createTestSuiteLoaderForPool(pool)
-                        .also {
-                            if (it.isEmpty()) {
-                                throw NoTestCasesFoundException("No tests cases were found")
-                            }
-                        }
-                        .map { testCaseEvent: TestCaseEvent ->
-                            testCaseRules.fold(testCaseEvent) { acc, rule -> rule.transform(acc) }
-                        }
-                        .filter { testCaseEvent: TestCaseEvent ->
-                            testCaseRules.all { rule -> rule.filter(testCaseEvent) }
-                        }
-                        .also {
-                            if (it.isEmpty()) {
-                                throw NoTestCasesFoundException(
-                                    "All tests cases were filtered out by test case rules"
-                                )
-                            }
-                        }
-
-                    pool.devices.forEach { device ->
-                        testCaseRunnerManager
-                            .createRulesFrom { configuration ->
-                                TestCaseRunnerContext(
-                                    configuration,
-                                    pool,
-                                    device
-                                )
-                            }
-                            .forEach { runner ->
-                                testCases.forEach {
-                                    if ((!it.isEnabledOn(device)).not() && runner.supports(device, it.testCase)) {
-                                        it.addDeviceRunner(device, runner)
-                                    }
-                                }
-                            }
-                    }
-                    testCases.forEach { testCase ->
-                        val hasCompatibleDevice = pool.devices.any { device ->
-                            testCase.isEnabledOn(device) && testCase.runnersFor(device).isNotEmpty()
-                        }
-                        if (!hasCompatibleDevice) {
-                            throw IllegalStateException("No runner found for $testCase")
-                        }
-                    }
-
-                    pool to PoolTask(pool, deviceRunners, testCases)
+                    CompletableFuture.supplyAsync(Supplier {
+                        preparePool(pool, deviceTestRunnerFactory, runExecutor)
+                    }, runExecutor)
+                }
+                .map { preparation ->
+                    val poolTask = awaitPreparation(preparation)
+                    poolTask.pool to poolTask
                 }
                 .toMap()
+            logger.info("Prepared {} devices and loaded test cases of {} pools in {} ms",
+                poolTestCasesMap.values.sumBy { it.deviceRunners.size }, pools.size,
+                Utils.millisSinceNanoTime(preparationStartNanos))
+
+            if (workStealingEnabled) {
+                allowWorkStealing(poolTestCasesMap.values)
+            }
 
             // TODO: check that different sets of test cases in different pools doesn't fail run
             val allResults: List<TestCaseRunResult> = ArrayList()
@@ -148,25 +119,224 @@ class TongsRunner(private val poolLoader: PoolLoader,
             )
 
             progressReporter.start()
-            for (pool in pools) {
+            // All pool queues must exist before any device finishes its pool and starts borrowing test cases
+            val poolTestRunners = pools.map { pool ->
                 val poolTask = poolTestCasesMap.getValue(pool)
-                val poolTestRunner = poolTestRunnerFactory.createPoolTestRunner(
+                poolTestRunnerFactory.createPoolTestRunner(
                     poolTask,
-                    allResults, poolCountDownLatch,
+                    allResults, runExecutor,
                     progressReporter
                 )
-                poolExecutor.execute(poolTestRunner)
             }
-            poolCountDownLatch.await()
+            val poolTestRunnersMap = pools.zip(poolTestRunners).toMap()
+            val deviceMembership = if (deviceHotPlugEnabled) {
+                DeviceMembership(
+                    poolLoader, deviceTestRunnerFactory, ruleManagerFactory,
+                    poolTestRunnersMap,
+                    { pool, device ->
+                        val poolTask = poolTestCasesMap.getValue(pool)
+                        // A new device is not one of devices test cases were collected from
+                        val poolDevices = poolTask.deviceRunners.map { it.first }
+                        val enabledTestCases = admitDevice(poolTask.testCases, poolDevices, device)
+                        // A reconnected device already has runners
+                        if (enabledTestCases.none { it.runnersFor(device).isNotEmpty() }) {
+                            addTestCaseRunners(pool, device, enabledTestCases)
+                        }
+                        poolTestRunnersMap.getValue(pool).queue.refreshEligibility(device)
+                    },
+                    runExecutor
+                ).apply {
+                    start(poolTestCasesMap.mapValues { it.value.deviceRunners })
+                }
+            } else {
+                if (poolLoader.elasticDeviceProviders().isNotEmpty()) {
+                    logger.warn("Elastic device providers can't add devices as the deviceHotPlug option is disabled")
+                }
+                null
+            }
+            val demandReporter = deviceMembership?.let { membership ->
+                DeviceDemandReporter(
+                    poolLoader.elasticDeviceProviders(),
+                    poolTestRunnersMap.mapValues { it.value.queue },
+                    testDurationHistory,
+                    membership::devicesByPool
+                ).apply {
+                    start(runExecutor)
+                }
+            }
+            val wasInterrupted = try {
+                TaskScope(runExecutor).use { poolScope ->
+                    poolTestRunners.forEach { poolScope.launch(it::run) }
+                    try {
+                        poolScope.join()
+                        false
+                    } catch (e: InterruptedException) {
+                        // Work on all devices is cancelled by the scope, report results collected so far
+                        logger.warn("Test run was interrupted")
+                        true
+                    }
+                }
+            } finally {
+                demandReporter?.close()
+                deviceMembership?.close()
+            }
             progressReporter.stop()
 
+            saveDurationHistory(allResults)
+
             val overallSuccess = summaryGeneratorHook.defineOutcome()
             summaryGeneratorHook.unregisterHook()
             logger.info("Overall success: $overallSuccess")
 
-            overallSuccess
+            if (wasInterrupted) {
+                Thread.currentThread().interrupt()
+            }
+            overallSuccess && !wasInterrupted
         } finally {
-            poolExecutor.shutdownNow()
+            runExecutor.shutdownNow()
+        }
+    }
+
+    /**
+     * Prepares devices of [pool] in parallel and loads test cases of the pool once its devices are prepared
+     * (test cases are collected from devices, so they need the application installed). Devices that failed
+     * preparation are excluded from the run.
+     */
+    private fun preparePool(
+        pool: Pool,
+        deviceTestRunnerFactory: DeviceTestRunnerFactory,
+        executor: ExecutorService
+    ): PoolTask {
+        val deviceRunners = pool.devices
+            .map { device ->
+                val deviceRunner = deviceTestRunnerFactory.createDeviceTestRunner(pool, device, ruleManagerFactory)
+                device to CompletableFuture.supplyAsync(Supplier {
+                    val startNanos = System.nanoTime()
+                    deviceRunner.runBeforeRules()
+                    logger.info("Device {} from pool {} was prepared in {} ms",
+                        device.serial, pool.name, Utils.millisSinceNanoTime(startNanos))
+                    deviceRunner
+                }, executor)
+            }
+            .mapNotNull { (device, preparation) ->
+                try {
+                    device to preparation.get()
+                } catch (e: ExecutionException) {
+                    logger.error("Device {} from pool {} failed preparation and is excluded from the run",
+                        device.serial, pool.name, e.cause)
+                    null
+                }
+            }
+        if (deviceRunners.isEmpty()) {
+            throw NoDevicesForPoolException("All devices of pool ${pool.name} failed preparation")
+        }
+        val preparedDevices = deviceRunners.map { it.first }
+
+        val loadingStartNanos = System.nanoTime()
+        val testCaseRules = testCaseRuleManager
+            .createRulesFrom { configuration ->
+                TestCaseRuleContext(configuration, pool)
+            }
+        // Test cases are collected from prepared devices only, as failed devices are excluded from the run
+        val preparedPool = Pool.Builder.aDevicePool()
+            .withName(pool.name)
+            .apply { preparedDevices.forEach { addDevice(it) } }
+            .build()
+        val testCases = createTestSuiteLoaderForPool(preparedPool)
+            .also {
+                if (it.isEmpty()) {
+                    throw NoTestCasesFoundException("No tests cases were found")
+                }
+            }
+            .map { testCaseEvent: TestCaseEvent ->
+                testCaseRules.fold(testCaseEvent) { acc, rule -> rule.transform(acc) }
+            }
+            .filter { testCaseEvent: TestCaseEvent ->
+                testCaseRules.all { rule -> rule.filter(testCaseEvent) }
+            }
+            .also {
+                if (it.isEmpty()) {
+                    throw NoTestCasesFoundException(
+                        "All tests cases were filtered out by test case rules"
+                    )
+                }
+            }
+            .let { testDurationHistory.orderLongestFirst(pool, it) }
+        logger.info("Loaded {} test cases of pool {} in {} ms",
+            testCases.size, pool.name, Utils.millisSinceNanoTime(loadingStartNanos))
+
+        preparedDevices.forEach { device ->
+            addTestCaseRunners(pool, device, testCases)
+        }
+        testCases.forEach { testCase ->
+            val hasCompatibleDevice = preparedDevices.any { device ->
+                testCase.isEnabledOn(device) && testCase.runnersFor(device).isNotEmpty()
+            }
+            if (!hasCompatibleDevice) {
+                throw IllegalStateException("No runner found for $testCase")
+            }
+        }
+
+        return PoolTask(pool, deviceRunners, testCases)
+    }
+
+    private fun awaitPreparation(preparation: CompletableFuture<PoolTask>): PoolTask {
+        try {
+            return preparation.get()
+        } catch (e: ExecutionException) {
+            // Rethrow the original exception, so it is reported the same way as when thrown on this thread
+            throw e.cause ?: e
+        }
+    }
+
+    private fun addTestCaseRunners(pool: Pool, device: Device, testCases: List<TestCaseEvent>) {
+        testCaseRunnerManager
+            .createRulesFrom { configuration ->
+                TestCaseRunnerContext(
+                    configuration,
+                    pool,
+                    device
+                )
+            }
+            .forEach { runner ->
+                testCases.forEach {
+                    if ((!it.isEnabledOn(device)).not() && runner.supports(device, it.testCase)) {
+                        it.addDeviceRunner(device, runner)
+                    }
+                }
+            }
+    }
+
+    /**
+     * Lets devices borrow test cases from other pools whose constraints they satisfy. A device is allowed to borrow
+     * from a pool only when it can execute some test cases of that pool and has runners for all of them.
+     */
+    private fun allowWorkStealing(poolTasks: Collection<PoolTask>) {
+        val allDevices = poolTasks.flatMap { poolTask -> poolTask.deviceRunners.map { it.first } }
+        poolTasks.forEach { poolTask ->
+            val pool = poolTask.pool
+            allDevices
+                .filter { device -> poolLoader.isCompatible(pool, device) }
+                .forEach { device ->
+                    val poolDevices = poolTask.deviceRunners.map { it.first }
+                    val enabledTestCases = admitDevice(poolTask.testCases, poolDevices, device)
+                    addTestCaseRunners(pool, device, enabledTestCases)
+                    val canRunAll = enabledTestCases.isNotEmpty()
+                            && enabledTestCases.all { it.runnersFor(device).isNotEmpty() }
+                    if (canRunAll) {
+                        workStealingQueues.allowBorrowing(device, pool)
+                        logger.info("Device {} can borrow test cases from pool {}", device.serial, pool.name)
+                    }
+                }
+        }
+    }
+
+    private fun saveDurationHistory(results: List<TestCaseRunResult>) {
+        try {
+            testDurationHistory.recordResults(results)
+            testDurationHistory.save()
+        } catch (e: Exception) {
+            logger.warn("Failed to save test case durations history", e)
         }
     }
 
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.result.FileType
+import com.github.tarcv.tongs.api.result.TestCaseFile
+import com.github.tarcv.tongs.api.result.TestCaseFileManager
+import java.io.FileOutputStream
+import java.nio.file.InvalidPathException
+import java.nio.file.Paths
+import java.util.Base64
+
+/**
+ * Writes artifact files of one test case result received from a worker (see [ArtifactChunk])
+ * to files of the test case on the coordinator
+ */
+class ArtifactReceiver(private val fileManager: TestCaseFileManager) {
+    private val lock = Any()
+    private val files = HashMap<String, TestCaseFile>()
+    private val usedFileTypes = HashMap<ArtifactFileType, Int>()
+
+    /**
+     * @throws IllegalArgumentException when the chunk is malformed or its path is outside of the output directory
+     */
+    fun receive(chunk: ArtifactChunk) {
+        val data = Base64.getDecoder().decode(chunk.data)
+        val file = fileFor(chunk.path).toFile()
+        FileOutputStream(file, true).use { it.write(data) }
+    }
+
+    /**
+     * @return file for the artifact at [workerPath], the file is empty when no chunks of it were received
+     * @throws IllegalArgumentException when [workerPath] is outside of the output directory
+     */
+    fun fileFor(workerPath: String): TestCaseFile {
+        synchronized(lock) {
+            return files.getOrPut(workerPath) {
+                val fileType = artifactFileType(workerPath)
+                val index = usedFileTypes.getOrDefault(fileType, 0)
+                usedFileTypes[fileType] = index + 1
+                val suffix = if (index == 0) "" else index.toString()
+
+                fileManager.testCaseFile(fileType, suffix)
+                        .also { it.create() }
+            }
+        }
+    }
+
+    private data class ArtifactFileType(
+            private val typeDirectory: String,
+            private val typeSuffix: String
+    ) : FileType {
+        override fun getDirectory(): String = typeDirectory
+
+        override fun getSuffix(): String = typeSuffix
+    }
+
+    companion object {
+        private val SAFE_EXTENSION = Regex("[A-Za-z0-9]*")
+
+        /**
+         * Worker paths look like 'directory/pool/serial/name.extension', only the directory and the extension are
+         * kept. Paths come from the network, so anything that might escape the output directory is rejected.
+         */
+        private fun artifactFileType(workerPath: String): ArtifactFileType {
+            val path = try {
+                Paths.get(workerPath).normalize()
+            } catch (e: InvalidPathException) {
+                throw IllegalArgumentException("Artifact path '$workerPath' is invalid", e)
+            }
+            if (workerPath.contains('\\') || path.root != null || path.toString().isEmpty()
+                    || path.startsWith("..")) {
+                throw IllegalArgumentException("Artifact path '$workerPath' is outside of the output directory")
+            }
+
+            val extension = path.fileName.toString().substringAfterLast('.', "")
+            if (!SAFE_EXTENSION.matches(extension)) {
+                throw IllegalArgumentException("Artifact path '$workerPath' has an invalid extension")
+            }
+            val directory = if (path.nameCount > 1) path.getName(0).toString() else ""
+            return ArtifactFileType(directory, extension)
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.run.CancellationSignal
+import com.google.gson.Gson
+import org.slf4j.LoggerFactory
+import java.io.IOException
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.SocketTimeoutException
+import java.security.MessageDigest
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicLong
+import javax.annotation.concurrent.GuardedBy
+import kotlin.concurrent.thread
+
+/**
+ * Accepts connections of workers and forwards requests to them.
+ * Only workers that send [token] when registering are accepted.
+ *
+ * Nothing is started until [awaitWorkers] is called, so creating a coordinator is cheap
+ * even when the distributed mode is disabled.
+ */
+class Coordinator(
+        private val bindAddress: String,
+        private val port: Int,
+        private val token: String,
+        private val expectedWorkers: Int,
+        private val gson: Gson,
+        private val requestTimeoutMillis: Long = DEFAULT_REQUEST_TIMEOUT_MILLIS,
+        private val registrationTimeoutMillis: Long = DEFAULT_REGISTRATION_TIMEOUT_MILLIS,
+        private val handshakeTimeoutMillis: Long = DEFAULT_HANDSHAKE_TIMEOUT_MILLIS
+) {
+    private val lock = Any()
+
+    @GuardedBy("lock")
+    private var workers: List<WorkerConnection>? = null
+
+    /**
+     * Waits until the expected number of workers are registered (or until the registration timeout)
+     *
+     * @return all registered workers
+     */
+    @Throws(IOException::class)
+    fun awaitWorkers(): List<WorkerConnection> {
+        synchronized(lock) {
+            workers?.let { return it }
+
+            val registeredWorkers = ArrayList<WorkerConnection>()
+            ServerSocket(port, 0, InetAddress.getByName(bindAddress)).use { serverSocket ->
+                logger.info("Waiting for {} worker(s) on {}:{}", expectedWorkers, bindAddress, serverSocket.localPort)
+                val deadline = System.currentTimeMillis() + registrationTimeoutMillis
+                while (registeredWorkers.size < expectedWorkers) {
+                    val timeLeft = deadline - System.currentTimeMillis()
+                    if (timeLeft <= 0) {
+                        break
+                    }
+                    serverSocket.soTimeout = timeLeft.toInt()
+
+                    val socket = try {
+                        serverSocket.accept()
+                    } catch (e: SocketTimeoutException) {
+                        break
+                    }
+                    val channel = MessageChannel(socket, gson)
+                    try {
+                        channel.maxMessageLength = MAX_REGISTRATION_LENGTH
+                        // Clients are registered one by one, so a client that sends nothing must not block
+                        // registration of other workers for long
+                        socket.soTimeout = minOf(handshakeTimeoutMillis, timeLeft).toInt()
+                        val registration = channel.receive()
+                        if (registration?.type != MessageType.REGISTER) {
+                            throw IOException("Expected registration, got ${registration?.type}")
+                        }
+                        if (!isValidToken(registration.token)) {
+                            throw IOException("Worker sent a wrong token")
+                        }
+                        socket.soTimeout = 0
+                        channel.maxMessageLength = MessageChannel.DEFAULT_MAX_MESSAGE_LENGTH
+                        val worker = WorkerConnection(
+                                registration.workerName ?: channel.remoteAddress,
+                                registration.devices ?: emptyList(),
+                                channel,
+                                requestTimeoutMillis
+                        )
+                        logger.info("Worker {} registered {} device(s)", worker.name, worker.devices.size)
+                        registeredWorkers.add(worker)
+                    } catch (e: IOException) {
+                        logger.warn("Failed to register a worker from {}", channel.remoteAddress, e)
+                        channel.close()
+                    }
+                }
+            }
+
+            if (registeredWorkers.size < expectedWorkers) {
+                logger.warn("Only {} of {} worker(s) registered in time", registeredWorkers.size, expectedWorkers)
+            }
+            workers = registeredWorkers
+            return registeredWorkers
+        }
+    }
+
+    private fun isValidToken(receivedToken: String?): Boolean {
+        // Compared in constant time, so the token can't be guessed by timing attempts
+        return MessageDigest.isEqual(
+                (receivedToken ?: "").toByteArray(Charsets.UTF_8),
+                token.toByteArray(Charsets.UTF_8)
+        )
+    }
+
+    /**
+     * Lets all workers know that the run is finished
+     */
+    fun close() {
+        val registeredWorkers = synchronized(lock) {
+            workers.also { workers = emptyList() }
+        }
+        registeredWorkers?.forEach { it.close() }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(Coordinator::class.java)
+
+        val DEFAULT_REGISTRATION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5)
+        val DEFAULT_REQUEST_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30)
+        val DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5)
+
+        /**
+         * Registration is read before a client is authenticated, so it is limited more strictly than other messages
+         */
+        private const val MAX_REGISTRATION_LENGTH = 1024 * 1024
+    }
+}
+
+/**
+ * Connection to one registered worker. Requests can be sent concurrently, responses are matched by their ids.
+ */
+class WorkerConnection(
+        val name: String,
+        val devices: List<DeviceInfo>,
+        private val channel: MessageChannel,
+        private val requestTimeoutMillis: Long = Coordinator.DEFAULT_REQUEST_TIMEOUT_MILLIS
+) {
+    private val nextId = AtomicLong(1)
+    private val pendingRequests = ConcurrentHashMap<Long, PendingRequest>()
+
+    @Volatile
+    private var isClosed = false
+
+    init {
+        thread(isDaemon = true, name = "Worker-$name") {
+            readResponses()
+        }
+    }
+
+    /**
+     * Sends [request] (with a newly assigned id) and waits for the response
+     *
+     * @param onChunk receives parts of artifact files sent before the response, it is called on the thread
+     * reading messages of the worker, so it should only write the received data
+     * @param cancellationSignal once cancelled, the worker is asked to stop processing the request
+     * (see [MessageType.CANCEL]), the response is still awaited
+     */
+    @JvmOverloads
+    @Throws(IOException::class, InterruptedException::class)
+    fun request(
+            type: MessageType,
+            onChunk: ((ArtifactChunk) -> Unit)? = null,
+            cancellationSignal: CancellationSignal? = null,
+            request: (id: Long) -> Message
+    ): Message {
+        val id = nextId.getAndIncrement()
+        val message = request(id)
+        require(message.type == type && message.id == id) { "Request should have type $type and id $id" }
+
+        val responseFuture = CompletableFuture<Message>()
+        pendingRequests[id] = PendingRequest(responseFuture, onChunk)
+        try {
+            if (isClosed) {
+                throw IOException("Connection to worker $name is closed")
+            }
+            channel.send(message)
+            cancellationSignal?.setOnCancelListener(Runnable { sendCancel(type, id) })
+
+            val response = try {
+                responseFuture.get(requestTimeoutMillis, TimeUnit.MILLISECONDS)
+            } catch (e: ExecutionException) {
+                throw IOException("Worker $name failed to respond to $type request", e.cause)
+            } catch (e: TimeoutException) {
+                throw IOException("Worker $name didn't respond to $type request in $requestTimeoutMillis ms")
+            }
+            if (response.type == MessageType.FAILED) {
+                throw IOException("Worker $name failed to process $type request: ${response.error}")
+            }
+            return response
+        } finally {
+            cancellationSignal?.setOnCancelListener(null)
+            pendingRequests.remove(id)
+        }
+    }
+
+    private fun sendCancel(type: MessageType, id: Long) {
+        try {
+            if (!isClosed && pendingRequests.containsKey(id)) {
+                channel.send(Message(MessageType.CANCEL, id))
+            }
+        } catch (e: IOException) {
+            // The request fails on its own when the connection is lost
+            logger.warn("Failed to cancel {} request on worker {}", type, name, e)
+        }
+    }
+
+    fun close() {
+        try {
+            if (!isClosed) {
+                channel.send(Message(MessageType.FINISH))
+            }
+        } catch (e: IOException) {
+            logger.warn("Failed to notify worker {} about the end of the run", name, e)
+        } finally {
+            isClosed = true
+            channel.close()
+        }
+    }
+
+    private fun readResponses() {
+        val failure = try {
+            while (true) {
+                val response = channel.receive() ?: break
+                val pendingRequest = pendingRequests[response.id]
+                when {
+                    pendingRequest == null ->
+                        logger.warn("Got unexpected {} message from worker {}", response.type, name)
+                    response.type == MessageType.ARTIFACT_CHUNK -> pendingRequest.receiveChunk(response)
+                    else -> pendingRequest.response.complete(response)
+                }
+            }
+            IOException("Worker $name disconnected")
+        } catch (e: IOException) {
+            e
+        }
+
+        if (!isClosed) {
+            logger.error("Lost connection to worker {}", name, failure)
+        }
+        isClosed = true
+        pendingRequests.values.forEach { it.response.completeExceptionally(failure) }
+    }
+
+    private class PendingRequest(
+            val response: CompletableFuture<Message>,
+            private val onChunk: ((ArtifactChunk) -> Unit)?
+    ) {
+        fun receiveChunk(message: Message) {
+            try {
+                val chunk = message.chunk ?: throw IOException("Got an artifact chunk without data")
+                val handler = onChunk ?: throw IOException("Got an artifact chunk for a request without artifacts")
+                handler(chunk)
+            } catch (e: Exception) {
+                // The request fails, but other requests to the worker are not affected
+                response.completeExceptionally(e)
+            }
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(WorkerConnection::class.java)
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.result.StackTrace
+import com.github.tarcv.tongs.api.result.Table
+import com.github.tarcv.tongs.api.run.ResultStatus
+import com.github.tarcv.tongs.api.run.TestTypeTag
+import com.github.tarcv.tongs.api.testcases.AnnotationInfo
+import com.github.tarcv.tongs.api.testcases.TestCase
+import com.github.tarcv.tongs.suite.ApkTestCase
+
+/**
+ * Messages exchanged between the coordinator and workers. Each message is sent as one line of JSON.
+ *
+ * A worker connects to the coordinator and sends [MessageType.REGISTER] with its devices and the token shared with
+ * the coordinator. After that the coordinator sends requests ([MessageType.COLLECT], [MessageType.RUN]) and the worker
+ * answers each of them with a message of the corresponding response type and the same [id]. Requests for different
+ * devices might be sent concurrently, a running request can be cancelled with [MessageType.CANCEL].
+ * [MessageType.FINISH] ends the session.
+ */
+class Message(
+        val type: MessageType,
+        val id: Long = 0,
+        val workerName: String? = null,
+        val token: String? = null,
+        val devices: List<DeviceInfo>? = null,
+        val serials: List<String>? = null,
+        val testCases: List<TestCaseInfo>? = null,
+        val testCase: TestCaseInfo? = null,
+        val totalFailureCount: Int = 0,
+        val result: ResultInfo? = null,
+        val chunk: ArtifactChunk? = null,
+        val error: String? = null
+)
+
+enum class MessageType {
+    REGISTER,
+
+    /**
+     * Request to list test cases that can be executed on devices with [Message.serials]
+     */
+    COLLECT,
+    COLLECTED,
+
+    /**
+     * Request to execute [Message.testCase] on the device with the first of [Message.serials]
+     */
+    RUN,
+    RESULT,
+
+    /**
+     * Asks the worker to stop executing the [RUN] request with the same [Message.id] as soon as possible.
+     * The worker still answers the request, no answer is sent for this message itself.
+     */
+    CANCEL,
+
+    /**
+     * Part of a file of a test case result, all parts are sent before [RESULT] with the same [Message.id]
+     */
+    ARTIFACT_CHUNK,
+
+    /**
+     * Response to a request that failed on the worker, [Message.error] describes the failure
+     */
+    FAILED,
+
+    FINISH
+}
+
+class DeviceInfo(
+        val serial: String,
+        val manufacturer: String,
+        val modelName: String,
+        val osApiLevel: Int,
+        val longName: String,
+        val isTablet: Boolean,
+        val swDp: Int?
+) {
+    companion object {
+        fun from(device: Device): DeviceInfo {
+            return DeviceInfo(
+                    device.serial,
+                    device.manufacturer,
+                    device.modelName,
+                    device.osApiLevel,
+                    device.longName,
+                    device.isTablet,
+                    device.geometry?.swDp
+            )
+        }
+    }
+}
+
+class TestCaseInfo(
+        val typeTag: String,
+        val testPackage: String,
+        val testClass: String,
+        val testMethod: String,
+        val readablePath: List<String>,
+        val properties: Map<String, String>,
+        val annotations: List<AnnotationInfo>,
+
+        /**
+         * Serials of worker devices that can execute this test case, null means all devices
+         */
+        val includedSerials: List<String>?
+) {
+    /**
+     * @throws IllegalArgumentException when [typeTag] is not one of [KNOWN_TYPE_TAGS]
+     */
+    fun toTestCase(includedDevices: Set<Device>?): TestCase {
+        // Type tags come from the network, so they are never loaded by their names
+        val typeTagClass = KNOWN_TYPE_TAGS[typeTag]
+                ?: throw IllegalArgumentException("Unknown test case type tag '$typeTag'")
+        return TestCase(
+                typeTagClass,
+                testPackage,
+                testClass,
+                testMethod,
+                readablePath,
+                properties,
+                annotations,
+                includedDevices
+        )
+    }
+
+    companion object {
+        private val KNOWN_TYPE_TAGS: Map<String, Class<*>> = listOf(ApkTestCase::class.java, TestTypeTag::class.java)
+                .associateBy { it.name }
+
+        fun from(testCase: TestCase): TestCaseInfo {
+            return TestCaseInfo(
+                    testCase.typeTag.name,
+                    testCase.testPackage,
+                    testCase.testClass,
+                    testCase.testMethod,
+                    testCase.readablePath,
+                    testCase.properties,
+                    testCase.annotations,
+                    testCase.includedDevices?.map { it.serial }
+            )
+        }
+    }
+}
+
+class ResultInfo(
+        val status: ResultStatus,
+        val stackTraces: List<StackTrace>,
+        val startMillis: Long,
+        val endMillis: Long,
+        val netStartMillis: Long?,
+        val netEndMillis: Long?,
+        val properties: Map<String, String>,
+        val artifacts: List<ArtifactInfo>
+)
+
+/**
+ * Report data of a test case result. Contents of files are transferred in [ArtifactChunk]s before the result.
+ */
+class ArtifactInfo(
+        val kind: ArtifactKind,
+        val title: String,
+        val text: String? = null,
+        val textType: String? = null,
+        val table: Table.TableJson? = null,
+
+        /**
+         * Path of the file relative to the output directory of the worker
+         */
+        val path: String? = null
+)
+
+/**
+ * Part of the file at [path] (see [ArtifactInfo.path]), [data] is Base64 encoded
+ */
+class ArtifactChunk(
+        val path: String,
+        val data: String
+)
+
+enum class ArtifactKind {
+    TEXT,
+    HTML,
+    TABLE,
+    IMAGE,
+    VIDEO,
+    FILE
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.google.gson.Gson
+import com.google.gson.JsonParseException
+import java.io.Closeable
+import java.io.IOException
+import java.net.Socket
+import javax.annotation.concurrent.ThreadSafe
+
+/**
+ * Sends and receives [Message]s over a socket, one JSON document per line
+ */
+@ThreadSafe
+class MessageChannel(private val socket: Socket, private val gson: Gson) : Closeable {
+    private val reader = socket.getInputStream().bufferedReader(Charsets.UTF_8)
+    private val writer = socket.getOutputStream().bufferedWriter(Charsets.UTF_8)
+    private val readLock = Any()
+    private val writeLock = Any()
+
+    /**
+     * Longer received lines are rejected, so a misbehaving peer can't exhaust memory
+     */
+    @Volatile
+    var maxMessageLength = DEFAULT_MAX_MESSAGE_LENGTH
+
+    val remoteAddress: String
+        get() = socket.remoteSocketAddress.toString()
+
+    @Throws(IOException::class)
+    fun send(message: Message) {
+        // Gson never outputs raw line breaks, so a message always takes exactly one line
+        val line = gson.toJson(message)
+        synchronized(writeLock) {
+            writer.write(line)
+            writer.write("\n")
+            writer.flush()
+        }
+    }
+
+    /**
+     * @return next message or null when the other side closed the connection
+     */
+    @Throws(IOException::class)
+    fun receive(): Message? {
+        val line = synchronized(readLock) {
+            readLine()
+        } ?: return null
+        return try {
+            gson.fromJson(line, Message::class.java)
+                    ?: throw IOException("Got an empty message from $remoteAddress")
+        } catch (e: JsonParseException) {
+            throw IOException("Got a malformed message from $remoteAddress", e)
+        }
+    }
+
+    override fun close() {
+        socket.close()
+    }
+
+    private fun readLine(): String? {
+        val line = StringBuilder()
+        while (true) {
+            val char = reader.read()
+            when {
+                char == -1 -> return if (line.isEmpty()) null else line.toString()
+                char == '\n'.toInt() -> return line.toString()
+                line.length >= maxMessageLength ->
+                    throw IOException("Message from $remoteAddress is longer than $maxMessageLength characters")
+                else -> line.append(char.toChar())
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_MESSAGE_LENGTH = 64 * 1024 * 1024
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.Diagnostics
+import com.github.tarcv.tongs.api.devices.DisplayGeometry
+
+/**
+ * Device connected to a worker
+ */
+class RemoteDevice(
+        val worker: WorkerConnection,
+        private val info: DeviceInfo
+) : Device() {
+    private val uniqueIdentifier = "${worker.name}/${info.serial}"
+
+    override fun getHost(): String = worker.name
+
+    override fun getSerial(): String = info.serial
+
+    override fun getManufacturer(): String = info.manufacturer
+
+    override fun getModelName(): String = info.modelName
+
+    override fun getOsApiLevel(): Int = info.osApiLevel
+
+    override fun getLongName(): String = "${info.longName} on ${worker.name}"
+
+    override fun getDeviceInterface(): Any = worker
+
+    override fun isTablet(): Boolean = info.isTablet
+
+    override fun getGeometry(): DisplayGeometry? = info.swDp?.let { DisplayGeometry(it) }
+
+    /**
+     * Screen recordings are made by the worker and transferred as a part of test case results
+     */
+    override fun getSupportedVisualDiagnostics(): Diagnostics = Diagnostics.NONE
+
+    override fun getUniqueIdentifier(): Any = uniqueIdentifier
+
+    override fun toString(): String = uniqueIdentifier
+}
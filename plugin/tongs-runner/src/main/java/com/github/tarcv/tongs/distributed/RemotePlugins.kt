@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.DeviceProvider
+import com.github.tarcv.tongs.api.devices.DeviceProviderContext
+import com.github.tarcv.tongs.api.devices.DeviceProviderFactory
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.result.ImageReportData
+import com.github.tarcv.tongs.api.result.LinkedFileReportData
+import com.github.tarcv.tongs.api.result.RunTesult
+import com.github.tarcv.tongs.api.result.SimpleHtmlReportData
+import com.github.tarcv.tongs.api.result.SimpleMonoTextReportData
+import com.github.tarcv.tongs.api.result.SimpleTableReportData
+import com.github.tarcv.tongs.api.result.Table
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.result.TestReportData
+import com.github.tarcv.tongs.api.result.VideoReportData
+import com.github.tarcv.tongs.api.run.RunRule
+import com.github.tarcv.tongs.api.run.RunRuleContext
+import com.github.tarcv.tongs.api.run.RunRuleFactory
+import com.github.tarcv.tongs.api.run.TestCaseRunner
+import com.github.tarcv.tongs.api.run.TestCaseRunnerArguments
+import com.github.tarcv.tongs.api.run.TestCaseRunnerContext
+import com.github.tarcv.tongs.api.run.TestCaseRunnerFactory
+import com.github.tarcv.tongs.api.testcases.TestCase
+import com.github.tarcv.tongs.api.testcases.TestCaseProvider
+import com.github.tarcv.tongs.api.testcases.TestCaseProviderContext
+import com.github.tarcv.tongs.api.testcases.TestCaseProviderFactory
+import org.koin.core.context.KoinContextHandler
+import java.time.Instant
+
+class RemoteDeviceProviderFactory : DeviceProviderFactory<RemoteDeviceProvider> {
+    override fun deviceProviders(context: DeviceProviderContext): Array<out RemoteDeviceProvider> {
+        val coordinator by KoinContextHandler.get().inject<Coordinator>()
+        return arrayOf(RemoteDeviceProvider(coordinator))
+    }
+}
+
+class RemoteDeviceProvider(private val coordinator: Coordinator) : DeviceProvider {
+    override fun provideDevices(): Set<Device> {
+        return coordinator.awaitWorkers()
+                .flatMap { worker ->
+                    worker.devices.map { RemoteDevice(worker, it) }
+                }
+                .toSet()
+    }
+}
+
+class RemoteTestCaseProviderFactory : TestCaseProviderFactory<RemoteTestCaseProvider> {
+    override fun suiteLoaders(context: TestCaseProviderContext): Array<out RemoteTestCaseProvider> {
+        return arrayOf(RemoteTestCaseProvider(context.pool))
+    }
+}
+
+/**
+ * Asks workers to list test cases for their devices in the pool
+ */
+class RemoteTestCaseProvider(private val pool: Pool) : TestCaseProvider {
+    override fun loadTestSuite(): Collection<TestCase> {
+        return pool.devices
+                .filterIsInstance<RemoteDevice>()
+                .groupBy { it.worker }
+                .flatMap { (worker, devices) ->
+                    val devicesBySerial = devices.associateBy { it.serial }
+                    val response = worker.request(MessageType.COLLECT) { id ->
+                        Message(MessageType.COLLECT, id, serials = devicesBySerial.keys.toList())
+                    }
+                    (response.testCases ?: emptyList()).map { testCaseInfo ->
+                        val includedDevices = (testCaseInfo.includedSerials ?: devicesBySerial.keys)
+                                .mapNotNull { devicesBySerial[it] }
+                                .toSet()
+                        testCaseInfo.toTestCase(includedDevices)
+                    }
+                }
+    }
+}
+
+class RemoteTestCaseRunnerFactory : TestCaseRunnerFactory<RemoteTestCaseRunner> {
+    override fun testCaseRunners(context: TestCaseRunnerContext): Array<out RemoteTestCaseRunner> {
+        return arrayOf(RemoteTestCaseRunner(context))
+    }
+}
+
+/**
+ * Executes test cases on a worker device. Retries, run rules and reporting stay on the coordinator,
+ * while the worker applies rules that need direct access to the device.
+ */
+class RemoteTestCaseRunner(private val context: TestCaseRunnerContext) : TestCaseRunner {
+    override fun supports(device: Device, testCase: TestCase): Boolean = device is RemoteDevice
+
+    override fun run(arguments: TestCaseRunnerArguments): RunTesult {
+        val device = context.device as RemoteDevice
+        val testCaseEvent = arguments.testCaseEvent
+        val artifactReceiver = ArtifactReceiver(arguments.fileManager)
+        val response = device.worker.request(
+                MessageType.RUN,
+                artifactReceiver::receive,
+                arguments.cancellationSignal
+        ) { id ->
+            Message(MessageType.RUN, id,
+                    serials = listOf(device.serial),
+                    testCase = TestCaseInfo.from(testCaseEvent.testCase),
+                    totalFailureCount = testCaseEvent.totalFailureCount)
+        }
+        val result = response.result ?: throw IllegalStateException("Worker ${device.worker.name} sent no result")
+
+        return TestCaseRunResult(
+                context.pool, device, testCaseEvent.testCase,
+                result.status,
+                result.stackTraces,
+                Instant.ofEpochMilli(result.startMillis),
+                Instant.ofEpochMilli(result.endMillis),
+                result.netStartMillis?.let { Instant.ofEpochMilli(it) },
+                result.netEndMillis?.let { Instant.ofEpochMilli(it) },
+                testCaseEvent.totalFailureCount,
+                result.properties,
+                null,
+                restoreArtifacts(result.artifacts, artifactReceiver)
+        )
+    }
+
+    private fun restoreArtifacts(artifacts: List<ArtifactInfo>, receiver: ArtifactReceiver): List<TestReportData> {
+        return artifacts.map { artifact ->
+            when (artifact.kind) {
+                ArtifactKind.TEXT -> SimpleMonoTextReportData(
+                        artifact.title,
+                        SimpleMonoTextReportData.Type.valueOf(artifact.textType ?: "OTHER"),
+                        artifact.text ?: ""
+                )
+                ArtifactKind.HTML -> SimpleHtmlReportData(artifact.title, artifact.text ?: "")
+                ArtifactKind.TABLE -> SimpleTableReportData(artifact.title, artifact.table.toTable())
+                ArtifactKind.IMAGE, ArtifactKind.VIDEO, ArtifactKind.FILE -> {
+                    val path = artifact.path ?: throw IllegalArgumentException("No path for '${artifact.title}'")
+                    val file = receiver.fileFor(path)
+                    when (artifact.kind) {
+                        ArtifactKind.IMAGE -> ImageReportData(artifact.title, file)
+                        ArtifactKind.VIDEO -> VideoReportData(artifact.title, file)
+                        else -> LinkedFileReportData(artifact.title, file)
+                    }
+                }
+            }
+        }
+    }
+
+    private fun Table.TableJson?.toTable(): Table {
+        return Table(this?.headers ?: emptyList(), this?.rows ?: emptyList())
+    }
+}
+
+class CoordinatorRunRuleFactory : RunRuleFactory<CoordinatorRunRule> {
+    override fun runRules(context: RunRuleContext): Array<out CoordinatorRunRule> {
+        val coordinator by KoinContextHandler.get().inject<Coordinator>()
+        return arrayOf(CoordinatorRunRule(coordinator))
+    }
+}
+
+/**
+ * Releases workers at the end of the run
+ */
+class CoordinatorRunRule(private val coordinator: Coordinator) : RunRule {
+    override fun before() {
+        // no-op, workers are awaited when devices are loaded
+    }
+
+    override fun after() {
+        coordinator.close()
+    }
+}
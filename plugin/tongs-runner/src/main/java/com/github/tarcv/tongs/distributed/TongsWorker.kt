@@ -0,0 +1,282 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.Configuration
+import com.github.tarcv.tongs.Tongs
+import com.github.tarcv.tongs.TongsRunner
+import com.github.tarcv.tongs.Utils
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.result.FileHtmlReportData
+import com.github.tarcv.tongs.api.result.FileMonoTextReportData
+import com.github.tarcv.tongs.api.result.FileTableReportData
+import com.github.tarcv.tongs.api.result.ImageReportData
+import com.github.tarcv.tongs.api.result.LinkedFileReportData
+import com.github.tarcv.tongs.api.result.SimpleHtmlReportData
+import com.github.tarcv.tongs.api.result.SimpleMonoTextReportData
+import com.github.tarcv.tongs.api.result.SimpleTableReportData
+import com.github.tarcv.tongs.api.result.Table
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.result.TestReportData
+import com.github.tarcv.tongs.api.result.VideoReportData
+import com.github.tarcv.tongs.api.run.CancellationSignal
+import com.github.tarcv.tongs.api.run.TestCaseEvent
+import com.github.tarcv.tongs.api.run.TestCaseRunner
+import com.github.tarcv.tongs.api.run.TestCaseRunnerContext
+import com.github.tarcv.tongs.injector.RuleManagerFactory
+import com.github.tarcv.tongs.injector.TestCaseRunnerManager
+import com.github.tarcv.tongs.pooling.PoolLoader
+import com.github.tarcv.tongs.runner.DeviceTestRunner
+import com.github.tarcv.tongs.runner.DeviceTestRunnerFactory
+import com.google.gson.Gson
+import org.koin.core.context.KoinContextHandler
+import org.koin.core.context.stopKoin
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.net.Socket
+import java.util.Base64
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Connects devices of this host to a coordinator (see [Coordinator]) and executes test cases requested by it
+ */
+class TongsWorker(
+        private val configuration: Configuration,
+        private val coordinatorHost: String,
+        private val coordinatorPort: Int
+) {
+    fun run(): Boolean {
+        Tongs.injectAll(configuration)
+        try {
+            Tongs.PrepareOutputDirectoryRule(configuration.output).before()
+
+            val poolLoader by KoinContextHandler.get().inject<PoolLoader>()
+            val devices = poolLoader.loadDevices()
+            val pool = Pool.Builder.aDevicePool()
+                    .withName(WORKER_POOL_NAME)
+                    .apply { devices.forEach { addDevice(it) } }
+                    .build()
+
+            val deviceTestRunnerFactory by KoinContextHandler.get().inject<DeviceTestRunnerFactory>()
+            val ruleManagerFactory by KoinContextHandler.get().inject<RuleManagerFactory>()
+            val deviceRunners = devices.associate { device ->
+                device.serial to WorkerDevice(
+                        device,
+                        pool,
+                        deviceTestRunnerFactory.createDeviceTestRunner(pool, device, ruleManagerFactory)
+                )
+            }
+
+            deviceRunners.values.forEach { it.runner.runBeforeRules() }
+            try {
+                val gson by KoinContextHandler.get().inject<Gson>()
+                val channel = MessageChannel(Socket(coordinatorHost, coordinatorPort), gson)
+                channel.use {
+                    serve(channel, pool, deviceRunners)
+                }
+            } finally {
+                deviceRunners.values.forEach { it.runner.runAfterRules() }
+            }
+            return true
+        } catch (e: Exception) {
+            logger.error("Error while serving the coordinator", e)
+            return false
+        } finally {
+            stopKoin()
+        }
+    }
+
+    private fun serve(channel: MessageChannel, pool: Pool, deviceRunners: Map<String, WorkerDevice>) {
+        // Name of the runtime includes the PID, so several workers can run on the same host
+        val workerName = ManagementFactory.getRuntimeMXBean().name
+        channel.send(Message(
+                MessageType.REGISTER,
+                workerName = workerName,
+                token = configuration.coordinatorToken,
+                devices = deviceRunners.values.map { DeviceInfo.from(it.device) }
+        ))
+        logger.info("Registered {} device(s) as {} at {}:{}",
+                deviceRunners.size, workerName, coordinatorHost, coordinatorPort)
+
+        // Each device executes one test case at a time, one more thread is for collecting test cases
+        val executor = Utils.namedExecutor(deviceRunners.size + 1, "WorkerExecutor-%d")
+        val runningRequests = ConcurrentHashMap<Long, CancellationSignal>()
+        try {
+            while (true) {
+                val request = channel.receive() ?: break
+                when (request.type) {
+                    MessageType.COLLECT -> executor.execute {
+                        respond(channel, request) { collect(request, pool) }
+                    }
+                    MessageType.RUN -> {
+                        // Registered before the next message is read, so a following cancellation can't be missed
+                        val cancellationSignal = CancellationSignal()
+                        runningRequests[request.id] = cancellationSignal
+                        executor.execute {
+                            try {
+                                respond(channel, request) {
+                                    execute(channel, request, deviceRunners, cancellationSignal)
+                                }
+                            } finally {
+                                runningRequests.remove(request.id)
+                            }
+                        }
+                    }
+                    MessageType.CANCEL -> runningRequests[request.id]?.cancel()
+                    MessageType.FINISH -> break
+                    else -> logger.warn("Got unexpected {} message from the coordinator", request.type)
+                }
+            }
+            logger.info("The coordinator finished the run")
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun respond(channel: MessageChannel, request: Message, block: () -> Message) {
+        val response = try {
+            block()
+        } catch (e: Exception) {
+            logger.error("Failed to process {} request", request.type, e)
+            Message(MessageType.FAILED, request.id, error = e.toString())
+        }
+        channel.send(response)
+    }
+
+    private fun collect(request: Message, pool: Pool): Message {
+        val serials = request.serials?.toSet() ?: emptySet()
+        val requestedPool = Pool.Builder.aDevicePool()
+                .withName(pool.name)
+                .apply {
+                    pool.devices
+                            .filter { serials.contains(it.serial) }
+                            .forEach { addDevice(it) }
+                }
+                .build()
+        val testCases = TongsRunner.createTestSuiteLoaderForPool(requestedPool)
+                .map { TestCaseInfo.from(it.testCase) }
+        return Message(MessageType.COLLECTED, request.id, testCases = testCases)
+    }
+
+    private fun execute(
+            channel: MessageChannel,
+            request: Message,
+            deviceRunners: Map<String, WorkerDevice>,
+            cancellationSignal: CancellationSignal
+    ): Message {
+        val serial = request.serials?.firstOrNull()
+                ?: throw IllegalArgumentException("No device specified for the test case")
+        val workerDevice = deviceRunners[serial]
+                ?: throw IllegalArgumentException("Device $serial is not connected to this worker")
+        val testCaseInfo = request.testCase
+                ?: throw IllegalArgumentException("No test case specified")
+
+        val testCaseEvent = TestCaseEvent(testCaseInfo.toTestCase(null), emptyList(), request.totalFailureCount)
+        workerDevice.testCaseRunners.forEach { runner ->
+            if (runner.supports(workerDevice.device, testCaseEvent.testCase)) {
+                testCaseEvent.addDeviceRunner(workerDevice.device, runner)
+            }
+        }
+
+        val result = toResultInfo(workerDevice.runner.executeForCoordinator(testCaseEvent, cancellationSignal))
+        result.artifacts.forEach { artifact ->
+            artifact.path?.let { sendArtifactFile(channel, request.id, it) }
+        }
+        return Message(MessageType.RESULT, request.id, result = result)
+    }
+
+    /**
+     * Streams the file in chunks, so a large file (e.g. a screen recording) is never held in memory as a whole
+     */
+    private fun sendArtifactFile(channel: MessageChannel, requestId: Long, relativePath: String) {
+        File(configuration.output, relativePath).inputStream().use { input ->
+            val buffer = ByteArray(ARTIFACT_CHUNK_SIZE)
+            while (true) {
+                val length = input.read(buffer)
+                if (length < 0) {
+                    break
+                }
+                val data = Base64.getEncoder().encodeToString(buffer.copyOf(length))
+                channel.send(Message(MessageType.ARTIFACT_CHUNK, requestId, chunk = ArtifactChunk(relativePath, data)))
+            }
+        }
+    }
+
+    private fun toResultInfo(result: TestCaseRunResult): ResultInfo {
+        return ResultInfo(
+                result.status,
+                result.stackTraces,
+                result.startTimestampUtc.toEpochMilli(),
+                result.endTimestampUtc.toEpochMilli(),
+                result.netStartTimestampUtc?.toEpochMilli(),
+                result.netEndTimestampUtc?.toEpochMilli(),
+                result.additionalProperties,
+                result.data.mapNotNull { toArtifactInfo(it) }
+        )
+    }
+
+    private fun toArtifactInfo(data: TestReportData): ArtifactInfo? {
+        return when (data) {
+            is SimpleMonoTextReportData ->
+                ArtifactInfo(ArtifactKind.TEXT, data.title, text = data.monoText, textType = data.type.name)
+            is FileMonoTextReportData ->
+                ArtifactInfo(ArtifactKind.TEXT, data.title, text = data.monoText, textType = data.type.name)
+            is SimpleHtmlReportData -> ArtifactInfo(ArtifactKind.HTML, data.title, text = data.html)
+            is FileHtmlReportData -> ArtifactInfo(ArtifactKind.HTML, data.title, text = data.html)
+            is SimpleTableReportData -> ArtifactInfo(ArtifactKind.TABLE, data.title, table = data.table.toJson())
+            is FileTableReportData -> ArtifactInfo(ArtifactKind.TABLE, data.title, table = data.table.toJson())
+            is ImageReportData -> fileArtifact(ArtifactKind.IMAGE, data.title, data.imagePath)
+            is VideoReportData -> fileArtifact(ArtifactKind.VIDEO, data.title, data.videoPath)
+            is LinkedFileReportData -> fileArtifact(ArtifactKind.FILE, data.title, data.linkedFilePath)
+        }
+    }
+
+    private fun fileArtifact(kind: ArtifactKind, title: String, relativePath: String): ArtifactInfo? {
+        val file = File(configuration.output, relativePath)
+        if (!file.isFile) {
+            logger.warn("Skipping '{}' as {} doesn't exist", title, file)
+            return null
+        }
+        return ArtifactInfo(kind, title, path = relativePath.replace('\\', '/'))
+    }
+
+    private fun Table.toJson(): Table.TableJson {
+        return Table.TableJson(
+                headers.map { it.title },
+                rows.map { row -> row.cells.map { it.text } }
+        )
+    }
+
+    private class WorkerDevice(
+            val device: Device,
+            pool: Pool,
+            val runner: DeviceTestRunner
+    ) {
+        val testCaseRunners: List<TestCaseRunner> by lazy {
+            val runnerManager by KoinContextHandler.get().inject<TestCaseRunnerManager>()
+            runnerManager.createRulesFrom { configuration ->
+                TestCaseRunnerContext(configuration, pool, device)
+            }
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(TongsWorker::class.java)
+
+        const val WORKER_POOL_NAME = "worker"
+
+        private const val ARTIFACT_CHUNK_SIZE = 64 * 1024
+    }
+}
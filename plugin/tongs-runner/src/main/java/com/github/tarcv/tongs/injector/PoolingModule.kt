@@ -17,6 +17,7 @@ import com.github.tarcv.tongs.Configuration
 import com.github.tarcv.tongs.api.devices.DeviceProvider
 import com.github.tarcv.tongs.api.devices.DeviceProviderContext
 import com.github.tarcv.tongs.api.devices.DeviceProviderFactory
+import com.github.tarcv.tongs.distributed.RemoteDeviceProviderFactory
 import com.github.tarcv.tongs.plugin.android.LocalDeviceProviderFactory
 import com.github.tarcv.tongs.pooling.PoolLoader
 import com.github.tarcv.tongs.pooling.geometry.CommandOutputLogger
@@ -31,9 +32,12 @@ val poolingModule = module(createdAtStart = modulesCreatedAtStart) {
 
     factory {
         fun createProviders(ruleManagerFactory: RuleManagerFactory): DeviceProviderManager {
-            val defaultProviderFactories: List<DeviceProviderFactory<DeviceProvider>> = listOf(
-                LocalDeviceProviderFactory()
-            )
+            val defaultProviderFactories: List<DeviceProviderFactory<DeviceProvider>> =
+                if (get<Configuration>().coordinatorPort > 0) {
+                    listOf(LocalDeviceProviderFactory(), RemoteDeviceProviderFactory())
+                } else {
+                    listOf(LocalDeviceProviderFactory())
+                }
             return ruleManagerFactory.create(
                 DeviceProviderFactory::class.java,
                 defaultProviderFactories
@@ -13,13 +13,20 @@ package com.github.tarcv.tongs.injector
 import com.github.tarcv.tongs.Configuration
 import com.github.tarcv.tongs.TongsRunner
 import com.github.tarcv.tongs.Utils
+import com.github.tarcv.tongs.api.TongsConfiguration
+import com.github.tarcv.tongs.api.run.TestCaseRunner
 import com.github.tarcv.tongs.api.run.TestCaseRunnerContext
 import com.github.tarcv.tongs.api.run.TestCaseRunnerFactory
 import com.github.tarcv.tongs.api.testcases.TestCaseRuleContext
 import com.github.tarcv.tongs.api.testcases.TestCaseRuleFactory
+import com.github.tarcv.tongs.distributed.RemoteTestCaseRunnerFactory
+import com.github.tarcv.tongs.model.TestDurationHistory
+import com.github.tarcv.tongs.model.WorkStealingQueues
 import com.github.tarcv.tongs.plugin.android.PropertiesTestCaseRuleFactory
 import com.github.tarcv.tongs.runner.AndroidInstrumentedTestCaseRunnerFactory
 import com.github.tarcv.tongs.runner.DeviceTestRunnerFactory
+import com.github.tarcv.tongs.runner.DeviceHealthTracker
+import com.github.tarcv.tongs.runner.FailureBudget
 import com.github.tarcv.tongs.runner.OverallProgressReporter
 import com.github.tarcv.tongs.runner.PoolProgressTrackers
 import com.github.tarcv.tongs.runner.PoolTestRunnerFactory
@@ -31,7 +38,12 @@ val runnerModule = module(createdAtStart = modulesCreatedAtStart) {
     factory { PoolProgressTrackers(mutableMapOf()) }
 
     factory {
-        PoolTestRunnerFactory(get(), get())
+        PoolTestRunnerFactory(
+            get(),
+            get(),
+            get(),
+            get<Configuration>().appResetPolicy == TongsConfiguration.AppResetPolicy.PER_CLASS
+        )
     }
 
     factory<ProgressReporter> {
@@ -39,13 +51,41 @@ val runnerModule = module(createdAtStart = modulesCreatedAtStart) {
             get<Configuration>().totalAllowedRetryQuota,
             get<Configuration>().retryPerTestCaseQuota,
             get(),
+            get(),
             get()
         )
     }
+    single {
+        FailureBudget(get<Configuration>().failureBudget, get<Configuration>().failureBudgetPercent)
+    }
+    single {
+        DeviceHealthTracker(get<Configuration>().isDeviceQuarantineEnabled)
+    }
     factory {
         DeviceTestRunnerFactory()
     }
 
+    single {
+        TestDurationHistory(get<Configuration>().durationHistoryFile, get())
+    }
+
+    single {
+        WorkStealingQueues()
+    }
+
+    single<TestCaseRunnerManager> {
+        val defaultRunnerFactories: List<TestCaseRunnerFactory<TestCaseRunner>> =
+            if (get<Configuration>().coordinatorPort > 0) {
+                listOf(AndroidInstrumentedTestCaseRunnerFactory(), RemoteTestCaseRunnerFactory())
+            } else {
+                listOf(AndroidInstrumentedTestCaseRunnerFactory())
+            }
+        get<RuleManagerFactory>().create(
+            TestCaseRunnerFactory::class.java,
+            defaultRunnerFactories
+        ) { factory, context: TestCaseRunnerContext -> factory.testCaseRunners(context) }
+    }
+
     single {
         val startNanos = System.nanoTime()
 
@@ -54,10 +94,7 @@ val runnerModule = module(createdAtStart = modulesCreatedAtStart) {
             TestCaseRuleFactory::class.java,
             listOf(PropertiesTestCaseRuleFactory())
         ) { factory, context: TestCaseRuleContext -> factory.testCaseRules(context) }
-        val runnerManager: TestCaseRunnerManager = ruleManagerFactory.create(
-            TestCaseRunnerFactory::class.java,
-            listOf(AndroidInstrumentedTestCaseRunnerFactory())
-        ) { factory, context: TestCaseRunnerContext -> factory.testCaseRunners(context) }
+        val runnerManager: TestCaseRunnerManager = get()
         val tongsRunner = TongsRunner(
             get(),
             get(),
@@ -65,7 +102,11 @@ val runnerModule = module(createdAtStart = modulesCreatedAtStart) {
             get(),
             ruleManager,
             runnerManager,
-            get()
+            get(),
+            get(),
+            get(),
+            get<Configuration>().isWorkStealingEnabled,
+            get<Configuration>().isDeviceHotPlugEnabled
         )
 
         LoggerFactory.getLogger(TongsRunner::class.java)
@@ -12,16 +12,24 @@
  */
 package com.github.tarcv.tongs.injector
 
+import com.github.tarcv.tongs.Configuration
 import com.github.tarcv.tongs.api.devices.Pool
 import com.github.tarcv.tongs.api.testcases.TestCaseProvider
 import com.github.tarcv.tongs.api.testcases.TestCaseProviderContext
 import com.github.tarcv.tongs.api.testcases.TestCaseProviderFactory
+import com.github.tarcv.tongs.distributed.RemoteTestCaseProviderFactory
 import com.github.tarcv.tongs.suite.JUnitTestCaseProviderFactory
 import org.koin.dsl.module
 
 val testLoadingModule = module(createdAtStart = modulesCreatedAtStart) {
     factory {
-        TestSuiteLoaderSupplier(get(), listOf(JUnitTestCaseProviderFactory()))
+        val defaultProviderFactories: List<TestCaseProviderFactory<TestCaseProvider>> =
+            if (get<Configuration>().coordinatorPort > 0) {
+                listOf(JUnitTestCaseProviderFactory(), RemoteTestCaseProviderFactory())
+            } else {
+                listOf(JUnitTestCaseProviderFactory())
+            }
+        TestSuiteLoaderSupplier(get(), defaultProviderFactories)
     }
 }
 
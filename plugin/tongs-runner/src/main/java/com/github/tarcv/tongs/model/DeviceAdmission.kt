@@ -0,0 +1,38 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.model
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.run.TestCaseEvent
+
+/**
+ * Enables [testCases] that are meant for all [poolDevices] on [device] which is not one of them.
+ *
+ * Test cases are limited to devices they were collected from (see JoiningTestProvider), so a device from
+ * another pool or a device connected during a run has to be admitted before it can execute them. Test cases
+ * collected only from some of [poolDevices] stay limited to them.
+ *
+ * @return test cases that are enabled on [device]
+ */
+fun admitDevice(
+        testCases: Collection<TestCaseEvent>,
+        poolDevices: Collection<Device>,
+        device: Device
+): List<TestCaseEvent> {
+    return testCases.filter { testCase ->
+        if (!testCase.isEnabledOn(device) && poolDevices.all { testCase.isEnabledOn(it) }) {
+            testCase.admitDevice(device)
+        }
+        testCase.isEnabledOn(device)
+    }
+}
@@ -12,85 +12,616 @@ package com.github.tarcv.tongs.model
 
 import com.github.tarcv.tongs.api.devices.Device
 import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.run.CancellationSignal
 import com.github.tarcv.tongs.api.run.TestCaseEvent
 import java.util.*
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
 import java.util.concurrent.locks.ReentrantLock
 import kotlin.concurrent.withLock
 
-class TestCaseEventQueue(
+/**
+ * Queue of test cases for devices of one pool.
+ *
+ * Test cases are grouped into buckets by the set of devices they can be executed on (that is by
+ * included and excluded devices), so polling only looks at heads of buckets compatible with the polling device
+ * instead of scanning all queued test cases. Test cases are handed out in the order they were added.
+ * Polling doesn't take any locks unless a device has to wait for a test case.
+ *
+ * Waiting devices are parked until a compatible test case is offered or until all test cases of the pool
+ * are finished (including retries that might be offered by test cases still in work).
+ *
+ * Waiting devices can also get speculative attempts of test cases that are running too long on other devices
+ * (see [pollForDevice]). Only the first attempt of a test case to finish reports its result, see [TestCaseTask.tryWin].
+ *
+ * A queue can be stopped early with [abort], e.g. when too many test cases of the pool failed.
+ *
+ * With [classAffinity], a device gets remaining test cases of the class of its previous test case before
+ * other test cases, so it switches between classes as rarely as possible (see AppResetPolicy.PER_CLASS).
+ */
+class TestCaseEventQueue @JvmOverloads constructor(
         events: Collection<TestCaseEvent>,
-        resultsCollection: MutableList<TestCaseRunResult>
+        resultsCollection: MutableList<TestCaseRunResult>,
+        private val classAffinity: Boolean = false
 ) {
-    private val list = ArrayList<TestCaseEvent>(events)
     private val syncResultsCollection = Collections.synchronizedList(resultsCollection)
 
+    private val nextSequenceNumber = AtomicLong()
+    private val buckets = ConcurrentHashMap<EligibilityKey, Bucket>()
+    private val bucketList = CopyOnWriteArrayList<Bucket>()
+    private val deviceIndexes = ConcurrentHashMap<Device, DeviceIndex>()
+
+    /**
+     * Queued test cases by their classes, only filled with [classAffinity]. A test case is queued both here
+     * and in its bucket, whichever way takes it first claims it (see [QueuedEvent.claim]).
+     */
+    private val classQueues = ConcurrentHashMap<String, ConcurrentLinkedQueue<QueuedEvent>>()
+    private val lastClasses = ConcurrentHashMap<Device, String>()
+
     private val conditionLock = ReentrantLock()
-    private val newItemCondition = conditionLock.newCondition()
+    private val stateChangedCondition = conditionLock.newCondition()
 
     private val numEventsInWork = AtomicInteger()
 
-    fun pollForDevice(device: Device, timeoutSeconds: Long = 0): TestCaseTask? {
-        val currentTime = System.currentTimeMillis()
-        val timeoutTime = currentTime + timeoutSeconds * 1000
+    /**
+     * Test cases executed with [TestCaseTask.doWork], [TestCaseTask.doWorkAsync] or [doWork]
+     * that are not finished yet
+     */
+    private val inFlightExecutions = ConcurrentHashMap.newKeySet<Execution>()
+
+    /**
+     * Number of test cases that are either queued or in work. A polled test case stays unfinished until its
+     * [TestCaseTask.doWork] completes, and retries are offered before that, so the counter can't drop to zero
+     * while some test case might still be offered.
+     */
+    private val numUnfinishedEvents = AtomicInteger()
+
+    private val aborted = AtomicBoolean(false)
+
+    private val stateListeners = CopyOnWriteArrayList<() -> Unit>()
+
+    init {
+        events.forEach { add(it) }
+    }
+
+    /**
+     * Returns next test case compatible with [device], waiting for one if needed.
+     * The returned task must be executed with [TestCaseTask.doWork].
+     *
+     * When [speculateAfterMillis] is set, a waiting device gets a speculative attempt of a test case that is running
+     * on another device for at least that time. Each test case gets at most one speculative attempt.
+     *
+     * Waiting stops once [isStopped] returns true, it is checked every time the state of the queue changes
+     * (see [wakeUpWaitingDevices]).
+     *
+     * @return null when all test cases of the pool are finished or when the device was stopped
+     */
+    @JvmOverloads
+    @Throws(InterruptedException::class)
+    fun pollForDevice(
+            device: Device,
+            speculateAfterMillis: Long? = null,
+            isStopped: () -> Boolean = { false }
+    ): TestCaseTask? {
         while (true) {
+            val item = tryTakeForDevice(device)
+            if (item != null) {
+                return TestCaseTask(item.event, device, isBatchable = item.isBatchable)
+            }
+
             conditionLock.withLock {
-                val item = tryPollForDevice(device)
-                if (item != null) {
-                    return TestCaseTask(item)
+                while (!hasEventFor(device)) {
+                    if (isDrained || isStopped()) {
+                        return null
+                    }
+                    if (speculateAfterMillis != null) {
+                        val speculativeTask = trySpeculateForDevice(device, speculateAfterMillis)
+                        if (speculativeTask != null) {
+                            return speculativeTask
+                        }
+                        // Running test cases become eligible for speculation without any signal
+                        stateChangedCondition.await(SPECULATION_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+                    } else {
+                        stateChangedCondition.await()
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns next test case compatible with [device] without waiting.
+     * The returned task must be executed with [TestCaseTask.doWork].
+     */
+    fun tryPollForDevice(device: Device): TestCaseTask? {
+        return tryTakeForDevice(device)?.let { TestCaseTask(it.event, device, isBatchable = it.isBatchable) }
+    }
+
+    private fun trySpeculateForDevice(device: Device, speculateAfterMillis: Long): TestCaseTask? {
+        if (isAborted) {
+            return null
+        }
+        val now = System.nanoTime()
+        val minRunningNanos = TimeUnit.MILLISECONDS.toNanos(speculateAfterMillis)
+        return inFlightExecutions
+                .filter { execution ->
+                    !execution.isSpeculated
+                            && !execution.isBatched
+                            && execution.winner.get() == null
+                            && now - execution.startNanos >= minRunningNanos
+                            && execution.devices.none { it == device }
+                            && execution.testCaseEvent.isEnabledOn(device)
+                            && execution.testCaseEvent.runnersFor(device).isNotEmpty()
+                }
+                .sortedBy { it.startNanos }
+                .firstOrNull { it.speculated.compareAndSet(false, true) }
+                ?.let { TestCaseTask(it.testCaseEvent, device, it) }
+    }
+
+    val isDrained: Boolean
+        get() = numUnfinishedEvents.get() == 0
+
+    val isAborted: Boolean
+        get() = aborted.get()
+
+    /**
+     * Test cases executed right now (several attempts of a speculated test case are counted once)
+     */
+    val runningCount: Int
+        get() = inFlightExecutions.size
+
+    /**
+     * Snapshot of test cases waiting for a device
+     */
+    fun queuedEvents(): List<TestCaseEvent> {
+        return bucketList.flatMap { bucket ->
+            bucket.events
+                    .filterNot { it.isClaimed }
+                    .map { it.event }
+        }
+    }
+
+    /**
+     * Makes waiting devices check whether they should stop waiting (see [pollForDevice])
+     */
+    fun wakeUpWaitingDevices() {
+        signalStateChanged()
+    }
+
+    /**
+     * Registers [listener] that is called every time devices waiting in [pollForDevice] are woken up,
+     * e.g. to wait for test cases of several queues at once
+     */
+    fun addStateListener(listener: () -> Unit) {
+        stateListeners.add(listener)
+    }
+
+    /**
+     * Forgets test cases [device] was found eligible for before, e.g. after it was admitted to more test cases
+     * (see [TestCaseEvent.admitDevice])
+     */
+    fun refreshEligibility(device: Device) {
+        deviceIndexes.remove(device)
+        signalStateChanged()
+    }
+
+    fun offer(event: TestCaseEvent) {
+        if (numEventsInWork.get() < 1) {
+            throw IllegalStateException("TestCaseEventQueue.offer can only be called during TestCaseTask.doWork")
+        }
+        addUnlessAborted(event, isBatchable = true)
+    }
+
+    /**
+     * Drops all queued test cases and cancels attempts that are still running through their
+     * [TestCaseTask.cancellationSignal]. Test cases offered after that are dropped too. Devices waiting for
+     * test cases are released as soon as running attempts are finished.
+     *
+     * @return test cases that were dropped from the queue
+     */
+    fun abort(): List<TestCaseEvent> {
+        val dropped = ArrayList<TestCaseEvent>()
+        conditionLock.withLock {
+            // Set and drained under the lock test cases are offered under, so none can be offered in between
+            if (!aborted.compareAndSet(false, true)) {
+                return emptyList()
+            }
+            bucketList.forEach { bucket ->
+                while (true) {
+                    val queuedEvent = bucket.events.poll() ?: break
+                    if (queuedEvent.claim()) {
+                        dropped += queuedEvent.event
+                        numUnfinishedEvents.decrementAndGet()
+                    }
                 }
+            }
+            classQueues.clear()
+        }
+        signalStateChanged()
+        inFlightExecutions.forEach { execution ->
+            execution.attempts.forEach { it.cancellationSignal.cancel() }
+        }
+        return dropped
+    }
+
+    /**
+     * Executes several polled test cases at once. [block] must return results in the same order as the test cases.
+     * Null results mean that the corresponding test cases were not executed, such test cases are put back to the queue.
+     *
+     * The test cases are in work (and can be cancelled by [abort]) until [block] returns. They share one cancellation
+     * signal that is passed to [block], and they are never speculated.
+     */
+    fun doWork(
+            tasks: List<TestCaseTask>,
+            block: (
+                    testCaseEvents: List<TestCaseEvent>,
+                    cancellationSignal: CancellationSignal
+            ) -> List<TestCaseRunResult?>
+    ) {
+        require(tasks.all { it.queue === this }) { "All tasks must be polled from this queue" }
+        require(tasks.none { it.isSpeculative }) { "Speculative attempts can't be executed in a batch" }
+        val batchCancellationSignal = CancellationSignal()
+        tasks.forEach { task ->
+            task.execution.isBatched = true
+            task.cancellationSignal.setOnCancelListener(Runnable { batchCancellationSignal.cancel() })
+        }
+        tasks.forEach { it.startWork() }
+        try {
+            val testCaseEvents = tasks.map { it.testCaseEvent }
+            val results = block.invoke(testCaseEvents, batchCancellationSignal)
+            check(results.size == testCaseEvents.size) {
+                "Expected ${testCaseEvents.size} results, got ${results.size}"
+            }
 
-                newItemCondition.await(1, TimeUnit.SECONDS)
-                if (timeoutSeconds > 0 && timeoutTime < System.currentTimeMillis()) {
-                    return null
+            results.forEachIndexed { index, result ->
+                if (result != null) {
+                    tasks[index].addResult(result)
+                } else {
+                    tasks[index].requeue()
                 }
             }
+        } finally {
+            tasks.forEach { it.finishWork() }
+        }
+    }
+
+    private fun add(event: TestCaseEvent, isBatchable: Boolean = true) {
+        val key = EligibilityKey(event.testCase.includedDevices, event.excludedDevices)
+        val bucket = buckets[key] ?: synchronized(buckets) {
+            buckets.getOrPut(key) {
+                Bucket(event).also { bucketList.add(it) }
+            }
         }
+        numUnfinishedEvents.incrementAndGet()
+        val queuedEvent = QueuedEvent(nextSequenceNumber.getAndIncrement(), event, isBatchable)
+        if (classAffinity) {
+            classQueues
+                    .computeIfAbsent(event.testCase.testClass) { ConcurrentLinkedQueue() }
+                    .add(queuedEvent)
+        }
+        bucket.events.add(queuedEvent)
     }
 
-    fun hasNoPotentialEventsFor(device: Device): Boolean {
+    /**
+     * Adds [event] and wakes up waiting devices unless the queue is aborted (see [abort])
+     *
+     * @return whether the test case was added
+     */
+    private fun addUnlessAborted(event: TestCaseEvent, isBatchable: Boolean): Boolean {
         conditionLock.withLock {
-            return indexOfEventFor(device) == -1 && numEventsInWork.get() == 0
+            if (isAborted) {
+                return false
+            }
+            add(event, isBatchable)
         }
+        signalStateChanged()
+        return true
     }
 
-    fun offer(event: TestCaseEvent) {
+    private fun signalStateChanged() {
         conditionLock.withLock {
-            if (numEventsInWork.get() < 1) {
-                throw IllegalStateException("TestCaseEventQueue.offer can only be called during TestCaseTask.doWork")
+            stateChangedCondition.signalAll()
+        }
+        stateListeners.forEach { it() }
+    }
+
+    private fun tryTakeForDevice(device: Device): QueuedEvent? {
+        if (isAborted) {
+            return null
+        }
+        if (!classAffinity) {
+            return tryTakeEarliestForDevice(device)
+        }
+        val queuedEvent = tryTakeSameClassForDevice(device) ?: tryTakeEarliestForDevice(device)
+        queuedEvent?.let { lastClasses[device] = it.event.testCase.testClass }
+        return queuedEvent
+    }
+
+    private fun tryTakeEarliestForDevice(device: Device): QueuedEvent? {
+        val eligibleBuckets = eligibleBucketsFor(device)
+        while (true) {
+            // Pick the bucket with the earliest added head to keep the original order between buckets
+            var earliestBucket: Bucket? = null
+            var earliestSequenceNumber = Long.MAX_VALUE
+            for (bucket in eligibleBuckets) {
+                val head = bucket.peekUnclaimed() ?: continue
+                if (head.sequenceNumber < earliestSequenceNumber) {
+                    earliestSequenceNumber = head.sequenceNumber
+                    earliestBucket = bucket
+                }
+            }
+            if (earliestBucket == null) {
+                return null
             }
-            list.add(event)
 
-            newItemCondition.signalAll()
+            // The head might be already taken by other device, then the next event from the same bucket
+            // is equally suitable. Otherwise, when the bucket became empty, just look again.
+            val polled = earliestBucket.events.poll()
+            if (polled != null && polled.claim()) {
+                return polled
+            }
         }
     }
 
-    private fun tryPollForDevice(device: Device): TestCaseEvent? {
-        return conditionLock.withLock {
-            val itemIndex = indexOfEventFor(device)
-            if (itemIndex != -1) {
-                list.removeAt(itemIndex)
-            } else {
-                null
+    private fun tryTakeSameClassForDevice(device: Device): QueuedEvent? {
+        val testClass = lastClasses[device] ?: return null
+        val classQueue = classQueues[testClass] ?: return null
+        val iterator = classQueue.iterator()
+        while (iterator.hasNext()) {
+            val queuedEvent = iterator.next()
+            if (queuedEvent.isClaimed) {
+                iterator.remove()
+            } else if (queuedEvent.event.isEnabledOn(device) && queuedEvent.claim()) {
+                // Stays in its bucket until it reaches the head, polling skips claimed test cases
+                iterator.remove()
+                return queuedEvent
             }
         }
+        return null
+    }
+
+    private fun hasEventFor(device: Device): Boolean {
+        return eligibleBucketsFor(device).any { it.peekUnclaimed() != null }
+    }
+
+    private fun eligibleBucketsFor(device: Device): List<Bucket> {
+        val bucketCount = bucketList.size
+        val index = deviceIndexes[device]
+        if (index != null && index.knownBucketCount == bucketCount) {
+            return index.buckets
+        }
+
+        // Buckets are only appended, so the index only needs to be extended with new ones
+        val knownBuckets = index?.buckets ?: emptyList()
+        val knownCount = index?.knownBucketCount ?: 0
+        val newBuckets = (knownCount until bucketCount)
+                .map { bucketList[it] }
+                .filter { it.sample.isEnabledOn(device) }
+        val newIndex = DeviceIndex(bucketCount, knownBuckets + newBuckets)
+        deviceIndexes[device] = newIndex
+        return newIndex.buckets
     }
 
-    private fun indexOfEventFor(device: Device) = list.indexOfFirst { it.isEnabledOn(device) }
+    /**
+     * Attempt to execute a test case on [device]. A test case has several attempts only when it is executed
+     * speculatively, in that case the attempt that is finished first wins (see [tryWin]), and other attempts are
+     * cancelled through their [cancellationSignal].
+     *
+     * @param isBatchable false for a test case put back to the queue without a result (e.g. after its batch crashed),
+     * such test case should be executed alone
+     */
+    inner class TestCaseTask internal constructor(
+            val testCaseEvent: TestCaseEvent,
+            val device: Device,
+            speculatedExecution: Execution? = null,
+            val isBatchable: Boolean = true
+    ) {
+        internal val queue: TestCaseEventQueue
+            get() = this@TestCaseEventQueue
+
+        internal val execution = speculatedExecution ?: Execution(testCaseEvent)
+
+        /**
+         * True when this is a duplicate of an attempt running on another device
+         */
+        val isSpeculative: Boolean = speculatedExecution != null
+
+        val cancellationSignal = CancellationSignal()
+
+        /**
+         * Devices of other attempts of the same test case
+         */
+        val otherAttemptDevices: List<Device>
+            get() = execution.devices.filter { it != device }
 
-    inner class TestCaseTask(private val testCaseEvent: TestCaseEvent) {
+        init {
+            execution.attempts += this
+        }
+
+        /**
+         * Marks this attempt as the one which result is reported and cancels other attempts.
+         * Results of attempts that didn't win are dropped, and such attempts shouldn't report their results anywhere.
+         *
+         * @return false when another attempt already won
+         */
+        fun tryWin(): Boolean {
+            val won = execution.winner.compareAndSet(null, this) || execution.winner.get() === this
+            if (won) {
+                execution.attempts
+                        .filter { it !== this }
+                        .forEach { it.cancellationSignal.cancel() }
+            }
+            return won
+        }
+
+        /**
+         * Executes this attempt with [block]. A speculative attempt is skipped (and [block] isn't called)
+         * when the test case was already finished by another attempt.
+         */
         fun doWork(block: (testCaseEvent: TestCaseEvent) -> TestCaseRunResult) {
+            if (isObsolete) {
+                return
+            }
+            startWork()
             try {
-                numEventsInWork.incrementAndGet()
                 val testCaseResult = block.invoke(testCaseEvent)
-                syncResultsCollection.add(testCaseResult)
+                addResult(testCaseResult)
             } finally {
-                val result = numEventsInWork.decrementAndGet()
-                if (result < 0) {
-                    throw IllegalStateException()
+                finishWork()
+            }
+        }
+
+        /**
+         * Same as [doWork], but the test case stays in work until the future returned by [block] is completed.
+         * The result is added only when that future completes normally. A null result means that the test case
+         * was not executed (e.g. its device was disconnected), such test case is put back to the queue unless
+         * another attempt of it is still running or already finished.
+         *
+         * @return future that is completed after the result is added
+         */
+        fun doWorkAsync(
+                block: (testCaseEvent: TestCaseEvent) -> CompletableFuture<TestCaseRunResult?>
+        ): CompletableFuture<Unit> {
+            if (isObsolete) {
+                return CompletableFuture.completedFuture(Unit)
+            }
+            startWork()
+            val resultFuture = try {
+                block.invoke(testCaseEvent)
+            } catch (e: Throwable) {
+                finishWork()
+                throw e
+            }
+            return resultFuture.handle { testCaseResult, error ->
+                try {
+                    if (testCaseResult != null) {
+                        addResult(testCaseResult)
+                    } else if (error == null) {
+                        requeue()
+                    }
+                } finally {
+                    finishWork()
+                }
+            }
+        }
+
+        /**
+         * True for a speculative attempt that can't change anything as its test case is already finished
+         */
+        val isObsolete: Boolean
+            get() = isSpeculative && execution.finished.get()
+
+        internal fun requeue() {
+            // Added before this attempt is finished, so the pool can't be considered drained in between
+            if (execution.winner.get() == null && execution.runningAttempts.get() == 1) {
+                addUnlessAborted(testCaseEvent, isBatchable = false)
+            }
+        }
+
+        internal fun startWork() {
+            numEventsInWork.incrementAndGet()
+            execution.runningAttempts.incrementAndGet()
+            inFlightExecutions.add(execution)
+        }
+
+        internal fun addResult(testCaseResult: TestCaseRunResult) {
+            if (tryWin()) {
+                syncResultsCollection.add(testCaseResult)
+            }
+        }
+
+        internal fun finishWork() {
+            val result = numEventsInWork.decrementAndGet()
+            val remainingAttempts = execution.runningAttempts.decrementAndGet()
+
+            // A test case is finished once, either by its winning attempt or by the last of its attempts
+            if ((execution.winner.get() === this || remainingAttempts == 0) && execution.finished.compareAndSet(false, true)) {
+                if (numUnfinishedEvents.decrementAndGet() == 0) {
+                    // Devices without compatible test cases are waiting for the whole pool to finish
+                    signalStateChanged()
+                }
+            }
+            // A late speculative attempt might have added the execution back after it was finished
+            if (execution.finished.get()) {
+                inFlightExecutions.remove(execution)
+            }
+            if (result < 0) {
+                throw IllegalStateException()
+            }
+        }
+    }
+
+    /**
+     * All attempts to execute one polled test case
+     */
+    internal class Execution(val testCaseEvent: TestCaseEvent) {
+        val startNanos = System.nanoTime()
+        val attempts = CopyOnWriteArrayList<TestCaseTask>()
+        val runningAttempts = AtomicInteger()
+        val winner = AtomicReference<TestCaseTask?>()
+        val speculated = AtomicBoolean(false)
+        val finished = AtomicBoolean(false)
+
+        /**
+         * True when the test case is executed in a batch, such test cases can't be speculated
+         */
+        @Volatile
+        var isBatched = false
+
+        val isSpeculated: Boolean
+            get() = speculated.get()
+
+        val devices: List<Device>
+            get() = attempts.map { it.device }
+    }
+
+    private data class EligibilityKey(
+            val includedDevices: Set<Device>?,
+            val excludedDevices: Set<Device>
+    )
+
+    /**
+     * Test cases that can be executed on the same set of devices
+     */
+    private class Bucket(val sample: TestCaseEvent) {
+        val events = ConcurrentLinkedQueue<QueuedEvent>()
+
+        /**
+         * Returns the head of this bucket, dropping heads that were already taken through [classQueues]
+         */
+        fun peekUnclaimed(): QueuedEvent? {
+            while (true) {
+                val head = events.peek() ?: return null
+                if (!head.isClaimed) {
+                    return head
                 }
+                events.remove(head)
             }
         }
     }
-}
\ No newline at end of file
+
+    private class QueuedEvent(val sequenceNumber: Long, val event: TestCaseEvent, val isBatchable: Boolean) {
+        private val claimed = AtomicBoolean(false)
+
+        val isClaimed: Boolean
+            get() = claimed.get()
+
+        /**
+         * @return false when the test case was already taken by another device (or dropped by [abort])
+         */
+        fun claim(): Boolean = claimed.compareAndSet(false, true)
+    }
+
+    private class DeviceIndex(val knownBucketCount: Int, val buckets: List<Bucket>)
+
+    companion object {
+        private const val SPECULATION_CHECK_INTERVAL_MILLIS = 1000L
+    }
+}
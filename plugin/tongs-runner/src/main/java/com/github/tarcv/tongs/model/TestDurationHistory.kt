@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.model
+
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.run.TestCaseEvent
+import com.github.tarcv.tongs.api.testcases.TestCase
+import com.google.gson.Gson
+import org.slf4j.LoggerFactory
+import java.io.File
+
+/**
+ * Keeps durations of test cases from previous runs (per pool) and uses them to schedule the longest test cases first.
+ *
+ * When [historyFile] is null, scheduling order is left untouched and nothing is recorded.
+ */
+class TestDurationHistory(
+        private val historyFile: File?,
+        private val gson: Gson
+) {
+    private val durations: MutableMap<Key, Long> = if (historyFile != null) {
+        loadDurations(historyFile)
+    } else {
+        HashMap()
+    }
+
+    val isEnabled: Boolean
+        get() = historyFile != null
+
+    /**
+     * Returns [testCases] sorted by expected duration (longest first). Test cases with the same expected duration
+     * keep their original order.
+     */
+    fun orderLongestFirst(pool: Pool, testCases: List<TestCaseEvent>): List<TestCaseEvent> {
+        if (!isEnabled) {
+            return testCases
+        }
+
+        val estimator = Estimator(pool)
+        val ordered = testCases
+                .map { it to estimator.estimateMillis(it.testCase) }
+                .sortedByDescending { (_, estimate) -> estimate }
+                .map { (testCase, _) -> testCase }
+        logger.info("Scheduled {} test cases in pool {} longest first ({} of them have no duration history)",
+                ordered.size, pool.name, estimator.unknownCount)
+        return ordered
+    }
+
+    /**
+     * Estimates total duration of [testCases] of [pool], 0 when durations are not recorded
+     */
+    fun estimateMillis(pool: Pool, testCases: Collection<TestCase>): Long {
+        if (!isEnabled) {
+            return 0
+        }
+        val estimator = Estimator(pool)
+        return testCases.map { estimator.estimateMillis(it) }.sum()
+    }
+
+    fun recordResults(results: Collection<TestCaseRunResult>) {
+        if (!isEnabled) {
+            return
+        }
+
+        results
+                .filter { it.timeTakenMillis > 0 }
+                .forEach { result ->
+                    val key = Key(result.pool.name, result.testCase)
+                    val sample = result.timeTakenMillis
+                    // Average with the previous value to smooth out occasional slow runs
+                    durations[key] = durations[key]
+                            ?.let { (it + sample) / 2 }
+                            ?: sample
+                }
+    }
+
+    fun save() {
+        val file = historyFile ?: return
+        val entries = durations.entries
+                .sortedWith(compareBy({ it.key.pool }, { it.key.testClass }, { it.key.testMethod }))
+                .map { (key, duration) ->
+                    DurationEntry(key.pool, key.typeTag, key.testClass, key.testMethod, duration)
+                }
+        file.absoluteFile.parentFile?.mkdirs()
+        file.bufferedWriter(Charsets.UTF_8).use {
+            gson.toJson(DurationHistoryJson(entries), it)
+        }
+        logger.info("Saved durations of {} test cases to {}", entries.size, file)
+    }
+
+    private fun loadDurations(file: File): MutableMap<Key, Long> {
+        if (!file.isFile) {
+            logger.info("Duration history file {} doesn't exist yet, test cases will keep their original order", file)
+            return HashMap()
+        }
+        return try {
+            file.bufferedReader(Charsets.UTF_8)
+                    .use { gson.fromJson(it, DurationHistoryJson::class.java) }
+                    ?.entries
+                    .orEmpty()
+                    .associateTo(HashMap()) {
+                        Key(it.pool, it.typeTag, it.testClass, it.testMethod) to it.durationMillis
+                    }
+        } catch (e: Exception) {
+            logger.warn("Failed to read duration history from {}, ignoring it", file, e)
+            HashMap()
+        }
+    }
+
+    /**
+     * Test cases without history are estimated by the average duration of other test cases from the same class
+     * (or from the whole pool when the class is new too)
+     */
+    private inner class Estimator(pool: Pool) {
+        private val poolDurations = durations.filterKeys { it.pool == pool.name }
+        private val classAverages = poolDurations.entries
+                .groupBy({ it.key.testClass }, { it.value })
+                .mapValues { (_, values) -> values.average().toLong() }
+        private val poolAverage = poolDurations.values
+                .takeIf { it.isNotEmpty() }
+                ?.average()
+                ?.toLong()
+                ?: 0L
+        private val poolName = pool.name
+
+        var unknownCount = 0
+            private set
+
+        fun estimateMillis(testCase: TestCase): Long {
+            return poolDurations[Key(poolName, testCase)]
+                    ?: run {
+                        unknownCount++
+                        classAverages[testCase.testClass] ?: poolAverage
+                    }
+        }
+    }
+
+    private data class Key(
+            val pool: String,
+            val typeTag: String,
+            val testClass: String,
+            val testMethod: String
+    ) {
+        constructor(pool: String, testCase: TestCase)
+                : this(pool, testCase.typeTag.name, testCase.testClass, testCase.testMethod)
+    }
+
+    private class DurationHistoryJson(
+            val entries: List<DurationEntry>?
+    )
+
+    private class DurationEntry(
+            val pool: String,
+            val typeTag: String,
+            val testClass: String,
+            val testMethod: String,
+            val durationMillis: Long
+    )
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(TestDurationHistory::class.java)
+    }
+}
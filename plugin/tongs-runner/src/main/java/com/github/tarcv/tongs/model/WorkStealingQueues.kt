@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.model
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.Pool
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.locks.ReentrantLock
+import javax.annotation.concurrent.GuardedBy
+import kotlin.concurrent.withLock
+
+/**
+ * Queues of all pools of a run. Devices that finished their own pool use them to borrow test cases of other pools.
+ *
+ * Devices can only borrow from pools they were explicitly allowed to borrow from (see [allowBorrowing]),
+ * so nothing is borrowed unless work stealing is enabled.
+ */
+class WorkStealingQueues {
+    private val queues = ConcurrentHashMap<Pool, TestCaseEventQueue>()
+    private val lendingPools = ConcurrentHashMap<Device, MutableList<Pool>>()
+
+    private val conditionLock = ReentrantLock()
+    private val stateChangedCondition = conditionLock.newCondition()
+
+    /**
+     * Incremented every time any of the queues changes, so a change between polling and waiting is not missed
+     */
+    @GuardedBy("conditionLock")
+    private var stateVersion = 0L
+
+    fun register(pool: Pool, queue: TestCaseEventQueue) {
+        queues[pool] = queue
+        queue.addStateListener {
+            conditionLock.withLock {
+                stateVersion++
+                stateChangedCondition.signalAll()
+            }
+        }
+    }
+
+    fun allowBorrowing(device: Device, pool: Pool) {
+        lendingPools.computeIfAbsent(device) { CopyOnWriteArrayList() }
+                .add(pool)
+    }
+
+    /**
+     * Returns a test case compatible with [device] from one of pools it is allowed to borrow from,
+     * waiting for one if needed. The returned task must be executed with [TestCaseEventQueue.TestCaseTask.doWork].
+     * Waiting stops once [isStopped] returns true (see [TestCaseEventQueue.pollForDevice]).
+     *
+     * @return null when all of such pools are finished or when the device was stopped
+     */
+    @JvmOverloads
+    @Throws(InterruptedException::class)
+    fun borrowFor(device: Device, isStopped: () -> Boolean = { false }): BorrowedTask? {
+        val pools = lendingPools[device] ?: return null
+        while (true) {
+            val seenVersion = conditionLock.withLock { stateVersion }
+            val unfinishedPools = pools.mapNotNull { pool ->
+                queues[pool]
+                        ?.takeUnless { it.isDrained }
+                        ?.let { pool to it }
+            }
+            if (unfinishedPools.isEmpty() || isStopped()) {
+                return null
+            }
+
+            for ((pool, queue) in unfinishedPools) {
+                val task = queue.tryPollForDevice(device)
+                if (task != null) {
+                    return BorrowedTask(pool, queue, task)
+                }
+            }
+
+            // Nothing to borrow right now, so wait until any of the pools either gets a test case or finishes
+            conditionLock.withLock {
+                while (stateVersion == seenVersion) {
+                    stateChangedCondition.await()
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes devices waiting for test cases to borrow check whether they should stop waiting
+     */
+    fun wakeUpWaitingDevices() {
+        queues.values.forEach { it.wakeUpWaitingDevices() }
+    }
+
+    class BorrowedTask(
+            val pool: Pool,
+            val queue: TestCaseEventQueue,
+            val task: TestCaseEventQueue.TestCaseTask
+    )
+}
@@ -12,9 +12,10 @@
 package com.github.tarcv.tongs.plugin.android
 
 import com.github.tarcv.tongs.api.devices.Device
-import com.github.tarcv.tongs.api.devices.DeviceProvider
+import com.github.tarcv.tongs.api.devices.DeviceChangeListener
 import com.github.tarcv.tongs.api.devices.DeviceProviderContext
 import com.github.tarcv.tongs.api.devices.DeviceProviderFactory
+import com.github.tarcv.tongs.api.devices.ObservableDeviceProvider
 import com.github.tarcv.tongs.system.adb.ConnectedDeviceProvider
 import org.koin.core.context.KoinContextHandler
 import java.util.stream.Collectors
@@ -33,7 +34,9 @@ class LocalDeviceProviderFactory: DeviceProviderFactory<LocalDeviceProvider> {
 class LocalDeviceProvider(
         private val connectedDeviceProvider: ConnectedDeviceProvider,
         private val excludedSerials: Set<String>
-) : DeviceProvider {
+) : ObservableDeviceProvider {
+    private val filteringListeners = HashMap<DeviceChangeListener, DeviceChangeListener>()
+
     override fun provideDevices(): Set<Device> {
         val deviceLoader = connectedDeviceProvider
         deviceLoader.init()
@@ -41,4 +44,32 @@ class LocalDeviceProvider(
                 .filter({ d -> !excludedSerials.contains(d.serial) })
                 .collect(Collectors.toSet<Device>())
     }
+
+    override fun addDeviceChangeListener(listener: DeviceChangeListener) {
+        val filteringListener = object : DeviceChangeListener {
+            override fun deviceConnected(device: Device) {
+                if (!excludedSerials.contains(device.serial)) {
+                    listener.deviceConnected(device)
+                }
+            }
+
+            override fun deviceDisconnected(device: Device) {
+                if (!excludedSerials.contains(device.serial)) {
+                    listener.deviceDisconnected(device)
+                }
+            }
+        }
+        synchronized(filteringListeners) {
+            if (filteringListeners.putIfAbsent(listener, filteringListener) == null) {
+                connectedDeviceProvider.addDeviceChangeListener(filteringListener)
+            }
+        }
+    }
+
+    override fun removeDeviceChangeListener(listener: DeviceChangeListener) {
+        synchronized(filteringListeners) {
+            filteringListeners.remove(listener)
+                    ?.let { connectedDeviceProvider.removeDeviceChangeListener(it) }
+        }
+    }
 }
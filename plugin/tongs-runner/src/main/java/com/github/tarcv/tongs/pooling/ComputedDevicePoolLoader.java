@@ -19,6 +19,8 @@ import com.github.tarcv.tongs.api.devices.Pool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.util.*;
 
 import static com.github.tarcv.tongs.api.devices.Pool.Builder.aDevicePool;
@@ -42,6 +44,21 @@ public class ComputedDevicePoolLoader implements DevicePoolLoader {
         return pools;
     }
 
+    /**
+     * A device is compatible with pools it would exceed the lower bound of, e.g. a device with a higher API level
+     * can execute test cases of a pool for lower API levels.
+     */
+    @Override
+    public boolean isCompatible(Pool pool, Device device) {
+        return computedPoolsCategorizer.reachesLowerBound(pool.getName(), device);
+    }
+
+    @Override
+    @Nullable
+    public String poolNameFor(Device device) {
+        return computedPoolsCategorizer.poolForDevice(device);
+    }
+
     private Collection<Pool> createComputedPools(List<Device> devices) {
         Map<String, Pool.Builder> pools = new HashMap<>();
         for (Device device : devices) {
@@ -46,6 +46,23 @@ public class ComputedPoolsCategorizer {
         return getName(enclosingBoundIndex, deviceCharacteristicReader);
     }
 
+	/**
+	 * @return true when the characteristic of the device is at least the lower bound of the pool with the given name
+	 */
+	public boolean reachesLowerBound(String poolName, Device device) {
+		if (!deviceCharacteristicReader.canPool(device)) {
+			return false;
+		}
+		int deviceParameter = deviceCharacteristicReader.getParameter(device);
+		for (int i = 0; i <= bounds.size(); ++i) {
+			if (getName(i, deviceCharacteristicReader).equals(poolName)) {
+				int lowerBound = i == 0 ? 0 : bounds.get(i - 1).getLower();
+				return deviceParameter >= lowerBound;
+			}
+		}
+		return false;
+	}
+
 	public Collection<String> allPools() {
 		List<String> list = new ArrayList<>();
 		for (int i = 1; i <= bounds.size(); ++i) {
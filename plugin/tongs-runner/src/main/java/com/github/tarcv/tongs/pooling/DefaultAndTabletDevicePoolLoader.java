@@ -49,4 +49,19 @@ public class DefaultAndTabletDevicePoolLoader implements DevicePoolLoader {
         tabletPoolBuilder.addIfNotEmpty(pools);
 		return pools;
 	}
+
+	/**
+	 * Only tablets can execute test cases of the tablet pool, while both tablets and other devices can execute
+	 * test cases of the default pool. In both cases the API level of the device must be within the pool ones.
+	 */
+	@Override
+	public boolean isCompatible(Pool pool, Device device) {
+		boolean formFactorMatches = device.isTablet() || !TABLETS.equals(pool.getName());
+		return formFactorMatches && DevicePoolLoader.hasApiLevelOfPool(pool, device);
+	}
+
+	@Override
+	public String poolNameFor(Device device) {
+		return device.isTablet() ? TABLETS : DEFAULT_POOL_NAME;
+	}
 }
@@ -16,7 +16,9 @@ package com.github.tarcv.tongs.pooling;
 import com.github.tarcv.tongs.api.devices.Device;
 import com.github.tarcv.tongs.api.devices.Pool;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.IntSummaryStatistics;
 import java.util.List;
 
 /**
@@ -30,4 +32,37 @@ public interface DevicePoolLoader {
 	 * @return the pools loaded from this loader
 	 */
 	Collection<Pool> loadPools(List<Device> devices);
+
+	/**
+	 * Check whether a device satisfies the constraints of a pool it wasn't put in.
+	 * By default a device is compatible when its API level is within API levels of the pool devices.
+	 * @param pool one of the pools loaded by this loader
+	 * @param device a device from another pool
+	 * @return true if the device can execute test cases of the pool
+	 */
+	default boolean isCompatible(Pool pool, Device device) {
+		return hasApiLevelOfPool(pool, device);
+	}
+
+	/**
+	 * Pick a pool for a device connected during a run.
+	 * Only loaders that pick pools by characteristics of devices should return a pool, as other loaders have no way
+	 * to tell which pool a new device belongs to.
+	 * @param device a device that is not in any of the pools
+	 * @return name of the pool the device would be put in by {@link #loadPools(List)}, null if it can't join any pool
+	 */
+	@Nullable
+	default String poolNameFor(Device device) {
+		return null;
+	}
+
+	static boolean hasApiLevelOfPool(Pool pool, Device device) {
+		IntSummaryStatistics poolApiLevels = pool.getDevices().stream()
+				.mapToInt(Device::getOsApiLevel)
+				.summaryStatistics();
+		int apiLevel = device.getOsApiLevel();
+		return poolApiLevels.getCount() > 0
+				&& apiLevel >= poolApiLevels.getMin()
+				&& apiLevel <= poolApiLevels.getMax();
+	}
 }
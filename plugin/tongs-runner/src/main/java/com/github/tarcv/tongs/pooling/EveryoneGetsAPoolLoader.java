@@ -36,4 +36,12 @@ public class EveryoneGetsAPoolLoader implements DevicePoolLoader {
         }
 		return pools;
 	}
+
+	/**
+	 * Each device runs the whole suite on its own, so it never executes test cases of other devices.
+	 */
+	@Override
+	public boolean isCompatible(Pool pool, Device device) {
+		return false;
+	}
 }
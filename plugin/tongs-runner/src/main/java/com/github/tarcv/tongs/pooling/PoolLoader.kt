@@ -12,6 +12,11 @@
 package com.github.tarcv.tongs.pooling
 
 import com.github.tarcv.tongs.Configuration
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.DeviceChangeListener
+import com.github.tarcv.tongs.api.devices.DeviceProvider
+import com.github.tarcv.tongs.api.devices.ElasticDeviceProvider
+import com.github.tarcv.tongs.api.devices.ObservableDeviceProvider
 import com.github.tarcv.tongs.api.devices.Pool
 import com.github.tarcv.tongs.injector.DeviceProviderManager
 import com.github.tarcv.tongs.plugin.DeviceProviderContextImpl
@@ -19,14 +24,41 @@ import org.slf4j.LoggerFactory
 import java.lang.String.format
 
 class PoolLoader(private val configuration: Configuration, private val deviceProviderManager: DeviceProviderManager) {
+    private var devicePoolLoader: DevicePoolLoader? = null
+    private var deviceProviders: List<DeviceProvider> = emptyList()
 
     @Throws(NoDevicesForPoolException::class, NoPoolLoaderConfiguredException::class)
     fun loadPools(): Collection<Pool> {
-        val devices = deviceProviderManager
+        val devices = loadDevices()
+
+        val devicePoolLoader = pickPoolLoader(configuration)
+        this.devicePoolLoader = devicePoolLoader
+        logger.info("Picked {}", devicePoolLoader.javaClass.simpleName)
+        val pools = devicePoolLoader.loadPools(devices)
+        if (pools.isEmpty()) {
+            throw IllegalArgumentException("No pools were found with your configuration. Please review connected devices")
+        }
+        log(pools)
+        for (pool in pools) {
+            if (pool.isEmpty) {
+                throw NoDevicesForPoolException(format("Pool %s is empty", pool.name))
+            }
+        }
+
+        return pools
+    }
+
+    /**
+     * Collects devices from all device providers without splitting them into pools
+     */
+    @Throws(NoDevicesForPoolException::class)
+    fun loadDevices(): List<Device> {
+        deviceProviders = deviceProviderManager
                 .createRulesFrom {
                     configuration ->
                     DeviceProviderContextImpl(configuration)
                 }
+        val devices = deviceProviders
                 .asSequence()
                 .map { deviceProvider ->
                     val deviceList = ArrayList(deviceProvider.provideDevices())
@@ -39,21 +71,49 @@ class PoolLoader(private val configuration: Configuration, private val devicePro
         if (devices.isEmpty()) {
             throw NoDevicesForPoolException("No devices found.")
         }
+        return devices
+    }
 
-        val devicePoolLoader = pickPoolLoader(configuration)
-        logger.info("Picked {}", devicePoolLoader.javaClass.simpleName)
-        val pools = devicePoolLoader.loadPools(devices)
-        if (pools.isEmpty()) {
-            throw IllegalArgumentException("No pools were found with your configuration. Please review connected devices")
-        }
-        log(pools)
-        for (pool in pools) {
-            if (pool.isEmpty) {
-                throw NoDevicesForPoolException(format("Pool %s is empty", pool.name))
-            }
-        }
+    /**
+     * Checks whether [device] from another pool satisfies constraints of [pool] (see [DevicePoolLoader.isCompatible])
+     */
+    fun isCompatible(pool: Pool, device: Device): Boolean {
+        val loader = devicePoolLoader ?: throw IllegalStateException("Pools must be loaded first")
+        return !pool.devices.contains(device) && loader.isCompatible(pool, device)
+    }
 
-        return pools
+    /**
+     * Subscribes [listener] to devices connected or disconnected during the run
+     * (only providers implementing [ObservableDeviceProvider] report them)
+     */
+    fun addDeviceChangeListener(listener: DeviceChangeListener) {
+        deviceProviders
+                .filterIsInstance<ObservableDeviceProvider>()
+                .forEach { it.addDeviceChangeListener(listener) }
+    }
+
+    fun removeDeviceChangeListener(listener: DeviceChangeListener) {
+        deviceProviders
+                .filterIsInstance<ObservableDeviceProvider>()
+                .forEach { it.removeDeviceChangeListener(listener) }
+    }
+
+    fun elasticDeviceProviders(): List<ElasticDeviceProvider> {
+        return deviceProviders.filterIsInstance<ElasticDeviceProvider>()
+    }
+
+    /**
+     * Picks a pool for a device connected during the run. A reconnected device returns to its original pool,
+     * other devices join the pool picked by the pool loader (see [DevicePoolLoader.poolNameFor]).
+     *
+     * @return null when the device doesn't belong to any of [pools]
+     */
+    fun poolForConnectedDevice(pools: Collection<Pool>, device: Device): Pool? {
+        val loader = devicePoolLoader ?: throw IllegalStateException("Pools must be loaded first")
+        return pools.firstOrNull { it.devices.contains(device) }
+                ?: loader.poolNameFor(device)?.let { poolName ->
+                    pools.firstOrNull { it.name == poolName }
+                }
     }
 
     companion object {
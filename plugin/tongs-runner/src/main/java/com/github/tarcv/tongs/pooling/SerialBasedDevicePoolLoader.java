@@ -54,4 +54,12 @@ public class SerialBasedDevicePoolLoader implements DevicePoolLoader {
 
 		return pools;
 	}
+
+    /**
+     * Pools are made of explicitly listed devices, so devices from other pools never execute their test cases.
+     */
+    @Override
+    public boolean isCompatible(Pool pool, Device device) {
+        return false;
+    }
 }
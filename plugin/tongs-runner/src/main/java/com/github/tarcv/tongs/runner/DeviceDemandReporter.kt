@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.DeviceDemand
+import com.github.tarcv.tongs.api.devices.ElasticDeviceProvider
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.devices.PoolDemand
+import com.github.tarcv.tongs.model.TestCaseEventQueue
+import com.github.tarcv.tongs.model.TestDurationHistory
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+
+/**
+ * Periodically tells [ElasticDeviceProvider]s how much work is left in each pool,
+ * so they can add devices while there is a lot of work and release them as pools drain.
+ *
+ * @param devicesByPool devices that execute test cases of each pool right now
+ */
+class DeviceDemandReporter(
+        private val providers: List<ElasticDeviceProvider>,
+        private val queues: Map<Pool, TestCaseEventQueue>,
+        private val testDurationHistory: TestDurationHistory,
+        private val devicesByPool: () -> Map<Pool, Set<Device>>,
+        private val intervalMillis: Long = DEFAULT_INTERVAL_MILLIS
+) : AutoCloseable {
+    private var reportingTask: Future<*>? = null
+
+    fun start(executor: ExecutorService) {
+        if (providers.isEmpty()) {
+            return
+        }
+        reportingTask = executor.submit {
+            try {
+                while (!Thread.currentThread().isInterrupted) {
+                    report(currentDemand())
+                    Thread.sleep(intervalMillis)
+                }
+            } catch (e: InterruptedException) {
+                // stopped by close
+            }
+        }
+    }
+
+    /**
+     * Stops periodic reports and sends the final one, so providers can release all devices they added
+     */
+    override fun close() {
+        val task = reportingTask ?: return
+        reportingTask = null
+        task.cancel(true)
+        report(currentDemand())
+    }
+
+    fun currentDemand(): DeviceDemand {
+        val devices = devicesByPool()
+        return DeviceDemand(queues.map { (pool, queue) ->
+            val queuedEvents = queue.queuedEvents()
+            PoolDemand(
+                    pool,
+                    queuedEvents.size,
+                    queue.runningCount,
+                    testDurationHistory.estimateMillis(pool, queuedEvents.map { it.testCase }),
+                    devices[pool] ?: emptySet()
+            )
+        })
+    }
+
+    private fun report(demand: DeviceDemand) {
+        logger.debug("Reporting {}", demand)
+        providers.forEach {
+            try {
+                it.onDemandChanged(demand)
+            } catch (e: Exception) {
+                logger.warn("Failed to report device demand to {}", it.javaClass.simpleName, e)
+            }
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(DeviceDemandReporter::class.java)
+
+        const val DEFAULT_INTERVAL_MILLIS = 5_000L
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.Pool
+import org.slf4j.LoggerFactory
+import java.time.Instant
+import java.util.ArrayDeque
+
+/**
+ * Scores health of devices by outcomes of recent test cases executed on them and quarantines devices
+ * that became unhealthy, so they stop taking test cases from their pools.
+ *
+ * The score starts at 1.0 and is decreased by:
+ * - infrastructure errors, that is exceptions thrown while running a test case (e.g. ADB timeouts),
+ * - failed test cases (with a lower weight, as a failure might be caused by the test case itself),
+ * - test cases taking much longer than usual, that is when the median duration of test cases on a device
+ * is several times the median duration of test cases in its pool.
+ *
+ * A device is quarantined when its score drops below [QUARANTINE_SCORE] or after [MAX_CONSECUTIVE_ERRORS]
+ * infrastructure errors in a row. The last healthy device of a pool is never quarantined, so a pool always
+ * has a device to finish its test cases.
+ *
+ * @param enabled when false, outcomes are still scored, but devices are never quarantined
+ */
+class DeviceHealthTracker(private val enabled: Boolean) {
+    private val lock = Any()
+    private val devices = HashMap<Device, DeviceHealth>()
+    private val poolDurations = HashMap<Pool, ArrayDeque<Long>>()
+    private val events = ArrayList<HealthEvent>()
+
+    fun register(pool: Pool, device: Device) {
+        synchronized(lock) {
+            devices.getOrPut(device) { DeviceHealth(pool) }
+        }
+    }
+
+    fun recordResult(device: Device, durationMillis: Long, failed: Boolean) {
+        synchronized(lock) {
+            val health = devices[device] ?: return
+            health.addOutcome(if (failed) Outcome.FAILED else Outcome.PASSED)
+            health.consecutiveErrors = 0
+            if (durationMillis > 0) {
+                health.durations.addBounded(durationMillis, DURATION_WINDOW_SIZE)
+                poolDurations
+                        .getOrPut(health.pool) { ArrayDeque() }
+                        .addBounded(durationMillis, POOL_DURATION_WINDOW_SIZE)
+            }
+            checkHealth(device, health)
+        }
+    }
+
+    fun recordInfrastructureError(device: Device, error: Throwable) {
+        synchronized(lock) {
+            val health = devices[device] ?: return
+            health.addOutcome(Outcome.INFRASTRUCTURE_ERROR)
+            health.consecutiveErrors++
+            health.lastError = error.toString()
+            checkHealth(device, health)
+        }
+    }
+
+    fun isQuarantined(device: Device): Boolean {
+        synchronized(lock) {
+            return devices[device]?.quarantined ?: false
+        }
+    }
+
+    /**
+     * Returns a device that passed its probe back to its pool, with its history cleared
+     */
+    fun readmit(device: Device) {
+        synchronized(lock) {
+            val health = devices[device] ?: return
+            if (!health.quarantined) {
+                return
+            }
+            health.quarantined = false
+            health.outcomes.clear()
+            health.durations.clear()
+            health.consecutiveErrors = 0
+            addEvent(device, health.pool, HealthEvent.Type.READMITTED, "the probe succeeded")
+        }
+    }
+
+    fun recordFailedProbe(device: Device, error: Throwable) {
+        synchronized(lock) {
+            val health = devices[device] ?: return
+            addEvent(device, health.pool, HealthEvent.Type.PROBE_FAILED, error.toString())
+        }
+    }
+
+    /**
+     * @return value from 0.0 (broken) to 1.0 (healthy)
+     */
+    fun healthScore(device: Device): Double {
+        synchronized(lock) {
+            val health = devices[device] ?: return 1.0
+            return score(health)
+        }
+    }
+
+    fun getEvents(): List<HealthEvent> {
+        synchronized(lock) {
+            return events.toList()
+        }
+    }
+
+    private fun checkHealth(device: Device, health: DeviceHealth) {
+        if (!enabled || health.quarantined) {
+            return
+        }
+
+        val score = score(health)
+        val reason = when {
+            health.consecutiveErrors >= MAX_CONSECUTIVE_ERRORS ->
+                "${health.consecutiveErrors} infrastructure errors in a row, the last one is ${health.lastError}"
+            health.outcomes.size >= MIN_OUTCOMES && score < QUARANTINE_SCORE ->
+                String.format("health score %.2f (%s, %.1f times slower than the pool median)",
+                        score, health.outcomes.groupingBy { it }.eachCount(), latencyRatio(health))
+            else -> return
+        }
+
+        val otherHealthyDevices = devices.count { (otherDevice, otherHealth) ->
+            otherDevice != device && otherHealth.pool == health.pool && !otherHealth.quarantined
+        }
+        if (otherHealthyDevices == 0) {
+            logger.warn("Device {} is unhealthy ({}), but it is the last healthy device of pool {}",
+                    device.serial, reason, health.pool.name)
+            return
+        }
+
+        health.quarantined = true
+        addEvent(device, health.pool, HealthEvent.Type.QUARANTINED, reason)
+    }
+
+    private fun score(health: DeviceHealth): Double {
+        if (health.outcomes.isEmpty()) {
+            return 1.0
+        }
+        val errorPenalty = health.outcomes.sumByDouble { it.penalty } / health.outcomes.size
+        val latencyRatio = latencyRatio(health)
+        val latencyPenalty = when {
+            latencyRatio >= VERY_SLOW_RATIO -> 0.6
+            latencyRatio >= SLOW_RATIO -> 0.3
+            else -> 0.0
+        }
+        return (1.0 - errorPenalty - latencyPenalty).coerceIn(0.0, 1.0)
+    }
+
+    private fun latencyRatio(health: DeviceHealth): Double {
+        val pooled = poolDurations[health.pool] ?: return 1.0
+        if (health.durations.size < MIN_OUTCOMES || pooled.size < MIN_OUTCOMES) {
+            return 1.0
+        }
+        val poolMedian = median(pooled)
+        return if (poolMedian > 0) median(health.durations).toDouble() / poolMedian else 1.0
+    }
+
+    private fun addEvent(device: Device, pool: Pool, type: HealthEvent.Type, reason: String) {
+        val event = HealthEvent(device, pool, type, reason, Instant.now())
+        events += event
+        logger.warn(event.toString())
+    }
+
+    private class DeviceHealth(val pool: Pool) {
+        val outcomes = ArrayDeque<Outcome>()
+        val durations = ArrayDeque<Long>()
+        var consecutiveErrors = 0
+        var lastError: String? = null
+        var quarantined = false
+
+        fun addOutcome(outcome: Outcome) {
+            outcomes.addBounded(outcome, OUTCOME_WINDOW_SIZE)
+        }
+    }
+
+    private enum class Outcome(val penalty: Double) {
+        PASSED(0.0),
+        FAILED(0.5),
+        INFRASTRUCTURE_ERROR(1.0)
+    }
+
+    class HealthEvent(
+            val device: Device,
+            val pool: Pool,
+            val type: Type,
+            val reason: String,
+            val timestamp: Instant
+    ) {
+        enum class Type(val description: String) {
+            QUARANTINED("was quarantined"),
+            PROBE_FAILED("failed its probe and stays quarantined"),
+            READMITTED("was re-admitted")
+        }
+
+        override fun toString(): String = "Device ${device.serial} of pool ${pool.name} ${type.description}: $reason"
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(DeviceHealthTracker::class.java)
+
+        const val QUARANTINE_SCORE = 0.5
+        const val MAX_CONSECUTIVE_ERRORS = 3
+        private const val MIN_OUTCOMES = 5
+        private const val OUTCOME_WINDOW_SIZE = 10
+        private const val DURATION_WINDOW_SIZE = 10
+        private const val POOL_DURATION_WINDOW_SIZE = 100
+        private const val SLOW_RATIO = 2.0
+        private const val VERY_SLOW_RATIO = 4.0
+
+        private fun <T> ArrayDeque<T>.addBounded(item: T, maxSize: Int) {
+            addLast(item)
+            while (size > maxSize) {
+                removeFirst()
+            }
+        }
+
+        private fun median(values: Collection<Long>): Long {
+            val sorted = values.sorted()
+            return sorted[sorted.size / 2]
+        }
+    }
+}
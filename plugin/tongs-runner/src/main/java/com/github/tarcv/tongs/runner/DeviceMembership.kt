@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.DeviceChangeListener
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.injector.RuleManagerFactory
+import com.github.tarcv.tongs.pooling.PoolLoader
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ExecutorService
+
+/**
+ * Keeps pools in sync with devices connected and disconnected while test cases are executed.
+ *
+ * A connected device is prepared by its device rules (e.g. AndroidSetupDeviceRule) first, and joins its pool only
+ * when that succeeds (see [PoolLoader.poolForConnectedDevice] for how the pool is picked). A disconnected device
+ * is stopped right away, and its test cases are put back to the queue of its pool.
+ *
+ * @param prepareTestCases adds runners of test cases of a pool to a device that joins the pool
+ */
+class DeviceMembership(
+        private val poolLoader: PoolLoader,
+        private val deviceTestRunnerFactory: DeviceTestRunnerFactory,
+        private val ruleManagerFactory: RuleManagerFactory,
+        private val poolTestRunners: Map<Pool, PoolTestRunner>,
+        private val prepareTestCases: (Pool, Device) -> Unit,
+        private val executor: ExecutorService
+) : DeviceChangeListener, AutoCloseable {
+    private val lock = Any()
+    private val activeRunners = HashMap<Device, ActiveDevice>()
+
+    /**
+     * Connected devices that are not in a pool yet
+     */
+    private val preparingDevices = HashSet<Device>()
+
+    fun start(initialRunners: Map<Pool, List<Pair<Device, DeviceTestRunner>>>) {
+        synchronized(lock) {
+            initialRunners.forEach { (pool, deviceRunners) ->
+                deviceRunners.forEach { (device, runner) ->
+                    activeRunners[device] = ActiveDevice(pool, runner)
+                }
+            }
+        }
+        poolLoader.addDeviceChangeListener(this)
+    }
+
+    /**
+     * Devices of each pool that are connected right now
+     */
+    fun devicesByPool(): Map<Pool, Set<Device>> {
+        synchronized(lock) {
+            return activeRunners.entries
+                    .groupBy({ it.value.pool }, { it.key })
+                    .mapValues { (_, devices) -> devices.toSet() }
+        }
+    }
+
+    override fun close() {
+        poolLoader.removeDeviceChangeListener(this)
+    }
+
+    override fun deviceConnected(device: Device) {
+        synchronized(lock) {
+            if (activeRunners.containsKey(device) || !preparingDevices.add(device)) {
+                return
+            }
+        }
+        val pool = poolLoader.poolForConnectedDevice(poolTestRunners.keys, device)
+        if (pool == null) {
+            logger.info("Device {} was connected, but it doesn't belong to any pool", device.serial)
+            synchronized(lock) {
+                preparingDevices.remove(device)
+            }
+            return
+        }
+        val poolTestRunner = poolTestRunners.getValue(pool)
+
+        // Device rules might take long, so they shouldn't block notifications about other devices
+        executor.execute {
+            val deviceRunner = deviceTestRunnerFactory.createDeviceTestRunner(pool, device, ruleManagerFactory)
+            try {
+                deviceRunner.runBeforeRules()
+                prepareTestCases(pool, device)
+            } catch (e: Exception) {
+                logger.warn("Device {} failed preparation and doesn't join pool {}", device.serial, pool.name, e)
+                synchronized(lock) {
+                    preparingDevices.remove(device)
+                }
+                return@execute
+            }
+
+            synchronized(lock) {
+                // The device might have been disconnected while being prepared
+                if (!preparingDevices.remove(device) || !poolTestRunner.addDevice(deviceRunner)) {
+                    return@execute
+                }
+                activeRunners[device] = ActiveDevice(pool, deviceRunner)
+            }
+            logger.info("Device {} joined pool {}", device.serial, pool.name)
+        }
+    }
+
+    override fun deviceDisconnected(device: Device) {
+        val activeDevice = synchronized(lock) {
+            preparingDevices.remove(device)
+            activeRunners.remove(device)
+        } ?: return
+        logger.warn("Device {} was disconnected, its test cases are put back to the queue", device.serial)
+        activeDevice.runner.disconnect()
+    }
+
+    private class ActiveDevice(val pool: Pool, val runner: DeviceTestRunner)
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(DeviceMembership::class.java)
+    }
+}
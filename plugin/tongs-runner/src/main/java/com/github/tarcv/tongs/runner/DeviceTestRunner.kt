@@ -14,17 +14,24 @@
 package com.github.tarcv.tongs.runner
 
 import com.github.tarcv.tongs.Configuration
+import com.github.tarcv.tongs.Utils
 import com.github.tarcv.tongs.api.devices.Device
 import com.github.tarcv.tongs.api.devices.Pool
 import com.github.tarcv.tongs.api.result.Delegate
+import com.github.tarcv.tongs.api.result.SimpleMonoTextReportData
+import com.github.tarcv.tongs.api.result.SimpleMonoTextReportData.Type
 import com.github.tarcv.tongs.api.result.StackTrace
 import com.github.tarcv.tongs.api.result.TestCaseFileManager
 import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.run.BatchTestCaseRunner
+import com.github.tarcv.tongs.api.run.CancellationSignal
 import com.github.tarcv.tongs.api.run.DeviceRunRuleContext
 import com.github.tarcv.tongs.api.run.DeviceRunRuleFactory
+import com.github.tarcv.tongs.api.run.PostProcessing
 import com.github.tarcv.tongs.api.run.ResultStatus
 import com.github.tarcv.tongs.api.run.TestCaseEvent
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleAfterArguments
+import com.github.tarcv.tongs.api.run.TestCaseRunRule
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleContext
 import com.github.tarcv.tongs.api.run.TestCaseRunRuleFactory
 import com.github.tarcv.tongs.api.run.TestCaseRunnerArguments
@@ -32,7 +39,9 @@ import com.github.tarcv.tongs.injector.ActualConfiguration
 import com.github.tarcv.tongs.injector.RuleManagerFactory
 import com.github.tarcv.tongs.injector.withRulesWithoutAfter
 import com.github.tarcv.tongs.model.TestCaseEventQueue
+import com.github.tarcv.tongs.model.WorkStealingQueues
 import com.github.tarcv.tongs.runner.listeners.TestRunListenersFactoryTongs
+import com.github.tarcv.tongs.runner.listeners.TongsTestListener
 import com.github.tarcv.tongs.system.io.FileManager
 import com.github.tarcv.tongs.system.io.TestCaseFileManagerImpl
 import org.koin.core.context.KoinContextHandler
@@ -41,13 +50,33 @@ import org.slf4j.LoggerFactory
 import java.io.BufferedOutputStream
 import java.io.ByteArrayOutputStream
 import java.io.PrintStream
+import java.time.Duration
 import java.time.Instant
-import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CompletableFuture
 
 class DeviceTestRunner(private val pool: Pool,
                        private val device: Device,
                        private val ruleManagerFactory: RuleManagerFactory
 ) {
+    private val postProcessingPipeline = PostProcessingPipeline()
+
+    private val deviceHealth by lazy { get(DeviceHealthTracker::class.java) }
+
+    @Volatile
+    private var disconnected = false
+
+    /**
+     * Cancellation signal of the test case executed right now, null between test cases
+     */
+    @Volatile
+    private var currentCancellationSignal: CancellationSignal? = null
+
+    /**
+     * Queues this device might wait for test cases in, null before the device is started
+     */
+    @Volatile
+    private var waitedQueues: Pair<TestCaseEventQueue, WorkStealingQueues>? = null
+
     private val rules = ruleManagerFactory.create(DeviceRunRuleFactory::class.java,
             listOf(AndroidSetupDeviceRuleFactory()),
             { factory, context: DeviceRunRuleContext -> factory.deviceRules(context) }
@@ -55,50 +84,416 @@ class DeviceTestRunner(private val pool: Pool,
 
     fun run(
             queueOfTestsInPool: TestCaseEventQueue,
-            deviceCountDownLatch: CountDownLatch,
-            progressReporter: ProgressReporter
+            progressReporter: ProgressReporter,
+            workStealingQueues: WorkStealingQueues
     ) {
+        val configuration = get(Configuration::class.java)
+        val speculateAfterMillis = configuration.speculationDelay
+                .takeIf { configuration.isSpeculativeExecutionEnabled }
+        deviceHealth.register(pool, device)
+        // Set before checking whether the device is disconnected, so either the check or disconnect() sees the change
+        waitedQueues = queueOfTestsInPool to workStealingQueues
+        val isStopped = { disconnected }
         try {
             try {
-                while (true) {
-                    val testCaseTask = queueOfTestsInPool.pollForDevice(device, 10)
-                    if (testCaseTask != null) {
-                        testCaseTask.doWork { testCaseEvent: TestCaseEvent ->
-                            val startTimestampUtc = Instant.now()
-                            try {
-                                runEvent(testCaseEvent, startTimestampUtc, progressReporter, queueOfTestsInPool)
-                                        .fixRunResult(testCaseEvent, startTimestampUtc)
-                                        .copy(endTimestampUtc = Instant.now())
-                            } catch (e: Exception) {
-                                fatalErrorResult(testCaseEvent, e, startTimestampUtc)
-                            }
-                        }
-                    } else if (queueOfTestsInPool.hasNoPotentialEventsFor(device)) {
-                        break
-                    }
+                while (!disconnected && awaitReadmission(queueOfTestsInPool, configuration.quarantineProbeInterval)) {
+                    val testCaseTask = queueOfTestsInPool.pollForDevice(device, speculateAfterMillis, isStopped)
+                            ?: break
+                    executeTasks(testCaseTask, pool, progressReporter, queueOfTestsInPool)
+                }
+
+                // Borrowed test cases are executed and reported as if they were executed in their own pool
+                while (!disconnected && awaitReadmission(queueOfTestsInPool, configuration.quarantineProbeInterval)) {
+                    val borrowedTask = workStealingQueues.borrowFor(device, isStopped) ?: break
+                    logger.info("Device {} from pool {} borrowed {} from pool {}",
+                            device.serial, pool.name, borrowedTask.task.testCaseEvent, borrowedTask.pool.name)
+                    executeTasks(borrowedTask.task, borrowedTask.pool, progressReporter, borrowedTask.queue)
                 }
             } finally {
-                runAfterRules()
+                try {
+                    awaitPostProcessing()
+                } finally {
+                    // Rules of a disconnected device would only fail
+                    if (!disconnected) {
+                        runAfterRules()
+                    }
+                }
             }
         } finally {
             logger.info("Device {} from pool {} finished", device.serial, pool.name)
-            deviceCountDownLatch.countDown()
         }
     }
 
-    private fun runEvent(
+    /**
+     * Stops this runner after its device was disconnected. The test case executed right now is cancelled and,
+     * like all test cases taken by this runner later, is put back to its queue without a result.
+     * The runner stops waiting for test cases right away.
+     */
+    fun disconnect() {
+        disconnected = true
+        currentCancellationSignal?.cancel()
+        waitedQueues?.let { (queue, workStealingQueues) ->
+            queue.wakeUpWaitingDevices()
+            workStealingQueues.wakeUpWaitingDevices()
+        }
+    }
+
+    /**
+     * Waits until this device is re-admitted when it is quarantined. A quarantined device is probed
+     * every [probeIntervalMillis] by executing before actions of its device rules again (that sets the device up
+     * from scratch).
+     *
+     * @return false when the device stays quarantined until all test cases of [queue] are finished
+     */
+    private fun awaitReadmission(queue: TestCaseEventQueue, probeIntervalMillis: Long): Boolean {
+        if (!deviceHealth.isQuarantined(device)) {
+            return true
+        }
+        awaitPostProcessing()
+        if (probeIntervalMillis == 0L) {
+            logger.info("Device {} from pool {} is quarantined and stops taking test cases", device.serial, pool.name)
+            return false
+        }
+        while (!disconnected && !queue.isDrained) {
+            Thread.sleep(probeIntervalMillis)
+            try {
+                runBeforeRules()
+                deviceHealth.readmit(device)
+                return true
+            } catch (e: Exception) {
+                deviceHealth.recordFailedProbe(device, e)
+            }
+        }
+        return false
+    }
+
+    /**
+     * Executes [firstTask] alone or, when its runner supports batching, together with next test cases from [queue]
+     */
+    private fun executeTasks(
+            firstTask: TestCaseEventQueue.TestCaseTask,
+            pool: Pool,
+            progressReporter: ProgressReporter,
+            queue: TestCaseEventQueue
+    ) {
+        // Speculative attempts are never batched, so each of them can be cancelled separately.
+        // Test cases requeued from a batch are executed alone, so they are not left unexecuted again
+        val batchRunner = batchRunnerFor(firstTask.testCaseEvent)
+                ?.takeUnless { firstTask.isSpeculative || !firstTask.isBatchable }
+        val batchKey = batchRunner?.let { batchKeyFor(firstTask.testCaseEvent, pool) }
+        val batch = mutableListOf(firstTask)
+        var nonBatchableTask: TestCaseEventQueue.TestCaseTask? = null
+        if (batchRunner != null && batchKey != null) {
+            while (batch.size < batchRunner.maxBatchSize) {
+                val task = queue.tryPollForDevice(device) ?: break
+                if (task.isBatchable
+                        && batchRunnerFor(task.testCaseEvent) === batchRunner
+                        && batchKeyFor(task.testCaseEvent, pool) == batchKey) {
+                    batch += task
+                } else {
+                    nonBatchableTask = task
+                    break
+                }
+            }
+        }
+
+        try {
+            if (batchRunner != null && batch.size > 1) {
+                queue.doWork(batch) { testCaseEvents, cancellationSignal ->
+                    executeBatch(testCaseEvents, batchRunner, pool, progressReporter, queue, cancellationSignal)
+                }
+            } else {
+                executeTask(firstTask, pool, progressReporter, queue)
+            }
+        } finally {
+            // Already polled task must be executed anyway, otherwise the queue is never finished
+            nonBatchableTask?.let { executeTask(it, pool, progressReporter, queue) }
+        }
+    }
+
+    /**
+     * Before actions of test case run rules of a batch are applied all at once, so test cases are batched together
+     * only when their rules prepare the same state (see [TestCaseRunRule.batchKey])
+     *
+     * @return null when [testCaseEvent] should be executed alone
+     */
+    private fun batchKeyFor(testCaseEvent: TestCaseEvent, pool: Pool): List<Any>? {
+        return createTestCaseRunRules(testCaseEvent, pool, Instant.now())
+                .second
+                .map { it.batchKey ?: return null }
+    }
+
+    private fun batchRunnerFor(testCaseEvent: TestCaseEvent): BatchTestCaseRunner? {
+        // Runners are tried from the last one (see runUntilResult), so only the last one can execute a batch
+        return (testCaseEvent.runnersFor(device).lastOrNull() as? BatchTestCaseRunner)
+                ?.takeIf { it.maxBatchSize > 1 }
+    }
+
+    private fun executeTask(
+            task: TestCaseEventQueue.TestCaseTask,
+            pool: Pool,
+            progressReporter: ProgressReporter,
+            queue: TestCaseEventQueue
+    ) {
+        if (task.isSpeculative) {
+            logger.info("Device {} speculatively executes {} already running on {}",
+                    device.serial, task.testCaseEvent, task.otherAttemptDevices.joinToString { it.serial })
+        }
+        // The previous test case is post-processed while this one is executed on the device
+        postProcessingPipeline.execute { previousPostProcessing ->
+            task.doWorkAsync { testCaseEvent: TestCaseEvent ->
+                executeEvent(testCaseEvent, task, pool, progressReporter, queue, previousPostProcessing)
+            }
+        }
+    }
+
+    /**
+     * Executes a test case and applies test case run rules on the device thread. The result is returned
+     * after post-processing of the test case is finished, listeners of Tongs are applied at that moment
+     * (but not before post-processing of the previous test case, see [previousPostProcessing], is finished, so
+     * results of a device are delivered in order). Listeners of Tongs are not applied at all when another attempt
+     * of the test case finished first.
+     *
+     * @return null result when the device was disconnected before the test case was finished
+     */
+    private fun executeEvent(
             testCaseEvent: TestCaseEvent,
-            startTimestampUtc: Instant,
+            task: TestCaseEventQueue.TestCaseTask,
+            pool: Pool,
+            progressReporter: ProgressReporter,
+            queueOfTestsInPool: TestCaseEventQueue,
+            previousPostProcessing: CompletableFuture<*>
+    ): CompletableFuture<TestCaseRunResult?> {
+        val startTimestampUtc = Instant.now()
+        val postProcessing = TestCasePostProcessing(postProcessingExecutor)
+        currentCancellationSignal = task.cancellationSignal
+        return try {
+            if (disconnected) {
+                return CompletableFuture.completedFuture(null)
+            }
+            val testRunListeners = createTongsListeners(testCaseEvent, pool, progressReporter, queueOfTestsInPool)
+            val preparedEvent = prepareEvent(testCaseEvent, pool, startTimestampUtc, testRunListeners)
+            val result = preparedEvent.executeContext?.let {
+                completeResult(it, runUntilResult(it, postProcessing, task.cancellationSignal))
+            }
+            if (disconnected) {
+                // After rules are skipped as the test case will be executed again
+                logger.warn("{} is put back to the queue as device {} was disconnected", testCaseEvent, device.serial)
+                return CompletableFuture.completedFuture(null)
+            }
+            // Only winning attempts are reported, and they are cancelled only when the pool is aborted
+            val cancelledByAbort = task.cancellationSignal.isCancelled && queueOfTestsInPool.isAborted
+            val (listenerRules, deviceRules) = preparedEvent.afterRules.partition { it is TongsTestListener }
+            val deviceResult = finishEvent(preparedEvent, result, deviceRules)
+                    .fixRunResult(testCaseEvent, pool, startTimestampUtc)
+                    .copy(endTimestampUtc = Instant.now())
+
+            CompletableFuture.allOf(postProcessing.whenFinished(), previousPostProcessing).handle { _, _ ->
+                try {
+                    if (!task.tryWin()) {
+                        logger.info("Dropping the result of {} on {} as another attempt finished first",
+                                testCaseEvent, device.serial)
+                        return@handle deviceResult
+                    }
+                    if (cancelledByAbort && ResultStatus.isFailure(deviceResult.status)) {
+                        // Not a real failure, so it is neither retried nor counted against the failure budget
+                        logger.info("{} on {} was cancelled as pool {} is aborted",
+                                testCaseEvent, device.serial, pool.name)
+                        return@handle deviceResult.copy(
+                                status = ResultStatus.IGNORED,
+                                stackTraces = listOf(FailureBudget.notRunTrace(pool))
+                        )
+                    }
+                    finishEvent(preparedEvent, deviceResult.withAttemptsReport(task), listenerRules)
+                            .fixRunResult(testCaseEvent, pool, startTimestampUtc)
+                } catch (e: Exception) {
+                    fatalErrorResult(testCaseEvent, pool, e, startTimestampUtc)
+                }
+            }
+        } catch (e: Exception) {
+            CompletableFuture.completedFuture(fatalErrorResult(testCaseEvent, pool, e, startTimestampUtc))
+        } finally {
+            currentCancellationSignal = null
+        }
+    }
+
+    /**
+     * Adds information about other attempts to the result of a test case executed speculatively
+     */
+    private fun TestCaseRunResult.withAttemptsReport(task: TestCaseEventQueue.TestCaseTask): TestCaseRunResult {
+        val otherDevices = task.otherAttemptDevices.joinToString { it.serial }
+        if (otherDevices.isEmpty()) {
+            return this
+        }
+        val description = if (task.isSpeculative) {
+            "This is a speculative attempt, it finished before the original attempt on $otherDevices " +
+                    "which was cancelled"
+        } else {
+            "A speculative attempt on $otherDevices was cancelled as this attempt finished first"
+        }
+        return copy(
+                additionalProperties = additionalProperties + (SPECULATIVE_PROPERTY to task.isSpeculative.toString()),
+                data = data + SimpleMonoTextReportData("Speculative execution", Type.OTHER, description)
+        )
+    }
+
+    @Throws(InterruptedException::class)
+    private fun awaitPostProcessing() {
+        postProcessingPipeline.await()
+    }
+
+    /**
+     * Executes test cases in one batch. Test case run rules are applied to each test case before
+     * and after the whole batch. The whole batch is stopped once [cancellationSignal] is cancelled.
+     *
+     * @return results in the same order as [testCaseEvents], null for test cases that should be executed again
+     */
+    private fun executeBatch(
+            testCaseEvents: List<TestCaseEvent>,
+            batchRunner: BatchTestCaseRunner,
+            pool: Pool,
+            progressReporter: ProgressReporter,
+            queueOfTestsInPool: TestCaseEventQueue,
+            cancellationSignal: CancellationSignal
+    ): List<TestCaseRunResult?> {
+        currentCancellationSignal = cancellationSignal
+        try {
+            if (disconnected) {
+                return testCaseEvents.map { null }
+            }
+            return executeBatchOnDevice(testCaseEvents, batchRunner, pool, progressReporter, queueOfTestsInPool,
+                    cancellationSignal)
+        } finally {
+            currentCancellationSignal = null
+        }
+    }
+
+    private fun executeBatchOnDevice(
+            testCaseEvents: List<TestCaseEvent>,
+            batchRunner: BatchTestCaseRunner,
+            pool: Pool,
+            progressReporter: ProgressReporter,
+            queueOfTestsInPool: TestCaseEventQueue,
+            cancellationSignal: CancellationSignal
+    ): List<TestCaseRunResult?> {
+        val startTimestampUtc = Instant.now()
+        val preparedEvents = testCaseEvents.map { testCaseEvent ->
+            try {
+                val testRunListeners = createTongsListeners(testCaseEvent, pool, progressReporter, queueOfTestsInPool)
+                prepareEvent(testCaseEvent, pool, startTimestampUtc, testRunListeners)
+            } catch (e: Exception) {
+                PreparedEvent(testCaseEvent, pool, startTimestampUtc, emptyList(), null, e)
+            }
+        }
+
+        val contexts = preparedEvents.mapNotNull { it.executeContext }
+        val batchResults: List<TestCaseRunResult?> = try {
+            if (contexts.isEmpty()) {
+                emptyList()
+            } else {
+                batchRunner
+                        .runBatch(contexts.map {
+                            TestCaseRunnerArguments(it.fileManager, it.testCaseEvent, it.startTimestampUtc,
+                                    PostProcessing.INLINE, cancellationSignal)
+                        })
+                        .also {
+                            check(it.size == contexts.size) { "Expected ${contexts.size} results, got ${it.size}" }
+                        }
+            }
+        } catch (e: Exception) {
+            if (disconnected) {
+                emptyList()
+            } else {
+                logger.error("Exception while executing a batch of test cases", e)
+                if (!cancellationSignal.isCancelled) {
+                    deviceHealth.recordInfrastructureError(device, e)
+                }
+                contexts.map { fatalErrorResult(it.testCaseEvent, it.pool, e, it.startTimestampUtc) }
+            }
+        }
+        if (disconnected) {
+            logger.warn("{} test cases are put back to the queue as device {} was disconnected",
+                    testCaseEvents.size, device.serial)
+            return testCaseEvents.map { null }
+        }
+        // Every batch must finish at least one test case, otherwise requeued test cases might be executed forever
+        val noneExecuted = batchResults.all { it == null }
+        val endTimestampUtc = Instant.now()
+        val cancelledByAbort = cancellationSignal.isCancelled && queueOfTestsInPool.isAborted
+        // Cancelled batches say nothing about health of the device
+        if (!cancellationSignal.isCancelled) {
+            batchResults.filterNotNull().forEach { result ->
+                val netStart = result.netStartTimestampUtc?.takeIf { it != Instant.EPOCH }
+                val netEnd = result.netEndTimestampUtc?.takeIf { it != Instant.EPOCH }
+                val durationMillis = if (netStart != null && netEnd != null) {
+                    Duration.between(netStart, netEnd).toMillis()
+                } else {
+                    0L // unknown, only the outcome is scored
+                }
+                deviceHealth.recordResult(device, durationMillis, ResultStatus.isFailure(result.status))
+            }
+        }
+
+        val resultsByContext = contexts.zip(batchResults).toMap()
+        return preparedEvents.map { preparedEvent ->
+            val context = preparedEvent.executeContext
+            val result = if (context != null) {
+                val batchResult = resultsByContext[context]
+                        ?: if (noneExecuted) {
+                            val error = IllegalStateException("The batch finished without executing any test case")
+                            fatalErrorResult(context.testCaseEvent, pool, error, startTimestampUtc)
+                        } else {
+                            // After rules are skipped as the test case will be executed again
+                            return@map null
+                        }
+                completeResult(context, batchResult)
+            } else {
+                null
+            }
+            val (listenerRules, deviceRules) = preparedEvent.afterRules.partition { it is TongsTestListener }
+            val deviceResult = finishEvent(preparedEvent, result, deviceRules)
+                    .fixRunResult(preparedEvent.testCaseEvent, pool, startTimestampUtc)
+                    .withBatchTimestamps(startTimestampUtc, endTimestampUtc)
+            if (cancelledByAbort && ResultStatus.isFailure(deviceResult.status)) {
+                // Not a real failure, so it is neither retried nor counted against the failure budget
+                return@map deviceResult.copy(status = ResultStatus.IGNORED,
+                        stackTraces = listOf(FailureBudget.notRunTrace(pool)))
+            }
+            finishEvent(preparedEvent, deviceResult, listenerRules)
+                    .fixRunResult(preparedEvent.testCaseEvent, pool, startTimestampUtc)
+                    .withBatchTimestamps(startTimestampUtc, endTimestampUtc)
+        }
+    }
+
+    /**
+     * Executes a test case requested by a coordinator. Only rules that need direct access to the device are applied
+     * here, retries and reporting are done by the coordinator. The test case is stopped early once
+     * [cancellationSignal] is cancelled by the coordinator.
+     */
+    fun executeForCoordinator(testCaseEvent: TestCaseEvent, cancellationSignal: CancellationSignal): TestCaseRunResult {
+        val startTimestampUtc = Instant.now()
+        return try {
+            val preparedEvent = prepareEvent(testCaseEvent, pool, startTimestampUtc, emptyList())
+            val result = preparedEvent.executeContext?.let {
+                completeResult(it, runUntilResult(it, PostProcessing.INLINE, cancellationSignal))
+            }
+            finishEvent(preparedEvent, result)
+                    .fixRunResult(testCaseEvent, pool, startTimestampUtc)
+                    .copy(endTimestampUtc = Instant.now())
+        } catch (e: Exception) {
+            fatalErrorResult(testCaseEvent, pool, e, startTimestampUtc)
+        }
+    }
+
+    private fun createTongsListeners(
+            testCaseEvent: TestCaseEvent,
+            pool: Pool,
             progressReporter: ProgressReporter,
             queueOfTestsInPool: TestCaseEventQueue
-    ): TestCaseRunResult {
-        val fileManager by KoinContextHandler.get().inject<FileManager>()
-        val testCaseFileManager: TestCaseFileManager =
-     TestCaseFileManagerImpl(fileManager, pool, device, testCaseEvent.testCase)
+    ): List<TestCaseRunRule> {
         val configuration = get(Configuration::class.java)
-
         val testRunListenersTongsFactory by KoinContextHandler.get().inject<TestRunListenersFactoryTongs>()
-        val testRunListeners = testRunListenersTongsFactory.createTongsListners(
+        return testRunListenersTongsFactory.createTongsListners(
             testCaseEvent,
             device,
             pool,
@@ -107,6 +502,48 @@ class DeviceTestRunner(private val pool: Pool,
             configuration.tongsIntegrationTestRunType
         )
             .toList()
+    }
+
+    private fun prepareEvent(
+            testCaseEvent: TestCaseEvent,
+            pool: Pool,
+            startTimestampUtc: Instant,
+            testRunListeners: List<TestCaseRunRule>
+    ): PreparedEvent {
+        val (testCaseFileManager, testCaseRunRules) = createTestCaseRunRules(testCaseEvent, pool, startTimestampUtc)
+        val configuration = get(Configuration::class.java)
+
+        val (allowedAfterRules, eitherContext) = withRulesWithoutAfter(
+                logger,
+                IN_RULE_TEXT,
+                "while executing a test case",
+                (testRunListeners + testCaseRunRules),
+                { it.before() },
+                {
+                    TestCaseRunRuleContext(
+                            ActualConfiguration(configuration), testCaseFileManager,
+                            pool, device, testCaseEvent, startTimestampUtc)
+                }
+        )
+        return PreparedEvent(
+                testCaseEvent, pool, startTimestampUtc,
+                allowedAfterRules,
+                eitherContext.getOrNull(),
+                eitherContext.exceptionOrNull()
+        )
+    }
+
+    /**
+     * Creates test case run rules without applying them
+     */
+    private fun createTestCaseRunRules(
+            testCaseEvent: TestCaseEvent,
+            pool: Pool,
+            startTimestampUtc: Instant
+    ): Pair<TestCaseFileManager, List<TestCaseRunRule>> {
+        val fileManager by KoinContextHandler.get().inject<FileManager>()
+        val testCaseFileManager: TestCaseFileManager =
+     TestCaseFileManagerImpl(fileManager, pool, device, testCaseEvent.testCase)
 
         val ruleManager = ruleManagerFactory.create(
                 TestCaseRunRuleFactory::class.java,
@@ -122,39 +559,39 @@ class DeviceTestRunner(private val pool: Pool,
                     pluginConfiguration, testCaseFileManager,
                     pool, device, testCaseEvent, startTimestampUtc)
         }
+        return testCaseFileManager to testCaseRunRules
+    }
 
-        val inRuleText = "while executing a test case run rule"
-
-        val (allowedAfterRules, eitherResult) = withRulesWithoutAfter(
-                logger,
-                inRuleText,
-                "while executing a test case",
-                (testRunListeners + testCaseRunRules),
-                { it.before() },
-                {
-                    val executeContext = TestCaseRunRuleContext(
-                            ActualConfiguration(configuration), testCaseFileManager,
-                            pool, device, testCaseEvent, startTimestampUtc)
+    private fun completeResult(context: TestCaseRunRuleContext, result: TestCaseRunResult): TestCaseRunResult {
+        return result
+                .copy(
+                        startTimestampUtc = context.startTimestampUtc,
+                        baseTotalFailureCount = context.testCaseEvent.totalFailureCount,
+                        additionalProperties = combineProperties(context.testCaseEvent, result.additionalProperties)
+                )
+                .fixRunResult(context.testCaseEvent, context.pool, context.startTimestampUtc)
+    }
 
-                    runUntilResult(executeContext)
-                            .let {
-                                it.copy(
-                                        startTimestampUtc = executeContext.startTimestampUtc,
-                                        baseTotalFailureCount = executeContext.testCaseEvent.totalFailureCount,
-                                        additionalProperties = combineProperties(executeContext.testCaseEvent, it.additionalProperties)
-                                )
-                            }
-                            .fixRunResult(testCaseEvent, startTimestampUtc)
-                }
-        )
+    /**
+     * Applies [afterRules] of [preparedEvent] to its [result] (null when its before rules failed)
+     */
+    private fun finishEvent(
+            preparedEvent: PreparedEvent,
+            result: TestCaseRunResult?,
+            afterRules: List<TestCaseRunRule> = preparedEvent.afterRules
+    ): TestCaseRunResult {
+        val testCaseEvent = preparedEvent.testCaseEvent
+        val pool = preparedEvent.pool
+        val startTimestampUtc = preparedEvent.startTimestampUtc
 
-        val fixedResult = eitherResult
-                .getOrElse { e ->
+        val fixedResult = result
+                ?: run {
+                    val e = preparedEvent.failure ?: IllegalStateException("Test case was not executed")
                     logger.error("Exception while executing a test case", e)
-                    fatalErrorResult(testCaseEvent, e, startTimestampUtc)
+                    fatalErrorResult(testCaseEvent, pool, e, startTimestampUtc)
                 }
 
-        return allowedAfterRules
+        return afterRules
                 .asReversed()
                 .fold(fixedResult) { acc, rule ->
                     try {
@@ -164,10 +601,11 @@ class DeviceTestRunner(private val pool: Pool,
                         args.result
                                 .fixRunResult(
                                     testCaseEvent,
+                                    pool,
                                     startTimestampUtc
                                 )
                     } catch (e: Exception) {
-                        val header = "Exception ${inRuleText} (after)"
+                        val header = "Exception ${IN_RULE_TEXT} (after)"
                         val newStackTrace = "$header: ${traceAsString(e)}"
                         acc.copy(
                                 status = ResultStatus.ERROR,
@@ -177,7 +615,28 @@ class DeviceTestRunner(private val pool: Pool,
                 }
     }
 
-    private fun fatalErrorResult(testCaseEvent: TestCaseEvent, error: Throwable, startTimestampUtc: Instant): TestCaseRunResult {
+    /**
+     * All test cases of a batch share the same run time, so use the time of the test case itself when it is known
+     */
+    private fun TestCaseRunResult.withBatchTimestamps(
+            batchStartTimestampUtc: Instant,
+            batchEndTimestampUtc: Instant
+    ): TestCaseRunResult {
+        val netStart = netStartTimestampUtc?.takeIf { it != Instant.EPOCH }
+        val netEnd = netEndTimestampUtc?.takeIf { it != Instant.EPOCH }
+        return if (netStart != null && netEnd != null) {
+            copy(startTimestampUtc = netStart, endTimestampUtc = netEnd)
+        } else {
+            copy(startTimestampUtc = batchStartTimestampUtc, endTimestampUtc = batchEndTimestampUtc)
+        }
+    }
+
+    private fun fatalErrorResult(
+            testCaseEvent: TestCaseEvent,
+            pool: Pool,
+            error: Throwable,
+            startTimestampUtc: Instant
+    ): TestCaseRunResult {
         return TestCaseRunResult(
                 pool, device,
                 testCaseEvent.testCase, ResultStatus.ERROR,
@@ -195,16 +654,22 @@ class DeviceTestRunner(private val pool: Pool,
 
     private fun TestCaseRunResult.fixRunResult(
         testCaseEvent: TestCaseEvent,
+        pool: Pool,
         startTimestampUtc: Instant
     ): TestCaseRunResult = copy(
-        pool = this@DeviceTestRunner.pool,
+        pool = pool,
         device = this@DeviceTestRunner.device,
         testCase = testCaseEvent.testCase,
         startTimestampUtc = startTimestampUtc,
         baseTotalFailureCount = baseTotalFailureCount.coerceAtLeast(testCaseEvent.totalFailureCount)
     )
 
-    private fun runUntilResult(context: TestCaseRunRuleContext): TestCaseRunResult {
+    private fun runUntilResult(
+            context: TestCaseRunRuleContext,
+            postProcessing: PostProcessing = PostProcessing.INLINE,
+            cancellationSignal: CancellationSignal = CancellationSignal()
+    ): TestCaseRunResult {
+        val startNanos = System.nanoTime()
         return try {
             context.testCaseEvent.runnersFor(context.device)
                     .asReversed()
@@ -212,18 +677,30 @@ class DeviceTestRunner(private val pool: Pool,
                         val result = it.run(TestCaseRunnerArguments(
                                 context.fileManager,
                                 context.testCaseEvent,
-                                context.startTimestampUtc
+                                context.startTimestampUtc,
+                                postProcessing,
+                                cancellationSignal
                         ))
                         when (result) {
                             is Delegate -> { /* continue */
                             }
-                            is TestCaseRunResult -> return result
+                            is TestCaseRunResult -> {
+                                // Cancelled attempts say nothing about health of the device
+                                if (!cancellationSignal.isCancelled) {
+                                    deviceHealth.recordResult(device, Utils.millisSinceNanoTime(startNanos),
+                                            ResultStatus.isFailure(result.status))
+                                }
+                                return result
+                            }
                             else -> throw IllegalArgumentException("Unexpected test run result: $result")
                         }
                     }
             throw IllegalStateException("All runners delegated running the test case (no runner to actually execute it")
         } catch (e: Exception) {
-            fatalErrorResult(context.testCaseEvent, e, context.startTimestampUtc)
+            if (!cancellationSignal.isCancelled) {
+                deviceHealth.recordInfrastructureError(device, e)
+            }
+            fatalErrorResult(context.testCaseEvent, context.pool, e, context.startTimestampUtc)
         }
     }
 
@@ -231,16 +708,35 @@ class DeviceTestRunner(private val pool: Pool,
         rules.forEach { it.before() }
     }
 
-    private fun runAfterRules() {
+    fun runAfterRules() {
         // TODO: execute only successful rules
         rules
                 .asReversed()
                 .forEach { it.after() }
     }
 
+    private class PreparedEvent(
+            val testCaseEvent: TestCaseEvent,
+            val pool: Pool,
+            val startTimestampUtc: Instant,
+            val afterRules: List<TestCaseRunRule>,
+            val executeContext: TestCaseRunRuleContext?,
+            val failure: Throwable?
+    )
+
     companion object {
+        private const val IN_RULE_TEXT = "while executing a test case run rule"
+
         private val logger = LoggerFactory.getLogger(DeviceTestRunner::class.java)
 
+        private val postProcessingExecutor = Utils.namedCachedExecutor("PostProcessing-%d", true)
+
+        /**
+         * Property of results of test cases that were executed speculatively, true when the result is
+         * from the speculative attempt
+         */
+        const val SPECULATIVE_PROPERTY = "speculative"
+
         private fun combineProperties(
                 testCaseEvent: TestCaseEvent,
                 additionalProperties: Map<String, String>
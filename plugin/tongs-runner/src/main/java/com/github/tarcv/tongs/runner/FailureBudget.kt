@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.result.StackTrace
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Number of failed test case attempts (including ones that are retried afterwards) allowed in each pool.
+ * Once that many attempts of a pool failed, the budget is considered exceeded, the remaining test cases
+ * of the pool are not executed and failed test cases of the pool are not retried anymore.
+ *
+ * @param maxFailedTests absolute limit, 0 means no limit
+ * @param maxFailedTestsPercent limit as a percentage of all test cases in a pool, 0 means no limit
+ */
+class FailureBudget(private val maxFailedTests: Int, private val maxFailedTestsPercent: Int) {
+    private val failedTests = ConcurrentHashMap<Pool, AtomicInteger>()
+    private val exceededPools = ConcurrentHashMap.newKeySet<Pool>()
+
+    val isEnabled: Boolean
+        get() = maxFailedTests > 0 || maxFailedTestsPercent > 0
+
+    /**
+     * Records a failed attempt of a test case of [pool], whether it is going to be retried or not
+     *
+     * @return true when this failure exhausted the budget of the pool
+     */
+    fun recordFailedTestCase(pool: Pool, totalTests: Int): Boolean {
+        if (!isEnabled) {
+            return false
+        }
+        val failed = failedTests.computeIfAbsent(pool) { AtomicInteger() }.incrementAndGet()
+        val exceeded = (maxFailedTests > 0 && failed >= maxFailedTests)
+                || (maxFailedTestsPercent > 0 && failed * 100L >= maxFailedTestsPercent.toLong() * totalTests)
+        return exceeded && exceededPools.add(pool)
+    }
+
+    fun isExceeded(pool: Pool): Boolean = pool in exceededPools
+
+    companion object {
+        /**
+         * Trace of results of test cases that were not run (or were cancelled) as the budget of [pool] was exceeded
+         */
+        @JvmStatic
+        fun notRunTrace(pool: Pool): StackTrace {
+            val message = "Not run as the failure budget of pool ${pool.name} was exceeded"
+            return StackTrace("NotRun", message, message)
+        }
+    }
+}
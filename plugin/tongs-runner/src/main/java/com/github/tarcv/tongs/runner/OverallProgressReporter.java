@@ -27,10 +27,12 @@ import static java.lang.System.nanoTime;
  * Reports for stats on all the pools.
  */
 public class OverallProgressReporter implements ProgressReporter {
+    private static final Logger logger = LoggerFactory.getLogger(OverallProgressReporter.class);
 
     private final Map<Pool, PoolProgressTracker> poolProgressTrackers;
     private final RetryWatchdog retryWatchdog;
     private final PoolTestCaseAccumulator failedTestCasesAccumulator;
+    private final FailureBudget failureBudget;
     private long startOfTests;
     private long endOfTests;
 
@@ -38,9 +40,19 @@ public class OverallProgressReporter implements ProgressReporter {
                                    int retryPerTestCaseQuota,
                                    PoolProgressTrackers poolProgressTrackers,
                                    PoolTestCaseAccumulator failedTestCasesAccumulator) {
+        this(totalAllowedRetryQuota, retryPerTestCaseQuota, poolProgressTrackers, failedTestCasesAccumulator,
+                new FailureBudget(0, 0));
+    }
+
+    public OverallProgressReporter(int totalAllowedRetryQuota,
+                                   int retryPerTestCaseQuota,
+                                   PoolProgressTrackers poolProgressTrackers,
+                                   PoolTestCaseAccumulator failedTestCasesAccumulator,
+                                   FailureBudget failureBudget) {
         this.retryWatchdog = new RetryWatchdog(totalAllowedRetryQuota, retryPerTestCaseQuota);
         this.poolProgressTrackers = poolProgressTrackers.getTrackers();
         this.failedTestCasesAccumulator = failedTestCasesAccumulator;
+        this.failureBudget = failureBudget;
     }
 
     @Override
@@ -94,13 +106,27 @@ public class OverallProgressReporter implements ProgressReporter {
 
     @Override
     public boolean requestRetry(Pool pool, TestCaseEvent testCase) {
-        boolean result = retryWatchdog.requestRetry(failedTestCasesAccumulator.getCount(testCase));
+        // Every failed attempt counts, so a broken build exhausts the budget before it exhausts retry quotas
+        if (failureBudget.isEnabled() && poolProgressTrackers.containsKey(pool)) {
+            int totalTests = poolProgressTrackers.get(pool).getNumberOfTests();
+            if (failureBudget.recordFailedTestCase(pool, totalTests)) {
+                logger.warn("Failure budget of pool {} is exceeded, its remaining tests will not be run",
+                        pool.getName());
+            }
+        }
+        boolean result = !failureBudget.isExceeded(pool)
+                && retryWatchdog.requestRetry(failedTestCasesAccumulator.getCount(testCase));
         if (result && poolProgressTrackers.containsKey(pool)) {
             poolProgressTrackers.get(pool).trackTestEnqueuedAgain();
         }
         return result;
     }
 
+    @Override
+    public boolean isFailureBudgetExceeded(Pool pool) {
+        return failureBudget.isExceeded(pool);
+    }
+
     @Override
     public void recordFailedTestCase(Pool pool, TestCaseEvent testCase) {
         failedTestCasesAccumulator.record(pool, testCase);
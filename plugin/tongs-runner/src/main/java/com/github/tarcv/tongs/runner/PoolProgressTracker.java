@@ -21,4 +21,6 @@ public interface PoolProgressTracker {
     float getProgress();
 
     int getNumberOfFailedTests();
+
+    int getNumberOfTests();
 }
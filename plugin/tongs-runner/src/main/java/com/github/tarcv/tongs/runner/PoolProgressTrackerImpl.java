@@ -46,4 +46,9 @@ public class PoolProgressTrackerImpl implements PoolProgressTracker {
     public int getNumberOfFailedTests() {
         return failedTests;
     }
+
+    @Override
+    public int getNumberOfTests() {
+        return totalTests;
+    }
 }
@@ -14,43 +14,57 @@
 package com.github.tarcv.tongs.runner
 
 import com.github.tarcv.tongs.TongsRunner
-import com.github.tarcv.tongs.Utils
 import com.github.tarcv.tongs.api.run.PoolRunRuleContext
 import com.github.tarcv.tongs.api.run.PoolRunRuleFactory
 import com.github.tarcv.tongs.injector.RuleManagerFactory
 import com.github.tarcv.tongs.injector.withRules
 import com.github.tarcv.tongs.model.TestCaseEventQueue
+import com.github.tarcv.tongs.model.WorkStealingQueues
 import org.slf4j.LoggerFactory
-import java.util.concurrent.CountDownLatch
 import java.util.concurrent.ExecutorService
 
 class PoolTestRunner(
         private val deviceTestRunnerFactory: DeviceTestRunnerFactory,
         private val poolTask: TongsRunner.PoolTask,
         private val testCases: TestCaseEventQueue,
-        private val poolCountDownLatch: CountDownLatch,
+        private val executor: ExecutorService,
         private val progressReporter: ProgressReporter,
-        private val ruleManagerFactory: RuleManagerFactory
+        private val ruleManagerFactory: RuleManagerFactory,
+        private val workStealingQueues: WorkStealingQueues
 ) : Runnable {
+    private val scopeLock = Any()
+
+    /**
+     * Scope of device runners while the pool is running, null before and after that
+     */
+    private var deviceScope: TaskScope? = null
+
+    /**
+     * Devices that joined the pool before it started running (e.g. provisioned as soon as demand was reported)
+     */
+    private val pendingDeviceRunners = ArrayList<DeviceTestRunner>()
+    private var isFinished = false
+
+    val queue: TestCaseEventQueue
+        get() = testCases
+
     override fun run() {
         val poolName = poolTask.pool.name
-        val devicesInPool = poolTask.pool.size()
-        val concurrentDeviceExecutor: ExecutorService = Utils.namedExecutor(devicesInPool, "DeviceExecutor-%d")
         try {
             logger.info("Pool {} started", poolName)
-            runTestsAndRules(devicesInPool, concurrentDeviceExecutor)
+            runTestsAndRules()
         } catch (e: InterruptedException) {
             logger.warn("Pool {} was interrupted while running", poolName)
         } finally {
-            concurrentDeviceExecutor.shutdown()
+            synchronized(scopeLock) {
+                isFinished = true
+                pendingDeviceRunners.clear()
+            }
             logger.info("Pool {} finished", poolName)
-            poolCountDownLatch.countDown()
-            logger.info("Pools remaining: {}", poolCountDownLatch.count)
         }
     }
 
-    private fun runTestsAndRules(devicesInPool: Int, concurrentDeviceExecutor: ExecutorService) {
-        val deviceCountDownLatch = CountDownLatch(devicesInPool)
+    private fun runTestsAndRules() {
         val rules = ruleManagerFactory.create(PoolRunRuleFactory::class.java,
                 emptyList(),
                 { factory, context: PoolRunRuleContext -> factory.poolRules(context) })
@@ -66,12 +80,48 @@ class PoolTestRunner(
                     ret
                 }
         ) {
-            for (deviceRunner in poolTask.deviceRunners) {
-                concurrentDeviceExecutor.execute {
-                    deviceRunner.second.run(testCases, deviceCountDownLatch, progressReporter)
+            TaskScope(executor).use { deviceScope ->
+                synchronized(scopeLock) {
+                    this.deviceScope = deviceScope
+                    val deviceRunners = poolTask.deviceRunners.map { it.second } + pendingDeviceRunners
+                    pendingDeviceRunners.clear()
+                    for (deviceRunner in deviceRunners) {
+                        deviceScope.launch {
+                            deviceRunner.run(testCases, progressReporter, workStealingQueues)
+                        }
+                    }
+                }
+                deviceScope.join()
+                synchronized(scopeLock) {
+                    this.deviceScope = null
+                    isFinished = true
                 }
+                // A device might have been added right before the pool stopped accepting devices
+                deviceScope.join()
+            }
+        }
+    }
+
+    /**
+     * Starts executing test cases of the pool on a device connected during the run. A device connected before
+     * the pool started running starts together with devices of the pool.
+     *
+     * @return false when the pool is already finished
+     */
+    fun addDevice(deviceRunner: DeviceTestRunner): Boolean {
+        synchronized(scopeLock) {
+            if (isFinished || testCases.isDrained) {
+                return false
+            }
+            val scope = deviceScope
+            if (scope == null) {
+                pendingDeviceRunners += deviceRunner
+                return true
+            }
+            scope.launch {
+                deviceRunner.run(testCases, progressReporter, workStealingQueues)
             }
-            deviceCountDownLatch.await()
+            return true
         }
     }
 
@@ -15,33 +15,48 @@ import com.github.tarcv.tongs.TongsRunner;
 import com.github.tarcv.tongs.api.result.TestCaseRunResult;
 import com.github.tarcv.tongs.injector.RuleManagerFactory;
 import com.github.tarcv.tongs.model.TestCaseEventQueue;
+import com.github.tarcv.tongs.model.WorkStealingQueues;
 
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 
 public class PoolTestRunnerFactory {
     private final DeviceTestRunnerFactory deviceTestRunnerFactory;
     private final RuleManagerFactory ruleManagerFactory;
+    private final WorkStealingQueues workStealingQueues;
+    private final boolean classAffinity;
 
+    /**
+     * @param classAffinity whether devices should get remaining test cases of their current class first
+     *                      (see {@link TestCaseEventQueue})
+     */
     public PoolTestRunnerFactory(DeviceTestRunnerFactory deviceTestRunnerFactory,
-                                 RuleManagerFactory ruleManagerFactory) {
+                                 RuleManagerFactory ruleManagerFactory,
+                                 WorkStealingQueues workStealingQueues,
+                                 boolean classAffinity) {
         this.deviceTestRunnerFactory = deviceTestRunnerFactory;
         this.ruleManagerFactory = ruleManagerFactory;
+        this.workStealingQueues = workStealingQueues;
+        this.classAffinity = classAffinity;
     }
 
-    public Runnable createPoolTestRunner(TongsRunner.PoolTask poolTask,
-                                         List<TestCaseRunResult> testCaseResults, CountDownLatch poolCountDownLatch,
+    public PoolTestRunner createPoolTestRunner(TongsRunner.PoolTask poolTask,
+                                         List<TestCaseRunResult> testCaseResults, ExecutorService executor,
                                          ProgressReporter progressReporter) {
 
         int totalTests = poolTask.getTestCases().size();
         progressReporter.addPoolProgress(poolTask.getPool(), new PoolProgressTrackerImpl(totalTests));
 
+        TestCaseEventQueue queue = new TestCaseEventQueue(poolTask.getTestCases(), testCaseResults, classAffinity);
+        workStealingQueues.register(poolTask.getPool(), queue);
+
         return new PoolTestRunner(
                 deviceTestRunnerFactory,
                 poolTask,
-                new TestCaseEventQueue(poolTask.getTestCases(), testCaseResults),
-                poolCountDownLatch,
+                queue,
+                executor,
                 progressReporter,
-                ruleManagerFactory);
+                ruleManagerFactory,
+                workStealingQueues);
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+/**
+ * Lets a device execute the next test case while the previous one is still post-processed.
+ *
+ * At most one test case of a device is post-processed at a time, so post-processing can't fall behind too much.
+ * Only accessed from the device thread.
+ */
+class PostProcessingPipeline {
+    private var pending: CompletableFuture<*> = CompletableFuture.completedFuture(Unit)
+
+    /**
+     * Executes a test case with [block] on the calling thread. [block] gets post-processing of the previous test case,
+     * it must not deliver the result of its own test case until that is finished, and it returns a future that is
+     * completed once its own post-processing is finished.
+     *
+     * Returns only after post-processing of the previous test case is finished.
+     */
+    @Throws(InterruptedException::class)
+    fun execute(block: (previousPostProcessing: CompletableFuture<*>) -> CompletableFuture<*>) {
+        val previous = pending
+        pending = block(previous)
+        await(previous)
+    }
+
+    /**
+     * Waits until post-processing of the last test case is finished. Unlike [CompletableFuture.join], this wait is
+     * interrupted when the device thread is interrupted (e.g. when the run is cancelled). The post-processing itself
+     * is not cancelled then, as only it can finish its test case in the queue.
+     */
+    @Throws(InterruptedException::class)
+    fun await() {
+        await(pending)
+    }
+
+    private fun await(future: CompletableFuture<*>) {
+        try {
+            future.get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+}
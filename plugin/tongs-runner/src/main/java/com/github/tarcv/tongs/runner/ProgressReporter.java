@@ -35,8 +35,14 @@ public interface ProgressReporter {
 
     float getProgress();
 
+    /**
+     * Decides whether a failed test case should be retried. Test cases that are not allowed to be retried
+     * are counted against the failure budget of the pool.
+     */
     boolean requestRetry(Pool pool, TestCaseEvent testCaseEvent);
 
+    boolean isFailureBudgetExceeded(Pool pool);
+
     void recordFailedTestCase(Pool pool, TestCaseEvent testCase);
 
     int getTestFailuresCount(Pool pool, TestCaseEvent testCase);
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Group of tasks that are started together and always finish before the scope is left.
+ *
+ * When the thread waiting in [join] is interrupted all tasks of the scope are interrupted too,
+ * so cancelling a run cancels work on all devices. Scopes can be nested, a task can open its own scope
+ * on the same executor.
+ */
+class TaskScope @JvmOverloads constructor(
+        private val executor: ExecutorService,
+        private val cancellationGraceMillis: Long = DEFAULT_CANCELLATION_GRACE_MILLIS
+) : AutoCloseable {
+    private val tasks = ArrayList<LaunchedTask>()
+
+    fun launch(task: () -> Unit) {
+        val started = AtomicBoolean(false)
+        val finished = CompletableFuture<Unit>()
+        synchronized(tasks) {
+            val future = executor.submit {
+                started.set(true)
+                try {
+                    task()
+                } finally {
+                    finished.complete(Unit)
+                }
+            }
+            tasks += LaunchedTask(future, started, finished)
+        }
+    }
+
+    /**
+     * Waits for all launched tasks, including tasks launched while waiting.
+     * Exceptions thrown by tasks are not rethrown, tasks should handle them themselves.
+     *
+     * @throws InterruptedException when the waiting thread is interrupted. All tasks are cancelled in this case,
+     * and they are given some time to finish before the exception is thrown.
+     */
+    @Throws(InterruptedException::class)
+    fun join() {
+        try {
+            var awaitedCount = 0
+            while (true) {
+                val launchedTasks = synchronized(tasks) { tasks.drop(awaitedCount) }
+                if (launchedTasks.isEmpty()) {
+                    break
+                }
+                launchedTasks.forEach {
+                    try {
+                        it.future.get()
+                    } catch (e: ExecutionException) {
+                        // already handled by the task
+                    } catch (e: CancellationException) {
+                        // nothing to wait for
+                    }
+                }
+                awaitedCount += launchedTasks.size
+            }
+        } catch (e: InterruptedException) {
+            cancel()
+            awaitCancelledTasks()
+            throw e
+        }
+    }
+
+    /**
+     * Interrupts all unfinished tasks
+     */
+    fun cancel() {
+        synchronized(tasks) {
+            tasks.forEach {
+                it.future.cancel(true)
+                if (!it.started.get()) {
+                    // Cancelled before being started, so it will never run
+                    it.finished.complete(Unit)
+                }
+            }
+        }
+    }
+
+    override fun close() {
+        cancel()
+    }
+
+    private fun awaitCancelledTasks() {
+        val signals = synchronized(tasks) { tasks.map { it.finished }.toTypedArray() }
+        try {
+            CompletableFuture.allOf(*signals).get(cancellationGraceMillis, TimeUnit.MILLISECONDS)
+        } catch (e: TimeoutException) {
+            logger.warn("Some tasks didn't finish in {} ms after being cancelled", cancellationGraceMillis)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    private class LaunchedTask(
+            val future: Future<*>,
+            val started: AtomicBoolean,
+            val finished: CompletableFuture<Unit>
+    )
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(TaskScope::class.java)
+
+        val DEFAULT_CANCELLATION_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(30)
+    }
+}
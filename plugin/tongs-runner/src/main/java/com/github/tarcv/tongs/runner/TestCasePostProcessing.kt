@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.api.run.PostProcessing
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+
+/**
+ * Post-processing work of one test case
+ */
+class TestCasePostProcessing(private val executor: Executor) : PostProcessing {
+    private val tasks = ArrayList<CompletableFuture<Void>>()
+
+    override fun submit(task: Runnable) {
+        val future = CompletableFuture.runAsync(Runnable {
+            try {
+                task.run()
+            } catch (e: Exception) {
+                logger.error("Exception while post-processing a test case", e)
+            }
+        }, executor)
+        synchronized(tasks) {
+            tasks += future
+        }
+    }
+
+    /**
+     * @return future that is completed when all work submitted so far is finished
+     */
+    fun whenFinished(): CompletableFuture<Void> {
+        val submittedTasks = synchronized(tasks) { tasks.toTypedArray() }
+        return CompletableFuture.allOf(*submittedTasks)
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(TestCasePostProcessing::class.java)
+    }
+}
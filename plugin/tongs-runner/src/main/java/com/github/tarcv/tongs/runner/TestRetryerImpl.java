@@ -33,6 +33,9 @@ public class TestRetryerImpl implements TestRetryer {
             queueOfTestsInPool.offer(testCaseEvent);
             return true;
         }
+        if (progressReporter.isFailureBudgetExceeded(pool)) {
+            queueOfTestsInPool.abort();
+        }
         return false;
     }
 }
@@ -34,7 +34,8 @@ class HtmlConverters {
 				summary.getFlakyTests(),
 				summary.getFailedTests(),
         		summary.getFatalCrashedTests(),
-        		summary.getFatalErrors() // TODO: Add to template
+        		summary.getFatalErrors(), // TODO: Add to template
+        		summary.getDeviceEvents()
 		);
 	}
 
@@ -27,5 +27,6 @@ class HtmlSummary(
         val flakyTests: List<TestCaseRunResult>,
         val failedTests: List<TestCaseRunResult>,
         val fatalCrashedTests: List<TestCaseRunResult>,
-        val fatalErrors: List<String>
+        val fatalErrors: List<String>,
+        val deviceEvents: List<String>
 )
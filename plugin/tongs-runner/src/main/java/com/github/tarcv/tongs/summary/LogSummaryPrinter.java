@@ -47,6 +47,13 @@ public class LogSummaryPrinter implements SummaryPrinter {
         }
 
         printSuppressedTestsList(summary);
+        printDeviceEvents(summary);
+    }
+
+    private static void printDeviceEvents(Summary summary) {
+        for (String deviceEvent : summary.getDeviceEvents()) {
+            logger.info(deviceEvent);
+        }
     }
 
     private static void printSuppressedTestsList(Summary summary) {
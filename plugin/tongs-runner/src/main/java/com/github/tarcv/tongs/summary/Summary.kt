@@ -33,6 +33,8 @@ class Summary private constructor(builder: Builder) {
         get() = unmodifiableList(field)
     val fatalErrors: List<String>
         get() = unmodifiableList(field)
+    val deviceEvents: List<String>
+        get() = unmodifiableList(field)
     val allTests: List<TestCaseRunResult>
         get() = unmodifiableList(field)
 
@@ -45,6 +47,7 @@ class Summary private constructor(builder: Builder) {
         failedTests = builder.failedTests
         fatalCrashedTests = builder.fatalCrashedTests
         fatalErrors = builder.fatalErrors
+        deviceEvents = builder.deviceEvents
         allTests = builder.allTests
     }
 
@@ -57,6 +60,7 @@ class Summary private constructor(builder: Builder) {
         internal val failedTests = ArrayList<TestCaseRunResult>()
         internal val fatalCrashedTests = ArrayList<TestCaseRunResult>()
         internal val fatalErrors = ArrayList<String>()
+        internal val deviceEvents = ArrayList<String>()
         internal val allTests = ArrayList<TestCaseRunResult>()
 
         fun addPoolSummary(poolSummary: PoolSummary): Builder {
@@ -113,6 +117,11 @@ class Summary private constructor(builder: Builder) {
             return this
         }
 
+        fun addDeviceEvent(message: String): Builder {
+            deviceEvents.add(message)
+            return this
+        }
+
         fun addFlakyTest(result: TestCaseRunResult): Builder {
             flakyTests.add(result)
             return this
@@ -25,10 +25,16 @@ import com.github.tarcv.tongs.api.run.ResultStatus.Companion.isFailure
 import com.github.tarcv.tongs.api.run.ResultStatus.Companion.isIgnored
 import com.github.tarcv.tongs.api.run.TestCaseEvent
 import com.github.tarcv.tongs.api.testcases.TestCase
+import com.github.tarcv.tongs.runner.DeviceHealthTracker
+import com.github.tarcv.tongs.runner.FailureBudget
 import com.github.tarcv.tongs.summary.Summary.Builder.Companion.aSummary
 import java.time.Instant
 
-class SummaryCompiler(private val configuration: TongsConfiguration) {
+class SummaryCompiler @JvmOverloads constructor(
+        private val configuration: TongsConfiguration,
+        private val failureBudget: FailureBudget = FailureBudget(0, 0),
+        private val deviceHealthTracker: DeviceHealthTracker = DeviceHealthTracker(false)
+) {
     fun compileSummary(pools: Collection<Pool>, testCasesPerPool: Map<Pool, Collection<TestCaseEvent>>, results: List<TestCaseRunResult>): Summary {
         val summaryBuilder = aSummary()
         summaryBuilder.addResults(results)
@@ -42,18 +48,27 @@ class SummaryCompiler(private val configuration: TongsConfiguration) {
                             .distinctBy { it.testCase }
                             .reversed()
 
+                    val testCasesForPool = testCasesPerPool.getValue(pool)
+                    val notRunResults = if (failureBudget.isExceeded(pool)) {
+                        summaryBuilder.addFatalError("Pool ${pool.name} was stopped as its failure budget was exceeded")
+                        notRunResults(pool, testCasesForPool, finalResults)
+                                .also { summaryBuilder.addResults(it) }
+                    } else {
+                        emptyList()
+                    }
+
                     val poolSummary = PoolSummary.Builder.aPoolSummary()
                             .withPoolName(pool.name)
-                            .addTestResults(finalResults)
+                            .addTestResults(finalResults + notRunResults)
                             .build()
                     summaryBuilder.addPoolSummary(poolSummary)
 
-                    val testCasesForPool = testCasesPerPool.getValue(pool)
-                    addFatalCrashedTests(pool, testCasesForPool, finalResults, summaryBuilder)
+                    addFatalCrashedTests(pool, testCasesForPool, finalResults + notRunResults, summaryBuilder)
                     addFailedOrCrashedTests(finalResults, summaryBuilder)
-                    addIgnoredTests(finalResults, summaryBuilder)
+                    addIgnoredTests(finalResults + notRunResults, summaryBuilder)
                 }
         addFatalCrashedPools(pools, testCasesPerPool, summaryBuilder)
+        deviceHealthTracker.getEvents().forEach { summaryBuilder.addDeviceEvent(it.toString()) }
 
         summaryBuilder.withTitle(configuration.title)
         summaryBuilder.withSubtitle(configuration.subtitle)
@@ -100,6 +115,25 @@ class SummaryCompiler(private val configuration: TongsConfiguration) {
                     .let { summaryBuilder.addFatalCrashedTests(it) }
         }
 
+        /**
+         * Results for test cases that were not executed as the pool was stopped after exceeding its failure budget
+         */
+        private fun notRunResults(pool: Pool, testCasesForPool: Collection<TestCaseEvent>, testResultsForPool: Collection<TestCaseRunResult>): List<TestCaseRunResult> {
+            val processedTests = testResultsForPool
+                    .map(TestCaseRunResult::testCase)
+                    .toSet()
+            return testCasesForPool
+                    .map(TestCaseEvent::testCase)
+                    .distinct()
+                    .filter { it !in processedTests }
+                    .map { testCase ->
+                        TestCaseRunResult(pool, NO_DEVICE,
+                                testCase, ResultStatus.IGNORED, listOf(FailureBudget.notRunTrace(pool)),
+                                Instant.now(), Instant.EPOCH, Instant.now(), Instant.EPOCH,
+                                0, emptyMap(), null, emptyList())
+                    }
+        }
+
         private fun addIgnoredTests(ignoredTestResults: Collection<TestCaseRunResult>, summaryBuilder: Summary.Builder) {
             ignoredTestResults
                     .filter { (_, _, _, status) ->
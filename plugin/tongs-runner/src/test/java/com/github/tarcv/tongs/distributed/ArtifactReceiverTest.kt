@@ -0,0 +1,102 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.result.FileType
+import com.github.tarcv.tongs.api.result.TestCaseFileManager
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.Base64
+
+class ArtifactReceiverTest {
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private val fileManager by lazy {
+        FolderFileManager(temporaryFolder.newFolder("output"))
+    }
+
+    @Test
+    fun testChunksAreJoined() {
+        val receiver = ArtifactReceiver(fileManager)
+
+        receiver.receive(chunk("screenrecord/pool/serial/test.mp4", "Hello, "))
+        receiver.receive(chunk("screenrecord/pool/serial/test.mp4", "world"))
+
+        val file = receiver.fileFor("screenrecord/pool/serial/test.mp4")
+        Assert.assertEquals("screenrecord/file.mp4", file.relativePath)
+        Assert.assertEquals("Hello, world", file.toFile().readText())
+    }
+
+    @Test
+    fun testFilesOfSameTypeGetDifferentNames() {
+        val receiver = ArtifactReceiver(fileManager)
+
+        val first = receiver.fileFor("logcat/pool/serial/test1.log")
+        val second = receiver.fileFor("logcat/pool/serial/test2.log")
+
+        Assert.assertEquals("logcat/file.log", first.relativePath)
+        Assert.assertEquals("logcat/file1.log", second.relativePath)
+    }
+
+    @Test
+    fun testUnsafePathsAreRejected() {
+        val receiver = ArtifactReceiver(fileManager)
+
+        listOf(
+                "../outside/file.txt",
+                "logcat/../../outside/file.txt",
+                "/etc/passwd",
+                "..\\outside\\file.txt",
+                "logcat/pool/serial/file.t x"
+        ).forEach { path ->
+            try {
+                receiver.receive(chunk(path, "data"))
+                Assert.fail("Path '$path' should be rejected")
+            } catch (e: IllegalArgumentException) {
+                // expected
+            }
+        }
+        Assert.assertFalse(File(temporaryFolder.root, "outside").exists())
+    }
+
+    private fun chunk(path: String, text: String): ArtifactChunk {
+        return ArtifactChunk(path, Base64.getEncoder().encodeToString(text.toByteArray()))
+    }
+
+    private class FolderFileManager(private val output: File) : TestCaseFileManager {
+        override fun createFile(fileType: FileType): File = createFile(fileType, "")
+
+        override fun createFile(fileType: FileType, sequenceNumber: Int): File {
+            return createFile(fileType, sequenceNumber.toString())
+        }
+
+        override fun createFile(fileType: FileType, suffix: String): File {
+            return getFile(fileType, suffix).apply {
+                parentFile.mkdirs()
+                createNewFile()
+            }
+        }
+
+        override fun getFile(fileType: FileType, suffix: String): File {
+            return File(output, getRelativeFile(fileType, suffix).path)
+        }
+
+        override fun getRelativeFile(fileType: FileType, suffix: String): File {
+            return File("${fileType.directory}/file$suffix.${fileType.suffix}")
+        }
+    }
+}
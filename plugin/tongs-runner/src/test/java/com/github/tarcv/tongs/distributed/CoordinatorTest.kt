@@ -0,0 +1,281 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.run.CancellationSignal
+import com.google.gson.Gson
+import org.junit.Assert
+import org.junit.Test
+import java.io.IOException
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import kotlin.concurrent.thread
+
+class CoordinatorTest {
+    private val gson = Gson()
+    private val port = ServerSocket(0).use { it.localPort }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testResponsesAreMatchedById() {
+        val coordinator = coordinator()
+        val fakeWorker = thread {
+            withFakeWorker { channel ->
+                val first = channel.receive()!!
+                val second = channel.receive()!!
+
+                // Answer in the reverse order
+                listOf(second, first).forEach { request ->
+                    channel.send(Message(MessageType.COLLECTED, request.id, serials = request.serials))
+                }
+                Assert.assertEquals(MessageType.FINISH, channel.receive()?.type)
+            }
+        }
+
+        val worker = coordinator.awaitWorkers().single()
+        Assert.assertEquals("fake", worker.name)
+        Assert.assertEquals(listOf("serial1"), worker.devices.map { it.serial })
+
+        val responses = ConcurrentHashMap<String, Message>()
+        listOf("a", "b")
+                .map { serial ->
+                    thread {
+                        responses[serial] = worker.request(MessageType.COLLECT) { id ->
+                            Message(MessageType.COLLECT, id, serials = listOf(serial))
+                        }
+                    }
+                }
+                .forEach { it.join() }
+        Assert.assertEquals(listOf("a"), responses["a"]?.serials)
+        Assert.assertEquals(listOf("b"), responses["b"]?.serials)
+
+        coordinator.close()
+        fakeWorker.join()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testFailedResponseIsThrown() {
+        val coordinator = coordinator()
+        val fakeWorker = thread {
+            withFakeWorker { channel ->
+                val request = channel.receive()!!
+                channel.send(Message(MessageType.FAILED, request.id, error = "device is offline"))
+            }
+        }
+
+        val worker = coordinator.awaitWorkers().single()
+        try {
+            worker.request(MessageType.RUN) { id -> Message(MessageType.RUN, id, serials = listOf("serial1")) }
+            Assert.fail("Request should fail")
+        } catch (e: IOException) {
+            Assert.assertTrue(e.message!!.contains("device is offline"))
+        }
+
+        fakeWorker.join()
+        coordinator.close()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testPendingRequestFailsWhenWorkerDisconnects() {
+        val coordinator = coordinator()
+        val fakeWorker = thread {
+            withFakeWorker { channel ->
+                channel.receive()
+                // Disconnect without answering
+            }
+        }
+
+        val worker = coordinator.awaitWorkers().single()
+        try {
+            worker.request(MessageType.RUN) { id -> Message(MessageType.RUN, id, serials = listOf("serial1")) }
+            Assert.fail("Request should fail")
+        } catch (e: IOException) {
+            // expected
+        }
+
+        fakeWorker.join()
+        coordinator.close()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testRegistrationTimesOut() {
+        val coordinator = coordinator(registrationTimeoutMillis = 100)
+        Assert.assertEquals(emptyList<WorkerConnection>(), coordinator.awaitWorkers())
+        coordinator.close()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testWorkerWithWrongTokenIsRejected() {
+        val coordinator = coordinator(registrationTimeoutMillis = 1000)
+        val fakeWorker = thread {
+            withFakeWorker(token = "wrong") { channel ->
+                Assert.assertNull(channel.receive())
+            }
+        }
+
+        Assert.assertEquals(emptyList<WorkerConnection>(), coordinator.awaitWorkers())
+
+        fakeWorker.join()
+        coordinator.close()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testSilentClientDoesntBlockRegistration() {
+        val coordinator = coordinator(registrationTimeoutMillis = 5000, handshakeTimeoutMillis = 200)
+        val silentClientConnected = CountDownLatch(1)
+        val silentClient = thread {
+            connectWithRetries().use {
+                silentClientConnected.countDown()
+                // Connect and send nothing until the worker is registered
+                it.getInputStream().read()
+            }
+        }
+        val fakeWorker = thread {
+            silentClientConnected.await()
+            withFakeWorker { channel ->
+                Assert.assertEquals(MessageType.FINISH, channel.receive()?.type)
+            }
+        }
+
+        val worker = coordinator.awaitWorkers().single()
+        Assert.assertEquals("fake", worker.name)
+
+        coordinator.close()
+        fakeWorker.join()
+        silentClient.join()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testRequestTimesOut() {
+        val coordinator = coordinator(requestTimeoutMillis = 100)
+        val fakeWorker = thread {
+            withFakeWorker { channel ->
+                channel.receive()
+                // Don't answer until the run is finished
+                Assert.assertEquals(MessageType.FINISH, channel.receive()?.type)
+            }
+        }
+
+        val worker = coordinator.awaitWorkers().single()
+        try {
+            worker.request(MessageType.RUN) { id -> Message(MessageType.RUN, id, serials = listOf("serial1")) }
+            Assert.fail("Request should time out")
+        } catch (e: IOException) {
+            // expected
+        }
+
+        coordinator.close()
+        fakeWorker.join()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testCancelledRequestIsCancelledOnWorker() {
+        val coordinator = coordinator()
+        val requestReceived = CountDownLatch(1)
+        val fakeWorker = thread {
+            withFakeWorker { channel ->
+                val request = channel.receive()!!
+                requestReceived.countDown()
+
+                val cancel = channel.receive()!!
+                Assert.assertEquals(MessageType.CANCEL, cancel.type)
+                Assert.assertEquals(request.id, cancel.id)
+                // The cancelled request is still answered
+                channel.send(Message(MessageType.RESULT, request.id))
+                Assert.assertEquals(MessageType.FINISH, channel.receive()?.type)
+            }
+        }
+
+        val worker = coordinator.awaitWorkers().single()
+        val cancellationSignal = CancellationSignal()
+        thread {
+            requestReceived.await()
+            cancellationSignal.cancel()
+        }
+        val response = worker.request(MessageType.RUN, null, cancellationSignal) { id ->
+            Message(MessageType.RUN, id, serials = listOf("serial1"))
+        }
+        Assert.assertEquals(MessageType.RESULT, response.type)
+
+        coordinator.close()
+        fakeWorker.join()
+    }
+
+    @Test(timeout = TIMEOUT_MILLIS)
+    fun testArtifactChunksAreReceivedBeforeResponse() {
+        val coordinator = coordinator()
+        val fakeWorker = thread {
+            withFakeWorker { channel ->
+                val request = channel.receive()!!
+                listOf("part1", "part2").forEach {
+                    channel.send(Message(MessageType.ARTIFACT_CHUNK, request.id, chunk = ArtifactChunk("a/b.txt", it)))
+                }
+                channel.send(Message(MessageType.RESULT, request.id))
+                Assert.assertEquals(MessageType.FINISH, channel.receive()?.type)
+            }
+        }
+
+        val worker = coordinator.awaitWorkers().single()
+        val chunks = ArrayList<String>()
+        worker.request(MessageType.RUN, { chunks.add(it.data) }) { id ->
+            Message(MessageType.RUN, id, serials = listOf("serial1"))
+        }
+        Assert.assertEquals(listOf("part1", "part2"), chunks)
+
+        coordinator.close()
+        fakeWorker.join()
+    }
+
+    private fun coordinator(
+            requestTimeoutMillis: Long = Coordinator.DEFAULT_REQUEST_TIMEOUT_MILLIS,
+            registrationTimeoutMillis: Long = Coordinator.DEFAULT_REGISTRATION_TIMEOUT_MILLIS,
+            handshakeTimeoutMillis: Long = Coordinator.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS
+    ): Coordinator {
+        return Coordinator("127.0.0.1", port, TOKEN, 1, gson, requestTimeoutMillis, registrationTimeoutMillis,
+                handshakeTimeoutMillis)
+    }
+
+    private fun withFakeWorker(token: String = TOKEN, block: (MessageChannel) -> Unit) {
+        val socket = connectWithRetries()
+        MessageChannel(socket, gson).use { channel ->
+            channel.send(Message(
+                    MessageType.REGISTER,
+                    workerName = "fake",
+                    token = token,
+                    devices = listOf(DeviceInfo("serial1", "Google", "Pixel", 29, "Pixel 29", false, 411))
+            ))
+            block(channel)
+        }
+    }
+
+    private fun connectWithRetries(): Socket {
+        // The coordinator starts listening only when awaitWorkers is called
+        val deadline = System.currentTimeMillis() + TIMEOUT_MILLIS
+        while (true) {
+            try {
+                return Socket("127.0.0.1", port)
+            } catch (e: IOException) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e
+                }
+                Thread.sleep(10)
+            }
+        }
+    }
+
+    companion object {
+        private const val TIMEOUT_MILLIS = 10_000L
+        private const val TOKEN = "secret"
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.distributed
+
+import com.github.tarcv.tongs.api.testcases.aTestCase
+import org.junit.Assert
+import org.junit.Test
+
+class DistributedMessagesTest {
+    @Test
+    fun testKnownTypeTagIsRestored() {
+        val testCase = aTestCase("Class1", "test1")
+
+        val restored = TestCaseInfo.from(testCase).toTestCase(null)
+
+        Assert.assertEquals(testCase.typeTag, restored.typeTag)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testUnknownTypeTagIsRejected() {
+        TestCaseInfo("java.lang.Runtime", "com.example", "com.example.Class1", "test1",
+                emptyList(), emptyMap(), emptyList(), null)
+                .toTestCase(null)
+    }
+}
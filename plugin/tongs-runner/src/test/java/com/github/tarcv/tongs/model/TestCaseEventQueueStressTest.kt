@@ -0,0 +1,143 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.model
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.createStubDevice
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.run.ResultStatus
+import com.github.tarcv.tongs.api.run.TestCaseEvent
+import com.github.tarcv.tongs.api.run.aTestResult
+import com.github.tarcv.tongs.api.testcases.aTestCase
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+class TestCaseEventQueueStressTest {
+    private val devices = (1..numberOfDevices).map { createStubDevice("dev$it") }
+
+    @Test
+    fun eachTestCaseIsExecutedExactlyOnceOnCompatibleDevice() {
+        val events = (0 until numberOfTests).map { createEvent(it) }
+        val expectedExecutions = numberOfTests + events.count { shouldBeRetried(it) }
+        val results = ArrayList<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(events, results)
+
+        val executions = ConcurrentHashMap<String, AtomicInteger>()
+        val executedCount = AtomicInteger()
+        val errors = CopyOnWriteArrayList<Throwable>()
+        val startLatch = CountDownLatch(1)
+
+        val threads = devices.map { device ->
+            thread(start = true, name = "Device-${device.serial}") {
+                try {
+                    startLatch.await()
+                    while (true) {
+                        val task = queue.pollForDevice(device) ?: break
+                        task.doWork { event ->
+                            if (!event.isEnabledOn(device)) {
+                                errors.add(AssertionError("$event was executed on incompatible device $device"))
+                            }
+                            executions
+                                    .computeIfAbsent("$event/${event.totalFailureCount}") { AtomicInteger() }
+                                    .incrementAndGet()
+                            if (event.totalFailureCount == 0 && shouldBeRetried(event)) {
+                                queue.offer(event.withFailureCount(1))
+                            }
+                            executedCount.incrementAndGet()
+                            aTestResult(event.testCase, ResultStatus.PASS, emptyList())
+                        }
+                    }
+                } catch (t: Throwable) {
+                    errors.add(t)
+                }
+            }
+        }
+        startLatch.countDown()
+        threads.forEach { it.join(TimeUnit.SECONDS.toMillis(60)) }
+
+        errors.firstOrNull()?.let { throw it }
+        assertTrue("All device threads should finish", threads.none { it.isAlive })
+        assertEquals(expectedExecutions, executedCount.get())
+        assertEquals(expectedExecutions, executions.size)
+        assertTrue("Each attempt should be executed only once", executions.values.all { it.get() == 1 })
+        assertEquals(expectedExecutions, results.size)
+        assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun retriesOfferedDuringAbortAreDropped() {
+        repeat(numberOfAbortRounds) {
+            val event = createEvent(0)
+            val queue = TestCaseEventQueue(listOf(event), ArrayList())
+            val errors = CopyOnWriteArrayList<Throwable>()
+
+            queue.pollForDevice(devices[0])!!.doWork {
+                val startLatch = CountDownLatch(numberOfDevices)
+                val offeringThreads = (1..numberOfDevices).map {
+                    thread(start = true) {
+                        try {
+                            startLatch.countDown()
+                            var failureCount = 1
+                            while (!queue.isAborted) {
+                                queue.offer(event.withFailureCount(failureCount++))
+                            }
+                            queue.offer(event.withFailureCount(failureCount))
+                        } catch (t: Throwable) {
+                            errors.add(t)
+                        }
+                    }
+                }
+                startLatch.await()
+                queue.abort()
+                offeringThreads.forEach { it.join(TimeUnit.SECONDS.toMillis(60)) }
+
+                assertEquals(emptyList<TestCaseEvent>(), queue.queuedEvents())
+                assertNull(queue.tryPollForDevice(devices[0]))
+                aTestResult(event.testCase, ResultStatus.FAIL, emptyList())
+            }
+
+            errors.firstOrNull()?.let { throw it }
+            assertTrue(queue.isDrained)
+        }
+    }
+
+    private fun createEvent(index: Int): TestCaseEvent {
+        val included: List<Device>? = when (index % 4) {
+            1 -> listOf(devices[index % numberOfDevices])
+            2 -> devices.filterIndexed { deviceIndex, _ -> deviceIndex % 2 == 0 }
+            else -> null
+        }
+        val excluded = if (index % 4 == 3) {
+            listOf(devices[index % numberOfDevices])
+        } else {
+            emptyList()
+        }
+        return TestCaseEvent(aTestCase("Class${index % 17}", "test$index", included), excluded)
+    }
+
+    private fun shouldBeRetried(event: TestCaseEvent): Boolean {
+        return event.testMethod.removePrefix("test").toInt() % 10 == 0
+    }
+
+    companion object {
+        private const val numberOfDevices = 8
+        private const val numberOfTests = 5000
+        private const val numberOfAbortRounds = 20
+    }
+}
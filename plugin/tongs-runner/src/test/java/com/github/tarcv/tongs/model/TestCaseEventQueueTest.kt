@@ -11,15 +11,23 @@ package com.github.tarcv.tongs.model
 
 import com.github.tarcv.tongs.api.devices.Device
 import com.github.tarcv.tongs.api.devices.createStubDevice
+import com.github.tarcv.tongs.api.result.RunTesult
 import com.github.tarcv.tongs.api.result.StackTrace
 import com.github.tarcv.tongs.api.result.TestCaseRunResult
 import com.github.tarcv.tongs.api.run.ResultStatus
 import com.github.tarcv.tongs.api.run.TestCaseEvent
+import com.github.tarcv.tongs.api.run.TestCaseRunner
+import com.github.tarcv.tongs.api.run.TestCaseRunnerArguments
 import com.github.tarcv.tongs.api.run.aTestResult
+import com.github.tarcv.tongs.api.testcases.TestCase
 import com.github.tarcv.tongs.api.testcases.aTestCase
 import org.junit.Assert
 import org.junit.Test
 import java.lang.Thread.sleep
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicReference
 import kotlin.concurrent.thread
 
@@ -100,6 +108,386 @@ class TestCaseEventQueueTest {
             }
         }
     }
+
+    @Test
+    fun testWaitingDeviceGetsRetryOfferedByOtherDevice() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        val retry = createTestCaseEvent("test1", emptyList()).withFailureCount(1)
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), mutableListOf())
+        val device1Polled = CountDownLatch(1)
+        val device2Result = AtomicReference<TestCaseEvent>()
+        val device2Thread = thread(start = true) {
+            device1Polled.await()
+            queue.pollForDevice(device2)?.doWork {
+                device2Result.set(it)
+                TestCaseRunResult.aTestResult(it.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+            }
+        }
+
+        withTimeout {
+            queue.pollForDevice(device1)!!.doWork {
+                device1Polled.countDown()
+                sleep(100)
+                queue.offer(retry)
+
+                TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.FAIL, emptyList<StackTrace>())
+            }
+        }
+        device2Thread.join(500)
+
+        Assert.assertEquals(retry, device2Result.get())
+    }
+
+    @Test
+    fun testWaitingDeviceIsReleasedWhenPoolIsFinished() {
+        val test1 = createTestCaseEvent("test1", listOf(device2))
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), mutableListOf())
+        val device2Finished = CountDownLatch(1)
+        thread(start = true) {
+            Assert.assertNull(queue.pollForDevice(device2))
+            device2Finished.countDown()
+        }
+
+        withTimeout {
+            queue.pollForDevice(device1)!!.doWork {
+                sleep(100)
+                Assert.assertEquals(1, device2Finished.count)
+
+                TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+            }
+        }
+
+        Assert.assertTrue(device2Finished.await(500, TimeUnit.MILLISECONDS))
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testStoppedDeviceStopsWaiting() {
+        val test1 = createTestCaseEvent("test1", listOf(device2))
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), mutableListOf())
+        val stopped = AtomicBoolean(false)
+        val device2Finished = CountDownLatch(1)
+        thread(start = true) {
+            Assert.assertNull(queue.pollForDevice(device2, null) { stopped.get() })
+            device2Finished.countDown()
+        }
+
+        sleep(100)
+        Assert.assertEquals(1, device2Finished.count)
+        stopped.set(true)
+        queue.wakeUpWaitingDevices()
+
+        Assert.assertTrue(device2Finished.await(500, TimeUnit.MILLISECONDS))
+        Assert.assertFalse(queue.isDrained)
+    }
+
+    @Test
+    fun testAdmittedDeviceGetsTestCasesAfterRefresh() {
+        val test1 = TestCaseEvent(aTestCase("TestClass", "test1", listOf(device1)), emptyList())
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), mutableListOf())
+        Assert.assertNull(queue.tryPollForDevice(device2))
+
+        test1.admitDevice(device2)
+        queue.refreshEligibility(device2)
+
+        Assert.assertEquals(test1, queue.tryPollForDevice(device2)?.testCaseEvent)
+    }
+
+    @Test
+    fun testNotExecutedTestsOfBatchAreRequeued() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        val test2 = createTestCaseEvent("test2", emptyList())
+        val test3 = createTestCaseEvent("test3", emptyList())
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(
+                test1,
+                test2,
+                test3
+        ), results)
+        withTimeout {
+            val batch = listOf(
+                    queue.pollForDevice(device1)!!,
+                    queue.tryPollForDevice(device1)!!,
+                    queue.tryPollForDevice(device1)!!
+            )
+            queue.doWork(batch) { testCaseEvents, _ ->
+                Assert.assertEquals(listOf(test1, test2, test3), testCaseEvents)
+                Assert.assertTrue(batch.all { it.isBatchable })
+
+                listOf(
+                        TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>()),
+                        null,
+                        TestCaseRunResult.aTestResult(test3.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+                )
+            }
+            Assert.assertFalse(queue.isDrained)
+
+            val requeuedTask = queue.pollForDevice(device2)!!
+            Assert.assertFalse("Requeued test case should be executed alone", requeuedTask.isBatchable)
+            requeuedTask.doWork {
+                Assert.assertEquals(test2, it)
+
+                TestCaseRunResult.aTestResult(test2.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+            }
+        }
+
+        Assert.assertEquals(listOf("test1", "test3", "test2"), results.map { it.testCase.testMethod })
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testAbortCancelsRunningBatch() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        val test2 = createTestCaseEvent("test2", emptyList())
+        val test3 = createTestCaseEvent("test3", emptyList())
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(
+                test1,
+                test2,
+                test3
+        ), results)
+        withTimeout {
+            val batch = listOf(
+                    queue.pollForDevice(device1)!!,
+                    queue.tryPollForDevice(device1)!!
+            )
+            queue.doWork(batch) { _, cancellationSignal ->
+                Assert.assertEquals(2, queue.runningCount)
+
+                Assert.assertEquals(listOf(test3), queue.abort())
+                Assert.assertTrue(cancellationSignal.isCancelled)
+                listOf(
+                        TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.IGNORED, emptyList<StackTrace>()),
+                        null
+                )
+            }
+            Assert.assertNull(queue.pollForDevice(device1))
+        }
+
+        Assert.assertEquals(listOf("test1"), results.map { it.testCase.testMethod })
+        Assert.assertEquals(0, queue.runningCount)
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testPostProcessedTestIsInWorkUntilItsResultIsReady() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), results)
+        val postProcessedResult = CompletableFuture<TestCaseRunResult?>()
+        withTimeout {
+            val finished = queue.pollForDevice(device1)!!.doWorkAsync {
+                Assert.assertEquals(test1, it)
+                postProcessedResult
+            }
+            Assert.assertFalse(queue.isDrained)
+            Assert.assertFalse(finished.isDone)
+
+            postProcessedResult.complete(TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>()))
+            Assert.assertTrue(finished.isDone)
+        }
+
+        Assert.assertEquals(listOf("test1"), results.map { it.testCase.testMethod })
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testFirstFinishedSpeculativeAttemptWins() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        listOf(device1, device2).forEach { test1.addDeviceRunner(it, StubRunner) }
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), results)
+        val originalResult = CompletableFuture<TestCaseRunResult?>()
+        withTimeout {
+            val originalTask = queue.pollForDevice(device1)!!
+            val originalFinished = originalTask.doWorkAsync { originalResult }
+
+            val speculativeTask = queue.pollForDevice(device2, 0)!!
+            Assert.assertTrue(speculativeTask.isSpeculative)
+            Assert.assertEquals(listOf(device1), speculativeTask.otherAttemptDevices)
+            speculativeTask.doWork {
+                Assert.assertEquals(test1, it)
+                TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+            }
+            Assert.assertTrue(originalTask.cancellationSignal.isCancelled)
+            Assert.assertTrue(queue.isDrained)
+
+            originalResult.complete(TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.ERROR, emptyList<StackTrace>()))
+            Assert.assertTrue(originalFinished.isDone)
+            Assert.assertFalse(originalTask.tryWin())
+        }
+
+        Assert.assertEquals(listOf(ResultStatus.PASS), results.map { it.status })
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testTestCaseIsSpeculatedOnlyOnce() {
+        val device3 = createStubDevice("dev3")
+        val test1 = createTestCaseEvent("test1", emptyList())
+        listOf(device1, device2, device3).forEach { test1.addDeviceRunner(it, StubRunner) }
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), mutableListOf())
+        val device3Result = AtomicReference<TestCaseEventQueue.TestCaseTask>()
+        var device3Thread: Thread? = null
+        withTimeout {
+            queue.pollForDevice(device1)!!.doWork {
+                val speculativeTask = queue.pollForDevice(device2, 0)!!
+                device3Thread = thread(start = true) {
+                    // Device 3 has nothing to do, so it waits until the pool is finished
+                    device3Result.set(queue.pollForDevice(device3, 0))
+                }
+                speculativeTask.doWork {
+                    sleep(100)
+                    TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+                }
+                TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+            }
+        }
+
+        device3Thread!!.join(500)
+        Assert.assertFalse(device3Thread!!.isAlive)
+        Assert.assertNull(device3Result.get())
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testSpeculativeAttemptStartedAfterFinishIsSkipped() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        listOf(device1, device2).forEach { test1.addDeviceRunner(it, StubRunner) }
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), results)
+        withTimeout {
+            val originalTask = queue.pollForDevice(device1)!!
+            val originalResult = CompletableFuture<TestCaseRunResult?>()
+            originalTask.doWorkAsync { originalResult }
+            val speculativeTask = queue.pollForDevice(device2, 0)!!
+            Assert.assertTrue(speculativeTask.isSpeculative)
+
+            originalResult.complete(TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>()))
+            Assert.assertEquals(0, queue.runningCount)
+            Assert.assertTrue(speculativeTask.isObsolete)
+
+            speculativeTask.doWork { throw AssertionError("Obsolete attempt should not be executed") }
+            val skipped = speculativeTask.doWorkAsync { throw AssertionError("Obsolete attempt should not be executed") }
+            Assert.assertTrue(skipped.isDone)
+        }
+
+        Assert.assertEquals(0, queue.runningCount)
+        Assert.assertEquals(listOf(ResultStatus.PASS), results.map { it.status })
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testAbortDropsQueuedTestsAndCancelsRunningOnes() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        val test2 = createTestCaseEvent("test2", emptyList())
+        val test3 = createTestCaseEvent("test3", emptyList())
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(
+                test1,
+                test2,
+                test3
+        ), results)
+        val runningResult = CompletableFuture<TestCaseRunResult?>()
+        withTimeout {
+            val runningTask = queue.pollForDevice(device2)!!
+            val runningFinished = runningTask.doWorkAsync { runningResult }
+
+            queue.pollForDevice(device1)!!.doWork {
+                Assert.assertEquals(listOf(test3), queue.abort())
+                Assert.assertTrue(runningTask.cancellationSignal.isCancelled)
+
+                queue.offer(test1.withFailureCount(1))
+                TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.FAIL, emptyList<StackTrace>())
+            }
+            Assert.assertFalse(queue.isDrained)
+
+            runningResult.complete(TestCaseRunResult.aTestResult(test2.testCase, ResultStatus.ERROR, emptyList<StackTrace>()))
+            Assert.assertTrue(runningFinished.isDone)
+            Assert.assertNull(queue.pollForDevice(device1))
+        }
+
+        Assert.assertEquals(listOf("test1", "test2"), results.map { it.testCase.testMethod })
+        Assert.assertTrue(queue.isAborted)
+        Assert.assertTrue(queue.isDrained)
+    }
+
+    @Test
+    fun testDeviceContinuesItsTestClass() {
+        val testA1 = createTestCaseEvent("ClassA", "test1")
+        val testB1 = createTestCaseEvent("ClassB", "test1")
+        val testA2 = createTestCaseEvent("ClassA", "test2")
+        val testB2 = createTestCaseEvent("ClassB", "test2")
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(testA1, testB1, testA2, testB2), results, classAffinity = true)
+
+        withTimeout {
+            fun pollAndPass(device: Device, expected: TestCaseEvent) {
+                queue.pollForDevice(device)!!.doWork {
+                    Assert.assertEquals(expected, it)
+                    TestCaseRunResult.aTestResult(it.testCase, ResultStatus.PASS, emptyList())
+                }
+            }
+
+            pollAndPass(device1, testA1)
+            pollAndPass(device2, testB1)
+            // Test cases of the current class are taken first, even though testA2 was added earlier
+            pollAndPass(device2, testB2)
+            pollAndPass(device1, testA2)
+            Assert.assertNull(queue.pollForDevice(device1))
+        }
+
+        Assert.assertEquals(4, results.size)
+        Assert.assertTrue(queue.isDrained)
+        Assert.assertEquals(emptyList<TestCaseEvent>(), queue.queuedEvents())
+    }
+
+    @Test
+    fun testTestCaseWithoutResultIsPutBackToQueue() {
+        val test1 = createTestCaseEvent("test1", emptyList())
+        val results = mutableListOf<TestCaseRunResult>()
+        val queue = TestCaseEventQueue(listOf(
+                test1
+        ), results)
+        withTimeout {
+            // E.g. the device was disconnected while executing the test case
+            val notExecuted = queue.pollForDevice(device1)!!.doWorkAsync {
+                CompletableFuture.completedFuture(null)
+            }
+            Assert.assertTrue(notExecuted.isDone)
+            Assert.assertFalse(queue.isDrained)
+
+            queue.pollForDevice(device2)!!.doWork {
+                Assert.assertEquals(test1, it)
+                TestCaseRunResult.aTestResult(test1.testCase, ResultStatus.PASS, emptyList<StackTrace>())
+            }
+        }
+
+        Assert.assertEquals(listOf(ResultStatus.PASS), results.map { it.status })
+        Assert.assertTrue(queue.isDrained)
+    }
+}
+
+private object StubRunner : TestCaseRunner {
+    override fun supports(device: Device, testCase: TestCase): Boolean = true
+
+    override fun run(arguments: TestCaseRunnerArguments): RunTesult = throw UnsupportedOperationException()
 }
 
 private fun withTimeout(block: () -> Unit) {
@@ -123,3 +511,7 @@ private fun createTestCaseEvent(name: String, excludes: List<Device>): TestCaseE
     val test = aTestCase("Class", name, null)
     return TestCaseEvent(test, excludes)
 }
+
+private fun createTestCaseEvent(testClass: String, name: String): TestCaseEvent {
+    return TestCaseEvent(aTestCase(testClass, name, null), emptyList())
+}
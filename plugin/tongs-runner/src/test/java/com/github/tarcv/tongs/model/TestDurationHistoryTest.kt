@@ -0,0 +1,121 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.model
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.run.ResultStatus
+import com.github.tarcv.tongs.api.run.TestCaseEvent
+import com.github.tarcv.tongs.api.run.aTestResult
+import com.github.tarcv.tongs.api.testcases.TestCase
+import com.github.tarcv.tongs.api.testcases.aTestCase
+import com.google.gson.Gson
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class TestDurationHistoryTest {
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private val pool = Pool.Builder.aDevicePool().withName("pool").addDevice(Device.TEST_DEVICE).build()
+    private val otherPool = Pool.Builder.aDevicePool().withName("other").addDevice(Device.TEST_DEVICE).build()
+
+    @Test
+    fun keepsOriginalOrderWhenDisabled() {
+        val history = TestDurationHistory(null, Gson())
+        val events = listOf(event("A", "fast"), event("A", "slow"))
+
+        history.recordResults(listOf(result(pool, "A", "slow", 1000)))
+
+        assertEquals(events, history.orderLongestFirst(pool, events))
+    }
+
+    @Test
+    fun ordersLongestFirstUsingPreviousRun() {
+        val file = File(temporaryFolder.root, "durations.json")
+        TestDurationHistory(file, Gson()).apply {
+            recordResults(listOf(
+                    result(pool, "A", "fast", 100),
+                    result(pool, "A", "slow", 5000),
+                    result(pool, "B", "medium", 1000)
+            ))
+            save()
+        }
+
+        val history = TestDurationHistory(file, Gson())
+        val ordered = history.orderLongestFirst(pool, listOf(
+                event("A", "fast"),
+                event("B", "medium"),
+                event("A", "slow")
+        ))
+
+        assertEquals(listOf("slow", "medium", "fast"), ordered.map { it.testMethod })
+    }
+
+    @Test
+    fun durationsAreKeptPerPool() {
+        val history = TestDurationHistory(File(temporaryFolder.root, "durations.json"), Gson())
+        history.recordResults(listOf(
+                result(pool, "A", "first", 100),
+                result(pool, "A", "second", 5000),
+                result(otherPool, "A", "first", 9000),
+                result(otherPool, "A", "second", 10)
+        ))
+        val events = listOf(event("A", "first"), event("A", "second"))
+
+        assertEquals(listOf("second", "first"), history.orderLongestFirst(pool, events).map { it.testMethod })
+        assertEquals(listOf("first", "second"), history.orderLongestFirst(otherPool, events).map { it.testMethod })
+    }
+
+    @Test
+    fun newTestsAreEstimatedByClassAverage() {
+        val history = TestDurationHistory(File(temporaryFolder.root, "durations.json"), Gson())
+        history.recordResults(listOf(
+                result(pool, "Slow", "known1", 4000),
+                result(pool, "Slow", "known2", 6000),
+                result(pool, "Fast", "known", 100),
+                result(pool, "Medium", "known", 3000)
+        ))
+
+        val ordered = history.orderLongestFirst(pool, listOf(
+                event("Fast", "new"),
+                event("Medium", "known"),
+                event("Slow", "new")
+        ))
+
+        assertEquals(listOf("Slow#new", "Medium#known", "Fast#new"), ordered.map { it.testCase.shortName() })
+    }
+
+    @Test
+    fun corruptedHistoryIsIgnored() {
+        val file = temporaryFolder.newFile("durations.json")
+        file.writeText("{not a json", Charsets.UTF_8)
+        val events = listOf(event("A", "first"), event("A", "second"))
+
+        val history = TestDurationHistory(file, Gson())
+
+        assertEquals(events, history.orderLongestFirst(pool, events))
+    }
+
+    private fun event(testClass: String, testMethod: String): TestCaseEvent {
+        return TestCaseEvent(aTestCase(testClass, testMethod), emptyList())
+    }
+
+    private fun result(pool: Pool, testClass: String, testMethod: String, durationMillis: Long): TestCaseRunResult {
+        val result = aTestResult(aTestCase(testClass, testMethod), ResultStatus.PASS, emptyList(), pool)
+        return result.copy(endTimestampUtc = result.startTimestampUtc.plusMillis(durationMillis))
+    }
+
+    private fun TestCase.shortName() = "${testClass.substringAfterLast('.')}#$testMethod"
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.model
+
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.devices.createStubDevice
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.run.ResultStatus
+import com.github.tarcv.tongs.api.run.TestCaseEvent
+import com.github.tarcv.tongs.api.run.aTestResult
+import com.github.tarcv.tongs.api.testcases.TestCase
+import com.github.tarcv.tongs.api.testcases.TestCaseProvider
+import com.github.tarcv.tongs.api.testcases.aTestCase
+import com.github.tarcv.tongs.tests.JoiningTestProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class WorkStealingQueuesTest {
+    private val fastDevice = createStubDevice("fast")
+    private val slowDevice = createStubDevice("slow")
+    private val otherDevice = createStubDevice("other")
+
+    private val fastPool = pool("fastPool", fastDevice)
+    private val slowPool = pool("slowPool", slowDevice)
+    private val otherPool = pool("otherPool", otherDevice)
+
+    @Test(timeout = 10_000)
+    fun nothingIsBorrowedWithoutPermission() {
+        val queues = WorkStealingQueues()
+        val slowTests = loadTestCases(slowPool, "test1")
+        admitDevice(slowTests, slowPool.devices, fastDevice)
+        queues.register(slowPool, TestCaseEventQueue(slowTests, mutableListOf()))
+
+        assertNull(queues.borrowFor(fastDevice))
+    }
+
+    @Test(timeout = 10_000)
+    fun nothingIsBorrowedWithoutAdmission() {
+        // Test cases are only enabled on devices they were collected from
+        val slowQueue = TestCaseEventQueue(loadTestCases(slowPool, "test1"), mutableListOf())
+
+        assertNull(slowQueue.tryPollForDevice(fastDevice))
+        assertNotNull(slowQueue.tryPollForDevice(slowDevice))
+    }
+
+    @Test(timeout = 10_000)
+    fun deviceBorrowsFromAllowedPoolOnly() {
+        val results = mutableListOf<TestCaseRunResult>()
+        val queues = WorkStealingQueues()
+        val slowTests = loadTestCases(slowPool, "slowTest")
+        val otherTests = loadTestCases(otherPool, "otherTest")
+        listOf(slowTests to slowPool, otherTests to otherPool).forEach { (tests, pool) ->
+            assertEquals(tests, admitDevice(tests, pool.devices, fastDevice))
+        }
+        queues.register(slowPool, TestCaseEventQueue(slowTests, results))
+        queues.register(otherPool, TestCaseEventQueue(otherTests, results))
+        queues.allowBorrowing(fastDevice, slowPool)
+
+        val borrowed = queues.borrowFor(fastDevice)!!
+        borrowed.task.doWork {
+            assertEquals("slowTest", it.testMethod)
+            aTestResult(it.testCase, ResultStatus.PASS, emptyList(), borrowed.pool)
+        }
+
+        assertEquals(slowPool, borrowed.pool)
+        assertEquals(listOf(slowPool), results.map { it.pool })
+        assertNull(queues.borrowFor(fastDevice))
+    }
+
+    @Test(timeout = 10_000)
+    fun onlyCompatibleTestCasesAreBorrowed() {
+        val queues = WorkStealingQueues()
+        val secondSlowDevice = createStubDevice("slow2")
+        val slowTests = loadTestCases(pool("slowPool", slowDevice, secondSlowDevice), "compatibleTest") +
+                // Collected only from one device of the pool, so it is not meant for other devices
+                TestCaseEvent(aTestCase("Class", "limitedTest", listOf(slowDevice)), emptyList()) +
+                TestCaseEvent(aTestCase("Class", "excludedTest", listOf(slowDevice, secondSlowDevice)),
+                        listOf(fastDevice))
+        val enabledTests = admitDevice(slowTests, listOf(slowDevice, secondSlowDevice), fastDevice)
+        assertEquals(listOf("compatibleTest"), enabledTests.map { it.testMethod })
+        val slowQueue = TestCaseEventQueue(slowTests, mutableListOf())
+        queues.register(slowPool, slowQueue)
+        queues.allowBorrowing(fastDevice, slowPool)
+
+        queues.borrowFor(fastDevice)!!.task.doWork {
+            assertEquals("compatibleTest", it.testMethod)
+            aTestResult(it.testCase, ResultStatus.PASS, emptyList())
+        }
+        listOf("limitedTest", "excludedTest").forEach { expectedTest ->
+            slowQueue.pollForDevice(slowDevice)!!.doWork {
+                assertEquals(expectedTest, it.testMethod)
+                aTestResult(it.testCase, ResultStatus.PASS, emptyList())
+            }
+        }
+
+        assertNull(queues.borrowFor(fastDevice))
+        assertTrue(slowQueue.isDrained)
+    }
+
+    @Test(timeout = 10_000)
+    fun waitingDeviceBorrowsFromAnyPool() {
+        val queues = WorkStealingQueues()
+        val slowTests = loadTestCases(slowPool, "slowTest")
+        val otherTests = loadTestCases(otherPool, "otherTest")
+        listOf(slowTests to slowPool, otherTests to otherPool).forEach { (tests, pool) ->
+            admitDevice(tests, pool.devices, fastDevice)
+        }
+        val slowQueue = TestCaseEventQueue(slowTests, mutableListOf())
+        val otherQueue = TestCaseEventQueue(otherTests, mutableListOf())
+        queues.register(slowPool, slowQueue)
+        queues.register(otherPool, otherQueue)
+        queues.allowBorrowing(fastDevice, slowPool)
+        queues.allowBorrowing(fastDevice, otherPool)
+
+        val slowResult = CompletableFuture<TestCaseRunResult?>()
+        val slowFinished = slowQueue.pollForDevice(slowDevice)!!.doWorkAsync { slowResult }
+        val otherTask = otherQueue.pollForDevice(otherDevice)!!
+        val borrowed = CompletableFuture<WorkStealingQueues.BorrowedTask?>()
+        val borrower = thread {
+            borrowed.complete(queues.borrowFor(fastDevice))
+        }
+        while (borrower.state != Thread.State.WAITING) {
+            Thread.sleep(10)
+        }
+
+        otherTask.doWork {
+            otherQueue.offer(it.withFailureCount(1))
+            aTestResult(it.testCase, ResultStatus.FAIL, emptyList())
+        }
+        // The first pool is still running, but a retry of the other one should be borrowed right away
+        val borrowedTask = borrowed.get(5, TimeUnit.SECONDS)!!
+        assertEquals(otherPool, borrowedTask.pool)
+        borrowedTask.task.doWork {
+            aTestResult(it.testCase, ResultStatus.PASS, emptyList(), borrowedTask.pool)
+        }
+
+        slowResult.complete(aTestResult(slowTests.single().testCase, ResultStatus.PASS, emptyList()))
+        assertTrue(slowFinished.isDone)
+        borrower.join()
+        assertNull(queues.borrowFor(fastDevice))
+    }
+
+    @Test(timeout = 10_000)
+    fun retriesOfAdmittedTestCasesCanBeBorrowed() {
+        val slowTest = loadTestCases(slowPool, "test1").single()
+        admitDevice(listOf(slowTest), slowPool.devices, fastDevice)
+
+        assertTrue(slowTest.withFailureCount(1).isEnabledOn(fastDevice))
+    }
+
+    private fun pool(name: String, vararg devices: Device): Pool {
+        return Pool.Builder.aDevicePool()
+                .withName(name)
+                .apply { devices.forEach { addDevice(it) } }
+                .build()
+    }
+
+    /**
+     * Loads test cases the same way as they are loaded for a real pool, so they include devices of [pool] only
+     */
+    private fun loadTestCases(pool: Pool, vararg names: String): List<TestCaseEvent> {
+        val provider = object : TestCaseProvider {
+            override fun loadTestSuite(): Collection<TestCase> = names.map { aTestCase("Class", it, null) }
+        }
+        return JoiningTestProvider(listOf(provider), pool)
+                .loadTestSuite()
+                .map { TestCaseEvent(it, emptyList()) }
+    }
+}
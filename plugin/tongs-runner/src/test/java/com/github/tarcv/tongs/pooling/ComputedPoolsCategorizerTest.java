@@ -57,6 +57,16 @@ public class ComputedPoolsCategorizerTest {
         assertPoolWithApiHasName("0", "api0-0");
 	}
 
+	@Test
+	public void testDeviceReachesLowerBoundsOfLowerCategories() {
+		assertThat(computedPoolsCategorizer.reachesLowerBound("elevenToTwenty=api11-20", deviceWithApi("21")),
+				equalTo(true));
+		assertThat(computedPoolsCategorizer.reachesLowerBound("OneToTen=api1-10", deviceWithApi("11")),
+				equalTo(true));
+		assertThat(computedPoolsCategorizer.reachesLowerBound("TwentyOneUp=api21-up", deviceWithApi("20")),
+				equalTo(false));
+	}
+
     private void assertPoolWithApiHasName(String apiLevel, String poolName) {
         String poolForDevice = computedPoolsCategorizer.poolForDevice(deviceWithApi(apiLevel));
         assertThat(poolForDevice, equalTo(poolName));
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.pooling;
+
+import com.github.tarcv.tongs.ManualPooling;
+import com.github.tarcv.tongs.api.devices.Device;
+import com.github.tarcv.tongs.api.devices.Pool;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.tarcv.tongs.api.devices.DeviceExtKt.createStubDevice;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DevicePoolLoaderTest {
+    private final Device deviceA = createStubDevice("deviceA");
+    private final Device deviceB = createStubDevice("deviceB");
+    private final List<Device> devices = Arrays.asList(deviceA, deviceB);
+
+    @Test
+    public void testPerDevicePoolsDontShareTestCases() {
+        EveryoneGetsAPoolLoader loader = new EveryoneGetsAPoolLoader();
+
+        List<Pool> pools = new ArrayList<>(loader.loadPools(devices));
+
+        assertThat(pools.size(), equalTo(2));
+        assertThat(loader.isCompatible(pools.get(0), deviceB), equalTo(false));
+        assertThat(loader.isCompatible(pools.get(1), deviceA), equalTo(false));
+    }
+
+    @Test
+    public void testManualPoolsDontShareTestCases() {
+        ManualPooling manualPooling = new ManualPooling();
+        manualPooling.groupings = ImmutableMap.of(
+                "poolA", Collections.singletonList("deviceA"),
+                "poolB", Collections.singletonList("deviceB")
+        );
+        SerialBasedDevicePoolLoader loader = new SerialBasedDevicePoolLoader(manualPooling);
+
+        List<Pool> pools = new ArrayList<>(loader.loadPools(devices));
+
+        assertThat(pools.size(), equalTo(2));
+        assertThat(loader.isCompatible(pools.get(0), deviceB), equalTo(false));
+        assertThat(loader.isCompatible(pools.get(1), deviceA), equalTo(false));
+    }
+}
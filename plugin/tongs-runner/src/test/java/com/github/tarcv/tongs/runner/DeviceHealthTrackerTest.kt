@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.api.devices.Pool
+import com.github.tarcv.tongs.api.devices.createStubDevice
+import com.github.tarcv.tongs.runner.DeviceHealthTracker.HealthEvent
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.TimeoutException
+
+class DeviceHealthTrackerTest {
+    private val device1 = createStubDevice("dev1")
+    private val device2 = createStubDevice("dev2")
+    private val device3 = createStubDevice("dev3")
+    private val pool = Pool.Builder.aDevicePool()
+            .withName("pool")
+            .addDevice(device1)
+            .addDevice(device2)
+            .addDevice(device3)
+            .build()
+
+    @Test
+    fun testDeviceIsQuarantinedAfterInfrastructureErrorsInARow() {
+        val tracker = trackerWithAllDevices(true)
+        repeat(5) {
+            tracker.recordResult(device1, 100, false)
+        }
+
+        repeat(DeviceHealthTracker.MAX_CONSECUTIVE_ERRORS - 1) {
+            tracker.recordInfrastructureError(device1, TimeoutException())
+        }
+        tracker.recordResult(device1, 100, false)
+        repeat(DeviceHealthTracker.MAX_CONSECUTIVE_ERRORS - 1) {
+            tracker.recordInfrastructureError(device1, TimeoutException())
+        }
+        Assert.assertFalse(tracker.isQuarantined(device1))
+
+        tracker.recordInfrastructureError(device1, TimeoutException())
+        Assert.assertTrue(tracker.isQuarantined(device1))
+        Assert.assertEquals(
+                listOf(HealthEvent.Type.QUARANTINED),
+                tracker.getEvents().map { it.type })
+    }
+
+    @Test
+    fun testSlowDeviceIsQuarantinedAndCanBeReadmitted() {
+        val tracker = trackerWithAllDevices(true)
+
+        repeat(10) {
+            tracker.recordResult(device1, 100, false)
+            tracker.recordResult(device2, 100, false)
+            tracker.recordResult(device3, 1000, false)
+        }
+        Assert.assertFalse(tracker.isQuarantined(device1))
+        Assert.assertFalse(tracker.isQuarantined(device2))
+        Assert.assertTrue(tracker.isQuarantined(device3))
+
+        tracker.readmit(device3)
+        Assert.assertFalse(tracker.isQuarantined(device3))
+        Assert.assertEquals(1.0, tracker.healthScore(device3), 0.0)
+        Assert.assertEquals(
+                listOf(HealthEvent.Type.QUARANTINED, HealthEvent.Type.READMITTED),
+                tracker.getEvents().map { it.type })
+    }
+
+    @Test
+    fun testFailingTestsAloneDoNotQuarantineDevice() {
+        val tracker = trackerWithAllDevices(true)
+
+        repeat(10) {
+            tracker.recordResult(device1, 100, true)
+        }
+
+        Assert.assertFalse(tracker.isQuarantined(device1))
+        Assert.assertEquals(0.5, tracker.healthScore(device1), 0.001)
+    }
+
+    @Test
+    fun testLastHealthyDeviceOfPoolIsNotQuarantined() {
+        val tracker = trackerWithAllDevices(true)
+
+        listOf(device1, device2, device3).forEach { device ->
+            repeat(DeviceHealthTracker.MAX_CONSECUTIVE_ERRORS) {
+                tracker.recordInfrastructureError(device, TimeoutException())
+            }
+        }
+
+        Assert.assertTrue(tracker.isQuarantined(device1))
+        Assert.assertTrue(tracker.isQuarantined(device2))
+        Assert.assertFalse(tracker.isQuarantined(device3))
+    }
+
+    @Test
+    fun testDevicesAreNotQuarantinedWhenDisabled() {
+        val tracker = trackerWithAllDevices(false)
+
+        repeat(10) {
+            tracker.recordInfrastructureError(device1, TimeoutException())
+        }
+
+        Assert.assertFalse(tracker.isQuarantined(device1))
+        Assert.assertTrue(tracker.healthScore(device1) < DeviceHealthTracker.QUARANTINE_SCORE)
+        Assert.assertTrue(tracker.getEvents().isEmpty())
+    }
+
+    private fun trackerWithAllDevices(enabled: Boolean): DeviceHealthTracker {
+        return DeviceHealthTracker(enabled).apply {
+            listOf(device1, device2, device3).forEach { register(pool, it) }
+        }
+    }
+}
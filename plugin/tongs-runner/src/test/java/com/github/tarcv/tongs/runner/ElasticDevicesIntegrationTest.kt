@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import com.github.tarcv.tongs.PoolingStrategy
+import com.github.tarcv.tongs.TongsRunner
+import com.github.tarcv.tongs.aConfigurationBuilder
+import com.github.tarcv.tongs.api.devices.Device
+import com.github.tarcv.tongs.api.devices.DeviceChangeListener
+import com.github.tarcv.tongs.api.devices.DeviceDemand
+import com.github.tarcv.tongs.api.devices.DeviceProviderContext
+import com.github.tarcv.tongs.api.devices.DeviceProviderFactory
+import com.github.tarcv.tongs.api.devices.ElasticDeviceProvider
+import com.github.tarcv.tongs.api.devices.createStubDevice
+import com.github.tarcv.tongs.api.result.RunTesult
+import com.github.tarcv.tongs.api.result.TestCaseRunResult
+import com.github.tarcv.tongs.api.run.ResultStatus
+import com.github.tarcv.tongs.api.run.TestCaseRunner
+import com.github.tarcv.tongs.api.run.TestCaseRunnerArguments
+import com.github.tarcv.tongs.api.run.TestCaseRunnerContext
+import com.github.tarcv.tongs.api.run.TestCaseRunnerFactory
+import com.github.tarcv.tongs.api.testcases.TestCase
+import com.github.tarcv.tongs.api.testcases.TestCaseProvider
+import com.github.tarcv.tongs.api.testcases.TestCaseProviderContext
+import com.github.tarcv.tongs.api.testcases.TestCaseProviderFactory
+import com.github.tarcv.tongs.api.testcases.aTestCase
+import com.github.tarcv.tongs.koinRule
+import com.github.tarcv.tongs.plugin.android.LocalDeviceProviderFactory
+import com.github.tarcv.tongs.suite.JUnitTestCaseProviderFactory
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.RuleChain
+import org.junit.rules.TemporaryFolder
+import org.junit.rules.TestRule
+import java.time.Instant
+import java.util.Collections
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Runs test cases with fake plugins instead of Android ones, so a device provisioned by an elastic device provider
+ * goes through the same path as a real one: from a demand report to executing a test case.
+ */
+class ElasticDevicesIntegrationTest {
+    private val temporaryFolder = TemporaryFolder()
+    private val koinRule = koinRule {
+        aConfigurationBuilder()
+                .withOutput(temporaryFolder.newFolder("output"))
+                .withPoolingStrategy(PoolingStrategy().apply { splitTablets = true })
+                .withDeviceHotPlug(true)
+                .withPlugins(listOf(
+                        FakeElasticDeviceProviderFactory::class.java.name,
+                        FakeTestCaseProviderFactory::class.java.name,
+                        FakeTestCaseRunnerFactory::class.java.name,
+                        "-" + LocalDeviceProviderFactory::class.java.name,
+                        "-" + JUnitTestCaseProviderFactory::class.java.name,
+                        "-" + AndroidInstrumentedTestCaseRunnerFactory::class.java.name
+                ))
+                .build(true)
+    }
+
+    @get:Rule
+    val rules: TestRule = RuleChain.emptyRuleChain()
+            .around(temporaryFolder)
+            .around(koinRule)
+
+    @Before
+    fun setUp() {
+        provisioned.set(false)
+        completedOn.clear()
+        provisionedDeviceFinished = CountDownLatch(1)
+    }
+
+    @Test(timeout = 60_000)
+    fun testProvisionedDeviceExecutesTestCase() {
+        val tongsRunner = koinRule.koin.get<TongsRunner>()
+
+        val success = tongsRunner.throwingRun()
+
+        Assert.assertTrue(success)
+        Assert.assertTrue("Elastic device provider was asked for a device", provisioned.get())
+        Assert.assertTrue("Provisioned device completed a test case, results: $completedOn",
+                completedOn.any { (device, _) -> device == provisionedDevice })
+        Assert.assertEquals(2, completedOn.size)
+    }
+
+    class FakeElasticDeviceProviderFactory : DeviceProviderFactory<FakeElasticDeviceProvider> {
+        override fun deviceProviders(context: DeviceProviderContext): Array<out FakeElasticDeviceProvider> {
+            return arrayOf(FakeElasticDeviceProvider())
+        }
+    }
+
+    /**
+     * Starts with one device and provisions one more as soon as test cases are queued
+     */
+    class FakeElasticDeviceProvider : ElasticDeviceProvider {
+        private val listeners = CopyOnWriteArrayList<DeviceChangeListener>()
+
+        override fun provideDevices(): Set<Device> = setOf(initialDevice)
+
+        override fun addDeviceChangeListener(listener: DeviceChangeListener) {
+            listeners.addIfAbsent(listener)
+        }
+
+        override fun removeDeviceChangeListener(listener: DeviceChangeListener) {
+            listeners.remove(listener)
+        }
+
+        override fun onDemandChanged(demand: DeviceDemand) {
+            if (demand.queuedTestCases > 0 && provisioned.compareAndSet(false, true)) {
+                listeners.forEach { it.deviceConnected(provisionedDevice) }
+            }
+        }
+    }
+
+    class FakeTestCaseProviderFactory : TestCaseProviderFactory<TestCaseProvider> {
+        override fun suiteLoaders(context: TestCaseProviderContext): Array<out TestCaseProvider> {
+            return arrayOf(object : TestCaseProvider {
+                override fun loadTestSuite(): Collection<TestCase> {
+                    return listOf(aTestCase("Class1", "test1"), aTestCase("Class1", "test2"))
+                }
+            })
+        }
+    }
+
+    class FakeTestCaseRunnerFactory : TestCaseRunnerFactory<FakeTestCaseRunner> {
+        override fun testCaseRunners(context: TestCaseRunnerContext): Array<out FakeTestCaseRunner> {
+            return arrayOf(FakeTestCaseRunner(context))
+        }
+    }
+
+    /**
+     * Keeps the initial device busy until the provisioned device completes a test case,
+     * so the provisioned device is the only one that can take the second test case
+     */
+    class FakeTestCaseRunner(private val context: TestCaseRunnerContext) : TestCaseRunner {
+        override fun supports(device: Device, testCase: TestCase): Boolean = true
+
+        override fun run(arguments: TestCaseRunnerArguments): RunTesult {
+            if (context.device == initialDevice) {
+                provisionedDeviceFinished.await(PROVISIONED_DEVICE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            }
+            val testCase = arguments.testCaseEvent.testCase
+            completedOn += context.device to testCase.testMethod
+            if (context.device == provisionedDevice) {
+                provisionedDeviceFinished.countDown()
+            }
+            return TestCaseRunResult(context.pool, context.device, testCase, ResultStatus.PASS, emptyList(),
+                    arguments.startTimestampUtc, Instant.now(), null, null,
+                    0, emptyMap(), null, emptyList())
+        }
+    }
+
+    companion object {
+        private const val PROVISIONED_DEVICE_TIMEOUT_SECONDS = 20L
+
+        // Plugins are instantiated by their class names, so they share state with the test through these fields
+        private val initialDevice = createStubDevice("tongs-initial")
+        private val provisionedDevice = createStubDevice("tongs-provisioned")
+        private val provisioned = AtomicBoolean(false)
+        private val completedOn: MutableList<Pair<Device, String>> = Collections.synchronizedList(ArrayList())
+
+        @Volatile
+        private var provisionedDeviceFinished = CountDownLatch(1)
+    }
+}
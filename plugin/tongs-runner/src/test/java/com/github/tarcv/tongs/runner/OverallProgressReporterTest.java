@@ -26,6 +26,8 @@ import static com.github.tarcv.tongs.api.testcases.TestCaseExtKt.aTestCase;
 import static com.github.tarcv.tongs.model.AndroidDevice.Builder.aDevice;
 import static com.github.tarcv.tongs.runner.FakePoolTestCaseAccumulator.aFakePoolTestCaseAccumulator;
 import static com.github.tarcv.tongs.runner.FakeProgressReporterTrackers.aFakeProgressReporterTrackers;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class OverallProgressReporterTest {
 
@@ -69,4 +71,22 @@ public class OverallProgressReporterTest {
         overallProgressReporter.requestRetry(A_POOL, A_TEST_CASE);
     }
 
+    @Test
+    public void retriedFailuresExhaustFailureBudget() throws Exception {
+        fakeTestCasesAccumulator.thatAlwaysReturns(0);
+        overallProgressReporter = new OverallProgressReporter(10, 10,
+                new PoolProgressTrackers(aFakeProgressReporterTrackers().thatAlwaysReturns(mockPoolProgressTracker)),
+                fakeTestCasesAccumulator,
+                new FailureBudget(2, 0));
+
+        mockery.checking(new Expectations() {{
+            allowing(mockPoolProgressTracker).getNumberOfTests();
+            will(returnValue(10));
+            oneOf(mockPoolProgressTracker).trackTestEnqueuedAgain();
+        }});
+
+        assertTrue(overallProgressReporter.requestRetry(A_POOL, A_TEST_CASE));
+        assertFalse(overallProgressReporter.requestRetry(A_POOL, A_TEST_CASE));
+        assertTrue(overallProgressReporter.isFailureBudgetExceeded(A_POOL));
+    }
 }
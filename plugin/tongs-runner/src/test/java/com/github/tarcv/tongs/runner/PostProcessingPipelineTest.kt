@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import org.junit.After
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+
+class PostProcessingPipelineTest {
+    private val executor = Executors.newCachedThreadPool()
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    @Test(timeout = 10_000)
+    fun testPostProcessingOverlapsNextDeviceRun() {
+        val pipeline = PostProcessingPipeline()
+        val nextDeviceRunStarted = CountDownLatch(1)
+        val overlapped = AtomicBoolean(false)
+
+        pipeline.execute {
+            CompletableFuture.runAsync(Runnable {
+                // Finishes only when the next test case is executed on the device meanwhile
+                overlapped.set(nextDeviceRunStarted.await(5, TimeUnit.SECONDS))
+            }, executor)
+        }
+        pipeline.execute {
+            nextDeviceRunStarted.countDown()
+            CompletableFuture.completedFuture(Unit)
+        }
+
+        Assert.assertTrue(overlapped.get())
+    }
+
+    @Test(timeout = 10_000)
+    fun testOnlyOneTestCaseIsPostProcessedAtTime() {
+        val pipeline = PostProcessingPipeline()
+        val firstPostProcessing = CompletableFuture<Unit>()
+        val firstPostProcessingSeen = AtomicReference<CompletableFuture<*>>()
+
+        pipeline.execute { firstPostProcessing }
+        executor.submit {
+            Thread.sleep(100)
+            firstPostProcessing.complete(Unit)
+        }
+        pipeline.execute { previous ->
+            firstPostProcessingSeen.set(previous)
+            CompletableFuture<Unit>()
+        }
+
+        Assert.assertSame(firstPostProcessing, firstPostProcessingSeen.get())
+        Assert.assertTrue(firstPostProcessing.isDone)
+    }
+
+    @Test(timeout = 10_000)
+    fun testAwaitIsInterruptible() {
+        val pipeline = PostProcessingPipeline()
+        pipeline.execute { CompletableFuture<Unit>() }
+
+        Thread.currentThread().interrupt()
+        try {
+            pipeline.await()
+            Assert.fail("Expected InterruptedException")
+        } catch (e: InterruptedException) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 TarCV
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License.
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.github.tarcv.tongs.runner
+
+import org.junit.After
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+class TaskScopeTest {
+    private val executor = Executors.newCachedThreadPool()
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    @Test(timeout = 10_000)
+    fun testJoinWaitsForAllTasks() {
+        val finishedTasks = AtomicInteger(0)
+        TaskScope(executor).use { scope ->
+            repeat(3) { index ->
+                scope.launch {
+                    Thread.sleep(50L * index)
+                    finishedTasks.incrementAndGet()
+                }
+            }
+            scope.launch { throw RuntimeException("Failures of tasks must not break the scope") }
+            scope.join()
+        }
+        Assert.assertEquals(3, finishedTasks.get())
+    }
+
+    @Test(timeout = 10_000)
+    fun testJoinWaitsForTasksLaunchedWhileWaiting() {
+        val lateTaskFinished = AtomicBoolean(false)
+        TaskScope(executor).use { scope ->
+            scope.launch {
+                Thread.sleep(50)
+                scope.launch {
+                    Thread.sleep(50)
+                    lateTaskFinished.set(true)
+                }
+            }
+            scope.join()
+        }
+        Assert.assertTrue(lateTaskFinished.get())
+    }
+
+    @Test(timeout = 10_000)
+    fun testInterruptingJoinCancelsNestedTasks() {
+        val innerStarted = CountDownLatch(2)
+        val innerInterrupted = CountDownLatch(2)
+        var joinWasInterrupted = false
+
+        val joiningThread = thread {
+            TaskScope(executor).use { outerScope ->
+                outerScope.launch {
+                    TaskScope(executor).use { innerScope ->
+                        repeat(2) {
+                            innerScope.launch {
+                                innerStarted.countDown()
+                                try {
+                                    Thread.sleep(TimeUnit.MINUTES.toMillis(1))
+                                } catch (e: InterruptedException) {
+                                    innerInterrupted.countDown()
+                                }
+                            }
+                        }
+                        innerScope.join()
+                    }
+                }
+                try {
+                    outerScope.join()
+                } catch (e: InterruptedException) {
+                    joinWasInterrupted = true
+                }
+            }
+        }
+
+        Assert.assertTrue(innerStarted.await(5, TimeUnit.SECONDS))
+        joiningThread.interrupt()
+        joiningThread.join()
+
+        Assert.assertTrue(joinWasInterrupted)
+        // Cancelled tasks are awaited before join returns
+        Assert.assertEquals(0, innerInterrupted.count)
+    }
+}
@@ -19,6 +19,7 @@ import com.github.tarcv.tongs.api.result.TestCaseRunResult;
 import com.github.tarcv.tongs.api.run.ResultStatus;
 import com.github.tarcv.tongs.api.run.TestCaseEvent;
 import com.github.tarcv.tongs.api.testcases.TestCase;
+import com.github.tarcv.tongs.runner.FailureBudget;
 import com.google.common.collect.ImmutableMap;
 import org.jetbrains.annotations.NotNull;
 import org.jmock.Expectations;
@@ -45,6 +46,7 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 
@@ -196,6 +198,22 @@ public class SummaryCompilerTest {
                 contains("com.example.SkippedClassTest#doesJobProperly"));
     }
 
+    @Test
+    public void testsOfPoolWithExceededFailureBudgetAreNotRunInsteadOfFatallyCrashed() {
+        FailureBudget failureBudget = new FailureBudget(1, 0);
+        failureBudget.recordFailedTestCase(devicePool, testCaseEvents.get(devicePool).size());
+        SummaryCompiler summaryCompiler = new SummaryCompiler(mockConfiguration, failureBudget);
+
+        Summary summary = summaryCompiler.compileSummary(devicePools, testCaseEvents, testResults);
+
+        assertThat(summary.getFatalCrashedTests(), hasSize(0));
+        assertThat(mapToStringList(summary.getIgnoredTests()), containsInAnyOrder(
+                "com.example.IgnoredClassTest#doesJobProperly",
+                "com.example.SkippedClassTest#doesJobProperly"));
+        assertThat(summary.getPoolSummaries().get(0).getTestResults(), hasSize(5));
+        assertThat(summary.getFatalErrors(), hasSize(1));
+    }
+
     @NotNull
     private static List<String> mapToStringList(List<TestCaseRunResult> resultList) {
         return resultList.stream()